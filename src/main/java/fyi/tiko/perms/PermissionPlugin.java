@@ -1,18 +1,34 @@
 package fyi.tiko.perms;
 
+import fyi.tiko.perms.audit.AuditLog;
+import fyi.tiko.perms.bulk.repository.BulkRepository;
 import fyi.tiko.perms.commands.PermissionCommand;
+import fyi.tiko.perms.commands.sub.bulk.BulkCommand;
 import fyi.tiko.perms.commands.sub.group.GroupCommand;
 import fyi.tiko.perms.commands.sub.group.GroupsCommand;
+import fyi.tiko.perms.commands.sub.log.LogCommand;
 import fyi.tiko.perms.commands.sub.sign.SignCommand;
+import fyi.tiko.perms.commands.sub.transfer.ExportCommand;
+import fyi.tiko.perms.commands.sub.transfer.ImportCommand;
 import fyi.tiko.perms.commands.sub.user.UserCommand;
+import fyi.tiko.perms.database.DatabaseExecutor;
 import fyi.tiko.perms.database.DatabaseProvider;
 import fyi.tiko.perms.database.DatabaseSetup;
+import fyi.tiko.perms.database.ExecutionMode;
+import fyi.tiko.perms.database.MemoryStorage;
+import fyi.tiko.perms.database.SqlStorage;
+import fyi.tiko.perms.database.Storage;
+import fyi.tiko.perms.database.StorageType;
+import fyi.tiko.perms.database.WriteBehindQueue;
 import fyi.tiko.perms.database.repository.PermissionRepository;
-import fyi.tiko.perms.group.PermissionGroup;
+import fyi.tiko.perms.group.GroupRegistry;
 import fyi.tiko.perms.group.repository.GroupPermissionRepository;
+import fyi.tiko.perms.permission.PermissionDictionary;
 import fyi.tiko.perms.sign.PermissionSign;
+import fyi.tiko.perms.sign.SignRegistry;
 import fyi.tiko.perms.sign.listener.SignBreakListener;
 import fyi.tiko.perms.sign.repository.SignRepository;
+import fyi.tiko.perms.user.expiry.UserExpiryScheduler;
 import fyi.tiko.perms.user.language.TranslationConfig;
 import fyi.tiko.perms.user.language.UserTranslator;
 import fyi.tiko.perms.user.listener.UserAsyncChatListener;
@@ -20,12 +36,18 @@ import fyi.tiko.perms.user.listener.UserAsyncPreLoginListener;
 import fyi.tiko.perms.user.listener.UserJoinListener;
 import fyi.tiko.perms.user.listener.UserLoginListener;
 import fyi.tiko.perms.user.listener.UserQuitListener;
+import fyi.tiko.perms.user.listener.UserWorldChangeListener;
+import fyi.tiko.perms.user.repository.AsyncUserRepository;
+import fyi.tiko.perms.user.repository.UserNameCache;
 import fyi.tiko.perms.user.repository.UserRepository;
 import fyi.tiko.perms.user.scoreboard.UserScoreboardService;
+import fyi.tiko.perms.utils.BukkitServer;
+import fyi.tiko.perms.utils.CacheSyncTask;
+import fyi.tiko.perms.utils.LatencyHistogram;
 import fyi.tiko.perms.utils.LoadingActions;
 import fyi.tiko.perms.utils.SaveTask;
-import java.util.HashSet;
-import java.util.Set;
+import java.time.Duration;
+import java.util.concurrent.Executor;
 import org.bukkit.ChatColor;
 import org.bukkit.plugin.java.JavaPlugin;
 
@@ -36,21 +58,43 @@ import org.bukkit.plugin.java.JavaPlugin;
  */
 public class PermissionPlugin extends JavaPlugin {
     private final SaveTask saveTask = new SaveTask(this);
-    private final Set<PermissionSign> signs = new HashSet<>();
-    private final Set<PermissionGroup> groups = new HashSet<>();
-    private DatabaseProvider databaseProvider;
+    private final CacheSyncTask cacheSyncTask = new CacheSyncTask(this);
+    private final UserExpiryScheduler userExpiryScheduler = new UserExpiryScheduler(this);
+    private final SignRegistry signRegistry = new SignRegistry();
+    private final GroupRegistry groupRegistry = new GroupRegistry();
+    private final LatencyHistogram loginLatency = new LatencyHistogram();
+    // Runs tasks on the main thread, immediately if they are handed over by the main thread itself
+    private final Executor mainThread = task -> {
+        if (getServer().isPrimaryThread()) {
+            task.run();
+        } else {
+            getServer().getScheduler().runTask(this, task);
+        }
+    };
+    private Storage storage;
+    private WriteBehindQueue writeQueue;
+    private DatabaseExecutor databaseExecutor;
     private UserRepository userRepository;
+    private AsyncUserRepository asyncUserRepository;
     private UserTranslator userTranslator;
     private TranslationConfig messageConfig;
     private PermissionRepository permissionRepository;
     private SignRepository signRepository;
     private UserScoreboardService userScoreboardService;
     private GroupPermissionRepository groupRepository;
+    private BulkRepository bulkRepository;
+    private AuditLog auditLog;
 
     @Override
     public void onEnable() {
-        // Initialize the database
-        initializeDatabase();
+        // Initialize the database, the plugin is disabled already if that failed
+        if (!initializeDatabase()) {
+            return;
+        }
+
+        // Message configuration, the login and the start already need it to deny users that can't be loaded
+        messageConfig = new TranslationConfig(this, "translations.yml");
+        userTranslator = new UserTranslator(messageConfig);
 
         // Registering the listeners
         initializeListener();
@@ -64,12 +108,14 @@ public class PermissionPlugin extends JavaPlugin {
         // Run the save task every 90 seconds
         saveTask.runTaskTimerAsynchronously(this, 0, 20 * 90L);
 
-        // In case of a reload, the cache needs to be updated
-        saveTask.updateCache();
+        // Remove timed groups and permissions as soon as they expire
+        userExpiryScheduler.start();
 
-        // Message configuration
-        messageConfig = new TranslationConfig(this, "translations.yml");
-        userTranslator = new UserTranslator(messageConfig);
+        // Changes of other servers are applied from the changelog, starting with the changes made while the cache is loaded
+        cacheSyncTask.start(getConfig().getLong("database.sync-interval", 5));
+
+        // In case of a reload, the online players don't join again and have to be loaded now
+        saveTask.loadOnlineUsers();
 
         // Loading actions are executed. Here we inject the permissible base again (in case of reloads) and start the update task.
         LoadingActions.reload(this);
@@ -78,19 +124,45 @@ public class PermissionPlugin extends JavaPlugin {
 
     @Override
     public void onDisable() {
-        saveTask.savePermissionData();
-        saveTask.cancel();
+        // Without a storage the plugin was disabled while enabling, before the tasks were started
+        if (storage != null) {
+            cacheSyncTask.cancel();
+            saveTask.cancel();
+            saveTask.savePermissionData();
+        }
+
+        // Running commands may still queue changes, so they have to finish first
+        if (databaseExecutor != null) {
+            databaseExecutor.shutdown(Duration.ofSeconds(getConfig().getLong("database.shutdown-timeout", 10)));
+            databaseExecutor = null;
+        }
+
+        // The commands are done, so the audit log receives no more entries
+        if (auditLog != null) {
+            auditLog.shutdown(Duration.ofSeconds(getConfig().getLong("database.shutdown-timeout", 10)));
+            auditLog = null;
+        }
 
-        groups.clear();
-        signs.clear();
+        // Everything queued has to be written before the connection pool is closed
+        if (writeQueue != null) {
+            writeQueue.drain(Duration.ofSeconds(getConfig().getLong("database.shutdown-timeout", 10)));
+            writeQueue = null;
+        }
+
+        groupRegistry.clear();
+        signRegistry.clear();
 
-        databaseProvider.disconnect();
-        databaseProvider = null;
+        if (storage != null) {
+            storage.close();
+            storage = null;
+        }
 
         userRepository = null;
+        asyncUserRepository = null;
         permissionRepository = null;
         groupRepository = null;
         signRepository = null;
+        bulkRepository = null;
 
         userScoreboardService = null;
         messageConfig = null;
@@ -110,49 +182,104 @@ public class PermissionPlugin extends JavaPlugin {
         new UserJoinListener(this);
         // Saves the user data to the database
         new UserQuitListener(this);
+        // Switches the permissions of the user to the world they changed to
+        new UserWorldChangeListener(this);
         // Responsible for handling the destruction of {@link PermissionSign}s.
         new SignBreakListener(this);
     }
 
     /**
-     * Initializes the database.
+     * Initializes the database. The plugin is disabled if the storage can't be used.
+     *
+     * @return True if the database was initialized.
      */
-    private void initializeDatabase() {
+    private boolean initializeDatabase() {
         // Saving the default config so changes made will be applied
         saveDefaultConfig();
 
-        var logger = getLogger();
+        // The server name is needed before any permissions are resolved
+        BukkitServer.serverName(getConfig().getString("context.server"));
 
-        // Creating a new instance of the database provider with the given credentials
-        databaseProvider = DatabaseProvider.create(
-            getConfig().getString("credentials.host"),
-            getConfig().getString("credentials.user"),
-            getConfig().getString("credentials.password"),
-            getConfig().getString("credentials.database"),
-            getConfig().getInt("credentials.port")
-        );
+        var logger = getLogger();
+        var names = new UserNameCache(getConfig().getInt("database.name-cache-size", 10000));
+        var type = StorageType.byName(getConfig().getString("storage.type", "mysql"));
 
-        // Try to connect to the database
-        if (!databaseProvider.connect()) {
-            logger.severe("Could not connect to the database.");
+        if (type == null) {
+            logger.severe("Unknown storage type " + getConfig().getString("storage.type") + ", use mysql, h2 or memory.");
             getServer().getPluginManager().disablePlugin(this);
-            return;
+            return false;
+        }
+
+        if (type == StorageType.MEMORY) {
+            logger.warning("Using the memory storage, all permissions are lost when the server stops.");
+            storage = new MemoryStorage(groupRegistry, names);
+        } else {
+            var databaseProvider = type == StorageType.H2
+                ? DatabaseProvider.embedded(getDataFolder().toPath().resolve(getConfig().getString("storage.file", "permissions")))
+                : DatabaseProvider.create(
+                    getConfig().getString("credentials.host"),
+                    getConfig().getString("credentials.user"),
+                    getConfig().getString("credentials.password"),
+                    getConfig().getString("credentials.database"),
+                    getConfig().getInt("credentials.port"),
+                    getConfig().getBoolean("database.rewrite-batched-statements", true)
+                );
+
+            // Try to connect to the database
+            if (!databaseProvider.connect()) {
+                logger.severe("Could not connect to the database.");
+                getServer().getPluginManager().disablePlugin(this);
+                return false;
+            }
+
+            // Apply the migrations the database is missing
+            if (!DatabaseSetup.migrate(logger, databaseProvider.dataSource(), databaseProvider.dialect())) {
+                logger.severe("Could not migrate the database.");
+                databaseProvider.disconnect();
+                getServer().getPluginManager().disablePlugin(this);
+                return false;
+            }
+
+            storage = new SqlStorage(logger, databaseProvider, groupRegistry, names);
         }
 
-        var dataSource = databaseProvider.dataSource();
+        // The writers and the commands share the connection pool, the writers get at most half of it and the commands the rest
+        var connections = storage.connections();
+        var writerThreads = Math.max(1, Math.min(getConfig().getInt("database.writer-threads", 4), connections / 2));
 
-        // Execute the queries from the dbsetup.sql file
-        DatabaseSetup.executeQueries(logger, dataSource);
+        // Changes are written in the background, coalescing repeated changes of the same user or group
+        writeQueue = new WriteBehindQueue(logger, writerThreads, Duration.ofMillis(getConfig().getLong("database.write-delay", 500)));
 
         // Initialize the repositories
-        permissionRepository = new PermissionRepository(logger, dataSource);
-        groupRepository = new GroupPermissionRepository(logger, dataSource, groups);
-        userRepository = new UserRepository(logger, dataSource, groups);
-        signRepository = new SignRepository(logger, dataSource);
-
-        // Load the groups from the database
-        groups.addAll(groupRepository.groups());
-        signs.addAll(signRepository.allSigns());
+        permissionRepository = storage.permissionRepository();
+        groupRepository = storage.groupRepository();
+        userRepository = storage.userRepository();
+        signRepository = storage.signRepository();
+        bulkRepository = storage.bulkRepository();
+
+        // Changes made with commands are recorded without waiting for the storage
+        auditLog = new AuditLog(logger, storage.auditRepository(), getConfig().getInt("audit.buffer-size", 4096),
+            Duration.ofMillis(getConfig().getLong("audit.flush-interval", 1000)));
+
+        // Commands and listeners query the storage on their own threads, at most one query for every connection
+        var mode = ExecutionMode.byName(getConfig().getString("database.execution", "platform"));
+
+        if (mode == null) {
+            logger.warning("Unknown execution mode " + getConfig().getString("database.execution") + ", using platform threads.");
+            mode = ExecutionMode.PLATFORM;
+        }
+
+        databaseExecutor = new DatabaseExecutor(logger, Math.max(1, connections - writerThreads), mode);
+        asyncUserRepository = new AsyncUserRepository(userRepository, databaseExecutor, writeQueue);
+
+        // Load the groups, the signs and the known permissions from the database, once for the whole start
+        groupRegistry.replaceAll(groupRepository.groups());
+        signRegistry.replaceAll(signRepository.allSigns());
+        permissionRepository.permissions().forEach(PermissionDictionary::intern);
+
+        // Players that are online after a reload don't join again
+        getServer().getOnlinePlayers().forEach(player -> userRepository.names().online(player.getUniqueId(), player.getName()));
+        return true;
     }
 
     /**
@@ -165,7 +292,11 @@ public class PermissionPlugin extends JavaPlugin {
             new UserCommand(this),
             new GroupCommand(this),
             new GroupsCommand(this),
-            new SignCommand(this)
+            new SignCommand(this),
+            new BulkCommand(this),
+            new ExportCommand(this),
+            new ImportCommand(this),
+            new LogCommand(this)
         );
     }
 
@@ -193,10 +324,10 @@ public class PermissionPlugin extends JavaPlugin {
     }
 
     /**
-     * @return the registered {@link Set} of {@link PermissionSign}s.
+     * @return the {@link SignRegistry} of the loaded {@link PermissionSign}s.
      */
-    public Set<PermissionSign> signs() {
-        return signs;
+    public SignRegistry signRegistry() {
+        return signRegistry;
     }
 
     /**
@@ -206,6 +337,13 @@ public class PermissionPlugin extends JavaPlugin {
         return messageConfig;
     }
 
+    /**
+     * @return the {@link UserExpiryScheduler} instance.
+     */
+    public UserExpiryScheduler userExpiryScheduler() {
+        return userExpiryScheduler;
+    }
+
     /**
      * @return the {@link UserScoreboardService} instance.
      */
@@ -214,17 +352,38 @@ public class PermissionPlugin extends JavaPlugin {
     }
 
     /**
-     * @return the registered {@link Set} of {@link PermissionGroup}s.
+     * @return the {@link GroupRegistry} of all loaded groups.
+     */
+    public GroupRegistry groupRegistry() {
+        return groupRegistry;
+    }
+
+    /**
+     * @return the {@link WriteBehindQueue} all changes are written with.
+     */
+    public WriteBehindQueue writeQueue() {
+        return writeQueue;
+    }
+
+    /**
+     * @return the {@link LatencyHistogram} of the time it takes to load users on login.
+     */
+    public LatencyHistogram loginLatency() {
+        return loginLatency;
+    }
+
+    /**
+     * @return the {@link DatabaseExecutor} commands and listeners query the storage with.
      */
-    public Set<PermissionGroup> groups() {
-        return groups;
+    public DatabaseExecutor databaseExecutor() {
+        return databaseExecutor;
     }
 
     /**
-     * Runs the given action asynchronously.
+     * @return the {@link Executor} running tasks on the main thread, used to hand the results of queries back to Bukkit.
      */
-    public void runAsync(Runnable runnable) {
-        getServer().getScheduler().runTaskAsynchronously(this, runnable);
+    public Executor mainThread() {
+        return mainThread;
     }
 
     /**
@@ -234,6 +393,13 @@ public class PermissionPlugin extends JavaPlugin {
         return userRepository;
     }
 
+    /**
+     * @return the non-blocking {@link AsyncUserRepository} instance.
+     */
+    public AsyncUserRepository asyncUserRepository() {
+        return asyncUserRepository;
+    }
+
     /**
      * @return the {@link PermissionRepository} instance.
      */
@@ -256,9 +422,23 @@ public class PermissionPlugin extends JavaPlugin {
     }
 
     /**
-     * @return the {@link DatabaseProvider} instance.
+     * @return the {@link BulkRepository} instance.
+     */
+    public BulkRepository bulkRepository() {
+        return bulkRepository;
+    }
+
+    /**
+     * @return the {@link AuditLog} the changes made with commands are recorded in.
+     */
+    public AuditLog auditLog() {
+        return auditLog;
+    }
+
+    /**
+     * @return the {@link Storage} instance.
      */
-    public DatabaseProvider databaseProvider() {
-        return databaseProvider;
+    public Storage storage() {
+        return storage;
     }
 }
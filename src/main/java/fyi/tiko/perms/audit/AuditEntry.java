@@ -0,0 +1,68 @@
+package fyi.tiko.perms.audit;
+
+/**
+ * A change recorded in the audit log.
+ *
+ * @param id     The id of the entry in the storage, ids grow with every appended entry. 0 until the entry was appended.
+ * @param time   The time of the change in milliseconds.
+ * @param actor  The name of the player or console that made the change.
+ * @param target The name of the changed user or group.
+ * @param action The kind of the change, for example {@code user.group.add}.
+ * @param before The value before the change, empty if there was none.
+ * @param after  The value after the change, empty if there is none.
+ * @author tiko
+ */
+public record AuditEntry(long id, long time, String actor, String target, String action, String before, String after) {
+
+    /**
+     * The maximum length of the actor and target, longer names are cut off like the columns of the audit table.
+     */
+    public static final int NAME_LENGTH = 64;
+
+    /**
+     * The maximum length of the action.
+     */
+    public static final int ACTION_LENGTH = 32;
+
+    /**
+     * The maximum length of the values before and after the change.
+     */
+    public static final int VALUE_LENGTH = 1024;
+
+    /**
+     * Cuts the fields off at the length of their columns and replaces missing values with empty ones.
+     */
+    public AuditEntry {
+        actor = cut(actor, NAME_LENGTH);
+        target = cut(target, NAME_LENGTH);
+        action = cut(action, ACTION_LENGTH);
+        before = cut(before, VALUE_LENGTH);
+        after = cut(after, VALUE_LENGTH);
+    }
+
+    /**
+     * Creates a new entry that wasn't appended yet.
+     *
+     * @param time   The time of the change in milliseconds.
+     * @param actor  The name of the player or console that made the change.
+     * @param target The name of the changed user or group.
+     * @param action The kind of the change.
+     * @param before The value before the change, empty if there was none.
+     * @param after  The value after the change, empty if there is none.
+     */
+    public AuditEntry(long time, String actor, String target, String action, String before, String after) {
+        this(0, time, actor, target, action, before, after);
+    }
+
+    /**
+     * @param value  The value to cut off.
+     * @param length The maximum length.
+     * @return The value with at most the given length, empty if it is null.
+     */
+    private static String cut(String value, int length) {
+        if (value == null) {
+            return "";
+        }
+        return value.length() > length ? value.substring(0, length) : value;
+    }
+}
@@ -0,0 +1,195 @@
+package fyi.tiko.perms.audit;
+
+import fyi.tiko.perms.audit.repository.AuditRepository;
+import fyi.tiko.perms.database.WriteBehindQueue;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Records the changes made with commands without blocking the caller. Entries are put into a fixed-size ring buffer and appended to the
+ * {@link AuditRepository} in batches by a background writer. If the storage can't keep up, or is unavailable, the ring buffer overwrites
+ * its oldest entries instead of growing, the number of lost entries is logged.
+ * <p>
+ * The entries are addressed by ever increasing sequence numbers. The writer copies the oldest entries, appends them without holding the
+ * lock and only then releases them, so a failed append is retried with the next flush.
+ *
+ * @author tiko
+ */
+public class AuditLog {
+
+    /**
+     * The maximum number of entries appended in one batch.
+     */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * The maximum lengths of the recorded values, like the columns of the audit table.
+     */
+    private static final int MAX_NAME_LENGTH = 64;
+    private static final int MAX_ACTION_LENGTH = 32;
+    private static final int MAX_VALUE_LENGTH = 1024;
+
+    private final Logger logger;
+    private final AuditRepository repository;
+    private final AuditEntry[] buffer;
+    private final ScheduledExecutorService writer;
+    private final Object flushLock = new Object();
+    // The sequence number of the oldest entry that wasn't appended yet and of the next recorded entry
+    private long head;
+    private long tail;
+    private long dropped;
+
+    /**
+     * Creates a new audit log and starts its writer.
+     *
+     * @param logger     The logger to log lost entries to.
+     * @param repository The repository the entries are appended to.
+     * @param capacity   The number of entries the ring buffer holds.
+     * @param interval   The time between two flushes of the ring buffer.
+     */
+    public AuditLog(Logger logger, AuditRepository repository, int capacity, Duration interval) {
+        this.logger = logger;
+        this.repository = repository;
+        buffer = new AuditEntry[Math.max(capacity, BATCH_SIZE)];
+        writer = Executors.newSingleThreadScheduledExecutor(WriteBehindQueue.threadFactory("perms-audit"));
+        writer.scheduleWithFixedDelay(this::flush, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records a change. Never blocks on the storage, so it can be called on the main thread. Values longer than the columns of the audit
+     * table are cut off.
+     *
+     * @param actor  The name of the player or console that made the change.
+     * @param target The name of the changed user or group.
+     * @param action The kind of the change.
+     * @param before The value before the change, empty if there was none.
+     * @param after  The value after the change, empty if there is none.
+     */
+    public void record(String actor, String target, String action, String before, String after) {
+        var entry = new AuditEntry(System.currentTimeMillis(), truncate(actor, MAX_NAME_LENGTH), truncate(target, MAX_NAME_LENGTH),
+            truncate(action, MAX_ACTION_LENGTH), truncate(before, MAX_VALUE_LENGTH), truncate(after, MAX_VALUE_LENGTH));
+
+        synchronized (buffer) {
+            if (tail - head == buffer.length) {
+                // The oldest entry is overwritten, the storage is too slow or unavailable
+                head++;
+                dropped++;
+            }
+
+            buffer[(int) (tail++ % buffer.length)] = entry;
+        }
+    }
+
+    /**
+     * Cuts off the given value, so it fits into its column.
+     *
+     * @param value     The value to cut off.
+     * @param maxLength The maximum length of the value.
+     * @return The value, at most the given number of characters long.
+     */
+    private static String truncate(String value, int maxLength) {
+        if (value == null) {
+            return "";
+        }
+
+        if (value.length() <= maxLength) {
+            return value;
+        }
+
+        // A surrogate pair isn't split, half of it can't be stored
+        var end = Character.isHighSurrogate(value.charAt(maxLength - 1)) ? maxLength - 1 : maxLength;
+        return value.substring(0, end);
+    }
+
+    /**
+     * @return The repository the entries are appended to.
+     */
+    public AuditRepository repository() {
+        return repository;
+    }
+
+    /**
+     * Appends all recorded entries to the storage, in batches. Called by the writer, and before the log is read, so the page contains the
+     * latest changes.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            reportDropped();
+
+            while (true) {
+                long start;
+                var batch = new ArrayList<AuditEntry>();
+
+                synchronized (buffer) {
+                    start = head;
+
+                    for (var sequence = head; sequence < tail && batch.size() < BATCH_SIZE; sequence++) {
+                        batch.add(buffer[(int) (sequence % buffer.length)]);
+                    }
+                }
+
+                if (batch.isEmpty() || !repository.append(batch)) {
+                    return;
+                }
+
+                release(start, batch);
+            }
+        }
+    }
+
+    /**
+     * Releases the appended entries. Entries that were overwritten during the append are released already.
+     *
+     * @param start The sequence number of the first appended entry.
+     * @param batch The appended entries.
+     */
+    private void release(long start, List<AuditEntry> batch) {
+        synchronized (buffer) {
+            var end = start + batch.size();
+
+            for (var sequence = Math.max(head, start); sequence < end; sequence++) {
+                buffer[(int) (sequence % buffer.length)] = null;
+            }
+
+            head = Math.max(head, end);
+        }
+    }
+
+    /**
+     * Logs the number of entries that were overwritten since the last flush.
+     */
+    private void reportDropped() {
+        long lost;
+
+        synchronized (buffer) {
+            lost = dropped;
+            dropped = 0;
+        }
+
+        if (lost > 0) {
+            logger.warning(String.format("The audit log buffer was full, %d entries were lost", lost));
+        }
+    }
+
+    /**
+     * Stops the writer and appends the remaining entries.
+     *
+     * @param timeout The maximum time to wait for a running flush.
+     */
+    public void shutdown(Duration timeout) {
+        writer.shutdown();
+
+        try {
+            writer.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        flush();
+    }
+}
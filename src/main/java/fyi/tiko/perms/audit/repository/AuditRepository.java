@@ -0,0 +1,38 @@
+package fyi.tiko.perms.audit.repository;
+
+import fyi.tiko.perms.audit.AuditEntry;
+import java.util.List;
+
+/**
+ * Stores the audit log. Entries are only appended, read newest first and removed once they are older than the retention.
+ *
+ * @author tiko
+ */
+public interface AuditRepository {
+
+    /**
+     * Appends the given entries in one batch.
+     *
+     * @param entries The entries to append, oldest first.
+     * @return True if the entries were stored or rejected by the storage, false if they have to be appended again.
+     */
+    boolean append(List<AuditEntry> entries);
+
+    /**
+     * Gets a page of the log, newest first. The following page starts before the id of the last entry of this page, so a page never skips
+     * over the newer entries.
+     *
+     * @param target The user or group to get the entries of, null for the entries of all targets.
+     * @param before The entries of the page have a lower id, {@link Long#MAX_VALUE} for the newest entries.
+     * @param limit  The maximum number of entries.
+     * @return The entries of the page.
+     */
+    List<AuditEntry> page(String target, long before, int limit);
+
+    /**
+     * Removes the entries recorded before the given time.
+     *
+     * @param before The time in milliseconds.
+     */
+    void prune(long before);
+}
@@ -0,0 +1,46 @@
+package fyi.tiko.perms.audit.repository;
+
+import fyi.tiko.perms.audit.AuditEntry;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link AuditRepository} keeping the audit log in memory. Nothing is persisted.
+ *
+ * @author tiko
+ */
+public class MemoryAuditRepository implements AuditRepository {
+
+    private final List<AuditEntry> entries = new ArrayList<>();
+    private long nextId = 1;
+
+    @Override
+    public synchronized boolean append(List<AuditEntry> entries) {
+        // The ids are handed out like the auto increment column of the audit table
+        for (var entry : entries) {
+            this.entries.add(new AuditEntry(nextId++, entry.time(), entry.actor(), entry.target(), entry.action(), entry.before(),
+                entry.after()));
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized List<AuditEntry> page(String target, long before, int limit) {
+        var page = new ArrayList<AuditEntry>(limit);
+
+        for (var i = entries.size() - 1; i >= 0 && page.size() < limit; i--) {
+            var entry = entries.get(i);
+
+            if (entry.id() < before && (target == null || entry.target().equalsIgnoreCase(target))) {
+                page.add(entry);
+            }
+        }
+
+        return page;
+    }
+
+    @Override
+    public synchronized void prune(long before) {
+        entries.removeIf(entry -> entry.time() < before);
+    }
+}
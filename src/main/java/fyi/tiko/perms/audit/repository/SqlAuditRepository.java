@@ -0,0 +1,113 @@
+package fyi.tiko.perms.audit.repository;
+
+import fyi.tiko.perms.audit.AuditEntry;
+import fyi.tiko.perms.database.DatabaseInteraction;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * The {@link AuditRepository} storing the audit log in the perm_audit_log table of a SQL database. Pages are read backwards along the
+ * primary key, or along the index of target and id for a single target, starting right before the last entry of the previous page. A page
+ * therefore neither sorts the table nor skips over the newer entries, no matter how deep it is.
+ *
+ * @author tiko
+ */
+public class SqlAuditRepository extends DatabaseInteraction implements AuditRepository {
+
+    private static final String COLUMNS = "created_at, actor, target, action, before_value, after_value";
+
+    /**
+     * The classes of the SQL states of data exceptions and constraint violations. A batch failing with one of them fails again when it
+     * is retried.
+     */
+    private static final String DATA_EXCEPTION = "22";
+    private static final String CONSTRAINT_VIOLATION = "23";
+
+    /**
+     * Constructs a new {@link DatabaseInteraction} with the given {@link Logger} and {@link DataSource}.
+     *
+     * @param logger The logger of the plugin using this holder.
+     * @param source The data source to use.
+     */
+    public SqlAuditRepository(Logger logger, DataSource source) {
+        super(logger, source);
+    }
+
+    @Override
+    public boolean append(List<AuditEntry> entries) {
+        try {
+            transaction(conn -> {
+                try (var stmt = conn.prepareStatement("INSERT INTO perm_audit_log(" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?)")) {
+                    for (var entry : entries) {
+                        stmt.setLong(1, entry.time());
+                        stmt.setString(2, entry.actor());
+                        stmt.setString(3, entry.target());
+                        stmt.setString(4, entry.action());
+                        stmt.setString(5, entry.before());
+                        stmt.setString(6, entry.after());
+                        stmt.addBatch();
+                    }
+
+                    stmt.executeBatch();
+                }
+            });
+            return true;
+        } catch (SQLException exception) {
+            var state = exception.getSQLState();
+
+            // A rejected batch would block all following entries, so it is dropped
+            if (state != null && (state.startsWith(DATA_EXCEPTION) || state.startsWith(CONSTRAINT_VIOLATION))) {
+                logger().log(Level.WARNING, String.format("The audit log rejected %d entries, they are dropped", entries.size()), exception);
+                return true;
+            }
+
+            logger().log(Level.WARNING, "Failed to append to the audit log", exception);
+        }
+        return false;
+    }
+
+    @Override
+    public List<AuditEntry> page(String target, long before, int limit) {
+        var query = "SELECT id, " + COLUMNS + " FROM perm_audit_log WHERE " + (target != null ? "target=? AND " : "")
+            + "id<? ORDER BY id DESC LIMIT ?";
+
+        try (var conn = conn(); var stmt = conn.prepareStatement(query)) {
+            var index = 1;
+
+            if (target != null) {
+                stmt.setString(index++, target);
+            }
+
+            stmt.setLong(index++, before);
+            stmt.setInt(index, limit);
+
+            var rs = stmt.executeQuery();
+            var entries = new ArrayList<AuditEntry>();
+
+            while (rs.next()) {
+                entries.add(new AuditEntry(rs.getLong("id"), rs.getLong("created_at"), rs.getString("actor"), rs.getString("target"),
+                    rs.getString("action"), rs.getString("before_value"), rs.getString("after_value")));
+            }
+
+            return entries;
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to read the audit log", exception);
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void prune(long before) {
+        try (var conn = conn(); var stmt = conn.prepareStatement("DELETE FROM perm_audit_log WHERE created_at<?")) {
+            stmt.setLong(1, before);
+            stmt.executeUpdate();
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to prune the audit log", exception);
+        }
+    }
+}
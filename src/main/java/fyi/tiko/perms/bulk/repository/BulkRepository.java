@@ -0,0 +1,62 @@
+package fyi.tiko.perms.bulk.repository;
+
+import fyi.tiko.perms.permission.PermissionContext;
+
+/**
+ * Changes many users or a whole group at once. Every operation is executed as a whole or not at all, so an interrupted operation never
+ * leaves half of the members changed. The members of a group are the users whose membership isn't expired.
+ *
+ * @author tiko
+ */
+public interface BulkRepository {
+
+    /**
+     * Adds the given permission to every member of the given group. Members that have the permission already keep it as it is.
+     *
+     * @param group      The name of the group.
+     * @param permission The permission to add.
+     * @param context    The context of the permission.
+     * @param until      The time until the permission is valid, -1 if the permission is permanent.
+     * @return The added permissions and the members that got the permission.
+     */
+    BulkResult addPermissionToMembers(String group, String permission, PermissionContext context, long until);
+
+    /**
+     * Removes the given permission from every member of the given group.
+     *
+     * @param group      The name of the group.
+     * @param permission The permission to remove.
+     * @param context    The context of the permission.
+     * @return The removed permissions and the members that lost the permission.
+     */
+    BulkResult removePermissionFromMembers(String group, String permission, PermissionContext context);
+
+    /**
+     * Moves every user of the given group to the other group, keeping the time until the membership is valid. Users that are in both groups
+     * keep their membership in the target group as it is.
+     *
+     * @param from The name of the group the users are moved from.
+     * @param to   The name of the group the users are moved to.
+     * @return The removed memberships and the moved users.
+     */
+    BulkResult moveMembers(String from, String to);
+
+    /**
+     * Creates a new group with the metadata, permissions and parents of the given group. The members aren't copied and the copy is never
+     * the default group.
+     *
+     * @param group The name of the group to copy.
+     * @param clone The name of the new group.
+     * @return The copied permissions and parents, no users are changed. Fails if the new group exists already.
+     */
+    BulkResult cloneGroup(String group, String clone);
+
+    /**
+     * Renames the given group. Members, permissions and inheritance reference the group by its id, so they are kept.
+     *
+     * @param group The current name of the group.
+     * @param name  The new name of the group.
+     * @return The renamed group and its users. Fails if a group with the new name exists already.
+     */
+    BulkResult renameGroup(String group, String name);
+}
@@ -0,0 +1,26 @@
+package fyi.tiko.perms.bulk.repository;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The outcome of a bulk operation.
+ *
+ * @param rows  The number of rows the operation changed, -1 if the operation failed.
+ * @param users The users whose permissions or groups changed, so they can be reloaded.
+ * @author tiko
+ */
+public record BulkResult(int rows, Set<UUID> users) {
+
+    /**
+     * The result of an operation that failed and changed nothing.
+     */
+    public static final BulkResult FAILED = new BulkResult(-1, Set.of());
+
+    /**
+     * @return True if the operation failed.
+     */
+    public boolean failed() {
+        return rows < 0;
+    }
+}
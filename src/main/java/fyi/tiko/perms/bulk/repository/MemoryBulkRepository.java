@@ -0,0 +1,104 @@
+package fyi.tiko.perms.bulk.repository;
+
+import fyi.tiko.perms.group.repository.MemoryGroupPermissionRepository;
+import fyi.tiko.perms.permission.PermissionContext;
+import fyi.tiko.perms.user.repository.MemoryUserRepository;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The {@link BulkRepository} changing the memory repositories. There are no round trips to save, so the operations simply change the members
+ * one by one.
+ *
+ * @author tiko
+ */
+public class MemoryBulkRepository implements BulkRepository {
+
+    private final MemoryUserRepository userRepository;
+    private final MemoryGroupPermissionRepository groupRepository;
+
+    /**
+     * Creates a new repository changing the given repositories.
+     *
+     * @param userRepository  The repository of the users.
+     * @param groupRepository The repository of the groups.
+     */
+    public MemoryBulkRepository(MemoryUserRepository userRepository, MemoryGroupPermissionRepository groupRepository) {
+        this.userRepository = userRepository;
+        this.groupRepository = groupRepository;
+    }
+
+    @Override
+    public BulkResult addPermissionToMembers(String group, String permission, PermissionContext context, long until) {
+        var users = new HashSet<UUID>();
+
+        members(group).forEach(uuid -> {
+            if (userRepository.addPermission(uuid, permission, context, until)) {
+                users.add(uuid);
+            }
+        });
+
+        return new BulkResult(users.size(), users);
+    }
+
+    @Override
+    public BulkResult removePermissionFromMembers(String group, String permission, PermissionContext context) {
+        var users = new HashSet<UUID>();
+
+        members(group).forEach(uuid -> {
+            if (userRepository.removePermission(uuid, permission, context)) {
+                users.add(uuid);
+            }
+        });
+
+        return new BulkResult(users.size(), users);
+    }
+
+    @Override
+    public BulkResult moveMembers(String from, String to) {
+        var memberships = userRepository.memberships(from);
+
+        memberships.forEach((uuid, until) -> {
+            userRepository.addGroup(uuid, to, until);
+            userRepository.removeGroup(uuid, from);
+        });
+
+        return new BulkResult(memberships.size(), memberships.keySet());
+    }
+
+    @Override
+    public BulkResult cloneGroup(String group, String clone) {
+        var rows = groupRepository.cloneGroup(group, clone);
+        return rows < 0 ? BulkResult.FAILED : new BulkResult(rows, Set.of());
+    }
+
+    @Override
+    public BulkResult renameGroup(String group, String name) {
+        var users = userRepository.memberships(group).keySet();
+
+        if (!groupRepository.renameGroup(group, name)) {
+            return BulkResult.FAILED;
+        }
+
+        userRepository.renameGroup(group, name);
+        return new BulkResult(1, users);
+    }
+
+    /**
+     * @param group The name of the group.
+     * @return The users whose membership in the group isn't expired.
+     */
+    private Set<UUID> members(String group) {
+        var now = System.currentTimeMillis();
+        var members = new HashSet<UUID>();
+
+        userRepository.memberships(group).forEach((uuid, until) -> {
+            if (until == -1 || until > now) {
+                members.add(uuid);
+            }
+        });
+
+        return members;
+    }
+}
@@ -0,0 +1,323 @@
+package fyi.tiko.perms.bulk.repository;
+
+import fyi.tiko.perms.database.DatabaseInteraction;
+import fyi.tiko.perms.database.Dialect;
+import fyi.tiko.perms.database.UUIDs;
+import fyi.tiko.perms.database.repository.Change;
+import fyi.tiko.perms.database.repository.SqlChangelogRepository;
+import fyi.tiko.perms.database.repository.SqlPermissionRepository;
+import fyi.tiko.perms.permission.PermissionContext;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * The {@link BulkRepository} changing the tables of a SQL database with set-based statements. Every operation is a fixed number of
+ * statements in one transaction, regardless of the number of members. The changed users are selected first, so their changes can be
+ * recorded in the changelog and the loaded users can be reloaded.
+ *
+ * @author tiko
+ */
+public class SqlBulkRepository extends DatabaseInteraction implements BulkRepository {
+
+    /**
+     * Selects the users whose membership in a group isn't expired.
+     */
+    private static final String MEMBERS = "SELECT pg.uuid FROM player_groups pg JOIN perm_groups g ON g.id = pg.group_id "
+        + "WHERE g.name=? AND (pg.group_until=-1 OR pg.group_until>?)";
+
+    /**
+     * Selects all users of a group, including the expired memberships.
+     */
+    private static final String ALL_MEMBERS = "SELECT pg.uuid FROM player_groups pg JOIN perm_groups g ON g.id = pg.group_id "
+        + "WHERE g.name=?";
+
+    /**
+     * Selects the members of a group that don't have a permission yet.
+     */
+    private static final String MEMBERS_WITHOUT_PERMISSION = MEMBERS + " AND NOT EXISTS (SELECT 1 FROM player_permissions pp "
+        + "JOIN permissions p ON p.id = pp.permission_id WHERE pp.uuid = pg.uuid AND p.permission=? AND pp.server=? AND pp.world=?)";
+
+    /**
+     * Selects the members of a group that have a permission.
+     */
+    private static final String MEMBERS_WITH_PERMISSION = "SELECT pp.uuid FROM player_permissions pp "
+        + "JOIN permissions p ON p.id = pp.permission_id WHERE p.permission=? AND pp.server=? AND pp.world=? "
+        + "AND pp.uuid IN (" + MEMBERS + ")";
+
+    /**
+     * Deletes a permission of all members of a group.
+     */
+    private static final String DELETE_MEMBER_PERMISSIONS = "DELETE FROM player_permissions "
+        + "WHERE permission_id=(SELECT id FROM permissions WHERE permission=?) AND server=? AND world=? AND uuid IN (" + MEMBERS + ")";
+
+    /**
+     * Selects the names of the groups inheriting directly from a group.
+     */
+    private static final String CHILDREN = "SELECT g.name FROM group_parents gp JOIN perm_groups g ON g.id = gp.group_id "
+        + "JOIN perm_groups p ON p.id = gp.parent_id WHERE p.name=?";
+
+    /**
+     * Copies the rows of a group to its copy, the copy is the first and the group the second parameter.
+     */
+    private static final List<String> CLONE_GROUP = List.of(
+        "INSERT INTO group_metadata(group_id, prefix, suffix, weight) SELECT c.id, m.prefix, m.suffix, m.weight FROM perm_groups g "
+            + "JOIN group_metadata m ON m.group_id = g.id JOIN perm_groups c ON c.name=? WHERE g.name=?",
+        "INSERT INTO group_permissions(group_id, permission_id, server, world) SELECT c.id, gp.permission_id, gp.server, gp.world "
+            + "FROM group_permissions gp JOIN perm_groups g ON g.id = gp.group_id JOIN perm_groups c ON c.name=? WHERE g.name=?",
+        "INSERT INTO group_parents(group_id, parent_id) SELECT c.id, gp.parent_id "
+            + "FROM group_parents gp JOIN perm_groups g ON g.id = gp.group_id JOIN perm_groups c ON c.name=? WHERE g.name=?"
+    );
+
+    private final SqlPermissionRepository permissionRepository;
+    private final SqlChangelogRepository changelog;
+    private final String addMemberPermissions;
+    private final String moveMembers;
+    private final String addGroup;
+
+    /**
+     * Constructs a new {@link DatabaseInteraction} with the given {@link Logger} and {@link DataSource}.
+     *
+     * @param logger               The logger of the plugin using this holder.
+     * @param source               The data source to use.
+     * @param dialect              The dialect of the database.
+     * @param permissionRepository The repository the added permissions are added to.
+     * @param changelog            The changelog the changed users and groups are recorded in.
+     */
+    public SqlBulkRepository(Logger logger, DataSource source, Dialect dialect, SqlPermissionRepository permissionRepository,
+        SqlChangelogRepository changelog) {
+        super(logger, source);
+
+        this.permissionRepository = permissionRepository;
+        this.changelog = changelog;
+        addMemberPermissions = dialect.insertIgnore("player_permissions",
+            List.of("uuid", "permission_id", "server", "world", "permission_until"),
+            "SELECT pg.uuid, p.id, ?, ?, ? FROM player_groups pg JOIN perm_groups g ON g.id = pg.group_id "
+                + "JOIN permissions p ON p.permission=? WHERE g.name=? AND (pg.group_until=-1 OR pg.group_until>?)");
+        moveMembers = dialect.insertIgnore("player_groups", List.of("uuid", "group_id", "group_until"),
+            "SELECT pg.uuid, t.id, pg.group_until FROM player_groups pg JOIN perm_groups f ON f.id = pg.group_id "
+                + "JOIN perm_groups t ON t.name=? WHERE f.name=?");
+        addGroup = dialect.insertIgnore("perm_groups", List.of("name"), "VALUES (?)");
+    }
+
+    @Override
+    public BulkResult addPermissionToMembers(String group, String permission, PermissionContext context, long until) {
+        // The permission has to exist before it can be referenced
+        permissionRepository.addPermission(permission);
+
+        var users = new HashSet<UUID>();
+        var rows = new int[1];
+        var now = System.currentTimeMillis();
+
+        try {
+            transaction(conn -> {
+                try (var stmt = conn.prepareStatement(MEMBERS_WITHOUT_PERMISSION)) {
+                    stmt.setString(1, group);
+                    stmt.setLong(2, now);
+                    stmt.setString(3, permission);
+                    stmt.setString(4, context.server());
+                    stmt.setString(5, context.world());
+                    users.addAll(users(stmt));
+                }
+
+                try (var stmt = conn.prepareStatement(addMemberPermissions)) {
+                    stmt.setString(1, context.server());
+                    stmt.setString(2, context.world());
+                    stmt.setLong(3, until);
+                    stmt.setString(4, permission);
+                    stmt.setString(5, group);
+                    stmt.setLong(6, now);
+                    rows[0] = stmt.executeUpdate();
+                }
+
+                changelog.recordAll(conn, Change.Kind.USER, subjects(users));
+            });
+
+            return new BulkResult(rows[0], users);
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to add permission to members", exception);
+        }
+        return BulkResult.FAILED;
+    }
+
+    @Override
+    public BulkResult removePermissionFromMembers(String group, String permission, PermissionContext context) {
+        var users = new HashSet<UUID>();
+        var rows = new int[1];
+        var now = System.currentTimeMillis();
+
+        try {
+            transaction(conn -> {
+                try (var stmt = conn.prepareStatement(MEMBERS_WITH_PERMISSION)) {
+                    stmt.setString(1, permission);
+                    stmt.setString(2, context.server());
+                    stmt.setString(3, context.world());
+                    stmt.setString(4, group);
+                    stmt.setLong(5, now);
+                    users.addAll(users(stmt));
+                }
+
+                try (var stmt = conn.prepareStatement(DELETE_MEMBER_PERMISSIONS)) {
+                    stmt.setString(1, permission);
+                    stmt.setString(2, context.server());
+                    stmt.setString(3, context.world());
+                    stmt.setString(4, group);
+                    stmt.setLong(5, now);
+                    rows[0] = stmt.executeUpdate();
+                }
+
+                changelog.recordAll(conn, Change.Kind.USER, subjects(users));
+            });
+
+            return new BulkResult(rows[0], users);
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to remove permission from members", exception);
+        }
+        return BulkResult.FAILED;
+    }
+
+    @Override
+    public BulkResult moveMembers(String from, String to) {
+        var users = new HashSet<UUID>();
+        var rows = new int[1];
+
+        try {
+            transaction(conn -> {
+                try (var stmt = conn.prepareStatement(ALL_MEMBERS)) {
+                    stmt.setString(1, from);
+                    users.addAll(users(stmt));
+                }
+
+                try (var stmt = conn.prepareStatement(moveMembers)) {
+                    stmt.setString(1, to);
+                    stmt.setString(2, from);
+                    stmt.executeUpdate();
+                }
+
+                try (var stmt = conn.prepareStatement(
+                    "DELETE FROM player_groups WHERE group_id=(SELECT id FROM perm_groups WHERE name=?)")) {
+                    stmt.setString(1, from);
+                    rows[0] = stmt.executeUpdate();
+                }
+
+                changelog.recordAll(conn, Change.Kind.USER, subjects(users));
+            });
+
+            return new BulkResult(rows[0], users);
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to move members", exception);
+        }
+        return BulkResult.FAILED;
+    }
+
+    @Override
+    public BulkResult cloneGroup(String group, String clone) {
+        var rows = new int[1];
+
+        try {
+            var created = update(conn -> {
+                try (var stmt = conn.prepareStatement(addGroup)) {
+                    stmt.setString(1, clone);
+
+                    if (stmt.executeUpdate() == 0) {
+                        return 0;
+                    }
+                }
+
+                for (var query : CLONE_GROUP) {
+                    try (var stmt = conn.prepareStatement(query)) {
+                        stmt.setString(1, clone);
+                        stmt.setString(2, group);
+                        rows[0] += stmt.executeUpdate();
+                    }
+                }
+
+                changelog.record(conn, Change.Kind.GROUP, clone);
+                return 1;
+            });
+
+            return created ? new BulkResult(rows[0], Set.of()) : BulkResult.FAILED;
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to clone group", exception);
+        }
+        return BulkResult.FAILED;
+    }
+
+    @Override
+    public BulkResult renameGroup(String group, String name) {
+        var users = new HashSet<UUID>();
+        var children = new ArrayList<String>();
+
+        try {
+            var renamed = update(conn -> {
+                try (var stmt = conn.prepareStatement(ALL_MEMBERS)) {
+                    stmt.setString(1, group);
+                    users.addAll(users(stmt));
+                }
+
+                try (var stmt = conn.prepareStatement(CHILDREN)) {
+                    stmt.setString(1, group);
+                    var rs = stmt.executeQuery();
+
+                    while (rs.next()) {
+                        children.add(rs.getString("name"));
+                    }
+                }
+
+                try (var stmt = conn.prepareStatement("UPDATE perm_groups SET name=? WHERE name=?")) {
+                    stmt.setString(1, name);
+                    stmt.setString(2, group);
+
+                    if (stmt.executeUpdate() == 0) {
+                        return 0;
+                    }
+                }
+
+                // The other servers remove the old group, load the new one and reload the groups and users referencing it, in this order
+                changelog.record(conn, Change.Kind.GROUP, group);
+                changelog.record(conn, Change.Kind.GROUP, name);
+                changelog.recordAll(conn, Change.Kind.GROUP, children);
+                changelog.recordAll(conn, Change.Kind.USER, subjects(users));
+                return 1;
+            });
+
+            return renamed ? new BulkResult(1, users) : BulkResult.FAILED;
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to rename group", exception);
+        }
+        return BulkResult.FAILED;
+    }
+
+    /**
+     * Reads the uuids selected by the given statement.
+     *
+     * @param stmt The prepared statement selecting the uuid column.
+     * @return The selected uuids.
+     * @throws SQLException If the query fails.
+     */
+    private static Set<UUID> users(PreparedStatement stmt) throws SQLException {
+        var users = new HashSet<UUID>();
+        var rs = stmt.executeQuery();
+
+        while (rs.next()) {
+            users.add(UUIDs.fromBytes(rs.getBytes("uuid")));
+        }
+
+        return users;
+    }
+
+    /**
+     * @param users The changed users.
+     * @return The subjects the changes of the users are recorded with.
+     */
+    private static List<String> subjects(Set<UUID> users) {
+        return users.stream().map(UUID::toString).toList();
+    }
+}
@@ -0,0 +1,295 @@
+package fyi.tiko.perms.commands.sub.bulk;
+
+import fyi.tiko.perms.PermissionPlugin;
+import fyi.tiko.perms.bulk.repository.BulkRepository;
+import fyi.tiko.perms.bulk.repository.BulkResult;
+import fyi.tiko.perms.commands.sub.SubCommand;
+import fyi.tiko.perms.database.WriteBehindQueue;
+import fyi.tiko.perms.group.GroupRegistry;
+import fyi.tiko.perms.group.PermissionGroup;
+import fyi.tiko.perms.permission.PermissionContext;
+import fyi.tiko.perms.permission.PermissionDictionary;
+import fyi.tiko.perms.user.permission.PermissionUser;
+import fyi.tiko.perms.utils.LoadingActions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.bukkit.command.CommandSender;
+
+/**
+ * Sub command that changes many users or a whole group at once. Every operation is a single transaction of set-based statements, the loaded
+ * users that were changed are reloaded afterward. The progress is reported to the sender, so large operations don't look stuck.
+ *
+ * @author tiko
+ */
+public class BulkCommand extends SubCommand {
+
+    /**
+     * The number of reloaded users after which the progress is reported.
+     */
+    private static final int PROGRESS_STEP = 100;
+
+    private final PermissionPlugin plugin;
+    private final GroupRegistry groupRegistry;
+    private final BulkRepository bulkRepository;
+
+    /**
+     * Constructs a new {@link BulkCommand} with the given {@link PermissionPlugin}.
+     *
+     * @param plugin The {@link PermissionPlugin} to construct the {@link BulkCommand} from.
+     */
+    public BulkCommand(PermissionPlugin plugin) {
+        this.plugin = plugin;
+        groupRegistry = plugin.groupRegistry();
+        bulkRepository = plugin.bulkRepository();
+    }
+
+    /**
+     * Executes the sub command. Permissions can be scoped with the {@code server=<server>} and {@code world=<world>} arguments. The
+     * arguments are validated on the calling thread, the operation is executed by the {@link fyi.tiko.perms.database.DatabaseExecutor}.
+     *
+     * @param sender    The sender of the command.
+     * @param arguments The arguments of the command.
+     */
+    @Override
+    public void execute(CommandSender sender, String[] arguments) {
+        var context = PermissionContext.parse(arguments);
+        var args = PermissionContext.strip(arguments);
+        var operation = String.join(" ", arguments);
+
+        if (args.length == 4 && args[0].equalsIgnoreCase("group")) {
+            var group = groupRegistry.byName(args[1]);
+            var permission = PermissionDictionary.normalize(args[3]);
+
+            if (group == null) {
+                plugin.userTranslator().sendTranslatedMessage(sender, "commands.group.not-existing", args[1]);
+                return;
+            }
+
+            switch (args[2].toLowerCase()) {
+                case "add" -> run(sender, operation, group.name(),
+                    () -> bulkRepository.addPermissionToMembers(group.name(), permission, context, -1));
+                case "remove" -> run(sender, operation, group.name(),
+                    () -> bulkRepository.removePermissionFromMembers(group.name(), permission, context));
+                default -> sendHelp(sender);
+            }
+            return;
+        }
+
+        if (args.length != 3) {
+            sendHelp(sender);
+            return;
+        }
+
+        switch (args[0].toLowerCase()) {
+            case "move" -> move(sender, operation, args[1], args[2]);
+            case "clone" -> cloneGroup(sender, operation, args[1], args[2]);
+            case "rename" -> renameGroup(sender, operation, args[1], args[2]);
+            default -> sendHelp(sender);
+        }
+    }
+
+    /**
+     * Moves all users of a group to another group.
+     *
+     * @param sender    The sender of the command.
+     * @param operation The operation, as entered by the sender.
+     * @param fromName  The name of the group the users are moved from.
+     * @param toName    The name of the group the users are moved to.
+     */
+    private void move(CommandSender sender, String operation, String fromName, String toName) {
+        var translator = plugin.userTranslator();
+        var from = groupRegistry.byName(fromName);
+        var to = groupRegistry.byName(toName);
+
+        if (from == null || to == null) {
+            translator.sendTranslatedMessage(sender, "commands.group.not-existing", from == null ? fromName : toName);
+        } else if (from == to) {
+            translator.sendTranslatedMessage(sender, "commands.bulk.same-group");
+        } else {
+            run(sender, operation, from.name(), () -> bulkRepository.moveMembers(from.name(), to.name()));
+        }
+    }
+
+    /**
+     * Copies a group, the copy is registered on the main thread once it was created.
+     *
+     * @param sender    The sender of the command.
+     * @param operation The operation, as entered by the sender.
+     * @param name      The name of the group to copy.
+     * @param clone     The name of the copy.
+     */
+    private void cloneGroup(CommandSender sender, String operation, String name, String clone) {
+        var translator = plugin.userTranslator();
+        var group = groupRegistry.byName(name);
+
+        if (group == null) {
+            translator.sendTranslatedMessage(sender, "commands.group.not-existing", name);
+        } else if (groupRegistry.exists(clone)) {
+            translator.sendTranslatedMessage(sender, "commands.group.already-exists", clone);
+        } else {
+            run(sender, operation, group.name(), () -> {
+                // A queued save of the group has to be copied as well
+                plugin.writeQueue().flush(WriteBehindQueue.groupKey(group.name()));
+
+                var result = bulkRepository.cloneGroup(group.name(), clone);
+                var copy = result.failed() ? null : plugin.groupRepository().byName(clone);
+
+                // The registry is only changed on the main thread
+                if (copy != null) {
+                    plugin.mainThread().execute(() -> LoadingActions.replaceGroup(plugin, copy));
+                }
+                return result;
+            });
+        }
+    }
+
+    /**
+     * Renames a group. The renamed group and the groups directly inheriting from it are reloaded afterward, as their parents reference the
+     * group by its name. The reloaded groups are registered on the main thread.
+     *
+     * @param sender    The sender of the command.
+     * @param operation The operation, as entered by the sender.
+     * @param name      The current name of the group.
+     * @param newName   The new name of the group.
+     */
+    private void renameGroup(CommandSender sender, String operation, String name, String newName) {
+        var translator = plugin.userTranslator();
+        var group = groupRegistry.byName(name);
+
+        if (group == null) {
+            translator.sendTranslatedMessage(sender, "commands.group.not-existing", name);
+        } else if (groupRegistry.exists(newName) && !GroupRegistry.key(name).equals(GroupRegistry.key(newName))) {
+            translator.sendTranslatedMessage(sender, "commands.group.already-exists", newName);
+        } else {
+            var children = groupRegistry.all().stream().filter(other -> other.hasParent(group.name())).map(PermissionGroup::name).toList();
+
+            run(sender, operation, group.name(), () -> {
+                // Queued saves of the group and its children would otherwise be written with the old name
+                plugin.writeQueue().flush(WriteBehindQueue.groupKey(group.name()));
+                children.forEach(child -> plugin.writeQueue().flush(WriteBehindQueue.groupKey(child)));
+
+                var result = bulkRepository.renameGroup(group.name(), newName);
+
+                if (result.failed()) {
+                    return result;
+                }
+
+                var reloaded = new ArrayList<PermissionGroup>();
+                reloaded.add(plugin.groupRepository().byName(newName));
+                children.forEach(child -> reloaded.add(plugin.groupRepository().byName(child)));
+                reloaded.removeIf(Objects::isNull);
+
+                // The other groups are kept, their queued changes aren't written yet
+                plugin.mainThread().execute(() -> {
+                    groupRegistry.unregister(group.name());
+                    reloaded.forEach(reloadedGroup -> LoadingActions.replaceGroup(plugin, reloadedGroup));
+                });
+                return result;
+            });
+        }
+    }
+
+    /**
+     * Executes the given operation on a database thread and reloads the loaded users it changed in one pass. The users are read on the
+     * database thread and applied on the main thread. The sender is told when the operation starts, what it changed and how far the reload
+     * is. A successful operation is recorded in the audit log.
+     *
+     * @param sender    The sender of the command.
+     * @param operation The operation, as entered by the sender.
+     * @param group     The name of the group the operation changes.
+     * @param query     The operation.
+     */
+    private void run(CommandSender sender, String operation, String group, Supplier<BulkResult> query) {
+        var translator = plugin.userTranslator();
+        var executor = plugin.databaseExecutor();
+        var start = System.nanoTime();
+
+        translator.sendTranslatedMessage(sender, "commands.bulk.started", operation);
+
+        executor.supply(() -> {
+            // The set-based statements read the stored memberships, so the queued saves of the users are written first
+            plugin.writeQueue().flushPrefix(WriteBehindQueue.USER_KEYS);
+            return query.get();
+        }).thenAccept(result -> {
+            if (result.failed()) {
+                translator.sendTranslatedMessage(sender, "commands.bulk.failed", operation);
+                return;
+            }
+
+            plugin.auditLog().record(sender.getName(), group, "bulk", "", operation);
+            translator.sendTranslatedMessage(sender, "commands.bulk.changed", result.rows(), result.users().size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            // Only the loaded users have to be reloaded, the others are read from the storage when they join
+            var loaded = result.users().stream().filter(uuid -> PermissionUser.find(uuid).isPresent()).toList();
+            var reloaded = 0;
+
+            for (var uuid : loaded) {
+                LoadingActions.reloadUser(plugin, uuid);
+
+                if (++reloaded % PROGRESS_STEP == 0 && reloaded < loaded.size()) {
+                    translator.sendTranslatedMessage(sender, "commands.bulk.progress", reloaded, loaded.size());
+                }
+            }
+
+            translator.sendTranslatedMessage(sender, "commands.bulk.done", operation, reloaded,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }).exceptionally(executor::logFailure);
+    }
+
+    /**
+     * Sends the help message to the given {@link CommandSender}.
+     *
+     * @param sender The {@link CommandSender} to send the help message to.
+     */
+    private void sendHelp(CommandSender sender) {
+        plugin.userTranslator().sendTranslatedMessage(sender, "commands.bulk.help-message");
+    }
+
+    /**
+     * @return The names of the sub command.
+     */
+    @Override
+    public String[] names() {
+        return new String[]{"bulk"};
+    }
+
+    /**
+     * @return The permission of the sub command.
+     */
+    @Override
+    public String permission() {
+        return "perms.command.bulk";
+    }
+
+    /**
+     * Suggests the arguments for the sub command.
+     *
+     * @param sender The sender of the command.
+     * @param args   The arguments of the command.
+     * @return The suggestions for the sub command.
+     */
+    @Override
+    public List<String> suggest(CommandSender sender, String[] args) {
+        return switch (args.length) {
+            case 1 -> List.of("group", "move", "clone", "rename");
+            case 2 -> groupRegistry.names();
+            case 3 -> {
+                if (args[0].equalsIgnoreCase("group")) {
+                    yield List.of("add", "remove");
+                }
+                if (args[0].equalsIgnoreCase("move")) {
+                    yield groupRegistry.names();
+                }
+                yield Collections.emptyList();
+            }
+            case 4 -> args[0].equalsIgnoreCase("group") ? PermissionDictionary.names() : Collections.emptyList();
+            case 5, 6 -> args[0].equalsIgnoreCase("group") ? List.of("server=", "world=") : Collections.emptyList();
+            default -> Collections.emptyList();
+        };
+    }
+}
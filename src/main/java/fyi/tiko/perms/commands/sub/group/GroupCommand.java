@@ -2,9 +2,9 @@ package fyi.tiko.perms.commands.sub.group;
 
 import fyi.tiko.perms.PermissionPlugin;
 import fyi.tiko.perms.commands.sub.SubCommand;
-import fyi.tiko.perms.group.PermissionGroup;
-import fyi.tiko.perms.group.repository.GroupPermissionRepository;
-import fyi.tiko.perms.utils.BukkitServer;
+import fyi.tiko.perms.group.GroupRegistry;
+import fyi.tiko.perms.permission.PermissionContext;
+import fyi.tiko.perms.permission.PermissionDictionary;
 import java.util.Collections;
 import java.util.List;
 import org.bukkit.command.CommandSender;
@@ -17,7 +17,7 @@ import org.bukkit.command.CommandSender;
 public class GroupCommand extends SubCommand {
 
     private final PermissionPlugin plugin;
-    private final GroupPermissionRepository groupRepository;
+    private final GroupRegistry groupRegistry;
 
     /**
      * Constructs a new group command.
@@ -27,18 +27,20 @@ public class GroupCommand extends SubCommand {
     public GroupCommand(PermissionPlugin plugin) {
         this.plugin = plugin;
 
-        groupRepository = plugin.groupRepository();
+        groupRegistry = plugin.groupRegistry();
     }
 
     /**
-     * Executes the group command.
+     * Executes the group command. Permissions can be scoped with the {@code server=<server>} and {@code world=<world>} arguments.
      *
-     * @param sender The sender of the command.
-     * @param args   The arguments of the command.
+     * @param sender    The sender of the command.
+     * @param arguments The arguments of the command.
      */
     @Override
-    public void execute(CommandSender sender, String[] args) {
+    public void execute(CommandSender sender, String[] arguments) {
         var groupCommandHandler = new GroupHandler(plugin);
+        var context = PermissionContext.parse(arguments);
+        var args = PermissionContext.strip(arguments);
 
         if (args.length < 2) {
             groupCommandHandler.sendHelpMessage(sender);
@@ -50,7 +52,14 @@ public class GroupCommand extends SubCommand {
 
         switch (args.length) {
             case 2 -> groupCommandHandler.handleGroupAdministration(sender, name, action);
-            case 3 -> groupCommandHandler.handleGroupModifications(sender, name, action, args[2]);
+            case 3 -> groupCommandHandler.handleGroupModifications(sender, name, action, args[2], context);
+            case 4 -> {
+                if (action.equals("parent")) {
+                    groupCommandHandler.handleGroupParents(sender, name, args[2].toLowerCase(), args[3]);
+                } else {
+                    groupCommandHandler.sendHelpMessage(sender);
+                }
+            }
             default -> groupCommandHandler.sendHelpMessage(sender);
         }
     }
@@ -81,13 +90,22 @@ public class GroupCommand extends SubCommand {
     @Override
     public List<String> suggest(CommandSender sender, String[] args) {
         return switch (args.length) {
-            case 0 -> groupRepository.groups().stream().map(PermissionGroup::name).toList();
-            case 2 -> List.of("add", "remove", "info", "default", "suffix", "prefix", "weight", "create", "remove");
+            case 0 -> groupRegistry.names();
+            case 2 -> List.of("add", "remove", "info", "default", "suffix", "prefix", "weight", "parent", "create", "remove");
             case 3 -> switch (args[1].toLowerCase()) {
-                case "add", "remove" -> BukkitServer.PERMISSIONS.stream().toList();
+                case "add", "remove" -> PermissionDictionary.names();
                 case "default" -> List.of("true", "false");
+                case "parent" -> List.of("add", "remove");
+                default -> Collections.emptyList();
+            };
+            case 4 -> switch (args[1].toLowerCase()) {
+                case "parent" -> groupRegistry.names();
+                case "add", "remove" -> List.of("server=", "world=");
                 default -> Collections.emptyList();
             };
+            case 5 -> args[1].equalsIgnoreCase("add") || args[1].equalsIgnoreCase("remove")
+                ? List.of("server=", "world=")
+                : Collections.emptyList();
             default -> Collections.emptyList();
         };
     }
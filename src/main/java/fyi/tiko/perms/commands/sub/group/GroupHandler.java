@@ -1,10 +1,17 @@
 package fyi.tiko.perms.commands.sub.group;
 
 import fyi.tiko.perms.PermissionPlugin;
+import fyi.tiko.perms.database.WriteBehindQueue;
+import fyi.tiko.perms.group.GroupInheritance;
+import fyi.tiko.perms.group.GroupRegistry;
 import fyi.tiko.perms.group.PermissionGroup;
 import fyi.tiko.perms.group.repository.GroupPermissionRepository;
+import fyi.tiko.perms.permission.PermissionContext;
+import fyi.tiko.perms.permission.PermissionDictionary;
 import fyi.tiko.perms.user.language.UserTranslator;
 import fyi.tiko.perms.utils.LoadingActions;
+import java.util.Map;
+import java.util.Set;
 import org.bukkit.command.CommandSender;
 
 /**
@@ -13,12 +20,14 @@ import org.bukkit.command.CommandSender;
  */
 public class GroupHandler {
     private final GroupPermissionRepository groupRepository;
+    private final GroupRegistry groupRegistry;
     private final PermissionPlugin plugin;
     private final UserTranslator translator;
     
     public GroupHandler(PermissionPlugin plugin) {
         this.plugin = plugin;
         this.groupRepository = plugin.groupRepository();
+        this.groupRegistry = plugin.groupRegistry();
         this.translator = plugin.userTranslator();
     }
     
@@ -52,28 +61,32 @@ public class GroupHandler {
      * removing permissions, updating the default status, suffix, prefix, or weight.
      * If the group does not exist, a message is sent to the sender.
      *
-     * @param sender The entity (usually a player or console) that issued the command.
-     * @param name   The name of the group to modify.
-     * @param action The action to perform on the group. Possible values include:
-     *               "add" (adds a permission),
-     *               "remove" (removes a permission),
-     *               "default" (sets the group as default),
-     *               "suffix" (updates the suffix),
-     *               "prefix" (updates the prefix),
-     *               "weight" (updates the group’s weight).
-     * @param value  The value associated with the action. For example, it could be the permission
-     *               to add or remove, or the new suffix, prefix, or weight value.
+     * @param sender  The entity (usually a player or console) that issued the command.
+     * @param name    The name of the group to modify.
+     * @param action  The action to perform on the group. Possible values include:
+     *                "add" (adds a permission),
+     *                "remove" (removes a permission),
+     *                "default" (sets the group as default),
+     *                "suffix" (updates the suffix),
+     *                "prefix" (updates the prefix),
+     *                "weight" (updates the group’s weight).
+     * @param value   The value associated with the action. For example, it could be the permission
+     *                to add or remove, or the new suffix, prefix, or weight value.
+     * @param context The context a permission is added to or removed from.
      */
-    public void handleGroupModifications(CommandSender sender, String name, String action, String value) {
-        if (!groupRepository.exists(name)) {
+    public void handleGroupModifications(CommandSender sender, String name, String action, String value, PermissionContext context) {
+        var registered = groupRegistry.byName(name);
+
+        if (registered == null) {
             plugin.userTranslator().sendTranslatedMessage(sender, "commands.group.not-existing", name);
             return;
         }
 
-        var group = groupRepository.byName(name);
+        // The registered group is only replaced once the modification is done
+        var group = registered.copy();
         switch (action) {
-            case "add" -> addPermission(sender, group, value);
-            case "remove" -> removePermission(sender, group, value);
+            case "add" -> addPermission(sender, group, PermissionDictionary.normalize(value), context);
+            case "remove" -> removePermission(sender, group, PermissionDictionary.normalize(value), context);
             case "default" -> updateDefaultStatus(sender, group, value);
             case "suffix" -> updateSuffix(sender, group, value);
             case "prefix" -> updatePrefix(sender, group, value);
@@ -82,63 +95,167 @@ public class GroupHandler {
         }
     }
 
+    /**
+     * Handles changes to the parents of a specified group. A group inherits all permissions of its parents. If the group or the parent does
+     * not exist, a message is sent to the sender.
+     *
+     * @param sender The entity (usually a player or console) that issued the command.
+     * @param name   The name of the group to modify.
+     * @param action The action to perform on the parents of the group, either "add" or "remove".
+     * @param parent The name of the parent group.
+     */
+    public void handleGroupParents(CommandSender sender, String name, String action, String parent) {
+        var registered = groupRegistry.byName(name);
+        var parentGroup = groupRegistry.byName(parent);
+
+        if (registered == null) {
+            translator.sendTranslatedMessage(sender, "commands.group.not-existing", name);
+            return;
+        }
+
+        if (parentGroup == null) {
+            translator.sendTranslatedMessage(sender, "commands.group.not-existing", parent);
+            return;
+        }
+
+        var group = registered.copy();
+
+        switch (action) {
+            case "add" -> addParent(sender, group, parentGroup);
+            case "remove" -> removeParent(sender, group, parentGroup);
+            default -> sendHelpMessage(sender);
+        }
+    }
+
+    /**
+     * Adds a parent to the specified group. If the group already inherits directly from the parent, or if the parent already inherits from
+     * the group, a message is sent to the sender and nothing is changed. Otherwise, the parent is added, the inheritance of all groups is
+     * resolved again and a confirmation message is sent.
+     *
+     * @param sender The entity (e.g., player or console) that issued the command.
+     *               Receives feedback on whether the parent was added.
+     * @param group  The group that inherits from the parent.
+     * @param parent The parent group.
+     */
+    public void addParent(CommandSender sender, PermissionGroup group, PermissionGroup parent) {
+        if (group.hasParent(parent.name())) {
+            translator.sendTranslatedMessage(sender, "commands.group.already-has-parent", group.name(), parent.name());
+        } else if (GroupInheritance.createsCycle(groupRegistry.all(), group.name(), parent.name())) {
+            translator.sendTranslatedMessage(sender, "commands.group.parent-cycle", group.name(), parent.name());
+        } else {
+            group.addParent(parent.name());
+            LoadingActions.updateGroup(plugin, group);
+            audit(sender, group, "group.parent.add", "", parent.name());
+            translator.sendTranslatedMessage(sender, "commands.group.added-parent", parent.name(), group.name());
+        }
+    }
+
+    /**
+     * Removes a parent from the specified group. If the group does not directly inherit from the parent, a message is sent to the sender.
+     * Otherwise, the parent is removed, the inheritance of all groups is resolved again and a confirmation message is sent.
+     *
+     * @param sender The entity (e.g., player or console) that issued the command.
+     *               Receives feedback on whether the parent was removed.
+     * @param group  The group that inherits from the parent.
+     * @param parent The parent group.
+     */
+    public void removeParent(CommandSender sender, PermissionGroup group, PermissionGroup parent) {
+        if (!group.hasParent(parent.name())) {
+            translator.sendTranslatedMessage(sender, "commands.group.does-not-have-parent", group.name(), parent.name());
+        } else {
+            group.removeParent(parent.name());
+            LoadingActions.updateGroup(plugin, group);
+            audit(sender, group, "group.parent.remove", parent.name(), "");
+            translator.sendTranslatedMessage(sender, "commands.group.removed-parent", parent.name(), group.name());
+        }
+    }
+
     /**
      * Creates a new group with the specified name. If a group with the same name already exists,
      * a message is sent to the sender informing them that the group already exists.
-     * Otherwise, the group is created, and a confirmation message is sent.
+     * Otherwise, the group is created by the database executor, then registered on the main thread and a confirmation message is sent.
      *
      * @param sender The entity (e.g., player or console) that issued the command.
      *               Receives feedback on the success or failure of the group creation.
      * @param name   The name of the group to create. This name must be unique.
      */
     public void createGroup(CommandSender sender, String name) {
-        if (groupRepository.exists(name)) {
+        if (groupRegistry.exists(name)) {
             translator.sendTranslatedMessage(sender, "commands.group.already-exists", name);
-        } else {
-            groupRepository.addGroup(name);
-            translator.sendTranslatedMessage(sender, "commands.group.created", name);
+            return;
         }
+
+        var executor = plugin.databaseExecutor();
+
+        executor.supply(() -> groupRepository.addGroup(name)).thenAcceptAsync(added -> {
+            // A group another server created in the meantime isn't added again, it reaches the registry with the next cache sync
+            if (!added) {
+                translator.sendTranslatedMessage(sender, "commands.group.already-exists", name);
+                return;
+            }
+
+            groupRegistry.register(new PermissionGroup(name, Map.of(), "", "", 0, false, Set.of()));
+            plugin.auditLog().record(sender.getName(), name, "group.create", "", name);
+            translator.sendTranslatedMessage(sender, "commands.group.created", name);
+        }, plugin.mainThread()).exceptionally(executor::logFailure);
     }
 
     /**
      * Deletes an existing group with the specified name. If the group does not exist,
      * a message is sent to the sender indicating that the group could not be found.
-     * If the group exists, it is deleted, and a confirmation message is sent to the sender.
+     * If the group exists, it is removed from the cache right away and deleted from the database by the database executor,
+     * afterward a confirmation message is sent to the sender.
      *
      * @param sender The entity (e.g., player or console) that issued the command.
      *               Receives feedback on the success or failure of the group deletion.
      * @param name   The name of the group to delete. This name must match an existing group.
      */
     public void deleteGroup(CommandSender sender, String name) {
-        if (!groupRepository.exists(name)) {
+        if (!groupRegistry.exists(name)) {
             translator.sendTranslatedMessage(sender, "commands.group.not-existing", name);
-        } else {
+            return;
+        }
+
+        // The group is removed from the cache first, so no further save of it is queued
+        LoadingActions.removeGroup(plugin, name);
+
+        var executor = plugin.databaseExecutor();
+
+        executor.run(() -> {
+            // A queued save of the group must not run at the same time
+            plugin.writeQueue().flush(WriteBehindQueue.groupKey(name));
             groupRepository.removeGroup(name);
+        }).thenRunAsync(() -> {
+            plugin.auditLog().record(sender.getName(), name, "group.delete", name, "");
             translator.sendTranslatedMessage(sender, "commands.group.deleted", name);
-        }
+        }, plugin.mainThread()).exceptionally(executor::logFailure);
     }
 
     /**
      * Sends information about a specified group to the sender. If the group does not exist,
      * a message is sent to inform the sender. If the group exists, details such as its name,
-     * default status, weight, prefix, suffix, and permissions are sent in a formatted message.
+     * default status, weight, prefix, suffix, permissions and parents are sent in a formatted message.
      *
      * @param sender The entity (e.g., player or console) that issued the command.
      *               Receives the information or an error message if the group does not exist.
      * @param name   The name of the group to retrieve information for.
      */
     public void groupInfo(CommandSender sender, String name) {
-        if (!groupRepository.exists(name)) {
+        var group = groupRegistry.byName(name);
+
+        if (group == null) {
             translator.sendTranslatedMessage(sender, "commands.group.not-existing", name);
         } else {
-            var group = groupRepository.byName(name);
             translator.sendTranslatedMessage(sender, "commands.group.info",
                 group.name(),
                 group.isDefault(),
                 group.weight(),
                 group.prefix(),
                 group.suffix(),
-                String.join("§8, §f", group.permissions()));
+                String.join("§8, §f", group.permissionsByContext().entrySet().stream()
+                    .flatMap(entry -> entry.getValue().stream().map(permission -> entry.getKey().describe(permission)))
+                    .toList()),
+                String.join("§8, §f", group.parents()));
         }
     }
 
@@ -147,19 +264,21 @@ public class GroupHandler {
      * a message is sent to the sender indicating that the group already has it.
      * Otherwise, the permission is added, the group is updated, and a confirmation message is sent.
      *
-     * @param sender The entity (e.g., player or console) that issued the command.
-     *               Receives feedback on whether the permission was added or already existed.
-     * @param group  The group to which the permission will be added.
-     * @param perm   The permission to add to the group. This should be in a standard permission
-     *               format (e.g., "example.permission").
+     * @param sender  The entity (e.g., player or console) that issued the command.
+     *                Receives feedback on whether the permission was added or already existed.
+     * @param group   The group to which the permission will be added.
+     * @param perm    The permission to add to the group. This should be in a standard permission
+     *                format (e.g., "example.permission").
+     * @param context The context the permission applies in.
      */
-    public void addPermission(CommandSender sender, PermissionGroup group, String perm) {
-        if (group.hasPermission(perm)) {
-            translator.sendTranslatedMessage(sender, "commands.group.already-has-permission", group.name(), perm);
+    public void addPermission(CommandSender sender, PermissionGroup group, String perm, PermissionContext context) {
+        if (group.hasPermission(perm, context)) {
+            translator.sendTranslatedMessage(sender, "commands.group.already-has-permission", group.name(), context.describe(perm));
         } else {
-            group.addPermission(perm);
+            group.addPermission(perm, context);
             LoadingActions.updateGroup(plugin, group);
-            translator.sendTranslatedMessage(sender, "commands.group.added-permission", perm, group.name());
+            audit(sender, group, "group.permission.add", "", context.describe(perm));
+            translator.sendTranslatedMessage(sender, "commands.group.added-permission", context.describe(perm), group.name());
         }
     }
 
@@ -168,19 +287,21 @@ public class GroupHandler {
      * a message is sent to the sender indicating this. Otherwise, the permission is removed,
      * the group is updated, and a confirmation message is sent to the sender.
      *
-     * @param sender The entity (e.g., player or console) that issued the command.
-     *               Receives feedback on whether the permission was removed or did not exist.
-     * @param group  The group from which the permission will be removed.
-     * @param perm   The permission to remove from the group. This should be in a standard
-     *               permission format (e.g., "example.permission").
+     * @param sender  The entity (e.g., player or console) that issued the command.
+     *                Receives feedback on whether the permission was removed or did not exist.
+     * @param group   The group from which the permission will be removed.
+     * @param perm    The permission to remove from the group. This should be in a standard
+     *                permission format (e.g., "example.permission").
+     * @param context The context the permission applies in.
      */
-    public void removePermission(CommandSender sender, PermissionGroup group, String perm) {
-        if (!group.hasPermission(perm)) {
-            translator.sendTranslatedMessage(sender, "commands.group.does-not-have-permission", group.name(), perm);
+    public void removePermission(CommandSender sender, PermissionGroup group, String perm, PermissionContext context) {
+        if (!group.hasPermission(perm, context)) {
+            translator.sendTranslatedMessage(sender, "commands.group.does-not-have-permission", group.name(), context.describe(perm));
         } else {
-            group.removePermission(perm);
+            group.removePermission(perm, context);
             LoadingActions.updateGroup(plugin, group);
-            translator.sendTranslatedMessage(sender, "commands.group.removed-permission", perm, group.name());
+            audit(sender, group, "group.permission.remove", context.describe(perm), "");
+            translator.sendTranslatedMessage(sender, "commands.group.removed-permission", context.describe(perm), group.name());
         }
     }
 
@@ -203,6 +324,7 @@ public class GroupHandler {
         } else {
             group.updateDefault(isDefault);
             LoadingActions.updateGroup(plugin, group);
+            audit(sender, group, "group.default", String.valueOf(!isDefault), String.valueOf(isDefault));
             translator.sendTranslatedMessage(sender, "commands.group.updated-default-status", group.name(), isDefault);
         }
     }
@@ -223,8 +345,10 @@ public class GroupHandler {
         if (group.suffix().equals(suffix)) {
             translator.sendTranslatedMessage(sender, "commands.group.already-has-suffix", group.name(), suffix);
         } else {
+            var before = group.suffix();
             group.updateSuffix(suffix);
             LoadingActions.updateGroup(plugin, group);
+            audit(sender, group, "group.suffix", before, suffix);
             translator.sendTranslatedMessage(sender, "commands.group.updated-suffix", group.name(), suffix);
         }
     }
@@ -245,8 +369,10 @@ public class GroupHandler {
         if (group.prefix().equals(prefix)) {
             translator.sendTranslatedMessage(sender, "commands.group.already-has-prefix", group.name(), prefix);
         } else {
+            var before = group.prefix();
             group.updatePrefix(prefix);
             LoadingActions.updateGroup(plugin, group);
+            audit(sender, group, "group.prefix", before, prefix);
             translator.sendTranslatedMessage(sender, "commands.group.updated-prefix", group.name(), prefix);
         }
     }
@@ -270,12 +396,27 @@ public class GroupHandler {
             if (group.weight() == weight) {
                 translator.sendTranslatedMessage(sender, "commands.group.already-has-weight", group.name(), weight);
             } else {
+                var before = group.weight();
                 group.updateWeight(weight);
                 LoadingActions.updateGroup(plugin, group);
+                audit(sender, group, "group.weight", String.valueOf(before), String.valueOf(weight));
                 translator.sendTranslatedMessage(sender, "commands.group.updated-weight", group.name(), weight);
             }
         } catch (NumberFormatException e) {
             translator.sendTranslatedMessage(sender, "commands.group.invalid-weight", weightStr);
         }
     }
+
+    /**
+     * Records a change of a group in the audit log.
+     *
+     * @param sender The entity that issued the command.
+     * @param group  The changed group.
+     * @param action The kind of the change.
+     * @param before The value before the change.
+     * @param after  The value after the change.
+     */
+    private void audit(CommandSender sender, PermissionGroup group, String action, String before, String after) {
+        plugin.auditLog().record(sender.getName(), group.name(), action, before, after);
+    }
 }
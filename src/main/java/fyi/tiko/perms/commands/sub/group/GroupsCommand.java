@@ -2,8 +2,7 @@ package fyi.tiko.perms.commands.sub.group;
 
 import fyi.tiko.perms.PermissionPlugin;
 import fyi.tiko.perms.commands.sub.SubCommand;
-import fyi.tiko.perms.group.PermissionGroup;
-import fyi.tiko.perms.group.repository.GroupPermissionRepository;
+import fyi.tiko.perms.group.GroupRegistry;
 import java.util.Collections;
 import java.util.List;
 import org.bukkit.command.CommandSender;
@@ -15,21 +14,18 @@ import org.bukkit.command.CommandSender;
  */
 public class GroupsCommand extends SubCommand {
     private final PermissionPlugin plugin;
-    private final GroupPermissionRepository groupRepository;
+    private final GroupRegistry groupRegistry;
 
     public GroupsCommand(PermissionPlugin plugin) {
         this.plugin = plugin;
-        groupRepository = plugin.groupRepository();
+        groupRegistry = plugin.groupRegistry();
     }
 
     @Override
     public void execute(CommandSender sender, String[] args) {
         var translator = plugin.userTranslator();
 
-        plugin.runAsync(() -> {
-            var groups = groupRepository.groups().stream().map(PermissionGroup::name).toList();
-            translator.sendTranslatedMessage(sender, "commands.groups", String.join("§8, §f", groups));
-        });
+        translator.sendTranslatedMessage(sender, "commands.groups", String.join("§8, §f", groupRegistry.names()));
     }
 
     /**
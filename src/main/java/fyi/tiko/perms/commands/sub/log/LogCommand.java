@@ -0,0 +1,149 @@
+package fyi.tiko.perms.commands.sub.log;
+
+import fyi.tiko.perms.PermissionPlugin;
+import fyi.tiko.perms.commands.sub.SubCommand;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+import org.bukkit.command.CommandSender;
+
+/**
+ * Sub command that shows the audit log, newest first. The log can be narrowed down to a single user or group. The recorded entries are
+ * written before the page is read, so the page contains the latest changes. A page is addressed by the id of the entry it starts before,
+ * the next page continues before the last shown entry, so it neither skips nor repeats entries while new changes are recorded.
+ *
+ * @author tiko
+ */
+public class LogCommand extends SubCommand {
+
+    private static final int PAGE_SIZE = 10;
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final PermissionPlugin plugin;
+
+    /**
+     * Constructs a new {@link LogCommand} with the given {@link PermissionPlugin}.
+     *
+     * @param plugin The {@link PermissionPlugin} to construct the {@link LogCommand} from.
+     */
+    public LogCommand(PermissionPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Executes the sub command, {@code /perms log [#id]} or {@code /perms log <user|group> [#id]}.
+     *
+     * @param sender    The sender of the command.
+     * @param arguments The arguments of the command.
+     */
+    @Override
+    public void execute(CommandSender sender, String[] arguments) {
+        var translator = plugin.userTranslator();
+
+        if (arguments.length > 2) {
+            translator.sendTranslatedMessage(sender, "commands.log.help-message");
+            return;
+        }
+
+        String target = null;
+        var before = Long.MAX_VALUE;
+
+        if (arguments.length == 2) {
+            target = arguments[0];
+            before = cursor(arguments[1]);
+        } else if (arguments.length == 1) {
+            if (arguments[0].startsWith("#")) {
+                before = cursor(arguments[0]);
+            } else {
+                target = arguments[0];
+            }
+        }
+
+        if (before < 1) {
+            translator.sendTranslatedMessage(sender, "commands.log.help-message");
+            return;
+        }
+
+        var auditLog = plugin.auditLog();
+        var executor = plugin.databaseExecutor();
+        var filter = target;
+        var start = before;
+
+        executor.supply(() -> {
+            auditLog.flush();
+            // One more entry than shown tells if there is a next page
+            return auditLog.repository().page(filter, start, PAGE_SIZE + 1);
+        }).thenAccept(entries -> {
+            if (entries.isEmpty()) {
+                translator.sendTranslatedMessage(sender, "commands.log.empty");
+                return;
+            }
+
+            var shown = entries.subList(0, Math.min(entries.size(), PAGE_SIZE));
+            translator.sendTranslatedMessage(sender, "commands.log.header", filter != null ? filter : "*", shown.get(0).id());
+
+            for (var entry : shown) {
+                translator.sendTranslatedMessage(sender, "commands.log.entry",
+                    TIME.format(Instant.ofEpochMilli(entry.time())),
+                    entry.actor(),
+                    entry.action(),
+                    entry.target(),
+                    entry.before().isEmpty() ? "-" : entry.before(),
+                    entry.after().isEmpty() ? "-" : entry.after());
+            }
+
+            if (entries.size() > PAGE_SIZE) {
+                translator.sendTranslatedMessage(sender, "commands.log.next-page",
+                    "/perms log " + (filter != null ? filter + " " : "") + "#" + shown.get(shown.size() - 1).id());
+            }
+        }).exceptionally(executor::logFailure);
+    }
+
+    /**
+     * Parses the id a page starts before, given as {@code #id}.
+     *
+     * @param argument The argument to parse.
+     * @return The id or 0 if the argument isn't a valid id.
+     */
+    private static long cursor(String argument) {
+        if (!argument.startsWith("#")) {
+            return 0;
+        }
+
+        try {
+            return Long.parseLong(argument.substring(1));
+        } catch (NumberFormatException exception) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return The names of the sub command.
+     */
+    @Override
+    public String[] names() {
+        return new String[]{"log"};
+    }
+
+    /**
+     * @return The permission of the sub command.
+     */
+    @Override
+    public String permission() {
+        return "perms.command.log";
+    }
+
+    /**
+     * Suggests the arguments for the sub command.
+     *
+     * @param sender The sender of the command.
+     * @param args   The arguments of the command.
+     * @return The suggestions for the sub command.
+     */
+    @Override
+    public List<String> suggest(CommandSender sender, String[] args) {
+        return args.length == 1 ? plugin.groupRegistry().names() : Collections.emptyList();
+    }
+}
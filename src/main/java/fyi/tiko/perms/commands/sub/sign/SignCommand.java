@@ -43,50 +43,51 @@ public class SignCommand extends SubCommand {
         }
 
         var sign = player.getTargetBlockExact(5);
-        var signs = plugin.signs();
+        var signs = plugin.signRegistry();
 
         if (sign == null || !Tag.SIGNS.isTagged(sign.getType())) {
             translator.sendTranslatedMessage(sender, "commands.sign.look-at-sign");
             return;
         }
 
-        plugin.runAsync(() -> {
-            switch (args[0].toLowerCase()) {
-                case "set" -> {
+        var location = sign.getLocation();
+        var executor = plugin.databaseExecutor();
+        var repository = plugin.signRepository();
 
-                    if (signs.stream().anyMatch(permissionSign -> permissionSign.location().equals(sign.getLocation()))) {
-                        translator.sendTranslatedMessage(sender, "commands.sign.already-set");
-                        return;
-                    }
-
-                    plugin.signRepository().addSign(sign.getLocation());
-                    var permissionSign = plugin.signRepository().byLocation(sign.getLocation());
-
-                    signs.add(permissionSign);
-                    translator.sendTranslatedMessage(sender, "commands.sign.set-sign");
+        // The signs are only changed on the main thread, the database is written by the database executor
+        switch (args[0].toLowerCase()) {
+            case "set" -> {
+                if (signs.at(location) != null) {
+                    translator.sendTranslatedMessage(sender, "commands.sign.already-set");
+                    return;
                 }
 
-                case "remove" -> {
-                    if (signs.stream().noneMatch(permissionSign -> permissionSign.location().equals(sign.getLocation()))) {
-                        translator.sendTranslatedMessage(sender, "commands.sign.no-sign-found");
-                        return;
-                    }
-
-                    var permSign = signs.stream().filter(permissionSign -> permissionSign.location().equals(sign.getLocation())).findFirst()
-                        .orElseThrow();
+                executor.supply(() -> {
+                    repository.addSign(location);
+                    return repository.byLocation(location);
+                }).thenAcceptAsync(permissionSign -> {
+                    signs.register(permissionSign);
+                    translator.sendTranslatedMessage(sender, "commands.sign.set-sign");
+                }, plugin.mainThread()).exceptionally(executor::logFailure);
+            }
 
-                    plugin.signRepository().deleteSign(permSign);
-                    signs.remove(permSign);
+            case "remove" -> {
+                var permSign = signs.at(location);
 
-                    plugin.getServer().getScheduler().runTask(plugin,
-                        () -> permSign.location().getWorld().getBlockAt(permSign.location()).setType(Material.AIR)
-                    );
-                    translator.sendTranslatedMessage(sender, "commands.sign.removed-sign");
+                if (permSign == null) {
+                    translator.sendTranslatedMessage(sender, "commands.sign.no-sign-found");
+                    return;
                 }
 
-                default -> translator.sendTranslatedMessage(sender, "commands.sign.usage", "set, remove");
+                executor.run(() -> repository.deleteSign(permSign)).thenRunAsync(() -> {
+                    signs.unregister(permSign.id());
+                    location.getBlock().setType(Material.AIR);
+                    translator.sendTranslatedMessage(sender, "commands.sign.removed-sign");
+                }, plugin.mainThread()).exceptionally(executor::logFailure);
             }
-        });
+
+            default -> translator.sendTranslatedMessage(sender, "commands.sign.usage", "set, remove");
+        }
     }
 
     /**
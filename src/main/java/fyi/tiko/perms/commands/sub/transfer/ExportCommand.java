@@ -0,0 +1,145 @@
+package fyi.tiko.perms.commands.sub.transfer;
+
+import fyi.tiko.perms.PermissionPlugin;
+import fyi.tiko.perms.commands.sub.SubCommand;
+import fyi.tiko.perms.database.WriteBehindQueue;
+import fyi.tiko.perms.transfer.TransferFormat;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import org.bukkit.command.CommandSender;
+
+/**
+ * Sub command that exports the whole permission data into a file of the exports folder. The data is streamed from the storage into the file
+ * on a database thread, the sender is told the progress.
+ *
+ * @author tiko
+ */
+public class ExportCommand extends SubCommand {
+
+    private static final DateTimeFormatter FILE_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
+
+    private final PermissionPlugin plugin;
+
+    /**
+     * Constructs a new {@link ExportCommand} with the given {@link PermissionPlugin}.
+     *
+     * @param plugin The {@link PermissionPlugin} to construct the {@link ExportCommand} from.
+     */
+    public ExportCommand(PermissionPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Executes the sub command. Without a file name the export is named after the current time.
+     *
+     * @param sender    The sender of the command.
+     * @param arguments The arguments of the command.
+     */
+    @Override
+    public void execute(CommandSender sender, String[] arguments) {
+        var translator = plugin.userTranslator();
+
+        if (arguments.length > 1) {
+            translator.sendTranslatedMessage(sender, "commands.export.help-message");
+            return;
+        }
+
+        var name = arguments.length == 1 ? arguments[0] : "perms-" + LocalDateTime.now().format(FILE_DATE);
+        var file = TransferFiles.resolve(plugin, name);
+
+        if (file == null) {
+            translator.sendTranslatedMessage(sender, "commands.transfer.invalid-file", name);
+            return;
+        }
+
+        if (!TransferFiles.RUNNING.compareAndSet(false, true)) {
+            translator.sendTranslatedMessage(sender, "commands.transfer.running");
+            return;
+        }
+
+        var executor = plugin.databaseExecutor();
+        var start = System.nanoTime();
+
+        translator.sendTranslatedMessage(sender, "commands.export.started", file.getFileName());
+
+        executor.supply(() -> export(sender, file)).thenAccept(count -> {
+            if (count < 0) {
+                translator.sendTranslatedMessage(sender, "commands.export.failed", file.getFileName());
+            } else {
+                translator.sendTranslatedMessage(sender, "commands.export.done", count, file.getFileName(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }).whenComplete((result, exception) -> TransferFiles.RUNNING.set(false)).exceptionally(executor::logFailure);
+    }
+
+    /**
+     * Writes the queued changes and exports the storage into the given file. A failed export is deleted.
+     *
+     * @param sender The sender of the command, told the progress.
+     * @param file   The file to export into.
+     * @return The number of exported records, -1 if the export failed.
+     */
+    private long export(CommandSender sender, Path file) {
+        // The export has to contain the changes that are only queued so far
+        plugin.writeQueue().flushPrefix(WriteBehindQueue.USER_KEYS);
+        plugin.writeQueue().flushPrefix(WriteBehindQueue.GROUP_KEYS);
+
+        var count = -1L;
+
+        try {
+            Files.createDirectories(file.getParent());
+
+            try (var writer = TransferFormat.byFile(file).writer(file)) {
+                count = plugin.storage().transferRepository().exportAll(writer,
+                    records -> plugin.userTranslator().sendTranslatedMessage(sender, "commands.export.progress", records));
+            }
+        } catch (IOException exception) {
+            plugin.getLogger().log(Level.WARNING, "Failed to write the export " + file, exception);
+        }
+
+        if (count < 0) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException exception) {
+                plugin.getLogger().log(Level.WARNING, "Failed to delete the failed export " + file, exception);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return The names of the sub command.
+     */
+    @Override
+    public String[] names() {
+        return new String[]{"export"};
+    }
+
+    /**
+     * @return The permission of the sub command.
+     */
+    @Override
+    public String permission() {
+        return "perms.command.export";
+    }
+
+    /**
+     * Suggests the arguments for the sub command.
+     *
+     * @param sender The sender of the command.
+     * @param args   The arguments of the command.
+     * @return The suggestions for the sub command.
+     */
+    @Override
+    public List<String> suggest(CommandSender sender, String[] args) {
+        return Collections.emptyList();
+    }
+}
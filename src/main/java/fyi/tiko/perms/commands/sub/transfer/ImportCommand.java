@@ -0,0 +1,169 @@
+package fyi.tiko.perms.commands.sub.transfer;
+
+import fyi.tiko.perms.PermissionPlugin;
+import fyi.tiko.perms.commands.sub.SubCommand;
+import fyi.tiko.perms.database.WriteBehindQueue;
+import fyi.tiko.perms.transfer.TransferFormat;
+import fyi.tiko.perms.user.permission.PermissionUser;
+import fyi.tiko.perms.utils.LoadingActions;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import org.bukkit.command.CommandSender;
+
+/**
+ * Sub command that imports an export of the exports folder. The records are streamed from the file into the storage on a database thread,
+ * existing rows are kept. Afterward the groups, the loaded users and the signs are reloaded, so the imported data is used right away.
+ *
+ * @author tiko
+ */
+public class ImportCommand extends SubCommand {
+
+    private final PermissionPlugin plugin;
+
+    /**
+     * Constructs a new {@link ImportCommand} with the given {@link PermissionPlugin}.
+     *
+     * @param plugin The {@link PermissionPlugin} to construct the {@link ImportCommand} from.
+     */
+    public ImportCommand(PermissionPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Executes the sub command.
+     *
+     * @param sender    The sender of the command.
+     * @param arguments The arguments of the command.
+     */
+    @Override
+    public void execute(CommandSender sender, String[] arguments) {
+        var translator = plugin.userTranslator();
+
+        if (arguments.length != 1) {
+            translator.sendTranslatedMessage(sender, "commands.import.help-message");
+            return;
+        }
+
+        var file = TransferFiles.resolve(plugin, arguments[0]);
+
+        if (file == null) {
+            translator.sendTranslatedMessage(sender, "commands.transfer.invalid-file", arguments[0]);
+            return;
+        }
+
+        if (!Files.isRegularFile(file)) {
+            translator.sendTranslatedMessage(sender, "commands.import.not-found", file.getFileName());
+            return;
+        }
+
+        if (!TransferFiles.RUNNING.compareAndSet(false, true)) {
+            translator.sendTranslatedMessage(sender, "commands.transfer.running");
+            return;
+        }
+
+        var executor = plugin.databaseExecutor();
+        var start = System.nanoTime();
+
+        translator.sendTranslatedMessage(sender, "commands.import.started", file.getFileName());
+
+        executor.supply(() -> importFile(sender, file)).thenCompose(count -> {
+            if (count < 0) {
+                translator.sendTranslatedMessage(sender, "commands.import.failed", file.getFileName());
+                return CompletableFuture.completedFuture((Void) null);
+            }
+
+            plugin.auditLog().record(sender.getName(), file.getFileName().toString(), "import", "", count + " records");
+
+            return reload().thenAccept(reloaded -> translator.sendTranslatedMessage(sender, "commands.import.done", count, reloaded,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        }).whenComplete((result, exception) -> TransferFiles.RUNNING.set(false)).exceptionally(executor::logFailure);
+    }
+
+    /**
+     * Writes the queued changes and imports the given file. The queued saves of loaded users would otherwise replace the imported rows.
+     *
+     * @param sender The sender of the command, told the progress.
+     * @param file   The file to import.
+     * @return The number of imported records, -1 if the import failed.
+     */
+    private long importFile(CommandSender sender, Path file) {
+        plugin.writeQueue().flushPrefix(WriteBehindQueue.USER_KEYS);
+        plugin.writeQueue().flushPrefix(WriteBehindQueue.GROUP_KEYS);
+
+        try (var reader = TransferFormat.byFile(file).reader(file)) {
+            return plugin.storage().transferRepository().importAll(reader,
+                records -> plugin.userTranslator().sendTranslatedMessage(sender, "commands.import.progress", records));
+        } catch (IOException exception) {
+            plugin.getLogger().log(Level.WARNING, "Failed to read the export " + file, exception);
+        }
+
+        return -1;
+    }
+
+    /**
+     * Reloads the groups, the signs and the loaded users from the storage. Everything is read on a database thread and applied on the main
+     * thread. The groups are registered before the users are read, as the users reference the registered groups.
+     *
+     * @return The number of reloaded users, once the users were read.
+     */
+    private CompletableFuture<Integer> reload() {
+        var groups = plugin.groupRepository().groups();
+        var signs = plugin.signRepository().allSigns();
+
+        return CompletableFuture.runAsync(() -> {
+            plugin.groupRegistry().replaceAll(groups);
+            plugin.signRegistry().replaceAll(signs);
+        }, plugin.mainThread()).thenCompose(ignored -> plugin.databaseExecutor().supply(this::reloadUsers));
+    }
+
+    /**
+     * Reloads the loaded users from the storage. Blocks until the users are read, so it must not be called on the main thread.
+     *
+     * @return The number of reloaded users.
+     */
+    private int reloadUsers() {
+        var reloaded = 0;
+
+        for (var uuid : List.copyOf(PermissionUser.permissionUsers().keySet())) {
+            if (LoadingActions.reloadUser(plugin, uuid)) {
+                reloaded++;
+            }
+        }
+
+        return reloaded;
+    }
+
+    /**
+     * @return The names of the sub command.
+     */
+    @Override
+    public String[] names() {
+        return new String[]{"import"};
+    }
+
+    /**
+     * @return The permission of the sub command.
+     */
+    @Override
+    public String permission() {
+        return "perms.command.import";
+    }
+
+    /**
+     * Suggests the arguments for the sub command.
+     *
+     * @param sender The sender of the command.
+     * @param args   The arguments of the command.
+     * @return The suggestions for the sub command.
+     */
+    @Override
+    public List<String> suggest(CommandSender sender, String[] args) {
+        return args.length == 1 ? TransferFiles.names(plugin) : Collections.emptyList();
+    }
+}
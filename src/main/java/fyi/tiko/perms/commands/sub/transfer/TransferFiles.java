@@ -0,0 +1,76 @@
+package fyi.tiko.perms.commands.sub.transfer;
+
+import fyi.tiko.perms.PermissionPlugin;
+import fyi.tiko.perms.transfer.TransferFormat;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * The files of the exports, kept in the exports folder of the plugin. Names given by the sender are resolved in that folder only, so a
+ * command can't read or overwrite files anywhere else.
+ *
+ * @author tiko
+ */
+final class TransferFiles {
+
+    /**
+     * Set while an export or import is running, a second one would compete for the same connections and files.
+     */
+    static final AtomicBoolean RUNNING = new AtomicBoolean();
+
+    private TransferFiles() {
+    }
+
+    /**
+     * @param plugin The plugin the exports belong to.
+     * @return The folder of the exports.
+     */
+    static Path folder(PermissionPlugin plugin) {
+        return plugin.getDataFolder().toPath().resolve("exports").toAbsolutePath().normalize();
+    }
+
+    /**
+     * Resolves the given name in the exports folder. Names without the extension of an export are compressed exports.
+     *
+     * @param plugin The plugin the exports belong to.
+     * @param name   The name of the file.
+     * @return The file, null if the name points outside the exports folder.
+     */
+    static Path resolve(PermissionPlugin plugin, String name) {
+        var folder = folder(plugin);
+
+        if (!name.endsWith(TransferFormat.JSON_LINES.extension()) && !name.endsWith(TransferFormat.GZIP_JSON_LINES.extension())) {
+            name += TransferFormat.GZIP_JSON_LINES.extension();
+        }
+
+        var file = folder.resolve(name).normalize();
+        return file.getParent() != null && file.getParent().equals(folder) ? file : null;
+    }
+
+    /**
+     * @param plugin The plugin the exports belong to.
+     * @return The names of the exports in the exports folder.
+     */
+    static List<String> names(PermissionPlugin plugin) {
+        var folder = folder(plugin);
+
+        if (!Files.isDirectory(folder)) {
+            return Collections.emptyList();
+        }
+
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.map(file -> file.getFileName().toString())
+                .filter(name -> name.endsWith(TransferFormat.JSON_LINES.extension())
+                    || name.endsWith(TransferFormat.GZIP_JSON_LINES.extension()))
+                .sorted()
+                .toList();
+        } catch (IOException exception) {
+            return Collections.emptyList();
+        }
+    }
+}
@@ -2,16 +2,26 @@ package fyi.tiko.perms.commands.sub.user;
 
 import fyi.tiko.perms.PermissionPlugin;
 import fyi.tiko.perms.commands.sub.SubCommand;
+import fyi.tiko.perms.database.WriteBehindQueue;
+import fyi.tiko.perms.group.GroupRegistry;
 import fyi.tiko.perms.group.PermissionGroup;
-import fyi.tiko.perms.group.repository.GroupPermissionRepository;
+import fyi.tiko.perms.permission.PermissionContext;
+import fyi.tiko.perms.permission.PermissionDictionary;
 import fyi.tiko.perms.user.permission.PermissionUser;
+import fyi.tiko.perms.user.repository.AsyncUserRepository;
 import fyi.tiko.perms.user.repository.UserRepository;
-import fyi.tiko.perms.utils.BukkitServer;
 import fyi.tiko.perms.utils.Translators;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
@@ -23,8 +33,9 @@ import org.bukkit.entity.Player;
  */
 public class UserCommand extends SubCommand {
 
-    private final GroupPermissionRepository groupRepository;
+    private final GroupRegistry groupRegistry;
     private final UserRepository userRepository;
+    private final AsyncUserRepository asyncUserRepository;
     private final PermissionPlugin plugin;
 
     /**
@@ -34,278 +45,375 @@ public class UserCommand extends SubCommand {
      */
     public UserCommand(PermissionPlugin plugin) {
         this.plugin = plugin;
-        groupRepository = plugin.groupRepository();
+        groupRegistry = plugin.groupRegistry();
         userRepository = plugin.userRepository();
+        asyncUserRepository = plugin.asyncUserRepository();
     }
 
     /**
-     * Executes the sub command.
+     * Executes the sub command. Permissions can be scoped with the {@code server=<server>} and {@code world=<world>} arguments. The
+     * arguments are validated on the calling thread, the database is queried by the {@link fyi.tiko.perms.database.DatabaseExecutor} and
+     * loaded users are changed on the main thread.
      *
-     * @param sender The sender of the command.
-     * @param args   The arguments of the command.
+     * @param sender    The sender of the command.
+     * @param arguments The arguments of the command.
      */
     @Override
-    public void execute(CommandSender sender, String[] args) {
-        var translator = plugin.userTranslator();
-
-        plugin.runAsync(() -> {
-            switch (args.length) {
-                case 2 -> {
-                    if (args[1].equalsIgnoreCase("info")) {
-                        var name = args[0];
-                        var uuid = userRepository.byName(name);
-
-                        if (uuid == null) {
-                            translator.sendTranslatedMessage(sender, "commands.user.no-user");
-                            return;
-                        }
+    public void execute(CommandSender sender, String[] arguments) {
+        var context = PermissionContext.parse(arguments);
+        var args = PermissionContext.strip(arguments);
+
+        switch (args.length) {
+            case 2 -> {
+                if (args[1].equalsIgnoreCase("info")) {
+                    withUser(sender, args[0], uuid -> sendUserInfo(sender, uuid));
+                } else {
+                    sendHelp(sender);
+                }
+            }
+            case 3 -> {
+                switch (args[1].toLowerCase()) {
+                    case "add" -> addPermission(sender, args[0], PermissionDictionary.normalize(args[2]), context, -1);
+                    case "remove" -> removePermission(sender, args[0], PermissionDictionary.normalize(args[2]), context);
+                    default -> sendHelp(sender);
+                }
+            }
+            case 4 -> {
+                if (args[1].equalsIgnoreCase("group")) {
+                    switch (args[2].toLowerCase()) {
+                        // permanent group, therefore -1
+                        case "add" -> addGroup(sender, args[0], args[3], -1);
+                        case "remove" -> removeGroup(sender, args[0], args[3]);
+                        default -> sendHelp(sender);
+                    }
+                } else {
+                    sendHelp(sender);
+                }
+            }
+            default -> {
+                if (args.length < 5) {
+                    sendHelp(sender);
+                    return;
+                }
 
-                        sendUserInfo(sender, uuid);
+                // The duration of a permission and of a group are both made of all remaining arguments
+                if (args[1].equalsIgnoreCase("add")) {
+                    var until = until(sender, args, 3);
 
-                    } else {
-                        sendHelp(sender);
+                    if (until != -1) {
+                        addPermission(sender, args[0], PermissionDictionary.normalize(args[2]), context, until);
                     }
+                    return;
                 }
-                case 3 -> {
-                    switch (args[1].toLowerCase()) {
-                        case "add" -> {
-                            var name = args[0];
-                            var uuid = userRepository.byName(name);
-                            var permission = args[2];
-
-                            if (uuid == null) {
-                                translator.sendTranslatedMessage(sender, "commands.user.no-user");
-                                return;
-                            }
-
-                            if (userRepository.hasPermission(uuid, permission)) {
-                                translator.sendTranslatedMessage(sender, "commands.user.already-has-permission", name,
-                                    permission);
-                                return;
-                            }
-
-                            userRepository.addPermission(uuid, permission);
-                            translator.sendTranslatedMessage(sender, "commands.user.added-permission", permission,
-                                name);
-
-                            onlineAction(uuid, () -> {
-                                var user = PermissionUser.of(uuid);
-                                user.addPermission(permission);
-                            });
-                        }
-
-                        case "remove" -> {
-                            var name = args[0];
-                            var uuid = userRepository.byName(name);
-                            var permission = args[2];
-
-                            if (uuid == null) {
-                                translator.sendTranslatedMessage(sender, "commands.user.no-user");
-                                return;
-                            }
-
-                            if (!userRepository.hasPermission(uuid, permission)) {
-                                translator.sendTranslatedMessage(sender, "commands.user.does-not-have-permission", name,
-                                    permission);
-                                return;
-                            }
-
-                            userRepository.removePermission(uuid, permission);
-                            translator.sendTranslatedMessage(sender, "commands.user.removed-permission", permission,
-                                name);
-
-                            onlineAction(uuid, () -> {
-                                var user = PermissionUser.of(uuid);
-                                user.removePermission(permission);
-                            });
-                        }
 
-                        default -> sendHelp(sender);
-                    }
+                if (!args[1].equalsIgnoreCase("group") || !args[2].equalsIgnoreCase("add")) {
+                    sendHelp(sender);
+                    return;
                 }
-                case 4 -> {
-                    if (args[1].equalsIgnoreCase("group")) {
-                        switch (args[2].toLowerCase()) {
-                            case "add" -> {
-                                var name = args[0];
-                                var uuid = userRepository.byName(name);
-                                var groupName = args[3];
-
-                                if (uuid == null) {
-                                    translator.sendTranslatedMessage(sender, "commands.user.no-user");
-                                    return;
-                                }
-
-                                var group = groupRepository.byName(groupName);
-
-                                if (group == null) {
-                                    translator.sendTranslatedMessage(sender, "commands.user.not-existing-group",
-                                        groupName);
-                                    return;
-                                }
-
-                                if (userRepository.isInGroup(uuid, group.name())) {
-                                    translator.sendTranslatedMessage(sender, "commands.user.already-in-group", name,
-                                        group.name());
-                                    return;
-                                }
-
-                                // permanent group, therefore -1
-                                userRepository.addGroup(uuid, group.name(), -1);
-                                translator.sendTranslatedMessage(sender, "commands.user.added-group", group.name(),
-                                    name);
-
-                                onlineAction(uuid, () -> {
-                                    var user = PermissionUser.of(uuid);
-                                    user.addGroup(group, -1);
-                                });
-                            }
-
-                            case "remove" -> {
-                                var name = args[0];
-                                var uuid = userRepository.byName(name);
-                                var groupName = args[3];
-
-                                if (uuid == null) {
-                                    translator.sendTranslatedMessage(sender, "commands.user.no-user");
-                                    return;
-                                }
-
-                                var group = groupRepository.byName(groupName);
-
-                                if (group == null) {
-                                    translator.sendTranslatedMessage(sender, "commands.user.not-existing-group",
-                                        groupName);
-                                    return;
-                                }
-
-                                if (!userRepository.isInGroup(uuid, group.name())) {
-                                    translator.sendTranslatedMessage(sender, "commands.user.not-in-group", name,
-                                        group.name());
-                                    return;
-                                }
-
-                                userRepository.removeGroup(uuid, group.name());
-                                translator.sendTranslatedMessage(sender, "commands.user.removed-group", group.name(),
-                                    name);
-
-                                onlineAction(uuid, () -> {
-                                    var user = PermissionUser.of(uuid);
-                                    user.removeGroup(group);
-                                });
-                            }
-
-                            default -> sendHelp(sender);
-                        }
-                    } else {
-                        sendHelp(sender);
-                    }
+
+                var until = until(sender, args, 4);
+
+                if (until != -1) {
+                    addGroup(sender, args[0], args[3], until);
                 }
-                default -> {
-                    if (args.length < 6 || !args[1].equalsIgnoreCase("group") || !args[2].equalsIgnoreCase("add")) {
-                        sendHelp(sender);
-                        return;
-                    }
+            }
+        }
+    }
+
+    /**
+     * Parses the duration made of the arguments from the given index on. The sender is told if the duration has the wrong format.
+     *
+     * @param sender The sender of the command.
+     * @param args   The arguments of the command, without the context.
+     * @param from   The index of the first argument of the duration.
+     * @return The time the duration ends, -1 if the duration has the wrong format.
+     */
+    private long until(CommandSender sender, String[] args, int from) {
+        var duration = String.join(" ", Arrays.copyOfRange(args, from, args.length));
 
-                    var name = args[0];
-                    var uuid = userRepository.byName(name);
-                    var groupName = args[3];
+        if (!Translators.isCorrectDurationFormat(duration)) {
+            plugin.userTranslator().sendTranslatedMessage(sender, "commands.user.invalid-duration-format", duration);
+            return -1;
+        }
 
-                    if (uuid == null) {
-                        translator.sendTranslatedMessage(sender, "commands.user.no-user");
-                        return;
-                    }
+        return System.currentTimeMillis() + (Translators.translateDurationSeconds(duration) * 1000);
+    }
 
-                    var group = groupRepository.byName(groupName);
+    /**
+     * Adds the given permission to the user.
+     *
+     * @param sender     The sender of the command.
+     * @param name       The name of the user.
+     * @param permission The permission to add.
+     * @param context    The context of the permission.
+     * @param until      The time the permission expires, -1 if the permission is permanent.
+     */
+    private void addPermission(CommandSender sender, String name, String permission, PermissionContext context, long until) {
+        var translator = plugin.userTranslator();
 
-                    if (group == null) {
-                        translator.sendTranslatedMessage(sender, "commands.user.not-existing-group", groupName);
-                        return;
-                    }
+        withUser(sender, name, uuid -> change(uuid, user -> {
+                if (user.hasNode(permission, context)) {
+                    return false;
+                }
 
-                    if (userRepository.isInGroup(uuid, group.name())) {
-                        translator.sendTranslatedMessage(sender, "commands.user.already-in-group", name, group.name());
-                        return;
-                    }
+                user.addPermission(permission, context, until);
+                plugin.userExpiryScheduler().schedule(user);
+                return true;
+            }, () -> asyncUserRepository.addPermission(uuid, permission, context, until)
+        ).thenAccept(added -> {
+            if (added) {
+                audit(sender, name, "user.permission.add", "", expiring(context.describe(permission), until));
+                translator.sendTranslatedMessage(sender, "commands.user.added-permission", context.describe(permission), name);
+            } else {
+                translator.sendTranslatedMessage(sender, "commands.user.already-has-permission", name, context.describe(permission));
+            }
+        }));
+    }
 
-                    var builder = new StringBuilder();
+    /**
+     * Removes the given permission from the user.
+     *
+     * @param sender     The sender of the command.
+     * @param name       The name of the user.
+     * @param permission The permission to remove.
+     * @param context    The context of the permission.
+     */
+    private void removePermission(CommandSender sender, String name, String permission, PermissionContext context) {
+        var translator = plugin.userTranslator();
 
-                    for (int i = 4; i < args.length; i++) {
-                        builder.append(args[i]).append(" ");
-                    }
+        withUser(sender, name, uuid -> change(uuid, user -> {
+                if (!user.hasNode(permission, context)) {
+                    return false;
+                }
+
+                user.removePermission(permission, context);
+                return true;
+            }, () -> asyncUserRepository.removePermission(uuid, permission, context)
+        ).thenAccept(removed -> {
+            if (removed) {
+                audit(sender, name, "user.permission.remove", context.describe(permission), "");
+                translator.sendTranslatedMessage(sender, "commands.user.removed-permission", context.describe(permission), name);
+            } else {
+                translator.sendTranslatedMessage(sender, "commands.user.does-not-have-permission", name, context.describe(permission));
+            }
+        }));
+    }
 
-                    var duration = builder.toString().trim();
+    /**
+     * Adds the user to the given group.
+     *
+     * @param sender    The sender of the command.
+     * @param name      The name of the user.
+     * @param groupName The name of the group.
+     * @param until     The time the membership expires, -1 if the membership is permanent.
+     */
+    private void addGroup(CommandSender sender, String name, String groupName, long until) {
+        var translator = plugin.userTranslator();
+        var group = groupRegistry.byName(groupName);
 
-                    if (!Translators.isCorrectDurationFormat(duration)) {
-                        translator.sendTranslatedMessage(sender, "commands.user.invalid-duration-format", duration);
-                        return;
-                    }
+        if (group == null) {
+            translator.sendTranslatedMessage(sender, "commands.user.not-existing-group", groupName);
+            return;
+        }
 
-                    var durationSeconds = Translators.translateDurationSeconds(duration);
-                    var until = System.currentTimeMillis() + (durationSeconds * 1000);
-                    userRepository.addGroup(uuid, group.name(), until);
+        withUser(sender, name, uuid -> change(uuid, user -> {
+                if (user.isInGroup(group.name())) {
+                    return false;
+                }
+
+                user.addGroup(group, until);
+                plugin.userExpiryScheduler().schedule(user);
+                return true;
+            }, () -> asyncUserRepository.addGroup(uuid, group.name(), until)
+        ).thenAccept(added -> {
+            if (added) {
+                audit(sender, name, "user.group.add", "", expiring(group.name(), until));
+                translator.sendTranslatedMessage(sender, "commands.user.added-group", group.name(), name);
+            } else {
+                translator.sendTranslatedMessage(sender, "commands.user.already-in-group", name, group.name());
+            }
+        }));
+    }
 
-                    translator.sendTranslatedMessage(sender, "commands.user.added-group", group.name(), name);
+    /**
+     * Removes the user from the given group.
+     *
+     * @param sender    The sender of the command.
+     * @param name      The name of the user.
+     * @param groupName The name of the group.
+     */
+    private void removeGroup(CommandSender sender, String name, String groupName) {
+        var translator = plugin.userTranslator();
+        var group = groupRegistry.byName(groupName);
 
-                    onlineAction(uuid, () -> {
-                        var user = PermissionUser.of(uuid);
-                        user.addGroup(group, until);
-                    });
+        if (group == null) {
+            translator.sendTranslatedMessage(sender, "commands.user.not-existing-group", groupName);
+            return;
+        }
+
+        withUser(sender, name, uuid -> change(uuid, user -> {
+                if (!user.isInGroup(group.name())) {
+                    return false;
                 }
+
+                user.removeGroup(group);
+                return true;
+            }, () -> asyncUserRepository.removeGroup(uuid, group.name())
+        ).thenAccept(removed -> {
+            if (removed) {
+                audit(sender, name, "user.group.remove", group.name(), "");
+                translator.sendTranslatedMessage(sender, "commands.user.removed-group", group.name(), name);
+            } else {
+                translator.sendTranslatedMessage(sender, "commands.user.not-in-group", name, group.name());
             }
+        }));
+    }
+
+    /**
+     * Resolves the uuid of the user with the given name and runs the given action with it. The sender is told if the user doesn't exist.
+     *
+     * @param sender The sender of the command.
+     * @param name   The name of the user.
+     * @param action The action to run with the uuid of the user.
+     */
+    private void withUser(CommandSender sender, String name, Function<UUID, CompletableFuture<?>> action) {
+        asyncUserRepository.byName(name)
+            .thenCompose(uuid -> {
+                if (uuid == null) {
+                    plugin.userTranslator().sendTranslatedMessage(sender, "commands.user.no-user");
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                return action.apply(uuid);
+            })
+            .exceptionally(plugin.databaseExecutor()::logFailure);
+    }
+
+    /**
+     * Changes the given user without checking the stored state first. A loaded user is checked and changed in the cache on the main thread
+     * and saved by the write-behind queue, so repeated changes are written once. A user that isn't loaded is changed in the storage with a
+     * single idempotent statement, whose affected rows tell if anything changed. Users that aren't loaded are never created, so a user who
+     * quits in the meantime doesn't stay in the cache.
+     *
+     * @param uuid    The uuid of the user.
+     * @param loaded  The change of a loaded user, returns true if the user changed.
+     * @param offline The change of the stored user, completed with true if the storage changed.
+     * @return A future completed with true if the user changed.
+     */
+    private CompletableFuture<Boolean> change(UUID uuid, Predicate<PermissionUser> loaded, Supplier<CompletableFuture<Boolean>> offline) {
+        var mainThread = plugin.mainThread();
+
+        return CompletableFuture.supplyAsync(() -> PermissionUser.find(uuid), mainThread).thenCompose(user -> {
+            if (user.isPresent()) {
+                return CompletableFuture.completedFuture(changeLoaded(user.get(), loaded));
+            }
+
+            return offline.get().thenApplyAsync(changed -> {
+                // The user may have joined and been loaded before the change was written
+                if (changed) {
+                    PermissionUser.find(uuid).ifPresent(joined -> changeLoaded(joined, loaded));
+                }
+                return changed;
+            }, mainThread);
         });
     }
 
     /**
-     * Executes the given {@link Runnable} if the user is online.
+     * Changes the given loaded user and queues the save of the user if it changed.
      *
-     * @param uuid     The uuid of the user.
-     * @param runnable The action to perform.
+     * @param user   The loaded user.
+     * @param change The change, returns true if the user changed.
+     * @return True if the user changed.
      */
-    private void onlineAction(UUID uuid, Runnable runnable) {
-        if (plugin.getServer().getPlayer(uuid) != null) {
-            runnable.run();
+    private boolean changeLoaded(PermissionUser user, Predicate<PermissionUser> change) {
+        if (!change.test(user)) {
+            return false;
         }
+
+        plugin.writeQueue().enqueue(WriteBehindQueue.userKey(user.uuid()), () -> userRepository.saveUser(user));
+        return true;
     }
 
     /**
-     * Sends the user info to the given {@link CommandSender}.
+     * Records a change of a user in the audit log.
+     *
+     * @param sender The sender of the command.
+     * @param name   The name of the user.
+     * @param action The kind of the change.
+     * @param before The value before the change.
+     * @param after  The value after the change.
+     */
+    private void audit(CommandSender sender, String name, String action, String before, String after) {
+        plugin.auditLog().record(sender.getName(), name, action, before, after);
+    }
+
+    /**
+     * @param value The added permission or group.
+     * @param until The time the permission or group expires, -1 if it is permanent.
+     * @return The value with the time it expires.
+     */
+    private static String expiring(String value, long until) {
+        return until == -1 ? value : value + " until " + Instant.ofEpochMilli(until);
+    }
+
+    /**
+     * Sends the user info to the given {@link CommandSender}. Online users are read from the cache on the main thread, offline users are
+     * loaded from the database.
      *
      * @param sender The {@link CommandSender} to send the info to.
      * @param uuid   The uuid of the user.
+     * @return A future completed when the info was sent.
      */
-    private void sendUserInfo(CommandSender sender, UUID uuid) {
+    private CompletableFuture<Void> sendUserInfo(CommandSender sender, UUID uuid) {
         var translator = plugin.userTranslator();
         var server = plugin.getServer();
-        var player = server.getPlayer(uuid);
-
-        if (player != null) {
-            var user = PermissionUser.of(player);
-            var highestPermissionGroup = user.highestPermissionGroup();
-            var groups = user.groups();
-            var permissions = user.permissions();
-
-            translator.sendTranslatedMessage(sender, "commands.user.info",
-                player.getName(),
-                uuid.toString(),
-                highestPermissionGroup != null ? highestPermissionGroup.name() : "§c×",
-                groupInfo(groups),
-                String.join("§8, §f", permissions)
-            );
-        } else {
-            // load user from database
-            var groups = userRepository.groups(uuid);
-            var permissions = userRepository.permissions(uuid);
-            var highestPermissionGroup = userRepository.highestPermissionGroup(uuid);
-
-            translator.sendTranslatedMessage(sender, "commands.user.info",
-                userRepository.byUuid(uuid),
-                uuid.toString(),
-                highestPermissionGroup != null ? highestPermissionGroup.name() : "§c×",
-                groupInfo(groups),
-                String.join("§8, §f", permissions)
-            );
-        }
+
+        return CompletableFuture.supplyAsync(() -> server.getPlayer(uuid), plugin.mainThread()).thenCompose(player -> {
+            if (player != null) {
+                var user = PermissionUser.of(player);
+                var highestPermissionGroup = user.highestPermissionGroup();
+
+                translator.sendTranslatedMessage(sender, "commands.user.info",
+                    player.getName(),
+                    uuid.toString(),
+                    highestPermissionGroup != null ? highestPermissionGroup.name() : "§c×",
+                    groupInfo(user.groups()),
+                    permissionInfo(user.permissionsByContext())
+                );
+                return CompletableFuture.completedFuture(null);
+            }
+
+            // load user from database, after the queued changes are written
+            return asyncUserRepository.load(uuid).thenAcceptBoth(asyncUserRepository.byUuid(uuid), (loaded, name) -> {
+                if (loaded.isEmpty()) {
+                    translator.sendTranslatedMessage(sender, "commands.user.load-failed", name);
+                    return;
+                }
+
+                var state = loaded.get();
+                var highestPermissionGroup = state.groups().keySet().stream().reduce(PermissionGroup::highestWeight).orElse(null);
+
+                translator.sendTranslatedMessage(sender, "commands.user.info",
+                    name,
+                    uuid.toString(),
+                    highestPermissionGroup != null ? highestPermissionGroup.name() : "§c×",
+                    groupInfo(state.groups()),
+                    permissionInfo(state.permissions())
+                );
+            });
+        });
+    }
+
+    /**
+     * Returns the provided permissions together with their context in a formatted string.
+     *
+     * @param permissions The permissions to format, grouped by their context.
+     * @return The formatted string.
+     */
+    private String permissionInfo(Map<PermissionContext, Set<String>> permissions) {
+        return String.join("§8, §f", permissions.entrySet().stream()
+            .flatMap(entry -> entry.getValue().stream().map(permission -> entry.getKey().describe(permission)))
+            .toList());
     }
 
     /**
@@ -365,13 +473,22 @@ public class UserCommand extends SubCommand {
                     yield List.of("add", "remove");
                 }
                 if (args[1].equalsIgnoreCase("add") || args[1].equalsIgnoreCase("remove")) {
-                    yield BukkitServer.PERMISSIONS.stream().toList();
+                    yield PermissionDictionary.names();
                 }
                 yield Collections.emptyList();
             }
             case 4 -> {
                 if (args[1].equalsIgnoreCase("group")) {
-                    yield plugin.groups().stream().map(PermissionGroup::name).toList();
+                    yield groupRegistry.names();
+                }
+                if (args[1].equalsIgnoreCase("add") || args[1].equalsIgnoreCase("remove")) {
+                    yield List.of("server=", "world=");
+                }
+                yield Collections.emptyList();
+            }
+            case 5 -> {
+                if (args[1].equalsIgnoreCase("add") || args[1].equalsIgnoreCase("remove")) {
+                    yield List.of("server=", "world=");
                 }
                 yield Collections.emptyList();
             }
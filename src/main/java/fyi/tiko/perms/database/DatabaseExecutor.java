@@ -0,0 +1,155 @@
+package fyi.tiko.perms.database;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executes the blocking repository calls of commands and listeners on dedicated threads and returns their results as
+ * {@link CompletableFuture}s.
+ * <p>
+ * With {@link ExecutionMode#PLATFORM} the queries run on a pool with as many threads as the storage has connections, so queries don't wait
+ * for a connection while holding a thread, and a bounded queue, so a flood of queries fails fast instead of piling up. With
+ * {@link ExecutionMode#VIRTUAL} every query gets its own virtual thread and waits for one of the permits of a semaphore matching the
+ * connections. Waiting virtual threads cost almost nothing, so thousands of queries can wait without holding platform threads.
+ * <p>
+ * The futures complete on the database threads. Everything touching Bukkit state has to be handed to the main thread explicitly, for
+ * example with {@link CompletableFuture#thenAcceptAsync(java.util.function.Consumer, java.util.concurrent.Executor)}.
+ *
+ * @author tiko
+ */
+public class DatabaseExecutor {
+
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private final Logger logger;
+    private final ExecutorService executor;
+    private final Semaphore connections;
+
+    /**
+     * Creates a new executor and starts its threads on demand. The virtual mode falls back to the platform mode if the running Java version
+     * has no virtual threads.
+     *
+     * @param logger      The logger to log failed queries to.
+     * @param connections The number of queries executed at the same time, should match the size of the connection pool.
+     * @param mode        The threads the queries are executed on.
+     */
+    public DatabaseExecutor(Logger logger, int connections, ExecutionMode mode) {
+        this.logger = logger;
+
+        if (mode == ExecutionMode.VIRTUAL && !VirtualThreads.supported()) {
+            logger.warning("Virtual threads need Java 21, using platform threads instead.");
+            mode = ExecutionMode.PLATFORM;
+        }
+
+        if (mode == ExecutionMode.VIRTUAL) {
+            executor = VirtualThreads.executor("perms-database");
+            this.connections = new Semaphore(connections, true);
+        } else {
+            // The threads themselves limit the queries to the number of connections
+            executor = new ThreadPoolExecutor(connections, connections, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), WriteBehindQueue.threadFactory("perms-database"));
+            this.connections = null;
+        }
+    }
+
+    /**
+     * @return True if the queries are executed on virtual threads.
+     */
+    public boolean virtual() {
+        return connections != null;
+    }
+
+    /**
+     * Executes the given query on a database thread.
+     *
+     * @param query The query to execute.
+     * @param <T>   The type of the result.
+     * @return The result of the query, completed exceptionally if the query failed or the queue is full.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> query) {
+        try {
+            return CompletableFuture.supplyAsync(connections != null ? () -> withConnection(query) : query, executor);
+        } catch (RejectedExecutionException exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+    }
+
+    /**
+     * Executes the given query on a database thread.
+     *
+     * @param query The query to execute.
+     * @return A future completed when the query was executed.
+     */
+    public CompletableFuture<Void> run(Runnable query) {
+        return supply(() -> {
+            query.run();
+            return null;
+        });
+    }
+
+    /**
+     * Executes the given query once one of the connections is free.
+     *
+     * @param query The query to execute.
+     * @param <T>   The type of the result.
+     * @return The result of the query.
+     */
+    private <T> T withConnection(Supplier<T> query) {
+        try {
+            connections.acquire();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(exception);
+        }
+
+        try {
+            return query.get();
+        } finally {
+            connections.release();
+        }
+    }
+
+    /**
+     * Logs the failure of a query or of the work composed with it. Used to end a chain of futures with
+     * {@link CompletableFuture#exceptionally(java.util.function.Function)}, so failures aren't lost.
+     *
+     * @param exception The failure.
+     * @param <T>       The type of the result.
+     * @return Always null.
+     */
+    public <T> T logFailure(Throwable exception) {
+        logger.log(Level.WARNING, "Failed to execute a query", exception);
+        return null;
+    }
+
+    /**
+     * Stops accepting queries and waits for the queued queries.
+     *
+     * @param timeout The maximum time to wait.
+     * @return True if all queries were executed in time.
+     */
+    public boolean shutdown(Duration timeout) {
+        executor.shutdown();
+
+        try {
+            if (executor.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        logger.warning(String.format("Could not execute %d queued queries in time", executor.shutdownNow().size()));
+        return false;
+    }
+}
@@ -46,4 +46,70 @@ public class DatabaseInteraction {
     protected Connection conn() throws SQLException {
         return source.getConnection();
     }
+
+    /**
+     * Executes the given action on a single connection in one transaction. The transaction is rolled back if the action fails.
+     *
+     * @param transaction the action to execute
+     * @throws SQLException if a database access error occurs, the transaction is rolled back in that case
+     */
+    protected void transaction(Transaction transaction) throws SQLException {
+        try (var conn = conn()) {
+            conn.setAutoCommit(false);
+
+            try {
+                transaction.execute(conn);
+                conn.commit();
+            } catch (SQLException | RuntimeException exception) {
+                conn.rollback();
+                throw exception;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Executes the given statements on a single connection in one transaction and reports if they changed any rows.
+     *
+     * @param update the statements to execute
+     * @return true if the statements changed any rows
+     * @throws SQLException if a database access error occurs, the transaction is rolled back in that case
+     */
+    protected boolean update(Update update) throws SQLException {
+        var rows = new int[1];
+        transaction(conn -> rows[0] = update.execute(conn));
+        return rows[0] > 0;
+    }
+
+    /**
+     * An action executed in a transaction.
+     */
+    @FunctionalInterface
+    protected interface Transaction {
+
+        /**
+         * Executes the action.
+         *
+         * @param conn the connection of the transaction
+         * @throws SQLException if a database access error occurs
+         */
+        void execute(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Statements executed in a transaction, reporting the rows they changed.
+     */
+    @FunctionalInterface
+    protected interface Update {
+
+        /**
+         * Executes the statements.
+         *
+         * @param conn the connection of the transaction
+         * @return the number of changed rows
+         * @throws SQLException if a database access error occurs
+         */
+        int execute(Connection conn) throws SQLException;
+    }
 }
@@ -3,6 +3,7 @@ package fyi.tiko.perms.database;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 
+import java.nio.file.Path;
 import org.jetbrains.annotations.Nullable;
 
 /**
@@ -10,36 +11,58 @@ import org.jetbrains.annotations.Nullable;
  */
 public class DatabaseProvider {
 
-    private final String host;
+    private final Dialect dialect;
+    private final String driver;
+    private final String url;
     private final String user;
     private final String password;
-    private final String database;
-    private final int port;
+    private final int poolSize;
+    private final boolean rewriteBatchedStatements;
     private HikariDataSource source;
 
     /**
-     * Default constructor of the DatabaseProvider. This constructor is private and should only be used by the create method.
+     * Default constructor of the DatabaseProvider. This constructor is private and should only be used by the create methods.
      */
-    private DatabaseProvider(String host, String user, String password, String database, int port) {
-        this.host = host;
+    private DatabaseProvider(Dialect dialect, String driver, String url, String user, String password, int poolSize,
+        boolean rewriteBatchedStatements) {
+        this.dialect = dialect;
+        this.driver = driver;
+        this.url = url;
         this.user = user;
         this.password = password;
-        this.database = database;
-        this.port = port;
+        this.poolSize = poolSize;
+        this.rewriteBatchedStatements = rewriteBatchedStatements;
     }
 
     /**
-     * Creates a new instance of the DatabaseProvider.
+     * Creates a new instance of the DatabaseProvider connecting to a MySQL server.
      *
-     * @param host     The host of the database.
-     * @param user     The username of the database.
-     * @param password The password of the database.
-     * @param database The name of the database.
-     * @param port     The port of the database.
+     * @param host                     The host of the database.
+     * @param user                     The username of the database.
+     * @param password                 The password of the database.
+     * @param database                 The name of the database.
+     * @param port                     The port of the database.
+     * @param rewriteBatchedStatements True if the driver should send batched inserts as a single multi-row statement.
      * @return A new instance of the DbProvider.
      */
-    public static DatabaseProvider create(String host, String user, String password, String database, int port) {
-        return new DatabaseProvider(host, user, password, database, port);
+    public static DatabaseProvider create(String host, String user, String password, String database, int port,
+        boolean rewriteBatchedStatements) {
+        return new DatabaseProvider(Dialect.MYSQL, "com.mysql.cj.jdbc.Driver", String.format("jdbc:mysql://%s:%d/%s", host, port, database),
+            user, password, 10, rewriteBatchedStatements);
+    }
+
+    /**
+     * Creates a new instance of the DatabaseProvider opening an embedded H2 database. The database is created if it doesn't exist.
+     *
+     * @param file The path of the database file, without the file extension.
+     * @return A new instance of the DbProvider.
+     */
+    public static DatabaseProvider embedded(Path file) {
+        // The MySQL mode accepts the few MySQL specific statements, the lower case names match the names used by the migrations
+        var url = "jdbc:h2:file:" + file.toAbsolutePath() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;IGNORECASE=TRUE";
+
+        // An embedded database is limited by the disk, not by the network, so a few connections are enough
+        return new DatabaseProvider(Dialect.H2, "org.h2.Driver", url, "sa", "", 4, false);
     }
 
     /**
@@ -48,12 +71,16 @@ public class DatabaseProvider {
     public boolean connect() {
         var config = new HikariConfig();
 
-        config.setDriverClassName("com.mysql.jdbc.Driver");
-        config.setJdbcUrl(String.format("jdbc:mysql://%s:%d/%s", host, port, database));
-        config.setMaximumPoolSize(10);
+        config.setDriverClassName(driver);
+        config.setJdbcUrl(url);
+        config.setMaximumPoolSize(poolSize);
         config.setUsername(user);
         config.setPassword(password);
 
+        if (dialect == Dialect.MYSQL) {
+            config.addDataSourceProperty("rewriteBatchedStatements", rewriteBatchedStatements);
+        }
+
         source = new HikariDataSource(config);
         return connected();
     }
@@ -62,7 +89,9 @@ public class DatabaseProvider {
      * Attempts to disconnect from the database
      */
     public void disconnect() {
-        source.close();
+        if (source != null) {
+            source.close();
+        }
     }
 
     /**
@@ -74,6 +103,20 @@ public class DatabaseProvider {
         return source != null;
     }
 
+    /**
+     * @return the dialect of the database
+     */
+    public Dialect dialect() {
+        return dialect;
+    }
+
+    /**
+     * @return the maximum number of connections of the pool
+     */
+    public int poolSize() {
+        return poolSize;
+    }
+
     /**
      * @return the data source, null if the connection failed
      */
@@ -1,53 +1,297 @@
 package fyi.tiko.perms.database;
 
-import java.util.logging.Logger;
-import org.bukkit.plugin.java.JavaPlugin;
-
-import javax.sql.DataSource;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import javax.sql.DataSource;
 
 /**
- * This class initializes the database. Copied and changed from: <a
+ * This class migrates the database to the current schema. The migrations are the ordered scripts of the {@link Dialect} of the database,
+ * every applied migration is recorded in the schema_version table together with the checksum of its script. Migrations that are already
+ * applied are never executed again, so a database that is up-to-date costs a single query. Copied and changed from: <a
  * href="https://github.com/rainbowdashlabs/sql-java/blob/1701279480c9c82b05b30e40a3348e6ec0263381/src/main/java/de/chojo/simplecoins/data/util/DbSetup.java#L13">...</a>
  */
 public class DatabaseSetup {
 
+    /**
+     * The MySQL error code of a column that already exists. The baseline adds columns that databases of older versions may already have.
+     */
+    private static final int DUPLICATE_COLUMN = 1060;
+
+    /**
+     * The version of the baseline, the only migration that may add columns which already exist.
+     */
+    private static final int BASELINE = 1;
+
+    /**
+     * A statement adding a single column, checked on statements without comments and top-level commas.
+     */
+    private static final Pattern ADD_COLUMN = Pattern.compile("ALTER\\s+TABLE\\s+\\S+\\s+ADD\\s+COLUMN\\s.*",
+        Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
     private DatabaseSetup() throws InstantiationException {
         throw new InstantiationException("This class is not meant to be instantiated");
     }
 
     /**
-     * Reads the dbsetup.sql file from the resources folder and executes the given queries.
+     * Applies all migrations that weren't applied to the database yet.
      *
-     * @param logger the logger to log to
+     * @param logger  the logger to log to
+     * @param source  the data source to migrate
+     * @param dialect the dialect of the database
+     * @return true if the database is up-to-date, false if a migration failed or an applied migration was changed
      */
-    public static void executeQueries(Logger logger, DataSource source) {
-        String setup = null;
+    public static boolean migrate(Logger logger, DataSource source, Dialect dialect) {
+        try (var conn = source.getConnection()) {
+            createVersionTable(conn);
+            var applied = appliedMigrations(conn);
 
-        try (var inputStream = DatabaseSetup.class.getClassLoader().getResourceAsStream("dbsetup.sql")) {
-            setup = new String(inputStream.readAllBytes());
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "Could not read dbsetup.sql file.", e);
-        }
-        var queries = setup.split(";");
+            for (var migration : dialect.migrations()) {
+                var version = version(migration);
+                var script = read(dialect, migration);
+                var checksum = checksum(script);
+                var appliedChecksum = applied.get(version);
 
-        try (var conn = source.getConnection()) {
-            conn.setAutoCommit(false);
-            for (var query : queries) {
-                if (query.isBlank()) {
+                if (appliedChecksum != null) {
+                    if (!appliedChecksum.equals(checksum)) {
+                        logger.severe(String.format("The applied migration %s was changed, expected checksum %s but found %s.", migration,
+                            appliedChecksum, checksum));
+                        return false;
+                    }
                     continue;
                 }
-                try (var stmt = conn.prepareStatement(query)) {
-                    logger.info("Executing query: " + query);
-                    stmt.execute();
+
+                logger.info("Applying database migration " + migration);
+                execute(conn, script, version == BASELINE);
+                record(conn, version, migration, checksum);
+            }
+
+            return true;
+        } catch (SQLException | IOException exception) {
+            logger.log(Level.SEVERE, "Could not migrate the database.", exception);
+        }
+
+        return false;
+    }
+
+    /**
+     * Creates the schema_version table if it doesn't exist. The table is looked up first, so no DDL is executed on a migrated database.
+     *
+     * @param conn the connection to use
+     * @throws SQLException if a database access error occurs
+     */
+    private static void createVersionTable(Connection conn) throws SQLException {
+        try (var tables = conn.getMetaData().getTables(conn.getCatalog(), null, "schema_version", new String[]{"TABLE"})) {
+            if (tables.next()) {
+                return;
+            }
+        }
+
+        try (var stmt = conn.prepareStatement("CREATE TABLE IF NOT EXISTS schema_version("
+            + "version INT NOT NULL, "
+            + "name VARCHAR(128) NOT NULL, "
+            + "checksum CHAR(64) NOT NULL, "
+            + "applied_at BIGINT NOT NULL, "
+            + "PRIMARY KEY (version))")) {
+            stmt.execute();
+        }
+    }
+
+    /**
+     * @param conn the connection to use
+     * @return the checksums of the applied migrations by their version
+     * @throws SQLException if a database access error occurs
+     */
+    private static Map<Integer, String> appliedMigrations(Connection conn) throws SQLException {
+        var applied = new HashMap<Integer, String>();
+
+        try (var stmt = conn.prepareStatement("SELECT version, checksum FROM schema_version")) {
+            var rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                applied.put(rs.getInt("version"), rs.getString("checksum"));
+            }
+        }
+
+        return applied;
+    }
+
+    /**
+     * Executes the statements of the given script one by one. MySQL commits schema changes implicitly, so the statements aren't executed in
+     * a transaction and the scripts are written to be executed again if they fail halfway. A duplicate column is only ignored for a
+     * statement of the baseline that adds a single column, so no other change of a statement is skipped along with it.
+     *
+     * @param conn            the connection to use
+     * @param script          the script to execute
+     * @param existingColumns true if columns that already exist may be added
+     * @throws SQLException if a statement fails
+     */
+    private static void execute(Connection conn, String script, boolean existingColumns) throws SQLException {
+        for (var query : statements(script)) {
+            try (var stmt = conn.prepareStatement(query)) {
+                stmt.execute();
+            } catch (SQLException exception) {
+                if (!existingColumns || exception.getErrorCode() != DUPLICATE_COLUMN || !addsSingleColumn(query)) {
+                    throw exception;
                 }
-                conn.commit();
             }
-            logger.info("Database setup complete.");
-        } catch (SQLException e) {
-            logger.log(Level.SEVERE, "Could not execute query.", e);
+        }
+    }
+
+    /**
+     * Splits the given script into its statements. Semicolons in quoted strings and identifiers don't end a statement, {@code --},
+     * {@code #} and block comments are removed. Quotes are escaped by doubling them, backslashes aren't treated as escapes.
+     *
+     * @param script the script to split
+     * @return the statements of the script without the terminating semicolons, blank statements are left out
+     */
+    static List<String> statements(String script) {
+        var statements = new ArrayList<String>();
+        var current = new StringBuilder();
+        var length = script.length();
+        var i = 0;
+
+        while (i < length) {
+            var c = script.charAt(i);
+
+            if (c == '\'' || c == '"' || c == '`') {
+                // A doubled quote closes and reopens the quoted part, which leaves it unchanged
+                var end = script.indexOf(c, i + 1);
+                end = end < 0 ? length : end + 1;
+                current.append(script, i, end);
+                i = end;
+            } else if (c == '#' || (c == '-' && script.startsWith("--", i))) {
+                var end = script.indexOf('\n', i);
+                i = end < 0 ? length : end;
+            } else if (c == '/' && script.startsWith("/*", i)) {
+                var end = script.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                current.append(' ');
+            } else if (c == ';') {
+                add(statements, current);
+                i++;
+            } else {
+                current.append(c);
+                i++;
+            }
+        }
+
+        add(statements, current);
+        return statements;
+    }
+
+    /**
+     * Adds the collected statement unless it's blank and starts the next one.
+     *
+     * @param statements the statements of the script
+     * @param current    the collected statement
+     */
+    private static void add(List<String> statements, StringBuilder current) {
+        var statement = current.toString().strip();
+
+        if (!statement.isEmpty()) {
+            statements.add(statement);
+        }
+
+        current.setLength(0);
+    }
+
+    /**
+     * @param statement a statement without comments
+     * @return true if the statement alters a table by adding a single column and nothing else
+     */
+    static boolean addsSingleColumn(String statement) {
+        var depth = 0;
+
+        // A comma outside of parentheses separates the clauses of an ALTER TABLE statement
+        for (var i = 0; i < statement.length(); i++) {
+            var c = statement.charAt(i);
+
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                return false;
+            } else if (c == '\'' || c == '"' || c == '`') {
+                var end = statement.indexOf(c, i + 1);
+                i = end < 0 ? statement.length() : end;
+            }
+        }
+
+        return ADD_COLUMN.matcher(statement).matches();
+    }
+
+    /**
+     * Records the given migration as applied.
+     *
+     * @param conn      the connection to use
+     * @param version   the version of the migration
+     * @param name      the name of the migration
+     * @param checksum  the checksum of the script of the migration
+     * @throws SQLException if a database access error occurs
+     */
+    private static void record(Connection conn, int version, String name, String checksum) throws SQLException {
+        try (var stmt = conn.prepareStatement("INSERT INTO schema_version(version, name, checksum, applied_at) VALUES (?, ?, ?, ?)")) {
+            stmt.setInt(1, version);
+            stmt.setString(2, name);
+            stmt.setString(3, checksum);
+            stmt.setLong(4, System.currentTimeMillis());
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * @param migration the name of the migration, e.g. {@code V2__compact_keys.sql}
+     * @return the version of the migration
+     */
+    private static int version(String migration) {
+        return Integer.parseInt(migration.substring(1, migration.indexOf("__")));
+    }
+
+    /**
+     * Reads the script of the given migration from the resources. Line endings are normalized, so the checksum doesn't depend on the
+     * platform the plugin was built on.
+     *
+     * @param dialect   the dialect the migration belongs to
+     * @param migration the name of the migration
+     * @return the script of the migration
+     * @throws IOException if the script can't be read
+     */
+    private static String read(Dialect dialect, String migration) throws IOException {
+        var path = "migrations/" + dialect.folder() + "/" + migration;
+
+        try (var inputStream = DatabaseSetup.class.getClassLoader().getResourceAsStream(path)) {
+            if (inputStream == null) {
+                throw new IOException("Missing migration " + migration);
+            }
+
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8).replace("\r\n", "\n");
+        }
+    }
+
+    /**
+     * @param script the script of a migration
+     * @return the hex encoded SHA-256 checksum of the script
+     */
+    private static String checksum(String script) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(script.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException exception) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(exception);
         }
     }
 }
@@ -0,0 +1,113 @@
+package fyi.tiko.perms.database;
+
+import java.util.List;
+
+/**
+ * The SQL databases the plugin can store its data in. The repositories use standard SQL wherever possible, only the statements that differ
+ * between the databases are built by the dialect.
+ *
+ * @author tiko
+ */
+public enum Dialect {
+
+    /**
+     * A remote MySQL or MariaDB server, shared by all servers of the network.
+     */
+    MYSQL("mysql", List.of(
+        "V1__baseline.sql",
+        "V2__compact_keys.sql",
+        "V3__drop_legacy_tables.sql",
+        "V4__player_name_key.sql",
+        "V5__changelog.sql",
+        "V6__audit_log.sql"
+    )),
+
+    /**
+     * An embedded H2 database in the plugin folder, running in its MySQL compatibility mode.
+     */
+    H2("h2", List.of(
+        "V1__schema.sql",
+        "V2__changelog.sql",
+        "V3__audit_log.sql"
+    ));
+
+    private final String folder;
+    private final List<String> migrations;
+
+    /**
+     * @param folder     The folder in the migrations folder of the resources containing the migrations of the dialect.
+     * @param migrations The migrations in the order they are applied.
+     */
+    Dialect(String folder, List<String> migrations) {
+        this.folder = folder;
+        this.migrations = migrations;
+    }
+
+    /**
+     * @return The folder in the migrations folder of the resources containing the migrations of the dialect.
+     */
+    public String folder() {
+        return folder;
+    }
+
+    /**
+     * The migrations in the order they are applied. The version of a migration is the number after the V in its name. Applied migrations
+     * must never be changed, changes of the schema need a new migration.
+     *
+     * @return The names of the migrations.
+     */
+    public List<String> migrations() {
+        return migrations;
+    }
+
+    /**
+     * Builds a statement that inserts the given rows and updates the existing rows with the same key instead. Rows without any column besides
+     * the key are kept as they are.
+     *
+     * @param table   The table to insert into.
+     * @param columns The columns to insert, the key columns first.
+     * @param keys    The number of key columns.
+     * @param source  The rows to insert, either a {@code VALUES} clause or a query, with the columns in the given order.
+     * @return The statement.
+     */
+    public String upsert(String table, List<String> columns, int keys, String source) {
+        var columnList = String.join(", ", columns);
+
+        if (this == H2) {
+            return "MERGE INTO " + table + "(" + columnList + ") KEY(" + String.join(", ", columns.subList(0, keys)) + ") " + source;
+        }
+
+        var updated = columns.subList(keys, columns.size());
+
+        if (updated.isEmpty()) {
+            return "INSERT IGNORE INTO " + table + "(" + columnList + ") " + source;
+        }
+
+        var assignments = updated.stream().map(column -> column + "=VALUES(" + column + ")").toList();
+        return "INSERT INTO " + table + "(" + columnList + ") " + source + " ON DUPLICATE KEY UPDATE " + String.join(", ", assignments);
+    }
+
+    /**
+     * Builds a statement that inserts the given rows and skips the rows whose key already exists. Unlike an upsert the statement reports
+     * exactly the inserted rows, so the affected rows tell if anything changed. H2 accepts the statement in its MySQL compatibility mode.
+     *
+     * @param table   The table to insert into.
+     * @param columns The columns to insert.
+     * @param source  The rows to insert, either a {@code VALUES} clause or a query, with the columns in the given order.
+     * @return The statement.
+     */
+    public String insertIgnore(String table, List<String> columns, String source) {
+        return "INSERT IGNORE INTO " + table + "(" + String.join(", ", columns) + ") " + source;
+    }
+
+    /**
+     * The fetch size that streams the rows of a query instead of reading the whole result into memory. MySQL Connector/J only streams with
+     * the special fetch size {@link Integer#MIN_VALUE}, which reads row by row, H2 reads the given number of rows at a time.
+     *
+     * @param rows The number of rows to read at a time, if the database supports it.
+     * @return The fetch size to set on the statement.
+     */
+    public int streamingFetchSize(int rows) {
+        return this == MYSQL ? Integer.MIN_VALUE : rows;
+    }
+}
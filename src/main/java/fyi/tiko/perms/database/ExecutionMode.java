@@ -0,0 +1,36 @@
+package fyi.tiko.perms.database;
+
+import java.util.Locale;
+
+/**
+ * The threads the {@link DatabaseExecutor} runs the queries of commands and listeners on.
+ *
+ * @author tiko
+ */
+public enum ExecutionMode {
+
+    /**
+     * A bounded pool of platform threads, one for every connection.
+     */
+    PLATFORM,
+
+    /**
+     * A virtual thread for every query, the connections are handed out by a semaphore. Needs Java 21, older versions fall back to
+     * {@link #PLATFORM}.
+     */
+    VIRTUAL;
+
+    /**
+     * Gets the execution mode with the given name.
+     *
+     * @param name The name of the execution mode, case-insensitive.
+     * @return The execution mode or null if there is no execution mode with the given name.
+     */
+    public static ExecutionMode byName(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException exception) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package fyi.tiko.perms.database;
+
+import fyi.tiko.perms.audit.repository.AuditRepository;
+import fyi.tiko.perms.audit.repository.MemoryAuditRepository;
+import fyi.tiko.perms.bulk.repository.BulkRepository;
+import fyi.tiko.perms.bulk.repository.MemoryBulkRepository;
+import fyi.tiko.perms.database.repository.ChangelogRepository;
+import fyi.tiko.perms.database.repository.MemoryChangelogRepository;
+import fyi.tiko.perms.database.repository.MemoryPermissionRepository;
+import fyi.tiko.perms.database.repository.PermissionRepository;
+import fyi.tiko.perms.group.GroupRegistry;
+import fyi.tiko.perms.group.repository.GroupPermissionRepository;
+import fyi.tiko.perms.group.repository.MemoryGroupPermissionRepository;
+import fyi.tiko.perms.sign.repository.MemorySignRepository;
+import fyi.tiko.perms.sign.repository.SignRepository;
+import fyi.tiko.perms.transfer.repository.MemoryTransferRepository;
+import fyi.tiko.perms.transfer.repository.TransferRepository;
+import fyi.tiko.perms.user.repository.MemoryUserRepository;
+import fyi.tiko.perms.user.repository.UserNameCache;
+import fyi.tiko.perms.user.repository.UserRepository;
+
+/**
+ * The {@link Storage} keeping the data in memory. It needs no external service, so tests and benchmarks can run against it, but all data is
+ * lost when the storage is closed.
+ *
+ * @author tiko
+ */
+public class MemoryStorage implements Storage {
+
+    private final MemoryPermissionRepository permissionRepository = new MemoryPermissionRepository();
+    private final MemorySignRepository signRepository = new MemorySignRepository();
+    private final MemoryChangelogRepository changelogRepository = new MemoryChangelogRepository();
+    private final MemoryAuditRepository auditRepository = new MemoryAuditRepository();
+    private final MemoryUserRepository userRepository;
+    private final MemoryGroupPermissionRepository groupRepository;
+    private final MemoryBulkRepository bulkRepository;
+    private final MemoryTransferRepository transferRepository;
+
+    /**
+     * Creates a new, empty storage.
+     *
+     * @param groupRegistry The registry of the loaded groups.
+     * @param names         The cache of the names and uuids of the users.
+     */
+    public MemoryStorage(GroupRegistry groupRegistry, UserNameCache names) {
+        userRepository = new MemoryUserRepository(permissionRepository, groupRegistry, names);
+        groupRepository = new MemoryGroupPermissionRepository(permissionRepository, userRepository, groupRegistry);
+        bulkRepository = new MemoryBulkRepository(userRepository, groupRepository);
+        transferRepository = new MemoryTransferRepository(userRepository, groupRepository, signRepository);
+    }
+
+    @Override
+    public PermissionRepository permissionRepository() {
+        return permissionRepository;
+    }
+
+    @Override
+    public GroupPermissionRepository groupRepository() {
+        return groupRepository;
+    }
+
+    @Override
+    public UserRepository userRepository() {
+        return userRepository;
+    }
+
+    @Override
+    public SignRepository signRepository() {
+        return signRepository;
+    }
+
+    @Override
+    public BulkRepository bulkRepository() {
+        return bulkRepository;
+    }
+
+    @Override
+    public TransferRepository transferRepository() {
+        return transferRepository;
+    }
+
+    @Override
+    public AuditRepository auditRepository() {
+        return auditRepository;
+    }
+
+    @Override
+    public ChangelogRepository changelogRepository() {
+        return changelogRepository;
+    }
+
+    @Override
+    public int connections() {
+        // There are no connections, the queries are only limited by the processors
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release, the data is discarded with the storage
+    }
+}
@@ -0,0 +1,116 @@
+package fyi.tiko.perms.database;
+
+import fyi.tiko.perms.audit.repository.AuditRepository;
+import fyi.tiko.perms.audit.repository.SqlAuditRepository;
+import fyi.tiko.perms.bulk.repository.BulkRepository;
+import fyi.tiko.perms.bulk.repository.SqlBulkRepository;
+import fyi.tiko.perms.database.repository.ChangelogRepository;
+import fyi.tiko.perms.database.repository.PermissionRepository;
+import fyi.tiko.perms.database.repository.SqlChangelogRepository;
+import fyi.tiko.perms.database.repository.SqlPermissionRepository;
+import fyi.tiko.perms.group.GroupRegistry;
+import fyi.tiko.perms.group.repository.GroupPermissionRepository;
+import fyi.tiko.perms.group.repository.SqlGroupPermissionRepository;
+import fyi.tiko.perms.sign.repository.SignRepository;
+import fyi.tiko.perms.sign.repository.SqlSignRepository;
+import fyi.tiko.perms.transfer.repository.SqlTransferRepository;
+import fyi.tiko.perms.transfer.repository.TransferRepository;
+import fyi.tiko.perms.user.repository.SqlUserRepository;
+import fyi.tiko.perms.user.repository.UserNameCache;
+import fyi.tiko.perms.user.repository.UserRepository;
+import java.util.logging.Logger;
+
+/**
+ * The {@link Storage} keeping the data in a SQL database, either a MySQL server or an embedded H2 database.
+ *
+ * @author tiko
+ */
+public class SqlStorage implements Storage {
+
+    private final DatabaseProvider databaseProvider;
+    private final SqlPermissionRepository permissionRepository;
+    private final GroupPermissionRepository groupRepository;
+    private final UserRepository userRepository;
+    private final SignRepository signRepository;
+    private final BulkRepository bulkRepository;
+    private final TransferRepository transferRepository;
+    private final AuditRepository auditRepository;
+    private final SqlChangelogRepository changelogRepository;
+
+    /**
+     * Creates the repositories of the given connected and migrated database.
+     *
+     * @param logger           The logger the repositories log failed queries to.
+     * @param databaseProvider The connected database.
+     * @param groupRegistry    The registry of the loaded groups.
+     * @param names            The cache of the names and uuids of the users.
+     */
+    public SqlStorage(Logger logger, DatabaseProvider databaseProvider, GroupRegistry groupRegistry, UserNameCache names) {
+        this.databaseProvider = databaseProvider;
+
+        var dataSource = databaseProvider.dataSource();
+        var dialect = databaseProvider.dialect();
+
+        changelogRepository = new SqlChangelogRepository(logger, dataSource);
+        // The repositories share the permissions known to be stored
+        permissionRepository = new SqlPermissionRepository(logger, dataSource, dialect);
+        groupRepository = new SqlGroupPermissionRepository(logger, dataSource, dialect, permissionRepository, groupRegistry,
+            changelogRepository);
+        userRepository = new SqlUserRepository(logger, dataSource, dialect, permissionRepository, groupRegistry, names,
+            changelogRepository);
+        signRepository = new SqlSignRepository(logger, dataSource, changelogRepository);
+        bulkRepository = new SqlBulkRepository(logger, dataSource, dialect, permissionRepository, changelogRepository);
+        transferRepository = new SqlTransferRepository(logger, dataSource, dialect, permissionRepository, changelogRepository);
+        auditRepository = new SqlAuditRepository(logger, dataSource);
+    }
+
+    @Override
+    public PermissionRepository permissionRepository() {
+        return permissionRepository;
+    }
+
+    @Override
+    public GroupPermissionRepository groupRepository() {
+        return groupRepository;
+    }
+
+    @Override
+    public UserRepository userRepository() {
+        return userRepository;
+    }
+
+    @Override
+    public SignRepository signRepository() {
+        return signRepository;
+    }
+
+    @Override
+    public BulkRepository bulkRepository() {
+        return bulkRepository;
+    }
+
+    @Override
+    public TransferRepository transferRepository() {
+        return transferRepository;
+    }
+
+    @Override
+    public AuditRepository auditRepository() {
+        return auditRepository;
+    }
+
+    @Override
+    public ChangelogRepository changelogRepository() {
+        return changelogRepository;
+    }
+
+    @Override
+    public int connections() {
+        return databaseProvider.poolSize();
+    }
+
+    @Override
+    public void close() {
+        databaseProvider.disconnect();
+    }
+}
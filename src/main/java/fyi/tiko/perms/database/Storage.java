@@ -0,0 +1,69 @@
+package fyi.tiko.perms.database;
+
+import fyi.tiko.perms.audit.repository.AuditRepository;
+import fyi.tiko.perms.bulk.repository.BulkRepository;
+import fyi.tiko.perms.database.repository.ChangelogRepository;
+import fyi.tiko.perms.database.repository.PermissionRepository;
+import fyi.tiko.perms.group.repository.GroupPermissionRepository;
+import fyi.tiko.perms.sign.repository.SignRepository;
+import fyi.tiko.perms.transfer.repository.TransferRepository;
+import fyi.tiko.perms.user.repository.UserRepository;
+
+/**
+ * The storage the plugin keeps its users, groups, permissions and signs in. The plugin only talks to the repositories of the storage, so
+ * the storage can be exchanged without touching the commands and listeners.
+ *
+ * @author tiko
+ */
+public interface Storage {
+
+    /**
+     * @return The repository of the known permissions.
+     */
+    PermissionRepository permissionRepository();
+
+    /**
+     * @return The repository of the groups.
+     */
+    GroupPermissionRepository groupRepository();
+
+    /**
+     * @return The repository of the users.
+     */
+    UserRepository userRepository();
+
+    /**
+     * @return The repository of the permission signs.
+     */
+    SignRepository signRepository();
+
+    /**
+     * @return The repository changing many users or a whole group at once.
+     */
+    BulkRepository bulkRepository();
+
+    /**
+     * @return The repository exporting and importing the whole data of the storage.
+     */
+    TransferRepository transferRepository();
+
+    /**
+     * @return The audit log of the changes made with commands.
+     */
+    AuditRepository auditRepository();
+
+    /**
+     * @return The changelog of the changes made to the storage.
+     */
+    ChangelogRepository changelogRepository();
+
+    /**
+     * @return The number of queries the storage can execute at the same time.
+     */
+    int connections();
+
+    /**
+     * Closes the storage. The repositories can't be used afterwards.
+     */
+    void close();
+}
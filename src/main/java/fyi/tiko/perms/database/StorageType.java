@@ -0,0 +1,40 @@
+package fyi.tiko.perms.database;
+
+import java.util.Locale;
+
+/**
+ * The storages that can be selected in the configuration.
+ *
+ * @author tiko
+ */
+public enum StorageType {
+
+    /**
+     * A remote MySQL or MariaDB server, shared by all servers of the network.
+     */
+    MYSQL,
+
+    /**
+     * An embedded H2 database in the plugin folder, for single servers without a database server.
+     */
+    H2,
+
+    /**
+     * Keeps everything in memory and loses it on shutdown, for tests and benchmarks.
+     */
+    MEMORY;
+
+    /**
+     * Gets the storage type with the given name.
+     *
+     * @param name The name of the storage type, case-insensitive.
+     * @return The storage type or null if there is no storage type with the given name.
+     */
+    public static StorageType byName(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException exception) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package fyi.tiko.perms.database;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Converts {@link UUID}s to and from the 16 bytes they are stored as in the database.
+ *
+ * @author tiko
+ */
+public class UUIDs {
+
+    /**
+     * Private constructor to hide the implicit public one.
+     */
+    private UUIDs() {
+    }
+
+    /**
+     * @param uuid The uuid to convert.
+     * @return The 16 bytes of the uuid, most significant bits first.
+     */
+    public static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
+    }
+
+    /**
+     * @param bytes The 16 bytes of a uuid, most significant bits first.
+     * @return The uuid.
+     */
+    public static UUID fromBytes(byte[] bytes) {
+        var buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
@@ -0,0 +1,33 @@
+package fyi.tiko.perms.database;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Creates virtual threads. Java 17 has no virtual threads, the multi-release jar replaces this class with the implementation in
+ * {@code src/main/java21} on Java 21 and newer.
+ *
+ * @author tiko
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return True if the running Java version supports virtual threads.
+     */
+    static boolean supported() {
+        return false;
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread for every task.
+     *
+     * @param name The name of the threads.
+     * @return The executor.
+     * @throws UnsupportedOperationException Always, the running Java version has no virtual threads.
+     */
+    static ExecutorService executor(String name) {
+        throw new UnsupportedOperationException("Virtual threads need Java 21");
+    }
+}
@@ -0,0 +1,328 @@
+package fyi.tiko.perms.database;
+
+import fyi.tiko.perms.utils.LatencyHistogram;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Queues database writes and executes them in the background. Every write has a key identifying what it writes, a write replaces a pending
+ * write with the same key, so repeated changes of the same entity within the coalescing window are written once. Writes with the same key
+ * never run at the same time.
+ * <p>
+ * Pending writes are handed to a bounded pool of writer threads. If the writers fall behind, the pending writes stay in the queue where they
+ * keep being coalesced, callers are never blocked.
+ *
+ * @author tiko
+ */
+public class WriteBehindQueue {
+
+    /**
+     * The prefix of the keys of all writes saving users.
+     */
+    public static final String USER_KEYS = "user:";
+
+    /**
+     * The prefix of the keys of all writes saving groups.
+     */
+    public static final String GROUP_KEYS = "group:";
+
+    private static final long TICK_MILLIS = 100;
+    private static final int QUEUE_CAPACITY = 256;
+
+    private final Logger logger;
+    private final long windowMillis;
+    private final Map<String, Write> pending = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Void>> running = new ConcurrentHashMap<>();
+    private final LatencyHistogram flushLatency = new LatencyHistogram();
+    private final ScheduledExecutorService flusher;
+    private final ThreadPoolExecutor writers;
+
+    /**
+     * Creates a new queue and starts flushing it.
+     *
+     * @param logger  The logger to log failed writes to.
+     * @param threads The number of writer threads, should not exceed the size of the connection pool.
+     * @param window  The time a write is delayed, so following changes with the same key are coalesced.
+     */
+    public WriteBehindQueue(Logger logger, int threads, Duration window) {
+        this.logger = logger;
+        this.windowMillis = window.toMillis();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(threadFactory("perms-write-flusher"));
+        writers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+            threadFactory("perms-writer"), (runnable, executor) -> {
+            // Only the flusher submits writes, so waiting here holds back the flusher and not the callers
+            try {
+                while (!executor.getQueue().offer(runnable, TICK_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Writers are shut down");
+                    }
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(exception);
+            }
+        });
+
+        flusher.scheduleWithFixedDelay(() -> dispatch(false), TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param uuid The uuid of the user.
+     * @return The key of writes saving the user.
+     */
+    public static String userKey(UUID uuid) {
+        return USER_KEYS + uuid;
+    }
+
+    /**
+     * @param name The name of the group.
+     * @return The key of writes saving the group.
+     */
+    public static String groupKey(String name) {
+        return GROUP_KEYS + name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Queues the given write, replacing a pending write with the same key.
+     *
+     * @param key   The key of the write.
+     * @param write The write to execute.
+     */
+    public void enqueue(String key, Runnable write) {
+        var now = System.currentTimeMillis();
+        pending.merge(key, new Write(write, now), (previous, next) -> new Write(write, previous.enqueuedAt()));
+    }
+
+    /**
+     * Executes the pending write of the given key on the calling thread and waits for a running write with the key, so the database can be
+     * read afterwards. Used before the data of a user or group is loaded. Only the given key is looked up, the other writes aren't touched.
+     *
+     * @param key The key of the write, e.g. {@link #userKey(UUID)}.
+     */
+    public void flush(String key) {
+        // Nearly every user is loaded without a queued change
+        if (pending.get(key) != null || running.get(key) != null) {
+            flushKey(key);
+        }
+    }
+
+    /**
+     * Executes the pending writes whose key starts with the given prefix on the calling thread and waits for running writes with these
+     * keys. Scans all queued writes, so it is only meant for {@link #USER_KEYS} and {@link #GROUP_KEYS}, before everything is read.
+     *
+     * @param prefix The prefix of the keys to flush.
+     */
+    public void flushPrefix(String prefix) {
+        for (var key : pending.keySet()) {
+            if (key.startsWith(prefix)) {
+                flushKey(key);
+            }
+        }
+
+        running.forEach((key, future) -> {
+            if (key.startsWith(prefix)) {
+                future.join();
+            }
+        });
+    }
+
+    /**
+     * Writes all pending writes and waits for them, ignoring the coalescing window.
+     *
+     * @param timeout The maximum time to wait.
+     * @return True if all writes were executed in time.
+     */
+    public boolean flushAll(Duration timeout) {
+        var deadline = System.nanoTime() + timeout.toNanos();
+
+        while (!pending.isEmpty() || !running.isEmpty()) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+
+            dispatch(true);
+
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Stops accepting scheduled flushes, writes everything that is pending and shuts the writers down.
+     *
+     * @param timeout The maximum time to wait for the pending writes.
+     * @return True if all writes were executed in time.
+     */
+    public boolean drain(Duration timeout) {
+        flusher.shutdown();
+
+        var drained = flushAll(timeout);
+        writers.shutdown();
+
+        try {
+            if (!writers.awaitTermination(drained ? timeout.toMillis() : 0, TimeUnit.MILLISECONDS)) {
+                writers.shutdownNow();
+                drained = false;
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            drained = false;
+        }
+
+        if (!drained) {
+            logger.warning(String.format("Could not write %d pending changes in time", pending.size() + running.size()));
+        }
+
+        return drained;
+    }
+
+    /**
+     * @return The number of writes that are pending or running.
+     */
+    public int depth() {
+        return pending.size() + running.size();
+    }
+
+    /**
+     * @return The time from queueing a write until it was executed.
+     */
+    public LatencyHistogram flushLatency() {
+        return flushLatency;
+    }
+
+    /**
+     * Hands the pending writes to the writers.
+     *
+     * @param all True to ignore the coalescing window.
+     */
+    private void dispatch(boolean all) {
+        var now = System.currentTimeMillis();
+
+        pending.forEach((key, write) -> {
+            if (!all && now - write.enqueuedAt() < windowMillis) {
+                return;
+            }
+
+            var claimed = claim(key);
+
+            if (claimed != null) {
+                try {
+                    writers.execute(() -> execute(key, claimed));
+                } catch (RejectedExecutionException exception) {
+                    // The write is queued again, so it is executed by the next flush or reported by the drain
+                    pending.putIfAbsent(key, claimed);
+                    running.remove(key).complete(null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Executes the pending write of the given key on the calling thread, after a running write with the same key finished.
+     *
+     * @param key The key of the write.
+     */
+    private void flushKey(String key) {
+        while (true) {
+            var current = running.get(key);
+
+            if (current != null) {
+                current.join();
+                continue;
+            }
+
+            var claimed = claim(key);
+
+            if (claimed != null) {
+                execute(key, claimed);
+            }
+
+            if (claimed != null || !running.containsKey(key)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Takes the pending write of the given key and marks the key as running.
+     *
+     * @param key The key of the write.
+     * @return The pending write or null if there is none or a write with the key is already running.
+     */
+    private synchronized Write claim(String key) {
+        if (running.containsKey(key)) {
+            return null;
+        }
+
+        var write = pending.remove(key);
+
+        if (write != null) {
+            running.put(key, new CompletableFuture<>());
+        }
+
+        return write;
+    }
+
+    /**
+     * Executes the given claimed write.
+     *
+     * @param key   The key of the write.
+     * @param write The write to execute.
+     */
+    private void execute(String key, Write write) {
+        try {
+            write.action().run();
+        } catch (RuntimeException exception) {
+            logger.log(Level.WARNING, "Failed to write " + key, exception);
+        } finally {
+            flushLatency.record(System.currentTimeMillis() - write.enqueuedAt());
+            running.remove(key).complete(null);
+        }
+    }
+
+    /**
+     * Creates daemon threads with the given name.
+     *
+     * @param name The name of the threads.
+     * @return The thread factory.
+     */
+    public static ThreadFactory threadFactory(String name) {
+        var counter = new AtomicInteger();
+
+        return runnable -> {
+            var thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * A queued write.
+     *
+     * @param action     The write to execute.
+     * @param enqueuedAt The time the first write with the key was queued, kept when the write is replaced.
+     */
+    private record Write(Runnable action, long enqueuedAt) {
+    }
+}
@@ -0,0 +1,57 @@
+package fyi.tiko.perms.database.repository;
+
+import java.util.Locale;
+
+/**
+ * A change recorded in the changelog. Only the changed entity is recorded, not the change itself, the entity is reloaded from the storage.
+ *
+ * @param revision The revision of the change, higher revisions were recorded later.
+ * @param kind     The kind of the changed entity.
+ * @param subject  The identity of the changed entity, the uuid of a user, the name of a group or the id of a sign.
+ * @param local    True if the change was recorded by this server.
+ * @author tiko
+ */
+public record Change(long revision, Kind kind, String subject, boolean local) {
+
+    /**
+     * The kinds of entities whose changes are recorded.
+     */
+    public enum Kind {
+
+        /**
+         * The permissions or groups of a user changed.
+         */
+        USER,
+
+        /**
+         * A group was created, changed or removed.
+         */
+        GROUP,
+
+        /**
+         * A permission sign was set or removed.
+         */
+        SIGN;
+
+        /**
+         * @return The name the kind is stored with.
+         */
+        public String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * Gets the kind with the given stored name.
+         *
+         * @param key The stored name of the kind.
+         * @return The kind or null if there is no kind with the given name.
+         */
+        public static Kind byKey(String key) {
+            try {
+                return valueOf(key.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException exception) {
+                return null;
+            }
+        }
+    }
+}
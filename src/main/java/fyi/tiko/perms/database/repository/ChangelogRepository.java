@@ -0,0 +1,35 @@
+package fyi.tiko.perms.database.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reads the changelog the storage appends a {@link Change} to whenever a user, group or sign is changed. Servers sharing a storage poll it to
+ * reload only the entities changed by the other servers.
+ *
+ * @author tiko
+ */
+public interface ChangelogRepository {
+
+    /**
+     * @return The revision of the latest change or 0 if nothing was recorded.
+     */
+    long latestRevision();
+
+    /**
+     * Gets the changes recorded after the given revision. Revisions are handed out before the changes are committed, so a change can become
+     * visible after a change with a higher revision. Revisions that were skipped by earlier polls can be requested again.
+     *
+     * @param revision The latest revision that was already seen.
+     * @param missing  Lower revisions that weren't seen yet.
+     * @return The changes, ordered by their revision.
+     */
+    List<Change> changesSince(long revision, Collection<Long> missing);
+
+    /**
+     * Removes the changes recorded before the given time.
+     *
+     * @param before The time in milliseconds.
+     */
+    void prune(long before);
+}
@@ -0,0 +1,28 @@
+package fyi.tiko.perms.database.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The {@link ChangelogRepository} of the memory storage. A memory storage can't be shared with other servers, so there are never changes
+ * of other servers to reload and nothing is recorded.
+ *
+ * @author tiko
+ */
+public class MemoryChangelogRepository implements ChangelogRepository {
+
+    @Override
+    public long latestRevision() {
+        return 0;
+    }
+
+    @Override
+    public List<Change> changesSince(long revision, Collection<Long> missing) {
+        return List.of();
+    }
+
+    @Override
+    public void prune(long before) {
+        // Nothing is recorded
+    }
+}
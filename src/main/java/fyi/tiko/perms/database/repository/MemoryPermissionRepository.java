@@ -0,0 +1,29 @@
+package fyi.tiko.perms.database.repository;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link PermissionRepository} keeping the permissions in memory. Nothing is persisted.
+ *
+ * @author tiko
+ */
+public class MemoryPermissionRepository implements PermissionRepository {
+
+    private final Set<String> permissions = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public boolean exists(String permission) {
+        return permissions.contains(permission);
+    }
+
+    @Override
+    public Set<String> permissions() {
+        return Set.copyOf(permissions);
+    }
+
+    @Override
+    public void addPermission(String permission) {
+        permissions.add(permission);
+    }
+}
@@ -0,0 +1,149 @@
+package fyi.tiko.perms.database.repository;
+
+import fyi.tiko.perms.database.DatabaseInteraction;
+import fyi.tiko.perms.database.UUIDs;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+
+/**
+ * The {@link ChangelogRepository} reading the perm_changelog table of a SQL database. The repositories of the storage record their changes
+ * with {@link #record(Connection, Change.Kind, String)} in the transaction of the change, so a change is visible exactly when its changelog
+ * row is.
+ *
+ * @author tiko
+ */
+public class SqlChangelogRepository extends DatabaseInteraction implements ChangelogRepository {
+
+    private final byte[] origin = UUIDs.toBytes(UUID.randomUUID());
+
+    /**
+     * Constructs a new {@link DatabaseInteraction} with the given {@link Logger} and {@link DataSource}.
+     *
+     * @param logger the logger of the plugin using this holder
+     * @param source the data source to use
+     */
+    public SqlChangelogRepository(Logger logger, DataSource source) {
+        super(logger, source);
+    }
+
+    /**
+     * Records a change of the given entity on the given connection. The change is marked with the identity of this server, so the server
+     * doesn't reload its own changes.
+     *
+     * @param conn    the connection of the change
+     * @param kind    the kind of the changed entity
+     * @param subject the identity of the changed entity
+     * @throws SQLException if a database access error occurs
+     */
+    public void record(Connection conn, Change.Kind kind, String subject) throws SQLException {
+        try (var stmt = conn.prepareStatement("INSERT INTO perm_changelog(origin, kind, subject, changed_at) VALUES (?, ?, ?, ?)")) {
+            stmt.setBytes(1, origin);
+            stmt.setString(2, kind.key());
+            stmt.setString(3, subject);
+            stmt.setLong(4, System.currentTimeMillis());
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Records a change of each of the given entities on the given connection with a single batch. Used by set-based changes, which change
+     * many entities with one statement.
+     *
+     * @param conn     the connection of the change
+     * @param kind     the kind of the changed entities
+     * @param subjects the identities of the changed entities
+     * @throws SQLException if a database access error occurs
+     */
+    public void recordAll(Connection conn, Change.Kind kind, Collection<String> subjects) throws SQLException {
+        if (subjects.isEmpty()) {
+            return;
+        }
+
+        try (var stmt = conn.prepareStatement("INSERT INTO perm_changelog(origin, kind, subject, changed_at) VALUES (?, ?, ?, ?)")) {
+            var now = System.currentTimeMillis();
+
+            for (var subject : subjects) {
+                stmt.setBytes(1, origin);
+                stmt.setString(2, kind.key());
+                stmt.setString(3, subject);
+                stmt.setLong(4, now);
+                stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+        }
+    }
+
+    @Override
+    public long latestRevision() {
+        try (var conn = conn(); var stmt = conn.prepareStatement("SELECT MAX(revision) FROM perm_changelog")) {
+            var rs = stmt.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to get the latest revision", exception);
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the changes after the given revision with a single query on the primary key, so a poll without changes reads no rows.
+     *
+     * @param revision the latest revision that was already seen
+     * @param missing  lower revisions that weren't seen yet
+     * @return the changes, ordered by their revision
+     */
+    @Override
+    public List<Change> changesSince(long revision, Collection<Long> missing) {
+        var query = "SELECT revision, origin, kind, subject FROM perm_changelog WHERE revision>?";
+
+        if (!missing.isEmpty()) {
+            query += " OR revision IN (" + missing.stream().map(value -> "?").collect(Collectors.joining(", ")) + ")";
+        }
+
+        try (var conn = conn(); var stmt = conn.prepareStatement(query + " ORDER BY revision")) {
+            var index = 1;
+            stmt.setLong(index++, revision);
+
+            for (var value : missing) {
+                stmt.setLong(index++, value);
+            }
+
+            var rs = stmt.executeQuery();
+            var changes = new ArrayList<Change>();
+
+            while (rs.next()) {
+                var kind = Change.Kind.byKey(rs.getString("kind"));
+
+                // Kinds recorded by a newer version of the plugin are skipped
+                if (kind != null) {
+                    changes.add(new Change(rs.getLong("revision"), kind, rs.getString("subject"), Arrays.equals(origin, rs.getBytes("origin"))));
+                }
+            }
+
+            return changes;
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to get the changes", exception);
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void prune(long before) {
+        try (var conn = conn(); var stmt = conn.prepareStatement("DELETE FROM perm_changelog WHERE changed_at<?")) {
+            stmt.setLong(1, before);
+            stmt.executeUpdate();
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to prune the changelog", exception);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package fyi.tiko.perms.database.repository;
+
+import fyi.tiko.perms.database.DatabaseInteraction;
+import fyi.tiko.perms.database.Dialect;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * The {@link PermissionRepository} storing the permissions in the permissions table of a SQL database. Permissions are never removed, so
+ * the permissions known to be stored are kept in memory and aren't written or looked up again.
+ *
+ * @author tiko
+ */
+public class SqlPermissionRepository extends DatabaseInteraction implements PermissionRepository {
+
+    private final Set<String> known = ConcurrentHashMap.newKeySet();
+    private final String addPermission;
+
+    /**
+     * Constructs a new {@link DatabaseInteraction} with the given {@link Logger} and {@link DataSource}.
+     *
+     * @param logger  the logger instance to use
+     * @param source  the data source to use
+     * @param dialect the dialect of the database
+     */
+    public SqlPermissionRepository(Logger logger, DataSource source, Dialect dialect) {
+        super(logger, source);
+
+        addPermission = dialect.upsert("permissions", List.of("permission"), 1, "VALUES (?)");
+    }
+
+    @Override
+    public boolean exists(String permission) {
+        if (known.contains(permission)) {
+            return true;
+        }
+
+        try (var conn = conn(); var stmt = conn.prepareStatement("SELECT permission FROM permissions WHERE permission=?")) {
+            stmt.setString(1, permission);
+
+            var rs = stmt.executeQuery();
+
+            if (rs.next()) {
+                known.add(permission);
+                return true;
+            }
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to check if permission exists", exception);
+        }
+
+        return false;
+    }
+
+    @Override
+    public Set<String> permissions() {
+        var permissions = new HashSet<String>();
+
+        try (var conn = conn(); var stmt = conn.prepareStatement("SELECT permission FROM permissions")) {
+            var rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                permissions.add(rs.getString("permission"));
+            }
+
+            known.addAll(permissions);
+            return permissions;
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to get permissions", exception);
+        }
+
+        return Collections.emptySet();
+    }
+
+    /**
+     * Adds the given permissions to the database with a single batch on the given connection. Permissions known to be stored are skipped,
+     * the others are kept if they already exist. The added permissions are only known once the transaction is committed, see
+     * {@link #remember(Collection)}.
+     *
+     * @param conn        the connection to use
+     * @param permissions the permissions to add
+     * @throws SQLException if a database access error occurs
+     */
+    public void addPermissions(Connection conn, Collection<String> permissions) throws SQLException {
+        var unknown = permissions.stream().filter(permission -> !known.contains(permission)).toList();
+
+        if (unknown.isEmpty()) {
+            return;
+        }
+
+        try (var stmt = conn.prepareStatement(addPermission)) {
+            for (var permission : unknown) {
+                stmt.setString(1, permission);
+                stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Remembers the given permissions as stored, after the transaction adding them was committed.
+     *
+     * @param permissions the stored permissions
+     */
+    public void remember(Collection<String> permissions) {
+        known.addAll(permissions);
+    }
+
+    /**
+     * Adds the given permission to the database with a single statement, unless it is known to be stored already.
+     *
+     * @param permission the permission to add
+     */
+    @Override
+    public void addPermission(String permission) {
+        if (known.contains(permission)) {
+            return;
+        }
+
+        try (var conn = conn(); var stmt = conn.prepareStatement(addPermission)) {
+            stmt.setString(1, permission);
+            stmt.executeUpdate();
+
+            known.add(permission);
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to add permission", exception);
+        }
+    }
+}
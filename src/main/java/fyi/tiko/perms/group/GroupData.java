@@ -0,0 +1,49 @@
+package fyi.tiko.perms.group;
+
+import fyi.tiko.perms.permission.PermissionContext;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable copy of the persisted fields of a {@link PermissionGroup}. Comparing the current data of a group with the data it was last
+ * saved with tells which fields have to be written.
+ *
+ * @param permissions The permissions of the group, grouped by their context.
+ * @param prefix      The raw prefix of the group.
+ * @param suffix      The raw suffix of the group.
+ * @param weight      The weight of the group.
+ * @param isDefault   True if the group is a default group.
+ * @param parents     The names of the groups the group directly inherits from.
+ * @author tiko
+ */
+public record GroupData(Map<PermissionContext, Set<String>> permissions, String prefix, String suffix, int weight, boolean isDefault,
+                        Set<String> parents) {
+
+    /**
+     * Creates a new data object, the given collections are copied.
+     */
+    public GroupData {
+        permissions = Map.copyOf(permissions);
+        parents = Set.copyOf(parents);
+    }
+
+    /**
+     * Checks if the given permission is contained in the given context.
+     *
+     * @param permission The permission.
+     * @param context    The context of the permission.
+     * @return True if the permission is contained.
+     */
+    public boolean hasPermission(String permission, PermissionContext context) {
+        var nodes = permissions.get(context);
+        return nodes != null && nodes.contains(permission);
+    }
+
+    /**
+     * @param other The data to compare with.
+     * @return True if the prefix, suffix or weight differ from the given data.
+     */
+    public boolean metadataDiffers(GroupData other) {
+        return !prefix.equals(other.prefix) || !suffix.equals(other.suffix) || weight != other.weight;
+    }
+}
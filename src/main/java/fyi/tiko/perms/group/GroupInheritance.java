@@ -0,0 +1,194 @@
+package fyi.tiko.perms.group;
+
+import fyi.tiko.perms.permission.PermissionContext;
+import fyi.tiko.perms.permission.PermissionNodes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Flattens the inheritance of {@link PermissionGroup}s. The transitive closure of every group is computed once when the groups are loaded or
+ * changed, so inherited permissions don't cost anything during a permission check. The closest group deciding a permission wins.
+ *
+ * @author tiko
+ */
+public class GroupInheritance {
+
+    /**
+     * Private constructor to hide the implicit public one.
+     */
+    private GroupInheritance() {
+
+    }
+
+    /**
+     * Resolves the inherited permissions of all given groups. The groups are changed, so they mustn't be registered yet.
+     *
+     * @param groups The groups to resolve.
+     */
+    public static void resolve(Collection<PermissionGroup> groups) {
+        var byName = byName(groups);
+        groups.forEach(group -> resolve(group, byName));
+    }
+
+    /**
+     * Resolves the inherited permissions of copies of the given groups. The given groups aren't changed, so registered groups can be
+     * resolved again and replaced by the copies.
+     *
+     * @param groups The groups to resolve.
+     * @return The resolved copies.
+     */
+    public static List<PermissionGroup> resolveCopies(Collection<PermissionGroup> groups) {
+        var copies = groups.stream().map(PermissionGroup::copy).toList();
+        resolve(copies);
+        return copies;
+    }
+
+    /**
+     * Resolves the inherited permissions of the given group. The parents are looked up in the given groups. The group is changed, so it
+     * mustn't be registered yet.
+     *
+     * @param group  The group to resolve.
+     * @param groups The groups the parents are looked up in.
+     */
+    public static void resolve(PermissionGroup group, Collection<PermissionGroup> groups) {
+        var byName = byName(groups);
+        byName.put(GroupRegistry.key(group.name()), group);
+
+        resolve(group, byName);
+    }
+
+    /**
+     * Checks if adding the given parent to the given group would create a cycle in the inheritance.
+     *
+     * @param groups The registered groups.
+     * @param group  The name of the group that gets the new parent.
+     * @param parent The name of the new parent.
+     * @return True if the parent already inherits from the group or is the group itself.
+     */
+    public static boolean createsCycle(Collection<PermissionGroup> groups, String group, String parent) {
+        if (group.equalsIgnoreCase(parent)) {
+            return true;
+        }
+
+        return ancestors(parent, byName(groups)).contains(GroupRegistry.key(group));
+    }
+
+    /**
+     * Resolves the inherited permissions of the given group. The own nodes of the group come first, then the nodes of its parents, then
+     * the nodes of their parents and so on. Inherited nodes only fill in permissions no closer group decided, so a group can grant what a
+     * parent negates and the other way around. Groups at the same distance are combined first, there a negation wins.
+     *
+     * @param group  The group to resolve.
+     * @param byName The groups the parents are looked up in, mapped by their lower case name.
+     */
+    private static void resolve(PermissionGroup group, Map<String, PermissionGroup> byName) {
+        var levels = levels(group.name(), byName);
+
+        if (levels.isEmpty()) {
+            group.updateInheritance(Set.of(), group.nodes());
+            return;
+        }
+
+        var builders = new HashMap<PermissionContext, PermissionNodes.Builder>();
+        merge(builders, group.nodes());
+
+        for (var level : levels) {
+            var inherited = new HashMap<PermissionContext, PermissionNodes.Builder>();
+            level.forEach(ancestor -> merge(inherited, byName.get(ancestor).nodes()));
+
+            inherited.forEach((context, builder) -> builders.computeIfAbsent(context, key -> PermissionNodes.builder())
+                .inherit(builder.build()));
+        }
+
+        var effective = new HashMap<PermissionContext, PermissionNodes>();
+        builders.forEach((context, builder) -> effective.put(context, builder.build()));
+
+        var ancestors = new HashSet<String>();
+        levels.forEach(ancestors::addAll);
+
+        group.updateInheritance(Set.copyOf(ancestors), effective);
+    }
+
+    /**
+     * Adds the given nodes to the given builders, keeping the contexts apart.
+     *
+     * @param builders The builders per context.
+     * @param nodes    The nodes to add.
+     */
+    private static void merge(Map<PermissionContext, PermissionNodes.Builder> builders, Map<PermissionContext, PermissionNodes> nodes) {
+        nodes.forEach((context, contextNodes) -> builders.computeIfAbsent(context, key -> PermissionNodes.builder()).addAll(contextNodes));
+    }
+
+    /**
+     * Collects the names of all groups the given group inherits from, directly or indirectly. Cycles and unknown parents are skipped.
+     *
+     * @param name   The name of the group.
+     * @param byName The groups the parents are looked up in, mapped by their lower case name.
+     * @return The lower case names of all ancestors.
+     */
+    private static Set<String> ancestors(String name, Map<String, PermissionGroup> byName) {
+        var ancestors = new HashSet<String>();
+        levels(name, byName).forEach(ancestors::addAll);
+        return ancestors;
+    }
+
+    /**
+     * Collects the names of all groups the given group inherits from, grouped by their distance. Each group only appears at its shortest
+     * distance, cycles and unknown parents are skipped.
+     *
+     * @param name   The name of the group.
+     * @param byName The groups the parents are looked up in, mapped by their lower case name.
+     * @return The lower case names of the parents, then of their parents and so on.
+     */
+    private static List<Set<String>> levels(String name, Map<String, PermissionGroup> byName) {
+        var levels = new ArrayList<Set<String>>();
+        var self = GroupRegistry.key(name);
+        var seen = new HashSet<String>();
+        var current = Set.of(self);
+
+        while (!current.isEmpty()) {
+            var next = new LinkedHashSet<String>();
+
+            for (var groupName : current) {
+                var group = byName.get(groupName);
+
+                if (group == null) {
+                    continue;
+                }
+
+                for (var parent : group.parents()) {
+                    var key = GroupRegistry.key(parent);
+
+                    if (!key.equals(self) && byName.containsKey(key) && seen.add(key)) {
+                        next.add(key);
+                    }
+                }
+            }
+
+            if (!next.isEmpty()) {
+                levels.add(next);
+            }
+            current = next;
+        }
+
+        return levels;
+    }
+
+    /**
+     * Maps the given groups by their lower case name.
+     *
+     * @param groups The groups to map.
+     * @return The mapped groups.
+     */
+    private static Map<String, PermissionGroup> byName(Collection<PermissionGroup> groups) {
+        var byName = new HashMap<String, PermissionGroup>();
+        groups.forEach(group -> byName.put(GroupRegistry.key(group.name()), group));
+        return byName;
+    }
+}
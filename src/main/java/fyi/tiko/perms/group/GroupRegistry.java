@@ -0,0 +1,102 @@
+package fyi.tiko.perms.group;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The authoritative in-memory registry of all {@link PermissionGroup}s, keyed by their lower case name. Commands and listeners look groups up
+ * here instead of querying the database, the database is only written to.
+ *
+ * @author tiko
+ */
+public class GroupRegistry {
+
+    private final Map<String, PermissionGroup> groups = new ConcurrentHashMap<>();
+
+    /**
+     * Normalizes the given group name so it can be used as a key.
+     *
+     * @param name The name of the group.
+     * @return The normalized name.
+     */
+    public static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Gets the registered group with the given name.
+     *
+     * @param name The name of the group, case-insensitive.
+     * @return The registered group or null if no group with the name exists.
+     */
+    public PermissionGroup byName(String name) {
+        return groups.get(key(name));
+    }
+
+    /**
+     * Checks if a group with the given name is registered.
+     *
+     * @param name The name of the group, case-insensitive.
+     * @return True if the group exists.
+     */
+    public boolean exists(String name) {
+        return groups.containsKey(key(name));
+    }
+
+    /**
+     * Registers the given group, replacing a registered group with the same name.
+     *
+     * @param group The group to register.
+     */
+    public void register(PermissionGroup group) {
+        groups.put(key(group.name()), group);
+    }
+
+    /**
+     * Removes the group with the given name.
+     *
+     * @param name The name of the group, case-insensitive.
+     * @return The removed group or null if no group with the name was registered.
+     */
+    public PermissionGroup unregister(String name) {
+        return groups.remove(key(name));
+    }
+
+    /**
+     * Replaces all registered groups with the given groups.
+     *
+     * @param groups The groups to register.
+     */
+    public void replaceAll(Collection<PermissionGroup> groups) {
+        var replaced = new ConcurrentHashMap<String, PermissionGroup>();
+        groups.forEach(group -> replaced.put(key(group.name()), group));
+
+        this.groups.keySet().retainAll(replaced.keySet());
+        this.groups.putAll(replaced);
+    }
+
+    /**
+     * Removes all registered groups.
+     */
+    public void clear() {
+        groups.clear();
+    }
+
+    /**
+     * @return An unmodifiable view of all registered groups.
+     */
+    public Collection<PermissionGroup> all() {
+        return Collections.unmodifiableCollection(groups.values());
+    }
+
+    /**
+     * @return The names of all registered groups.
+     */
+    public List<String> names() {
+        return groups.values().stream().map(PermissionGroup::name).sorted(String.CASE_INSENSITIVE_ORDER).toList();
+    }
+}
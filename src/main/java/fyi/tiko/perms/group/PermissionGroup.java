@@ -1,7 +1,12 @@
 package fyi.tiko.perms.group;
 
-import java.util.Objects;
+import fyi.tiko.perms.permission.PermissionContext;
+import fyi.tiko.perms.permission.PermissionNodes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import org.bukkit.ChatColor;
 
 /**
@@ -12,52 +17,222 @@ import org.bukkit.ChatColor;
 public class PermissionGroup {
 
     private final String name;
-    private final Set<String> permissions;
+    private final Map<PermissionContext, PermissionNodes> permissions = new HashMap<>();
+    private final Set<String> parents;
     private String prefix;
     private String suffix;
     private int weight;
     private boolean isDefault;
+    // Replaced as a whole by GroupInheritance, so a permission check on another thread never sees a half resolved group
+    private volatile Map<PermissionContext, PermissionNodes> effectivePermissions;
+    private volatile Set<String> ancestors = Set.of();
+    // Shared with the copies of this group, so a save of any of them is known to all
+    private AtomicReference<GroupData> saved;
 
     /**
-     * Creates a new permission group with the given name.
+     * Creates a new permission group with the given name. The permissions of the group are stored as compact {@link PermissionNodes} per
+     * {@link PermissionContext}, the permissions of its parents are added by {@link GroupInheritance}. The given data is expected to match the
+     * database, so a new group is only saved after it was changed.
      *
      * @param name The name of the group.
      */
-    public PermissionGroup(String name, Set<String> permissions, String prefix, String suffix, int weight, boolean isDefault) {
+    public PermissionGroup(String name, Map<PermissionContext, Set<String>> permissions, String prefix, String suffix, int weight, boolean isDefault,
+        Set<String> parents) {
         this.name = name;
-        this.permissions = permissions;
+        this.parents = new HashSet<>(parents);
         this.prefix = prefix;
         this.suffix = suffix;
         this.weight = weight;
         this.isDefault = isDefault;
+
+        permissions.forEach((context, nodes) -> this.permissions.put(context, PermissionNodes.of(nodes)));
+        effectivePermissions = Map.copyOf(this.permissions);
+        saved = new AtomicReference<>(data());
     }
 
     /**
-     * Checks if the group has the given permission.
+     * @return A copy of the current persisted fields of the group.
+     */
+    public GroupData data() {
+        return new GroupData(permissionsByContext(), prefix == null ? "" : prefix, suffix == null ? "" : suffix, weight, isDefault, parents);
+    }
+
+    /**
+     * @return The persisted fields of the group when it was last loaded or saved.
+     */
+    public GroupData savedData() {
+        return saved.get();
+    }
+
+    /**
+     * Remembers the given data as saved to the database.
+     *
+     * @param saved The saved data.
+     */
+    public void markSaved(GroupData saved) {
+        this.saved.set(saved);
+    }
+
+    /**
+     * @return True if the group was changed since it was last loaded or saved.
+     */
+    public boolean isDirty() {
+        return !data().equals(saved.get());
+    }
+
+    /**
+     * Checks if the group has the given global permission.
      *
      * @param permission The permission to check.
      * @return True if the group has the permission.
      */
     public boolean hasPermission(String permission) {
-        return permissions.contains(permission);
+        return hasPermission(permission, PermissionContext.GLOBAL);
+    }
+
+    /**
+     * Checks if the group has the given permission in the given context.
+     *
+     * @param permission The permission to check.
+     * @param context    The context of the permission.
+     * @return True if the group has the permission.
+     */
+    public boolean hasPermission(String permission, PermissionContext context) {
+        var nodes = permissions.get(context);
+        return nodes != null && nodes.contains(permission);
+    }
+
+    /**
+     * Checks if the global nodes of the group grant the given permission, taking wildcards and negations into account.
+     *
+     * @param permission The permission to check.
+     * @return True if the group grants the permission.
+     */
+    public boolean matches(String permission) {
+        var nodes = permissions.get(PermissionContext.GLOBAL);
+        return nodes != null && Boolean.TRUE.equals(nodes.resolve(permission));
+    }
+
+    /**
+     * @return The compiled permission nodes of the group per context, without the nodes of its parents.
+     */
+    public Map<PermissionContext, PermissionNodes> nodes() {
+        return permissions;
+    }
+
+    /**
+     * @return The compiled permission nodes of the group per context, including the nodes of all groups it inherits from.
+     */
+    public Map<PermissionContext, PermissionNodes> effectiveNodes() {
+        return effectivePermissions;
+    }
+
+    /**
+     * Updates the flattened inheritance of the group. Only used by {@link GroupInheritance} for groups that aren't registered yet.
+     *
+     * @param ancestors            The names of all groups this group inherits from, directly or indirectly.
+     * @param effectivePermissions The nodes of the group combined with the nodes of all ancestors.
+     */
+    void updateInheritance(Set<String> ancestors, Map<PermissionContext, PermissionNodes> effectivePermissions) {
+        this.ancestors = Set.copyOf(ancestors);
+        this.effectivePermissions = Map.copyOf(effectivePermissions);
+    }
+
+    /**
+     * Checks if this group inherits from the given group, directly or indirectly.
+     *
+     * @param name The name of the group.
+     * @return True if the group inherits from the given group.
+     */
+    public boolean inheritsFrom(String name) {
+        return ancestors.contains(GroupRegistry.key(name));
     }
 
     /**
-     * Adds the given permission to the group.
+     * @return The names of the groups this group directly inherits from.
+     */
+    public Set<String> parents() {
+        return parents;
+    }
+
+    /**
+     * Adds the given group as a parent of this group.
+     *
+     * @param name The name of the parent group.
+     * @return True if the group wasn't a parent before.
+     */
+    public boolean addParent(String name) {
+        return parents.add(name);
+    }
+
+    /**
+     * Removes the given group from the parents of this group.
+     *
+     * @param name The name of the parent group.
+     * @return True if the group was a parent.
+     */
+    public boolean removeParent(String name) {
+        return parents.removeIf(parent -> parent.equalsIgnoreCase(name));
+    }
+
+    /**
+     * Checks if the given group is a direct parent of this group.
+     *
+     * @param name The name of the group.
+     * @return True if the group is a direct parent.
+     */
+    public boolean hasParent(String name) {
+        return parents.stream().anyMatch(parent -> parent.equalsIgnoreCase(name));
+    }
+
+    /**
+     * Adds the given global permission to the group.
      *
      * @param permission The permission to add.
      */
     public void addPermission(String permission) {
-        permissions.add(permission);
+        addPermission(permission, PermissionContext.GLOBAL);
     }
 
     /**
-     * Removes the given permission from the group.
+     * Adds the given permission to the group in the given context.
+     *
+     * @param permission The permission to add.
+     * @param context    The context of the permission.
+     */
+    public void addPermission(String permission, PermissionContext context) {
+        permissions.put(context, permissions.getOrDefault(context, PermissionNodes.EMPTY).with(permission));
+    }
+
+    /**
+     * Removes the given global permission from the group.
      *
      * @param permission The permission to remove.
      */
     public void removePermission(String permission) {
-        permissions.remove(permission);
+        removePermission(permission, PermissionContext.GLOBAL);
+    }
+
+    /**
+     * Removes the given permission from the group in the given context.
+     *
+     * @param permission The permission to remove.
+     * @param context    The context of the permission.
+     */
+    public void removePermission(String permission, PermissionContext context) {
+        var nodes = permissions.get(context);
+
+        if (nodes == null) {
+            return;
+        }
+
+        var changed = nodes.without(permission);
+
+        if (changed.size() == 0) {
+            permissions.remove(context);
+        } else {
+            permissions.put(context, changed);
+        }
     }
 
     /**
@@ -78,10 +253,20 @@ public class PermissionGroup {
     }
 
     /**
-     * @return The {@link Set} of permissions the group has.
+     * @return A new {@link Set} of the global permissions the group has.
      */
     public Set<String> permissions() {
-        return permissions;
+        var nodes = permissions.get(PermissionContext.GLOBAL);
+        return nodes == null ? new HashSet<>() : nodes.toSet();
+    }
+
+    /**
+     * @return A new {@link Map} of all permissions the group has, grouped by their context.
+     */
+    public Map<PermissionContext, Set<String>> permissionsByContext() {
+        var byContext = new HashMap<PermissionContext, Set<String>>();
+        permissions.forEach((context, nodes) -> byContext.put(context, nodes.toSet()));
+        return byContext;
     }
 
     /**
@@ -156,10 +341,23 @@ public class PermissionGroup {
     }
 
     /**
-     * Compares the given object with this group.
+     * Creates a copy of this group that can be modified without affecting this group. The inheritance of the copy isn't resolved, the copy
+     * shares the saved data with this group, so unsaved changes of both are saved with the copy.
+     *
+     * @return The copied group.
+     */
+    public PermissionGroup copy() {
+        var copy = new PermissionGroup(name, permissionsByContext(), prefix, suffix, weight, isDefault, parents);
+        copy.saved = saved;
+        return copy;
+    }
+
+    /**
+     * Compares the given object with this group. Groups are identified by their case-insensitive name only, so modifying a group doesn't
+     * change its identity.
      *
      * @param o The object to compare.
-     * @return True if the object is equal to this group.
+     * @return True if the object is a group with the same name.
      */
     @Override
     public boolean equals(Object o) {
@@ -170,16 +368,15 @@ public class PermissionGroup {
             return false;
         }
         PermissionGroup group = (PermissionGroup) o;
-        return weight == group.weight && isDefault == group.isDefault && Objects.equals(name, group.name) && Objects.equals(
-            permissions, group.permissions) && Objects.equals(prefix, group.prefix) && Objects.equals(suffix, group.suffix);
+        return GroupRegistry.key(name).equals(GroupRegistry.key(group.name));
     }
 
     /**
-     * @return The hash code of this group.
+     * @return The hash code of the name of this group.
      */
     @Override
     public int hashCode() {
-        return Objects.hash(name, permissions, prefix, suffix, weight, isDefault);
+        return GroupRegistry.key(name).hashCode();
     }
 
     /**
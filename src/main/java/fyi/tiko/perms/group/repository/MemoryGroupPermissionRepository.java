@@ -0,0 +1,255 @@
+package fyi.tiko.perms.group.repository;
+
+import fyi.tiko.perms.database.repository.PermissionRepository;
+import fyi.tiko.perms.group.GroupData;
+import fyi.tiko.perms.group.GroupInheritance;
+import fyi.tiko.perms.group.GroupRegistry;
+import fyi.tiko.perms.group.PermissionGroup;
+import fyi.tiko.perms.permission.PermissionContext;
+import fyi.tiko.perms.user.repository.MemoryUserRepository;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link GroupPermissionRepository} keeping the groups in memory. Nothing is persisted, the stored data is immutable and replaced on
+ * every change.
+ *
+ * @author tiko
+ */
+public class MemoryGroupPermissionRepository implements GroupPermissionRepository {
+
+    private static final GroupData EMPTY = new GroupData(Map.of(), "", "", 0, false, Set.of());
+
+    private final Map<String, StoredGroup> groups = new ConcurrentHashMap<>();
+    private final PermissionRepository permissionRepository;
+    private final MemoryUserRepository userRepository;
+    private final GroupRegistry groupRegistry;
+
+    /**
+     * Creates a new, empty repository.
+     *
+     * @param permissionRepository The repository the permissions of the groups are added to.
+     * @param userRepository       The repository the members of removed groups are removed from.
+     * @param groupRegistry        The registry of the loaded groups.
+     */
+    public MemoryGroupPermissionRepository(PermissionRepository permissionRepository, MemoryUserRepository userRepository,
+        GroupRegistry groupRegistry) {
+        this.permissionRepository = permissionRepository;
+        this.userRepository = userRepository;
+        this.groupRegistry = groupRegistry;
+    }
+
+    @Override
+    public boolean exists(String groupName) {
+        return groups.containsKey(GroupRegistry.key(groupName));
+    }
+
+    @Override
+    public void saveGroup(PermissionGroup group) {
+        var data = group.data();
+
+        if (data.equals(group.savedData())) {
+            return;
+        }
+
+        data.permissions().values().forEach(permissions -> permissions.forEach(permissionRepository::addPermission));
+
+        // A group that was removed in the meantime stays removed
+        if (groups.computeIfPresent(GroupRegistry.key(group.name()), (key, stored) -> new StoredGroup(stored.name(), data)) != null) {
+            group.markSaved(data);
+        }
+    }
+
+    @Override
+    public Set<PermissionGroup> groups() {
+        var loaded = new HashSet<PermissionGroup>();
+        groups.values().forEach(stored -> loaded.add(stored.toGroup()));
+
+        GroupInheritance.resolve(loaded);
+        return loaded;
+    }
+
+    @Override
+    public boolean addGroup(String name) {
+        return groups.putIfAbsent(GroupRegistry.key(name), new StoredGroup(name, EMPTY)) == null;
+    }
+
+    @Override
+    public void removeGroup(String name) {
+        var key = GroupRegistry.key(name);
+
+        groups.remove(key);
+        groups.replaceAll((other, stored) -> {
+            if (stored.data().parents().stream().noneMatch(parent -> GroupRegistry.key(parent).equals(key))) {
+                return stored;
+            }
+
+            var parents = new HashSet<>(stored.data().parents());
+            parents.removeIf(parent -> GroupRegistry.key(parent).equals(key));
+            return stored.with(new GroupData(stored.data().permissions(), stored.data().prefix(), stored.data().suffix(),
+                stored.data().weight(), stored.data().isDefault(), parents));
+        });
+
+        userRepository.removeGroupFromAll(name);
+    }
+
+    /**
+     * Adds a group with the given metadata, unless it exists already.
+     *
+     * @param name      The name of the group.
+     * @param prefix    The prefix of the group.
+     * @param suffix    The suffix of the group.
+     * @param weight    The weight of the group.
+     * @param isDefault True if the group is the default group.
+     * @return True if the group was added, false if it exists already.
+     */
+    public boolean addGroup(String name, String prefix, String suffix, int weight, boolean isDefault) {
+        var data = new GroupData(Map.of(), prefix, suffix, weight, isDefault, Set.of());
+        return groups.putIfAbsent(GroupRegistry.key(name), new StoredGroup(name, data)) == null;
+    }
+
+    @Override
+    public boolean addPermission(String groupName, String permission, PermissionContext context) {
+        permissionRepository.addPermission(permission);
+
+        var changed = new boolean[1];
+
+        groups.computeIfPresent(GroupRegistry.key(groupName), (key, stored) -> {
+            var permissions = new HashMap<PermissionContext, Set<String>>(stored.data().permissions());
+            var nodes = new HashSet<>(permissions.getOrDefault(context, Set.of()));
+
+            if (!nodes.add(permission)) {
+                return stored;
+            }
+
+            permissions.put(context, nodes);
+            changed[0] = true;
+
+            return stored.with(new GroupData(permissions, stored.data().prefix(), stored.data().suffix(), stored.data().weight(),
+                stored.data().isDefault(), stored.data().parents()));
+        });
+
+        return changed[0];
+    }
+
+    @Override
+    public boolean addParent(String groupName, String parent) {
+        if (!exists(parent)) {
+            return false;
+        }
+
+        var changed = new boolean[1];
+
+        groups.computeIfPresent(GroupRegistry.key(groupName), (key, stored) -> {
+            var parents = new HashSet<>(stored.data().parents());
+
+            if (!parents.add(parent)) {
+                return stored;
+            }
+
+            changed[0] = true;
+
+            return stored.with(new GroupData(stored.data().permissions(), stored.data().prefix(), stored.data().suffix(),
+                stored.data().weight(), stored.data().isDefault(), parents));
+        });
+
+        return changed[0];
+    }
+
+    /**
+     * Creates a new group with the data of the given group. The copy is never the default group.
+     *
+     * @param group The name of the group to copy.
+     * @param clone The name of the new group.
+     * @return The number of copied permissions and parents, -1 if the group doesn't exist or the new group exists already.
+     */
+    public int cloneGroup(String group, String clone) {
+        var stored = groups.get(GroupRegistry.key(group));
+
+        if (stored == null) {
+            return -1;
+        }
+
+        var data = stored.data();
+        var copy = new GroupData(data.permissions(), data.prefix(), data.suffix(), data.weight(), false, data.parents());
+
+        if (groups.putIfAbsent(GroupRegistry.key(clone), new StoredGroup(clone, copy)) != null) {
+            return -1;
+        }
+
+        return data.permissions().values().stream().mapToInt(Set::size).sum() + data.parents().size();
+    }
+
+    /**
+     * Renames the given group and the references of the other groups to it.
+     *
+     * @param group The current name of the group.
+     * @param name  The new name of the group.
+     * @return True if the group was renamed, false if it doesn't exist or another group has the new name.
+     */
+    public boolean renameGroup(String group, String name) {
+        var key = GroupRegistry.key(group);
+        var renamed = GroupRegistry.key(name);
+        var stored = groups.get(key);
+
+        if (stored == null || (!renamed.equals(key) && groups.containsKey(renamed))) {
+            return false;
+        }
+
+        groups.remove(key);
+        groups.put(renamed, new StoredGroup(name, stored.data()));
+        groups.replaceAll((other, child) -> {
+            if (child.data().parents().stream().noneMatch(parent -> GroupRegistry.key(parent).equals(key))) {
+                return child;
+            }
+
+            var parents = new HashSet<String>();
+            child.data().parents().forEach(parent -> parents.add(GroupRegistry.key(parent).equals(key) ? name : parent));
+
+            return child.with(new GroupData(child.data().permissions(), child.data().prefix(), child.data().suffix(),
+                child.data().weight(), child.data().isDefault(), parents));
+        });
+
+        return true;
+    }
+
+    @Override
+    public PermissionGroup byName(String name) {
+        var stored = groups.get(GroupRegistry.key(name));
+
+        if (stored == null) {
+            return null;
+        }
+
+        var group = stored.toGroup();
+        GroupInheritance.resolve(group, groupRegistry.all());
+        return group;
+    }
+
+    /**
+     * The stored data of a group.
+     *
+     * @param name The name of the group.
+     * @param data The persisted fields of the group.
+     */
+    private record StoredGroup(String name, GroupData data) {
+
+        /**
+         * @param data The new data of the group.
+         * @return The stored group with the given data.
+         */
+        private StoredGroup with(GroupData data) {
+            return new StoredGroup(name, data);
+        }
+
+        /**
+         * @return A new group with the stored data. The inherited permissions aren't resolved.
+         */
+        private PermissionGroup toGroup() {
+            return new PermissionGroup(name, data.permissions(), data.prefix(), data.suffix(), data.weight(), data.isDefault(), data.parents());
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package fyi.tiko.perms.group.repository;
+
+import fyi.tiko.perms.database.DatabaseInteraction;
+import fyi.tiko.perms.database.Dialect;
+import fyi.tiko.perms.database.repository.Change;
+import fyi.tiko.perms.database.repository.SqlChangelogRepository;
+import fyi.tiko.perms.database.repository.SqlPermissionRepository;
+import fyi.tiko.perms.group.GroupInheritance;
+import fyi.tiko.perms.group.GroupRegistry;
+import fyi.tiko.perms.group.PermissionGroup;
+import fyi.tiko.perms.permission.PermissionContext;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * The {@link GroupPermissionRepository} storing the groups in the group tables of a SQL database.
+ *
+ * @author tiko
+ */
+public class SqlGroupPermissionRepository extends DatabaseInteraction implements GroupPermissionRepository {
+
+    private static final List<String> REMOVE_GROUP = List.of(
+        "DELETE FROM group_parents WHERE (SELECT id FROM perm_groups WHERE name=?) IN (group_id, parent_id);",
+        "DELETE FROM player_groups WHERE group_id=(SELECT id FROM perm_groups WHERE name=?);",
+        "DELETE FROM group_permissions WHERE group_id=(SELECT id FROM perm_groups WHERE name=?);",
+        "DELETE FROM group_metadata WHERE group_id=(SELECT id FROM perm_groups WHERE name=?);",
+        "DELETE FROM perm_groups WHERE name=?;"
+    );
+
+    private final SqlPermissionRepository permissionRepository;
+    private final SqlChangelogRepository changelog;
+    private final GroupRegistry groupRegistry;
+    private final String upsertPermission;
+    private final String upsertParent;
+    private final String addGroup;
+    private final String addPermission;
+    private final String addParent;
+
+    /**
+     * Constructs a new {@link DatabaseInteraction} with the given {@link Logger} and {@link DataSource}.
+     *
+     * @param logger               the logger of the plugin using this holder
+     * @param source               the data source to use
+     * @param dialect              the dialect of the database
+     * @param permissionRepository the repository the permissions of the groups are added to
+     * @param groupRegistry        the registry of the loaded groups
+     * @param changelog            the changelog the changes of the groups are recorded in
+     */
+    public SqlGroupPermissionRepository(Logger logger, DataSource source, Dialect dialect, SqlPermissionRepository permissionRepository,
+        GroupRegistry groupRegistry, SqlChangelogRepository changelog) {
+        super(logger, source);
+
+        this.permissionRepository = permissionRepository;
+        this.groupRegistry = groupRegistry;
+        this.changelog = changelog;
+        upsertPermission = dialect.upsert("group_permissions", List.of("group_id", "permission_id", "server", "world"), 4,
+            "SELECT g.id, p.id, ?, ? FROM perm_groups g JOIN permissions p ON p.permission=? WHERE g.name=?");
+        upsertParent = dialect.upsert("group_parents", List.of("group_id", "parent_id"), 2,
+            "SELECT g.id, p.id FROM perm_groups g JOIN perm_groups p ON p.name=? WHERE g.name=?");
+        addGroup = dialect.insertIgnore("perm_groups", List.of("name"), "VALUES (?)");
+        addPermission = dialect.insertIgnore("group_permissions", List.of("group_id", "permission_id", "server", "world"),
+            "SELECT g.id, p.id, ?, ? FROM perm_groups g JOIN permissions p ON p.permission=? WHERE g.name=?");
+        addParent = dialect.insertIgnore("group_parents", List.of("group_id", "parent_id"),
+            "SELECT g.id, p.id FROM perm_groups g JOIN perm_groups p ON p.name=? WHERE g.name=?");
+    }
+
+    @Override
+    public boolean exists(String groupName) {
+        try (var conn = conn(); var stmt = conn.prepareStatement("SELECT name FROM perm_groups WHERE name=?")) {
+            stmt.setString(1, groupName);
+            var rs = stmt.executeQuery();
+            return rs.next();
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to check if group exists", exception);
+        }
+        return false;
+    }
+
+    /**
+     * Saves the changes made to the given group since it was last loaded or saved. Groups without changes are skipped, otherwise only the
+     * changed metadata and the added and removed permissions and parents are written in batches within a single transaction.
+     *
+     * @param group the group to save
+     */
+    @Override
+    public void saveGroup(PermissionGroup group) {
+        var data = group.data();
+        var saved = group.savedData();
+
+        if (data.equals(saved)) {
+            return;
+        }
+
+        var name = group.name();
+        var added = new HashSet<String>();
+
+        try {
+            transaction(conn -> {
+                // The driver reports matched rows, so no row means the group was removed in the meantime
+                try (var stmt = conn.prepareStatement("UPDATE perm_groups SET default_group=? WHERE name=?;")) {
+                    stmt.setBoolean(1, data.isDefault());
+                    stmt.setString(2, name);
+
+                    if (stmt.executeUpdate() == 0) {
+                        return;
+                    }
+                }
+
+                if (data.metadataDiffers(saved)) {
+                    try (var stmt = conn.prepareStatement("UPDATE group_metadata SET prefix=?, suffix=?, weight=? "
+                        + "WHERE group_id=(SELECT id FROM perm_groups WHERE name=?);")) {
+                        stmt.setString(1, data.prefix());
+                        stmt.setString(2, data.suffix());
+                        stmt.setInt(3, data.weight());
+                        stmt.setString(4, name);
+                        stmt.executeUpdate();
+                    }
+                }
+
+                try (var stmt = conn.prepareStatement(upsertPermission)) {
+                    for (var entry : data.permissions().entrySet()) {
+                        var context = entry.getKey();
+
+                        for (var permission : entry.getValue()) {
+                            if (saved.hasPermission(permission, context)) {
+                                continue;
+                            }
+
+                            added.add(permission);
+
+                            stmt.setString(1, context.server());
+                            stmt.setString(2, context.world());
+                            stmt.setString(3, permission);
+                            stmt.setString(4, name);
+                            stmt.addBatch();
+                        }
+                    }
+
+                    // The permissions have to exist before they can be referenced
+                    permissionRepository.addPermissions(conn, added);
+                    stmt.executeBatch();
+                }
+
+                try (var stmt = conn.prepareStatement("DELETE FROM group_permissions WHERE group_id=(SELECT id FROM perm_groups WHERE name=?) "
+                    + "AND permission_id=(SELECT id FROM permissions WHERE permission=?) AND server=? AND world=?;")) {
+                    for (var entry : saved.permissions().entrySet()) {
+                        var context = entry.getKey();
+
+                        for (var permission : entry.getValue()) {
+                            if (data.hasPermission(permission, context)) {
+                                continue;
+                            }
+
+                            stmt.setString(1, name);
+                            stmt.setString(2, permission);
+                            stmt.setString(3, context.server());
+                            stmt.setString(4, context.world());
+                            stmt.addBatch();
+                        }
+                    }
+
+                    stmt.executeBatch();
+                }
+
+                try (var stmt = conn.prepareStatement(upsertParent)) {
+                    for (var parent : data.parents()) {
+                        if (saved.parents().contains(parent)) {
+                            continue;
+                        }
+
+                        stmt.setString(1, parent);
+                        stmt.setString(2, name);
+                        stmt.addBatch();
+                    }
+
+                    stmt.executeBatch();
+                }
+
+                try (var stmt = conn.prepareStatement("DELETE FROM group_parents WHERE group_id=(SELECT id FROM perm_groups WHERE name=?) "
+                    + "AND parent_id=(SELECT id FROM perm_groups WHERE name=?);")) {
+                    for (var parent : saved.parents()) {
+                        if (data.parents().contains(parent)) {
+                            continue;
+                        }
+
+                        stmt.setString(1, name);
+                        stmt.setString(2, parent);
+                        stmt.addBatch();
+                    }
+
+                    stmt.executeBatch();
+                }
+
+                changelog.record(conn, Change.Kind.GROUP, name);
+            });
+
+            permissionRepository.remember(added);
+            group.markSaved(data);
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to save group", exception);
+        }
+    }
+
+    /**
+     * Loads all groups of the database with a fixed number of queries on a single connection, regardless of the number of groups.
+     *
+     * @return a set of all groups in the database
+     */
+    @Override
+    public Set<PermissionGroup> groups() {
+        try (var conn = conn()) {
+            var groups = load(conn, null);
+
+            // The closure of the inheritance is computed once all groups are known
+            GroupInheritance.resolve(groups);
+            return groups;
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to get groups", exception);
+        }
+
+        return Collections.emptySet();
+    }
+
+    /**
+     * Adds the given group and its metadata to the database in one transaction. A group that exists already, for example because another
+     * server added it, is kept as it is.
+     *
+     * @param name the name of the group to add
+     * @return true if the group was added, false if it existed already
+     */
+    @Override
+    public boolean addGroup(String name) {
+        try {
+            return update(conn -> {
+                try (var stmt = conn.prepareStatement(addGroup)) {
+                    stmt.setString(1, name);
+
+                    if (stmt.executeUpdate() == 0) {
+                        return 0;
+                    }
+                }
+
+                try (var stmt = conn.prepareStatement(
+                    "INSERT INTO group_metadata(group_id, prefix, suffix, weight) SELECT id, ?, ?, ? FROM perm_groups WHERE name=?;")) {
+                    stmt.setString(1, "");
+                    stmt.setString(2, "");
+                    stmt.setInt(3, 0);
+                    stmt.setString(4, name);
+                    stmt.executeUpdate();
+                }
+
+                return changed(conn, name, 1);
+            });
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to add group", exception);
+        }
+        return false;
+    }
+
+    @Override
+    public void removeGroup(String name) {
+        try {
+            transaction(conn -> {
+                // The rows referencing the group are removed before the group itself
+                for (var query : REMOVE_GROUP) {
+                    try (var stmt = conn.prepareStatement(query)) {
+                        stmt.setString(1, name);
+                        stmt.executeUpdate();
+                    }
+                }
+
+                // The other servers remove the group from their users themselves, the removed memberships aren't recorded per user
+                changelog.record(conn, Change.Kind.GROUP, name);
+            });
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to remove group", exception);
+        }
+    }
+
+    /**
+     * Adds the given permission to the given group with a single statement. A missing group selects no row, so nothing is inserted, and an
+     * existing permission is kept as it is.
+     *
+     * @param groupName  The name of the group.
+     * @param permission The permission to add.
+     * @param context    The context of the permission.
+     * @return True if the storage changed.
+     */
+    @Override
+    public boolean addPermission(String groupName, String permission, PermissionContext context) {
+        permissionRepository.addPermission(permission);
+
+        try {
+            return update(conn -> {
+                try (var stmt = conn.prepareStatement(addPermission)) {
+                    stmt.setString(1, context.server());
+                    stmt.setString(2, context.world());
+                    stmt.setString(3, permission);
+                    stmt.setString(4, groupName);
+
+                    return changed(conn, groupName, stmt.executeUpdate());
+                }
+            });
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to add permission to group", exception);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean addParent(String groupName, String parent) {
+        try {
+            return update(conn -> {
+                try (var stmt = conn.prepareStatement(addParent)) {
+                    stmt.setString(1, parent);
+                    stmt.setString(2, groupName);
+
+                    return changed(conn, groupName, stmt.executeUpdate());
+                }
+            });
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to add parent to group", exception);
+        }
+        return false;
+    }
+
+    /**
+     * Records a change of the given group if the statement changed any rows.
+     *
+     * @param conn the connection of the change
+     * @param name the name of the group
+     * @param rows the number of changed rows
+     * @return the number of changed rows
+     * @throws SQLException if the change can't be recorded
+     */
+    private int changed(Connection conn, String name, int rows) throws SQLException {
+        if (rows > 0) {
+            changelog.record(conn, Change.Kind.GROUP, name);
+        }
+        return rows;
+    }
+
+    @Override
+    public PermissionGroup byName(String name) {
+        try (var conn = conn()) {
+            var groups = load(conn, name);
+
+            if (groups.isEmpty()) {
+                return null;
+            }
+
+            var group = groups.iterator().next();
+            GroupInheritance.resolve(group, groupRegistry.all());
+            return group;
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to get group by name", exception);
+        }
+        return null;
+    }
+
+    /**
+     * Loads the groups, their metadata, permissions and parents with one query per table and assembles them in memory. The inherited
+     * permissions aren't resolved.
+     *
+     * @param conn The connection to use.
+     * @param name The name of the only group to load or null to load all groups.
+     * @return The loaded groups.
+     * @throws SQLException If a query fails.
+     */
+    private Set<PermissionGroup> load(Connection conn, String name) throws SQLException {
+        var permissions = new HashMap<String, Map<PermissionContext, Set<String>>>();
+        var parents = new HashMap<String, Set<String>>();
+
+        try (var stmt = prepare(conn, "SELECT g.name, p.permission, gp.server, gp.world FROM group_permissions gp "
+            + "JOIN perm_groups g ON g.id = gp.group_id JOIN permissions p ON p.id = gp.permission_id", "g.name", name)) {
+            var rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                var context = PermissionContext.of(rs.getString("server"), rs.getString("world"));
+                permissions.computeIfAbsent(GroupRegistry.key(rs.getString("name")), key -> new HashMap<>())
+                    .computeIfAbsent(context, key -> new HashSet<>())
+                    .add(rs.getString("permission"));
+            }
+        }
+
+        try (var stmt = prepare(conn, "SELECT g.name, p.name AS parent FROM group_parents gp "
+            + "JOIN perm_groups g ON g.id = gp.group_id JOIN perm_groups p ON p.id = gp.parent_id", "g.name", name)) {
+            var rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                parents.computeIfAbsent(GroupRegistry.key(rs.getString("name")), key -> new HashSet<>()).add(rs.getString("parent"));
+            }
+        }
+
+        var groups = new HashSet<PermissionGroup>();
+
+        try (var stmt = prepare(conn, "SELECT g.name, g.default_group, m.prefix, m.suffix, m.weight FROM perm_groups g "
+            + "LEFT JOIN group_metadata m ON m.group_id = g.id", "g.name", name)) {
+            var rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                var groupName = rs.getString("name");
+                var key = GroupRegistry.key(groupName);
+
+                groups.add(new PermissionGroup(
+                    groupName,
+                    permissions.getOrDefault(key, Map.of()),
+                    rs.getString("prefix"),
+                    rs.getString("suffix"),
+                    rs.getInt("weight"),
+                    rs.getBoolean("default_group"),
+                    parents.getOrDefault(key, Set.of())
+                ));
+            }
+        }
+
+        return groups;
+    }
+
+    /**
+     * Prepares the given query, optionally restricted to a single group.
+     *
+     * @param conn   The connection to use.
+     * @param query  The query without a where clause.
+     * @param column The column containing the name of the group.
+     * @param name   The name of the group or null to select the rows of all groups.
+     * @return The prepared statement.
+     * @throws SQLException If the statement can't be prepared.
+     */
+    private static PreparedStatement prepare(Connection conn, String query, String column, String name) throws SQLException {
+        if (name == null) {
+            return conn.prepareStatement(query);
+        }
+
+        var stmt = conn.prepareStatement(query + " WHERE " + column + "=?");
+        stmt.setString(1, name);
+        return stmt;
+    }
+}
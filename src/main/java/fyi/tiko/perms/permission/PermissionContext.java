@@ -0,0 +1,119 @@
+package fyi.tiko.perms.permission;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The context a permission node applies in. An empty server or world means the node applies on every server or in every world.
+ *
+ * @param server The lower case name of the server the node applies on, empty for every server.
+ * @param world  The lower case name of the world the node applies in, empty for every world.
+ * @author tiko
+ */
+public record PermissionContext(String server, String world) {
+
+    /**
+     * The context of nodes that apply everywhere.
+     */
+    public static final PermissionContext GLOBAL = new PermissionContext("", "");
+
+    private static final String SERVER_ARGUMENT = "server=";
+    private static final String WORLD_ARGUMENT = "world=";
+
+    /**
+     * Creates a new context with the given server and world.
+     *
+     * @param server The server the node applies on, null or empty for every server.
+     * @param world  The world the node applies in, null or empty for every world.
+     * @return The created context.
+     */
+    public static PermissionContext of(String server, String world) {
+        var normalizedServer = server == null ? "" : server.toLowerCase(Locale.ROOT);
+        var normalizedWorld = world == null ? "" : world.toLowerCase(Locale.ROOT);
+
+        if (normalizedServer.isEmpty() && normalizedWorld.isEmpty()) {
+            return GLOBAL;
+        }
+
+        return new PermissionContext(normalizedServer, normalizedWorld);
+    }
+
+    /**
+     * Reads the context from the given command arguments. Arguments in the format {@code server=<server>} and {@code world=<world>} are taken
+     * into account.
+     *
+     * @param args The command arguments.
+     * @return The context of the arguments.
+     */
+    public static PermissionContext parse(String[] args) {
+        String server = null;
+        String world = null;
+
+        for (var arg : args) {
+            if (arg.regionMatches(true, 0, SERVER_ARGUMENT, 0, SERVER_ARGUMENT.length())) {
+                server = arg.substring(SERVER_ARGUMENT.length());
+            } else if (arg.regionMatches(true, 0, WORLD_ARGUMENT, 0, WORLD_ARGUMENT.length())) {
+                world = arg.substring(WORLD_ARGUMENT.length());
+            }
+        }
+
+        return of(server, world);
+    }
+
+    /**
+     * Removes all context arguments from the given command arguments.
+     *
+     * @param args The command arguments.
+     * @return The arguments without the context arguments.
+     */
+    public static String[] strip(String[] args) {
+        return Arrays.stream(args)
+            .filter(arg -> !arg.regionMatches(true, 0, SERVER_ARGUMENT, 0, SERVER_ARGUMENT.length()))
+            .filter(arg -> !arg.regionMatches(true, 0, WORLD_ARGUMENT, 0, WORLD_ARGUMENT.length()))
+            .toArray(String[]::new);
+    }
+
+    /**
+     * @return True if the context applies everywhere.
+     */
+    public boolean isGlobal() {
+        return server.isEmpty() && world.isEmpty();
+    }
+
+    /**
+     * Checks if the context applies on the given server in the given world.
+     *
+     * @param server The name of the server.
+     * @param world  The name of the world, empty if the world is unknown.
+     * @return True if nodes of this context apply.
+     */
+    public boolean appliesTo(String server, String world) {
+        return (this.server.isEmpty() || this.server.equalsIgnoreCase(server)) && (this.world.isEmpty() || this.world.equalsIgnoreCase(world));
+    }
+
+    /**
+     * Formats the given node together with this context for chat messages.
+     *
+     * @param node The node to format.
+     * @return The node, followed by the context if the context isn't global.
+     */
+    public String describe(String node) {
+        return isGlobal() ? node : node + " §8(§f" + this + "§8)";
+    }
+
+    /**
+     * @return The context in the same format used by the command arguments.
+     */
+    @Override
+    public String toString() {
+        if (isGlobal()) {
+            return "global";
+        }
+
+        if (server.isEmpty()) {
+            return WORLD_ARGUMENT + world;
+        }
+
+        return world.isEmpty() ? SERVER_ARGUMENT + server : SERVER_ARGUMENT + server + " " + WORLD_ARGUMENT + world;
+    }
+}
@@ -0,0 +1,132 @@
+package fyi.tiko.perms.permission;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps every known permission to a dense int id. Permissions are stored in lower case, so each permission is only held once in memory no
+ * matter how many groups or users have it. The ids are used as bit indices in {@link PermissionNodes}.
+ *
+ * @author tiko
+ */
+public final class PermissionDictionary {
+
+    private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[256];
+    private static volatile int size;
+
+    /**
+     * Private constructor to hide the implicit public one.
+     */
+    private PermissionDictionary() {
+    }
+
+    /**
+     * Retrieves the id of the given permission without adding it to the dictionary.
+     *
+     * @param permission The permission to look up.
+     * @return The id of the permission or -1 if the permission is unknown.
+     */
+    public static int id(String permission) {
+        var id = IDS.get(permission);
+
+        if (id == null) {
+            // Permissions are stored in lower case, #toLowerCase() returns the same instance if there is nothing to convert
+            var lowerCase = permission.toLowerCase(Locale.ROOT);
+
+            if (lowerCase != permission) {
+                id = IDS.get(lowerCase);
+            }
+        }
+
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Adds the given permission to the dictionary if it is unknown.
+     *
+     * @param permission The permission to add.
+     * @return The id of the permission.
+     */
+    public static int intern(String permission) {
+        var id = id(permission);
+
+        if (id != -1) {
+            return id;
+        }
+
+        synchronized (IDS) {
+            var canonical = permission.toLowerCase(Locale.ROOT);
+            var existing = IDS.get(canonical);
+
+            if (existing != null) {
+                return existing;
+            }
+
+            id = size;
+
+            if (id == names.length) {
+                names = Arrays.copyOf(names, id * 2);
+            }
+
+            names[id] = canonical;
+            size = id + 1;
+            IDS.put(canonical, id);
+
+            return id;
+        }
+    }
+
+    /**
+     * Retrieves the canonical instance of the given permission node, adding it to the dictionary if it is unknown. Negated nodes keep their
+     * leading {@code -}.
+     *
+     * @param node The node to canonicalize.
+     * @return The canonical node.
+     */
+    public static String canonical(String node) {
+        if (node.startsWith("-")) {
+            return "-" + name(intern(node.substring(1)));
+        }
+
+        return name(intern(node));
+    }
+
+    /**
+     * Normalizes the given permission node without adding it to the dictionary. Used for nodes that are only looked up or removed, so typos
+     * don't end up in the dictionary. Negated nodes keep their leading {@code -}.
+     *
+     * @param node The node to normalize.
+     * @return The canonical node if it is known, otherwise the node in lower case.
+     */
+    public static String normalize(String node) {
+        var negated = node.startsWith("-");
+        var permission = (negated ? node.substring(1) : node).toLowerCase(Locale.ROOT);
+        var id = id(permission);
+        var normalized = id == -1 ? permission : name(id);
+
+        return negated ? "-" + normalized : normalized;
+    }
+
+    /**
+     * Retrieves the permission with the given id.
+     *
+     * @param id The id of the permission.
+     * @return The permission with the given id.
+     */
+    public static String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return All known permissions, ordered by their id.
+     */
+    public static List<String> names() {
+        var count = size;
+        return Collections.unmodifiableList(Arrays.asList(names).subList(0, count));
+    }
+}
@@ -0,0 +1,331 @@
+package fyi.tiko.perms.permission;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An immutable, compact set of permission nodes. Exact nodes are stored as bits of their {@link PermissionDictionary} id, split into granted
+ * and negated nodes. Wildcard nodes like {@code a.b.*} are kept as lower case strings and compiled into a {@link PermissionTrie} when it is
+ * first needed.
+ * <p>
+ * Node sets are built with a {@link Builder} and changed by copying, see {@link #with(String)} and {@link #without(String)}, so they can be
+ * shared with other threads without a lock.
+ *
+ * @author tiko
+ */
+public final class PermissionNodes {
+
+    /**
+     * A node set that doesn't contain any node.
+     */
+    public static final PermissionNodes EMPTY = new PermissionNodes(new BitSet(), new BitSet(), Set.of());
+
+    private final BitSet granted;
+    private final BitSet negated;
+    private final Set<String> wildcards;
+    // Compiled when it is first needed, compiling it twice on a race yields the same trie
+    private volatile PermissionTrie wildcardTrie;
+
+    /**
+     * Creates a new node set. The given sets mustn't be modified afterwards.
+     *
+     * @param granted   The ids of the granted exact nodes.
+     * @param negated   The ids of the negated exact nodes.
+     * @param wildcards The lower case wildcard nodes.
+     */
+    private PermissionNodes(BitSet granted, BitSet negated, Set<String> wildcards) {
+        this.granted = granted;
+        this.negated = negated;
+        this.wildcards = wildcards;
+    }
+
+    /**
+     * Creates a new node set from the given nodes.
+     *
+     * @param nodes The nodes to add.
+     * @return The created node set.
+     */
+    public static PermissionNodes of(Collection<String> nodes) {
+        var builder = builder();
+        nodes.forEach(builder::add);
+        return builder.build();
+    }
+
+    /**
+     * @return A new builder to combine nodes from multiple sources.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Checks if the given node is a wildcard node.
+     *
+     * @param node The node to check.
+     * @return True if the node ends with {@code *}.
+     */
+    private static boolean isWildcard(String node) {
+        return node.equals("*") || node.equals("-*") || node.endsWith(".*");
+    }
+
+    /**
+     * Normalizes the given wildcard node, so it can be stored and looked up.
+     *
+     * @param node The wildcard node.
+     * @return The lower case node.
+     */
+    private static String normalizeWildcard(String node) {
+        return node.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Creates a copy of these nodes with the given node added.
+     *
+     * @param node The node to add, negated nodes start with {@code -}.
+     * @return The changed copy, or these nodes if the node was already present.
+     */
+    public PermissionNodes with(String node) {
+        if (contains(node)) {
+            return this;
+        }
+
+        return builder().addAll(this).add(node).build();
+    }
+
+    /**
+     * Creates a copy of these nodes without the given node.
+     *
+     * @param node The node to remove, negated nodes start with {@code -}.
+     * @return The changed copy, or these nodes if the node wasn't present.
+     */
+    public PermissionNodes without(String node) {
+        if (!contains(node)) {
+            return this;
+        }
+
+        if (isWildcard(node)) {
+            var changed = new HashSet<>(wildcards);
+            changed.remove(normalizeWildcard(node));
+            return new PermissionNodes(granted, negated, Set.copyOf(changed));
+        }
+
+        var negation = node.startsWith("-");
+        var bits = (BitSet) (negation ? negated : granted).clone();
+        bits.clear(PermissionDictionary.id(negation ? node.substring(1) : node));
+
+        return negation ? new PermissionNodes(granted, bits, wildcards) : new PermissionNodes(bits, negated, wildcards);
+    }
+
+    /**
+     * Checks if the given node is present. This doesn't resolve wildcards, use {@link #resolve(String)} for permission checks.
+     *
+     * @param node The node to check, negated nodes start with {@code -}.
+     * @return True if the node is present.
+     */
+    public boolean contains(String node) {
+        if (isWildcard(node)) {
+            return wildcards.contains(normalizeWildcard(node));
+        }
+
+        var bits = node.startsWith("-") ? negated : granted;
+        var id = PermissionDictionary.id(node.startsWith("-") ? node.substring(1) : node);
+
+        return id != -1 && bits.get(id);
+    }
+
+    /**
+     * Resolves the given permission against the nodes. An exact node beats a wildcard node, a negation beats a grant. Permissions are
+     * case-insensitive.
+     *
+     * @param permission The permission to resolve.
+     * @return True if the permission is granted, false if it is negated and null if no node matches the permission.
+     */
+    public Boolean resolve(String permission) {
+        // The wildcard nodes are stored in lower case, like the exact nodes
+        var lowerCase = permission.toLowerCase(Locale.ROOT);
+
+        var id = PermissionDictionary.id(lowerCase);
+
+        if (id != -1) {
+            if (negated.get(id)) {
+                return false;
+            }
+
+            if (granted.get(id)) {
+                return true;
+            }
+        }
+
+        return wildcards().resolve(lowerCase);
+    }
+
+    /**
+     * @return The granted exact nodes, indexed by their {@link PermissionDictionary} id. Mustn't be modified.
+     */
+    public BitSet granted() {
+        return granted;
+    }
+
+    /**
+     * @return The negated exact nodes, indexed by their {@link PermissionDictionary} id. Mustn't be modified.
+     */
+    public BitSet negated() {
+        return negated;
+    }
+
+    /**
+     * @return The compiled wildcard nodes, compiled now if they weren't needed before.
+     */
+    public PermissionTrie wildcards() {
+        var trie = wildcardTrie;
+
+        if (trie == null) {
+            trie = wildcards.isEmpty() ? PermissionTrie.EMPTY : PermissionTrie.compile(wildcards);
+            wildcardTrie = trie;
+        }
+
+        return trie;
+    }
+
+    /**
+     * @return The amount of nodes.
+     */
+    public int size() {
+        return granted.cardinality() + negated.cardinality() + wildcards.size();
+    }
+
+    /**
+     * @return All nodes as strings, negated nodes start with {@code -}.
+     */
+    public Set<String> toSet() {
+        var nodes = new HashSet<>(wildcards);
+
+        granted.stream().forEach(id -> nodes.add(PermissionDictionary.name(id)));
+        negated.stream().forEach(id -> nodes.add("-" + PermissionDictionary.name(id)));
+
+        return nodes;
+    }
+
+    /**
+     * Compares the given object with these nodes.
+     *
+     * @param o The object to compare.
+     * @return True if the object contains the same nodes.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        var nodes = (PermissionNodes) o;
+        return granted.equals(nodes.granted) && negated.equals(nodes.negated) && wildcards.equals(nodes.wildcards);
+    }
+
+    /**
+     * @return The hash code of these nodes.
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(granted, negated, wildcards);
+    }
+
+    /**
+     * Used to combine {@link PermissionNodes} from single nodes and other node sets. A builder isn't thread-safe, the built node sets are.
+     */
+    public static final class Builder {
+        private BitSet granted = new BitSet();
+        private BitSet negated = new BitSet();
+        private Set<String> wildcards = new HashSet<>();
+
+        /**
+         * Private constructor, use {@link PermissionNodes#builder()}.
+         */
+        private Builder() {
+        }
+
+        /**
+         * Adds the given node.
+         *
+         * @param node The node to add, negated nodes start with {@code -}.
+         * @return This builder.
+         */
+        public Builder add(String node) {
+            if (isWildcard(node)) {
+                wildcards.add(normalizeWildcard(node));
+                return this;
+            }
+
+            var negation = node.startsWith("-");
+            (negation ? negated : granted).set(PermissionDictionary.intern(negation ? node.substring(1) : node));
+            return this;
+        }
+
+        /**
+         * Adds all nodes of the given node set.
+         *
+         * @param nodes The nodes to add.
+         * @return This builder.
+         */
+        public Builder addAll(PermissionNodes nodes) {
+            granted.or(nodes.granted);
+            negated.or(nodes.negated);
+            wildcards.addAll(nodes.wildcards);
+            return this;
+        }
+
+        /**
+         * Adds the nodes of the given node set whose permission isn't decided by this builder yet, granted or negated. Exact nodes are
+         * compared by their id and wildcard nodes by the permissions they cover, so an inherited node never overrides a closer one.
+         *
+         * @param nodes The inherited nodes.
+         * @return This builder.
+         */
+        public Builder inherit(PermissionNodes nodes) {
+            var decided = (BitSet) granted.clone();
+            decided.or(negated);
+
+            var inheritedGranted = (BitSet) nodes.granted.clone();
+            inheritedGranted.andNot(decided);
+
+            var inheritedNegated = (BitSet) nodes.negated.clone();
+            inheritedNegated.andNot(decided);
+
+            granted.or(inheritedGranted);
+            negated.or(inheritedNegated);
+
+            var decidedWildcards = new HashSet<String>();
+            wildcards.forEach(wildcard -> decidedWildcards.add(covered(wildcard)));
+
+            nodes.wildcards.stream()
+                .filter(wildcard -> !decidedWildcards.contains(covered(wildcard)))
+                .forEach(wildcards::add);
+            return this;
+        }
+
+        /**
+         * @return The built node set. The builder can't be used afterwards.
+         */
+        public PermissionNodes build() {
+            var nodes = new PermissionNodes(granted, negated, Set.copyOf(wildcards));
+            granted = null;
+            negated = null;
+            wildcards = null;
+            return nodes;
+        }
+
+        /**
+         * @param wildcard The wildcard node.
+         * @return The wildcard node without its negation, naming the permissions it covers.
+         */
+        private static String covered(String wildcard) {
+            return wildcard.startsWith("-") ? wildcard.substring(1) : wildcard;
+        }
+    }
+}
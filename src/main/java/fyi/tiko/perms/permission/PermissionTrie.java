@@ -0,0 +1,218 @@
+package fyi.tiko.perms.permission;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A compiled, dot-segmented tree of permission nodes. Besides exact nodes like {@code worldedit.region.set} it resolves wildcard nodes like
+ * {@code worldedit.region.*} and their negations ({@code -worldedit.region.*}). The cost of a lookup only depends on the depth of the checked
+ * permission, not on the amount of nodes in the tree.
+ * <p>
+ * The most specific node wins: an exact node beats a wildcard node and a deeper wildcard node beats a shallower one. If a node is granted and
+ * negated at the same time, the negation wins.
+ *
+ * @author tiko
+ */
+public final class PermissionTrie {
+
+    /**
+     * A trie that doesn't contain any node.
+     */
+    public static final PermissionTrie EMPTY = new PermissionTrie(new Node());
+
+    private final Node root;
+
+    /**
+     * Creates a new trie with the given root node. The node mustn't be modified afterwards.
+     *
+     * @param root The root node of the trie.
+     */
+    private PermissionTrie(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Compiles the given permission nodes into a new trie.
+     *
+     * @param permissions The nodes to compile.
+     * @return The compiled trie.
+     */
+    public static PermissionTrie compile(Collection<String> permissions) {
+        return builder().addAll(permissions).build();
+    }
+
+    /**
+     * @return A new builder to compile a trie from multiple sources.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Resolves the given permission against the nodes of this trie. The segments are compared exactly, callers pass the permission in lower
+     * case like the compiled nodes.
+     *
+     * @param permission The permission to resolve.
+     * @return True if the permission is granted, false if it is negated and null if no node matches the permission.
+     */
+    public Boolean resolve(String permission) {
+        var node = root;
+        var result = root.wildcard;
+        var start = 0;
+
+        if (root.children.isEmpty()) {
+            return result;
+        }
+
+        while (true) {
+            var end = permission.indexOf('.', start);
+            var last = end == -1;
+
+            node = node.children.get(last ? permission.substring(start) : permission.substring(start, end));
+
+            if (node == null) {
+                return result;
+            }
+
+            if (last) {
+                return node.value != null ? node.value : result;
+            }
+
+            // A wildcard only applies to the nodes below it, therefore it's only taken into account if there is another segment
+            if (node.wildcard != null) {
+                result = node.wildcard;
+            }
+
+            start = end + 1;
+        }
+    }
+
+    /**
+     * @return True if the trie doesn't contain any node.
+     */
+    public boolean isEmpty() {
+        return root.children.isEmpty() && root.value == null && root.wildcard == null;
+    }
+
+    /**
+     * Checks if the given permission is granted by this trie.
+     *
+     * @param permission The permission to check.
+     * @return True if the permission is granted.
+     */
+    public boolean hasPermission(String permission) {
+        return Boolean.TRUE.equals(resolve(permission));
+    }
+
+    /**
+     * A single segment of a permission node.
+     */
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private Boolean value;
+        private Boolean wildcard;
+    }
+
+    /**
+     * Used to compile a {@link PermissionTrie} from permission nodes and other tries.
+     */
+    public static final class Builder {
+        private Node root = new Node();
+
+        /**
+         * Private constructor, use {@link PermissionTrie#builder()}.
+         */
+        private Builder() {
+        }
+
+        /**
+         * Adds the given permission node. Nodes starting with {@code -} are negated, nodes ending with {@code *} are wildcards.
+         *
+         * @param permission The node to add.
+         * @return This builder.
+         */
+        public Builder add(String permission) {
+            var granted = !permission.startsWith("-");
+            var node = root;
+            var segments = (granted ? permission : permission.substring(1)).split("\\.");
+
+            for (int i = 0; i < segments.length; i++) {
+                var segment = segments[i];
+
+                if (segment.equals("*") && i == segments.length - 1) {
+                    node.wildcard = merge(node.wildcard, granted);
+                    return this;
+                }
+
+                node = node.children.computeIfAbsent(segment, key -> new Node());
+            }
+
+            node.value = merge(node.value, granted);
+            return this;
+        }
+
+        /**
+         * Adds all the given permission nodes.
+         *
+         * @param permissions The nodes to add.
+         * @return This builder.
+         */
+        public Builder addAll(Collection<String> permissions) {
+            permissions.forEach(this::add);
+            return this;
+        }
+
+        /**
+         * Adds all nodes of the given trie.
+         *
+         * @param trie The trie to add.
+         * @return This builder.
+         */
+        public Builder addAll(PermissionTrie trie) {
+            copy(trie.root, root);
+            return this;
+        }
+
+        /**
+         * @return The compiled trie. The builder can't be used afterwards.
+         */
+        public PermissionTrie build() {
+            var trie = new PermissionTrie(root);
+            root = null;
+            return trie;
+        }
+
+        /**
+         * Copies the values and children of the given source node into the given target node.
+         *
+         * @param source The node to copy from.
+         * @param target The node to copy into.
+         */
+        private static void copy(Node source, Node target) {
+            target.value = merge(target.value, source.value);
+            target.wildcard = merge(target.wildcard, source.wildcard);
+
+            source.children.forEach((segment, child) -> copy(child, target.children.computeIfAbsent(segment, key -> new Node())));
+        }
+
+        /**
+         * Merges two values of the same node. A negation always wins.
+         *
+         * @param current The current value.
+         * @param value   The value to merge.
+         * @return The merged value.
+         */
+        private static Boolean merge(Boolean current, Boolean value) {
+            if (current == null) {
+                return value;
+            }
+
+            if (value == null) {
+                return current;
+            }
+
+            return current && value;
+        }
+    }
+}
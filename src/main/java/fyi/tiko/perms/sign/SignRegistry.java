@@ -0,0 +1,215 @@
+package fyi.tiko.perms.sign;
+
+import fyi.tiko.perms.utils.LongObjectMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.bukkit.Location;
+import org.bukkit.block.Block;
+
+/**
+ * The in-memory registry of the loaded {@link PermissionSign}s. The signs are indexed by the packed key of their chunk, every chunk with
+ * signs holds a small bucket of the signs in it, identified by their world and packed block key. A block without a sign in its chunk is
+ * therefore ruled out with a single primitive hash lookup, without creating a location or reading the block state.
+ * <p>
+ * The registry is only changed and read on the main thread. Signs in worlds that aren't loaded can neither be seen nor broken, they aren't
+ * registered.
+ *
+ * @author tiko
+ */
+public class SignRegistry {
+
+    private final LongObjectMap<List<Entry>> chunks = new LongObjectMap<>();
+    private final Map<Integer, Entry> byId = new HashMap<>();
+
+    /**
+     * Packs the given block coordinates into one key, using the layout of Paper's block keys.
+     *
+     * @param x The x coordinate of the block.
+     * @param y The y coordinate of the block.
+     * @param z The z coordinate of the block.
+     * @return The packed key of the block.
+     */
+    public static long blockKey(int x, int y, int z) {
+        return ((long) x & 0x7FFFFFF) | (((long) z & 0x7FFFFFF) << 27) | ((long) y << 54);
+    }
+
+    /**
+     * Packs the coordinates of the chunk containing the given block into one key.
+     *
+     * @param x The x coordinate of the block.
+     * @param z The z coordinate of the block.
+     * @return The packed key of the chunk.
+     */
+    public static long chunkKey(int x, int z) {
+        return ((long) (x >> 4) & 0xFFFFFFFFL) | ((long) (z >> 4) << 32);
+    }
+
+    /**
+     * Gets the sign at the given block.
+     *
+     * @param block The block.
+     * @return The sign at the block or null if there is none.
+     */
+    public PermissionSign at(Block block) {
+        var x = block.getX();
+        var z = block.getZ();
+        var bucket = chunks.get(chunkKey(x, z));
+
+        // Nearly every block is in a chunk without signs
+        if (bucket == null) {
+            return null;
+        }
+
+        return find(bucket, block.getWorld().getUID(), blockKey(x, block.getY(), z));
+    }
+
+    /**
+     * Gets the sign at the given location.
+     *
+     * @param location The location.
+     * @return The sign at the location or null if there is none.
+     */
+    public PermissionSign at(Location location) {
+        var x = location.getBlockX();
+        var z = location.getBlockZ();
+        var bucket = chunks.get(chunkKey(x, z));
+
+        if (bucket == null || location.getWorld() == null) {
+            return null;
+        }
+
+        return find(bucket, location.getWorld().getUID(), blockKey(x, location.getBlockY(), z));
+    }
+
+    /**
+     * Registers the given sign, replacing a registered sign with the same id or at the same block.
+     *
+     * @param sign The sign to register.
+     * @return True if the sign was registered, false if its world isn't loaded.
+     */
+    public boolean register(PermissionSign sign) {
+        unregister(sign.id());
+
+        var location = sign.location();
+        var world = location.getWorld();
+
+        if (world == null) {
+            return false;
+        }
+
+        var x = location.getBlockX();
+        var z = location.getBlockZ();
+        var entry = new Entry(sign, world.getUID(), blockKey(x, location.getBlockY(), z), chunkKey(x, z));
+        var bucket = chunks.get(entry.chunkKey());
+
+        if (bucket == null) {
+            bucket = new ArrayList<>(2);
+            chunks.put(entry.chunkKey(), bucket);
+        }
+
+        bucket.removeIf(other -> {
+            if (other.matches(entry.world(), entry.blockKey())) {
+                byId.remove(other.sign().id());
+                return true;
+            }
+            return false;
+        });
+
+        bucket.add(entry);
+        byId.put(sign.id(), entry);
+        return true;
+    }
+
+    /**
+     * Removes the sign with the given id.
+     *
+     * @param id The id of the sign.
+     * @return The removed sign or null if no sign with the id was registered.
+     */
+    public PermissionSign unregister(int id) {
+        var entry = byId.remove(id);
+
+        if (entry == null) {
+            return null;
+        }
+
+        var bucket = chunks.get(entry.chunkKey());
+        bucket.remove(entry);
+
+        if (bucket.isEmpty()) {
+            chunks.remove(entry.chunkKey());
+        }
+
+        return entry.sign();
+    }
+
+    /**
+     * Replaces all registered signs with the given signs.
+     *
+     * @param signs The signs to register.
+     */
+    public void replaceAll(Collection<PermissionSign> signs) {
+        clear();
+        signs.forEach(this::register);
+    }
+
+    /**
+     * Removes all signs.
+     */
+    public void clear() {
+        chunks.clear();
+        byId.clear();
+    }
+
+    /**
+     * @return An unmodifiable copy of all registered signs.
+     */
+    public List<PermissionSign> all() {
+        return byId.values().stream().map(Entry::sign).toList();
+    }
+
+    /**
+     * Searches the bucket of a chunk for the sign at the given block.
+     *
+     * @param bucket   The signs of the chunk.
+     * @param world    The id of the world of the block.
+     * @param blockKey The packed key of the block.
+     * @return The sign at the block or null if there is none.
+     */
+    private static PermissionSign find(List<Entry> bucket, UUID world, long blockKey) {
+        // A bucket only holds the few signs of one chunk, with the same chunk coordinates in every world
+        for (var entry : bucket) {
+            if (entry.matches(world, blockKey)) {
+                return entry.sign();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * A registered sign with its precomputed keys.
+     *
+     * @param sign     The sign.
+     * @param world    The id of the world of the sign.
+     * @param blockKey The packed key of the block of the sign.
+     * @param chunkKey The packed key of the chunk of the sign.
+     */
+    private record Entry(PermissionSign sign, UUID world, long blockKey, long chunkKey) {
+
+        /**
+         * Checks if this sign is at the given block.
+         *
+         * @param world    The id of the world of the block.
+         * @param blockKey The packed key of the block.
+         * @return True if the sign is at the block.
+         */
+        private boolean matches(UUID world, long blockKey) {
+            return this.blockKey == blockKey && this.world.equals(world);
+        }
+    }
+}
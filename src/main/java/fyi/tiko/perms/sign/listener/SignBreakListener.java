@@ -2,13 +2,14 @@ package fyi.tiko.perms.sign.listener;
 
 import fyi.tiko.perms.PermissionPlugin;
 import fyi.tiko.perms.sign.PermissionSign;
-import org.bukkit.block.Sign;
+import org.bukkit.Tag;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockBreakEvent;
 
 /**
- * Responsible for handling the destruction of {@link PermissionSign}s.
+ * Responsible for handling the destruction of {@link PermissionSign}s. Every block break on the server passes this listener, so a block
+ * that isn't a permission sign is ruled out by the {@link fyi.tiko.perms.sign.SignRegistry} before anything else is done.
  *
  * @author tiko
  */
@@ -33,32 +34,23 @@ public class SignBreakListener implements Listener {
      */
     @EventHandler
     public void handleSignBreak(BlockBreakEvent event) {
-        var player = event.getPlayer();
         var breakedBlock = event.getBlock();
-        var signs = plugin.signs();
+        var signs = plugin.signRegistry();
+        var foundSign = signs.at(breakedBlock);
 
-        if (!player.hasPermission("perms.sign.break")) {
+        if (foundSign == null) {
             return;
         }
 
-        if (!(breakedBlock.getState() instanceof Sign sign)) {
+        // The type is enough to tell a sign, the block state would copy the tile entity
+        if (!event.getPlayer().hasPermission("perms.sign.break") || !Tag.SIGNS.isTagged(breakedBlock.getType())) {
             return;
         }
 
-        var signLocation = sign.getLocation();
+        // The sign is removed from the loaded signs right away, only the database is written in the background
+        signs.unregister(foundSign.id());
 
-        if (signs.stream().noneMatch(permissionSign -> permissionSign.location().equals(signLocation))) {
-            return;
-        }
-
-        plugin.runAsync(() -> {
-            var foundSign = signs.stream()
-                .filter(permSign -> permSign.location().equals(signLocation))
-                .findFirst()
-                .orElseThrow();
-
-            plugin.signRepository().deleteSign(foundSign);
-            signs.removeIf(permissionSign -> permissionSign.location().equals(signLocation));
-        });
+        var executor = plugin.databaseExecutor();
+        executor.run(() -> plugin.signRepository().deleteSign(foundSign)).exceptionally(executor::logFailure);
     }
 }
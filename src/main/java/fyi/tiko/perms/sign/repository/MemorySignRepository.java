@@ -0,0 +1,41 @@
+package fyi.tiko.perms.sign.repository;
+
+import fyi.tiko.perms.sign.PermissionSign;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.bukkit.Location;
+
+/**
+ * The {@link SignRepository} keeping the {@link PermissionSign}s in memory. Nothing is persisted.
+ *
+ * @author tiko
+ */
+public class MemorySignRepository implements SignRepository {
+
+    private final Map<Integer, PermissionSign> signs = new ConcurrentHashMap<>();
+    private final AtomicInteger ids = new AtomicInteger();
+
+    @Override
+    public void deleteSign(PermissionSign sign) {
+        signs.remove(sign.id());
+    }
+
+    @Override
+    public void addSign(Location location) {
+        // The location is copied, like a location read from a database wouldn't be the same instance
+        var id = ids.incrementAndGet();
+        signs.put(id, new PermissionSign(id, location.clone()));
+    }
+
+    @Override
+    public Set<PermissionSign> allSigns() {
+        return Set.copyOf(signs.values());
+    }
+
+    @Override
+    public PermissionSign byId(int id) {
+        return signs.get(id);
+    }
+}
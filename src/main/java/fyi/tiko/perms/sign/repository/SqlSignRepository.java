@@ -0,0 +1,131 @@
+package fyi.tiko.perms.sign.repository;
+
+import fyi.tiko.perms.database.DatabaseInteraction;
+import fyi.tiko.perms.database.repository.Change;
+import fyi.tiko.perms.database.repository.SqlChangelogRepository;
+import fyi.tiko.perms.sign.PermissionSign;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+
+/**
+ * The {@link SignRepository} storing the {@link PermissionSign}s in the permission_signs table of a SQL database.
+ *
+ * @author tiko
+ */
+public class SqlSignRepository extends DatabaseInteraction implements SignRepository {
+
+    private final SqlChangelogRepository changelog;
+
+    /**
+     * Constructs a new {@link DatabaseInteraction} with the given {@link Logger} and {@link DataSource}.
+     *
+     * @param logger    the logger of the plugin using this holder
+     * @param source    the data source to use
+     * @param changelog the changelog the changes of the signs are recorded in
+     */
+    public SqlSignRepository(Logger logger, DataSource source, SqlChangelogRepository changelog) {
+        super(logger, source);
+
+        this.changelog = changelog;
+    }
+
+    @Override
+    public void deleteSign(PermissionSign sign) {
+        try {
+            transaction(conn -> {
+                try (var stmt = conn.prepareStatement("DELETE FROM permission_signs WHERE id= ?")) {
+                    stmt.setInt(1, sign.id());
+
+                    if (stmt.executeUpdate() > 0) {
+                        changelog.record(conn, Change.Kind.SIGN, String.valueOf(sign.id()));
+                    }
+                }
+            });
+        } catch (SQLException exception) {
+            logger().log(Level.SEVERE, "Failed to delete sign from the database.", exception);
+        }
+    }
+
+    @Override
+    public void addSign(Location location) {
+        try {
+            transaction(conn -> {
+                try (var stmt = conn.prepareStatement("INSERT INTO permission_signs (world, x, y, z) VALUES (?, ?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                    stmt.setString(1, location.getWorld().getName());
+                    stmt.setDouble(2, location.getX());
+                    stmt.setDouble(3, location.getY());
+                    stmt.setDouble(4, location.getZ());
+                    stmt.executeUpdate();
+
+                    var keys = stmt.getGeneratedKeys();
+
+                    if (keys.next()) {
+                        changelog.record(conn, Change.Kind.SIGN, String.valueOf(keys.getInt(1)));
+                    }
+                }
+            });
+        } catch (SQLException exception) {
+            logger().log(Level.SEVERE, "Failed to save sign to the database.", exception);
+        }
+    }
+
+    @Override
+    public PermissionSign byId(int id) {
+        try (var conn = conn(); var stmt = conn.prepareStatement("SELECT * FROM permission_signs WHERE id=?")) {
+            stmt.setInt(1, id);
+
+            var rs = stmt.executeQuery();
+            return rs.next() ? sign(rs) : null;
+        } catch (SQLException exception) {
+            logger().log(Level.SEVERE, "Failed to get sign from the database.", exception);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Set<PermissionSign> allSigns() {
+        var signs = new HashSet<PermissionSign>();
+
+        try (var conn = conn(); var stmt = conn.prepareStatement("SELECT * FROM permission_signs;")) {
+
+            var rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                signs.add(sign(rs));
+            }
+            return signs;
+        } catch (SQLException exception) {
+            logger().log(Level.SEVERE, "Failed to get all signs from the database.", exception);
+        }
+
+        return signs;
+    }
+
+    /**
+     * Reads the sign of the current row.
+     *
+     * @param rs the result set positioned on a row of the permission_signs table
+     * @return the sign
+     * @throws SQLException if a column can't be read
+     */
+    private static PermissionSign sign(ResultSet rs) throws SQLException {
+        var id = rs.getInt("id");
+        var world = Bukkit.getWorld(rs.getString("world"));
+        var x = rs.getDouble("x");
+        var y = rs.getDouble("y");
+        var z = rs.getDouble("z");
+
+        var location = new Location(world, x, y, z);
+        return new PermissionSign(id, location);
+    }
+}
@@ -0,0 +1,278 @@
+package fyi.tiko.perms.transfer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encodes and decodes the lines of an export. Every line is a flat JSON object of text, number, boolean and null values, so the lines
+ * are read and written without a JSON library and without building a tree per line.
+ *
+ * @author tiko
+ */
+final class JsonLine {
+
+    private JsonLine() {
+    }
+
+    /**
+     * Encodes the given fields as a JSON object.
+     *
+     * @param fields The fields of the object, the values are texts, numbers, booleans or null.
+     * @return The JSON object, without a line break.
+     */
+    static String encode(Map<String, Object> fields) {
+        var builder = new StringBuilder(128).append('{');
+        var first = true;
+
+        for (var entry : fields.entrySet()) {
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+
+            appendString(builder, entry.getKey());
+            builder.append(':');
+
+            var value = entry.getValue();
+
+            if (value instanceof String string) {
+                appendString(builder, string);
+            } else {
+                builder.append(value);
+            }
+        }
+
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Decodes the given JSON object.
+     *
+     * @param line The JSON object.
+     * @return The fields of the object, numbers are decoded as {@link Long}s.
+     * @throws IllegalArgumentException If the line isn't a flat JSON object.
+     */
+    static Map<String, Object> decode(String line) {
+        return new Parser(line).object();
+    }
+
+    /**
+     * Appends the given text as a JSON string.
+     *
+     * @param builder The builder to append to.
+     * @param string  The text to append.
+     */
+    private static void appendString(StringBuilder builder, String string) {
+        builder.append('"');
+
+        for (var i = 0; i < string.length(); i++) {
+            var c = string.charAt(i);
+
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+                }
+            }
+        }
+
+        builder.append('"');
+    }
+
+    /**
+     * Reads a single flat JSON object.
+     */
+    private static final class Parser {
+
+        private final String line;
+        private int position;
+
+        /**
+         * @param line The JSON object to read.
+         */
+        private Parser(String line) {
+            this.line = line;
+        }
+
+        /**
+         * @return The fields of the object.
+         */
+        private Map<String, Object> object() {
+            var fields = new LinkedHashMap<String, Object>();
+
+            expect('{');
+
+            if (peek() == '}') {
+                position++;
+                return end(fields);
+            }
+
+            do {
+                var name = string();
+                expect(':');
+                fields.put(name, value());
+            } while (next() == ',');
+
+            position--;
+            expect('}');
+            return end(fields);
+        }
+
+        /**
+         * @param fields The fields of the object.
+         * @return The fields, if nothing but whitespace follows the object.
+         */
+        private Map<String, Object> end(Map<String, Object> fields) {
+            skipWhitespace();
+
+            if (position != line.length()) {
+                throw invalid("end of line");
+            }
+            return fields;
+        }
+
+        /**
+         * @return The value at the current position.
+         */
+        private Object value() {
+            var c = peek();
+
+            if (c == '"') {
+                return string();
+            }
+            if (line.startsWith("true", position)) {
+                position += 4;
+                return true;
+            }
+            if (line.startsWith("false", position)) {
+                position += 5;
+                return false;
+            }
+            if (line.startsWith("null", position)) {
+                position += 4;
+                return null;
+            }
+
+            var start = position;
+
+            if (c == '-') {
+                position++;
+            }
+            while (position < line.length() && Character.isDigit(line.charAt(position))) {
+                position++;
+            }
+
+            try {
+                return Long.parseLong(line, start, position, 10);
+            } catch (NumberFormatException exception) {
+                throw invalid("value");
+            }
+        }
+
+        /**
+         * @return The string at the current position.
+         */
+        private String string() {
+            expect('"');
+
+            var builder = new StringBuilder();
+
+            while (position < line.length()) {
+                var c = line.charAt(position++);
+
+                if (c == '"') {
+                    return builder.toString();
+                }
+                if (c != '\\') {
+                    builder.append(c);
+                    continue;
+                }
+                if (position >= line.length()) {
+                    break;
+                }
+
+                var escaped = line.charAt(position++);
+
+                switch (escaped) {
+                    case '"', '\\', '/' -> builder.append(escaped);
+                    case 'b' -> builder.append('\b');
+                    case 'f' -> builder.append('\f');
+                    case 'n' -> builder.append('\n');
+                    case 'r' -> builder.append('\r');
+                    case 't' -> builder.append('\t');
+                    case 'u' -> {
+                        if (position + 4 > line.length()) {
+                            throw invalid("unicode escape");
+                        }
+                        try {
+                            builder.append((char) Integer.parseInt(line, position, position + 4, 16));
+                        } catch (NumberFormatException exception) {
+                            throw invalid("unicode escape");
+                        }
+                        position += 4;
+                    }
+                    default -> throw invalid("escape");
+                }
+            }
+
+            throw invalid("closing quote");
+        }
+
+        /**
+         * Skips the whitespace and consumes the given character.
+         *
+         * @param c The expected character.
+         */
+        private void expect(char c) {
+            if (next() != c) {
+                throw invalid("'" + c + "'");
+            }
+        }
+
+        /**
+         * @return The next character after the whitespace, the position is moved past it.
+         */
+        private char next() {
+            var c = peek();
+            position++;
+            return c;
+        }
+
+        /**
+         * @return The next character after the whitespace, the position is moved to it.
+         */
+        private char peek() {
+            skipWhitespace();
+
+            if (position >= line.length()) {
+                throw invalid("more input");
+            }
+            return line.charAt(position);
+        }
+
+        /**
+         * Moves the position past the whitespace.
+         */
+        private void skipWhitespace() {
+            while (position < line.length() && Character.isWhitespace(line.charAt(position))) {
+                position++;
+            }
+        }
+
+        /**
+         * @param expected The description of what was expected.
+         * @return The exception describing the invalid line.
+         */
+        private IllegalArgumentException invalid(String expected) {
+            return new IllegalArgumentException("Expected " + expected + " at column " + (position + 1));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package fyi.tiko.perms.transfer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The file formats of an export. Both formats are JSON Lines, one record per line, the compressed format is usually about ten times
+ * smaller. The format of a file is chosen by its extension.
+ *
+ * @author tiko
+ */
+public enum TransferFormat {
+
+    /**
+     * Plain JSON Lines, readable and editable with any text editor.
+     */
+    JSON_LINES(".jsonl"),
+
+    /**
+     * Gzip compressed JSON Lines.
+     */
+    GZIP_JSON_LINES(".jsonl.gz");
+
+    /**
+     * The size of the buffers between the file and the records.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String extension;
+
+    /**
+     * @param extension The extension of the files in this format.
+     */
+    TransferFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * @return The extension of the files in this format.
+     */
+    public String extension() {
+        return extension;
+    }
+
+    /**
+     * @param file The file to read or write.
+     * @return The format of the file, compressed if the name ends with {@code .gz}.
+     */
+    public static TransferFormat byFile(Path file) {
+        return file.getFileName().toString().endsWith(".gz") ? GZIP_JSON_LINES : JSON_LINES;
+    }
+
+    /**
+     * Creates the given file, or truncates it if it exists, and opens it for writing.
+     *
+     * @param file The file to write.
+     * @return The writer of the records.
+     * @throws IOException If the file can't be created.
+     */
+    public TransferWriter writer(Path file) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+
+        try {
+            if (this == GZIP_JSON_LINES) {
+                out = new GZIPOutputStream(out, BUFFER_SIZE);
+            }
+
+            return new TransferWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE));
+        } catch (IOException exception) {
+            out.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Opens the given file for reading.
+     *
+     * @param file The file to read.
+     * @return The reader of the records.
+     * @throws IOException If the file can't be opened or doesn't start with the header of an export.
+     */
+    public TransferReader reader(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+
+        try {
+            if (this == GZIP_JSON_LINES) {
+                in = new GZIPInputStream(in, BUFFER_SIZE);
+            }
+
+            return new TransferReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE));
+        } catch (IOException exception) {
+            in.close();
+            throw exception;
+        }
+    }
+}
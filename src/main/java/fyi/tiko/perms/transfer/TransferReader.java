@@ -0,0 +1,91 @@
+package fyi.tiko.perms.transfer;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads the records of an export one line at a time, so files of any size are read with constant memory. Empty lines are skipped.
+ *
+ * @author tiko
+ */
+public final class TransferReader implements Closeable {
+
+    private final BufferedReader reader;
+    private long line;
+
+    /**
+     * Reads and checks the header of the given reader.
+     *
+     * @param reader The reader of the file.
+     * @throws IOException If the file doesn't start with the header of an export of a supported version.
+     */
+    TransferReader(BufferedReader reader) throws IOException {
+        this.reader = reader;
+
+        try {
+            var header = nextLine();
+
+            if (header == null) {
+                throw new IOException("The file is empty");
+            }
+
+            var fields = JsonLine.decode(header);
+
+            if (!TransferWriter.HEADER.equals(fields.get("type"))) {
+                throw new IOException("The file is no export, the header is missing");
+            }
+            if (!Long.valueOf(TransferWriter.VERSION).equals(fields.get("version"))) {
+                throw new IOException("Unsupported export version " + fields.get("version"));
+            }
+        } catch (IOException | IllegalArgumentException exception) {
+            reader.close();
+            throw exception instanceof IOException io ? io : new IOException("Invalid header: " + exception.getMessage(), exception);
+        }
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return The next record, null at the end of the file.
+     * @throws IOException If the file can't be read or the line isn't a valid record.
+     */
+    public TransferRecord read() throws IOException {
+        var next = nextLine();
+
+        if (next == null) {
+            return null;
+        }
+
+        try {
+            var fields = JsonLine.decode(next);
+
+            if (!(fields.remove("type") instanceof String type)) {
+                throw new IllegalArgumentException("Missing type");
+            }
+            return TransferRecord.of(type, fields);
+        } catch (IllegalArgumentException exception) {
+            throw new IOException("Invalid record in line " + line + ": " + exception.getMessage(), exception);
+        }
+    }
+
+    /**
+     * @return The next line that isn't empty, null at the end of the file.
+     * @throws IOException If the file can't be read.
+     */
+    private String nextLine() throws IOException {
+        String next;
+
+        do {
+            next = reader.readLine();
+            line++;
+        } while (next != null && next.isBlank());
+
+        return next;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
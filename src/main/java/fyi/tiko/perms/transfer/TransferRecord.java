@@ -0,0 +1,308 @@
+package fyi.tiko.perms.transfer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A single row of the exported permission data. Every record is written as one line, records referencing groups or players follow the
+ * records of the groups and players, so an import never references rows it hasn't inserted yet.
+ *
+ * @author tiko
+ */
+public sealed interface TransferRecord {
+
+    /**
+     * @return The type of the record, written as the {@code type} field of its line.
+     */
+    String type();
+
+    /**
+     * @return The fields of the record by their names, in the order they are written.
+     */
+    Map<String, Object> fields();
+
+    /**
+     * Creates the record of the given type from its fields.
+     *
+     * @param type   The type of the record.
+     * @param fields The fields of the record.
+     * @return The record.
+     * @throws IllegalArgumentException If the type is unknown or a field is missing or has the wrong type.
+     */
+    static TransferRecord of(String type, Map<String, Object> fields) {
+        var values = new Fields(type, fields);
+
+        return switch (type) {
+            case Group.TYPE -> new Group(values.string("name"), values.bool("default"), values.string("prefix"), values.string("suffix"),
+                (int) values.number("weight"));
+            case GroupParent.TYPE -> new GroupParent(values.string("group"), values.string("parent"));
+            case GroupPermission.TYPE -> new GroupPermission(values.string("group"), values.string("permission"), values.string("server"),
+                values.string("world"));
+            case Player.TYPE -> new Player(values.uuid("uuid"), values.string("name"));
+            case PlayerPermission.TYPE -> new PlayerPermission(values.uuid("uuid"), values.string("permission"), values.string("server"),
+                values.string("world"), values.number("until"));
+            case PlayerGroup.TYPE -> new PlayerGroup(values.uuid("uuid"), values.string("group"), values.number("until"));
+            case Sign.TYPE -> new Sign(values.string("world"), (int) values.number("x"), (int) values.number("y"),
+                (int) values.number("z"));
+            default -> throw new IllegalArgumentException("Unknown record type " + type);
+        };
+    }
+
+    /**
+     * A group with its metadata.
+     *
+     * @param name      The name of the group.
+     * @param isDefault True if the group is the default group.
+     * @param prefix    The prefix of the group.
+     * @param suffix    The suffix of the group.
+     * @param weight    The weight of the group.
+     */
+    record Group(String name, boolean isDefault, String prefix, String suffix, int weight) implements TransferRecord {
+
+        public static final String TYPE = "group";
+
+        @Override
+        public String type() {
+            return TYPE;
+        }
+
+        @Override
+        public Map<String, Object> fields() {
+            var fields = new LinkedHashMap<String, Object>();
+            fields.put("name", name);
+            fields.put("default", isDefault);
+            fields.put("prefix", prefix);
+            fields.put("suffix", suffix);
+            fields.put("weight", weight);
+            return fields;
+        }
+    }
+
+    /**
+     * A group another group inherits from.
+     *
+     * @param group  The name of the inheriting group.
+     * @param parent The name of the inherited group.
+     */
+    record GroupParent(String group, String parent) implements TransferRecord {
+
+        public static final String TYPE = "group_parent";
+
+        @Override
+        public String type() {
+            return TYPE;
+        }
+
+        @Override
+        public Map<String, Object> fields() {
+            var fields = new LinkedHashMap<String, Object>();
+            fields.put("group", group);
+            fields.put("parent", parent);
+            return fields;
+        }
+    }
+
+    /**
+     * A permission of a group.
+     *
+     * @param group      The name of the group.
+     * @param permission The permission.
+     * @param server     The server the permission applies to, empty for every server.
+     * @param world      The world the permission applies to, empty for every world.
+     */
+    record GroupPermission(String group, String permission, String server, String world) implements TransferRecord {
+
+        public static final String TYPE = "group_permission";
+
+        @Override
+        public String type() {
+            return TYPE;
+        }
+
+        @Override
+        public Map<String, Object> fields() {
+            var fields = new LinkedHashMap<String, Object>();
+            fields.put("group", group);
+            fields.put("permission", permission);
+            fields.put("server", server);
+            fields.put("world", world);
+            return fields;
+        }
+    }
+
+    /**
+     * A player with the name it was last seen with.
+     *
+     * @param uuid The uuid of the player.
+     * @param name The name of the player.
+     */
+    record Player(UUID uuid, String name) implements TransferRecord {
+
+        public static final String TYPE = "player";
+
+        @Override
+        public String type() {
+            return TYPE;
+        }
+
+        @Override
+        public Map<String, Object> fields() {
+            var fields = new LinkedHashMap<String, Object>();
+            fields.put("uuid", uuid.toString());
+            fields.put("name", name);
+            return fields;
+        }
+    }
+
+    /**
+     * A permission of a player.
+     *
+     * @param uuid       The uuid of the player.
+     * @param permission The permission.
+     * @param server     The server the permission applies to, empty for every server.
+     * @param world      The world the permission applies to, empty for every world.
+     * @param until      The time until the permission is valid, -1 if the permission is permanent.
+     */
+    record PlayerPermission(UUID uuid, String permission, String server, String world, long until) implements TransferRecord {
+
+        public static final String TYPE = "player_permission";
+
+        @Override
+        public String type() {
+            return TYPE;
+        }
+
+        @Override
+        public Map<String, Object> fields() {
+            var fields = new LinkedHashMap<String, Object>();
+            fields.put("uuid", uuid.toString());
+            fields.put("permission", permission);
+            fields.put("server", server);
+            fields.put("world", world);
+            fields.put("until", until);
+            return fields;
+        }
+    }
+
+    /**
+     * A membership of a player in a group.
+     *
+     * @param uuid  The uuid of the player.
+     * @param group The name of the group.
+     * @param until The time until the membership is valid, -1 if the membership is permanent.
+     */
+    record PlayerGroup(UUID uuid, String group, long until) implements TransferRecord {
+
+        public static final String TYPE = "player_group";
+
+        @Override
+        public String type() {
+            return TYPE;
+        }
+
+        @Override
+        public Map<String, Object> fields() {
+            var fields = new LinkedHashMap<String, Object>();
+            fields.put("uuid", uuid.toString());
+            fields.put("group", group);
+            fields.put("until", until);
+            return fields;
+        }
+    }
+
+    /**
+     * A permission sign.
+     *
+     * @param world The name of the world of the sign.
+     * @param x     The x coordinate of the sign.
+     * @param y     The y coordinate of the sign.
+     * @param z     The z coordinate of the sign.
+     */
+    record Sign(String world, int x, int y, int z) implements TransferRecord {
+
+        public static final String TYPE = "sign";
+
+        @Override
+        public String type() {
+            return TYPE;
+        }
+
+        @Override
+        public Map<String, Object> fields() {
+            var fields = new LinkedHashMap<String, Object>();
+            fields.put("world", world);
+            fields.put("x", x);
+            fields.put("y", y);
+            fields.put("z", z);
+            return fields;
+        }
+    }
+
+    /**
+     * The decoded fields of a record, checked while they are read.
+     *
+     * @param type   The type of the record.
+     * @param fields The fields by their names.
+     */
+    record Fields(String type, Map<String, Object> fields) {
+
+        /**
+         * @param name The name of the field.
+         * @return The value of the text field, empty if it is null.
+         */
+        String string(String name) {
+            var value = fields.get(name);
+
+            if (value == null && fields.containsKey(name)) {
+                return "";
+            }
+            if (!(value instanceof String string)) {
+                throw invalid(name);
+            }
+            return string;
+        }
+
+        /**
+         * @param name The name of the field.
+         * @return The value of the number field.
+         */
+        long number(String name) {
+            if (!(fields.get(name) instanceof Long number)) {
+                throw invalid(name);
+            }
+            return number;
+        }
+
+        /**
+         * @param name The name of the field.
+         * @return The value of the boolean field.
+         */
+        boolean bool(String name) {
+            if (!(fields.get(name) instanceof Boolean bool)) {
+                throw invalid(name);
+            }
+            return bool;
+        }
+
+        /**
+         * @param name The name of the field.
+         * @return The value of the uuid field.
+         */
+        UUID uuid(String name) {
+            try {
+                return UUID.fromString(string(name));
+            } catch (IllegalArgumentException exception) {
+                throw invalid(name);
+            }
+        }
+
+        /**
+         * @param name The name of the invalid field.
+         * @return The exception describing the invalid field.
+         */
+        private IllegalArgumentException invalid(String name) {
+            return new IllegalArgumentException("Missing or invalid field " + name + " of " + type);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package fyi.tiko.perms.transfer;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+
+/**
+ * Writes the records of an export, one line per record. The first line is the header of the export, naming the version of the format.
+ *
+ * @author tiko
+ */
+public final class TransferWriter implements Closeable {
+
+    /**
+     * The version of the format, increased when the records change incompatibly.
+     */
+    static final long VERSION = 1;
+
+    /**
+     * The type of the header line.
+     */
+    static final String HEADER = "header";
+
+    private final BufferedWriter writer;
+
+    /**
+     * Writes the header to the given writer.
+     *
+     * @param writer The writer of the file.
+     * @throws IOException If the header can't be written.
+     */
+    TransferWriter(BufferedWriter writer) throws IOException {
+        this.writer = writer;
+
+        var header = new LinkedHashMap<String, Object>();
+        header.put("type", HEADER);
+        header.put("version", VERSION);
+        header.put("created", System.currentTimeMillis());
+        line(header);
+    }
+
+    /**
+     * Writes the given record.
+     *
+     * @param record The record to write.
+     * @throws IOException If the record can't be written.
+     */
+    public void write(TransferRecord record) throws IOException {
+        var fields = new LinkedHashMap<String, Object>();
+        fields.put("type", record.type());
+        fields.putAll(record.fields());
+        line(fields);
+    }
+
+    /**
+     * @param fields The fields of the line to write.
+     * @throws IOException If the line can't be written.
+     */
+    private void line(LinkedHashMap<String, Object> fields) throws IOException {
+        writer.write(JsonLine.encode(fields));
+        writer.newLine();
+    }
+
+    /**
+     * Writes the buffered records and closes the file.
+     *
+     * @throws IOException If the records can't be written.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,162 @@
+package fyi.tiko.perms.transfer.repository;
+
+import fyi.tiko.perms.group.repository.MemoryGroupPermissionRepository;
+import fyi.tiko.perms.permission.PermissionContext;
+import fyi.tiko.perms.sign.repository.SignRepository;
+import fyi.tiko.perms.transfer.TransferReader;
+import fyi.tiko.perms.transfer.TransferRecord;
+import fyi.tiko.perms.transfer.TransferWriter;
+import fyi.tiko.perms.user.repository.MemoryUserRepository;
+import java.io.IOException;
+import java.util.function.LongConsumer;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+
+/**
+ * The {@link TransferRepository} of the memory repositories. The records are written and added one by one, like rows of the SQL tables.
+ * Only the valid permissions and memberships are exported, the memory repositories don't keep the expired ones readable.
+ *
+ * @author tiko
+ */
+public class MemoryTransferRepository implements TransferRepository {
+
+    private final MemoryUserRepository userRepository;
+    private final MemoryGroupPermissionRepository groupRepository;
+    private final SignRepository signRepository;
+
+    /**
+     * Creates a new repository exporting and importing the given repositories.
+     *
+     * @param userRepository  The repository of the users.
+     * @param groupRepository The repository of the groups.
+     * @param signRepository  The repository of the signs.
+     */
+    public MemoryTransferRepository(MemoryUserRepository userRepository, MemoryGroupPermissionRepository groupRepository,
+        SignRepository signRepository) {
+        this.userRepository = userRepository;
+        this.groupRepository = groupRepository;
+        this.signRepository = signRepository;
+    }
+
+    @Override
+    public long exportAll(TransferWriter writer, LongConsumer progress) throws IOException {
+        var counter = new Counter(progress);
+        var groups = groupRepository.groups();
+
+        for (var group : groups) {
+            var data = group.data();
+            writer.write(new TransferRecord.Group(group.name(), data.isDefault(), data.prefix(), data.suffix(), data.weight()));
+            counter.increment();
+        }
+
+        for (var group : groups) {
+            for (var parent : group.data().parents()) {
+                writer.write(new TransferRecord.GroupParent(group.name(), parent));
+                counter.increment();
+            }
+        }
+
+        for (var group : groups) {
+            for (var entry : group.data().permissions().entrySet()) {
+                for (var permission : entry.getValue()) {
+                    writer.write(new TransferRecord.GroupPermission(group.name(), permission, entry.getKey().server(),
+                        entry.getKey().world()));
+                    counter.increment();
+                }
+            }
+        }
+
+        var uuids = userRepository.uuids();
+
+        for (var uuid : uuids) {
+            writer.write(new TransferRecord.Player(uuid, userRepository.byUuid(uuid)));
+            counter.increment();
+        }
+
+        for (var uuid : uuids) {
+            var state = userRepository.load(uuid).orElseThrow();
+
+            for (var entry : state.permissions().entrySet()) {
+                for (var permission : entry.getValue()) {
+                    writer.write(new TransferRecord.PlayerPermission(uuid, permission, entry.getKey().server(), entry.getKey().world(),
+                        state.until(permission, entry.getKey())));
+                    counter.increment();
+                }
+            }
+
+            for (var entry : state.groups().entrySet()) {
+                writer.write(new TransferRecord.PlayerGroup(uuid, entry.getKey().name(), entry.getValue()));
+                counter.increment();
+            }
+        }
+
+        for (var sign : signRepository.allSigns()) {
+            var location = sign.location();
+            var world = location.getWorld() != null ? location.getWorld().getName() : "";
+            writer.write(new TransferRecord.Sign(world, location.getBlockX(), location.getBlockY(), location.getBlockZ()));
+            counter.increment();
+        }
+
+        return counter.count;
+    }
+
+    @Override
+    public long importAll(TransferReader reader, LongConsumer progress) throws IOException {
+        var counter = new Counter(progress);
+
+        for (var record = reader.read(); record != null; record = reader.read()) {
+            if (record instanceof TransferRecord.Group group) {
+                groupRepository.addGroup(group.name(), group.prefix(), group.suffix(), group.weight(), group.isDefault());
+            } else if (record instanceof TransferRecord.GroupParent parent) {
+                groupRepository.addParent(parent.group(), parent.parent());
+            } else if (record instanceof TransferRecord.GroupPermission permission) {
+                groupRepository.addPermission(permission.group(), permission.permission(),
+                    PermissionContext.of(permission.server(), permission.world()));
+            } else if (record instanceof TransferRecord.Player player) {
+                userRepository.addUser(player.uuid(), player.name());
+            } else if (record instanceof TransferRecord.PlayerPermission permission) {
+                userRepository.addPermission(permission.uuid(), permission.permission(),
+                    PermissionContext.of(permission.server(), permission.world()), permission.until());
+            } else if (record instanceof TransferRecord.PlayerGroup membership) {
+                if (groupRepository.exists(membership.group())) {
+                    userRepository.addMembership(membership.uuid(), membership.group(), membership.until());
+                }
+            } else if (record instanceof TransferRecord.Sign sign) {
+                var location = new Location(Bukkit.getWorld(sign.world()), sign.x(), sign.y(), sign.z());
+
+                if (signRepository.byLocation(location) == null) {
+                    signRepository.addSign(location);
+                }
+            }
+
+            counter.increment();
+        }
+
+        return counter.count;
+    }
+
+    /**
+     * Counts the records and reports the progress after every chunk.
+     */
+    private static final class Counter {
+
+        private final LongConsumer progress;
+        private long count;
+
+        /**
+         * @param progress Told the number of records after every chunk.
+         */
+        private Counter(LongConsumer progress) {
+            this.progress = progress;
+        }
+
+        /**
+         * Counts a record.
+         */
+        private void increment() {
+            if (++count % CHUNK_SIZE == 0) {
+                progress.accept(count);
+            }
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package fyi.tiko.perms.transfer.repository;
+
+import fyi.tiko.perms.database.DatabaseInteraction;
+import fyi.tiko.perms.database.Dialect;
+import fyi.tiko.perms.database.UUIDs;
+import fyi.tiko.perms.database.repository.Change;
+import fyi.tiko.perms.database.repository.SqlChangelogRepository;
+import fyi.tiko.perms.database.repository.SqlPermissionRepository;
+import fyi.tiko.perms.transfer.TransferReader;
+import fyi.tiko.perms.transfer.TransferRecord;
+import fyi.tiko.perms.transfer.TransferWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * The {@link TransferRepository} of a SQL database. The export streams every table with a single forward-only query in one read
+ * transaction, so it is a consistent snapshot. The import inserts every chunk with one batch per table, skipping the rows that already
+ * exist, and resolves the ids of groups and permissions in the statements themselves, so no row needs a round trip of its own.
+ *
+ * @author tiko
+ */
+public class SqlTransferRepository extends DatabaseInteraction implements TransferRepository {
+
+    private static final String GROUPS = "SELECT g.name, g.default_group, m.prefix, m.suffix, m.weight FROM perm_groups g "
+        + "LEFT JOIN group_metadata m ON m.group_id = g.id";
+    private static final String GROUP_PARENTS = "SELECT g.name, p.name AS parent FROM group_parents gp "
+        + "JOIN perm_groups g ON g.id = gp.group_id JOIN perm_groups p ON p.id = gp.parent_id";
+    private static final String GROUP_PERMISSIONS = "SELECT g.name, p.permission, gp.server, gp.world FROM group_permissions gp "
+        + "JOIN perm_groups g ON g.id = gp.group_id JOIN permissions p ON p.id = gp.permission_id";
+    private static final String PLAYERS = "SELECT uuid, name FROM perm_players";
+    private static final String PLAYER_PERMISSIONS = "SELECT pp.uuid, p.permission, pp.server, pp.world, pp.permission_until "
+        + "FROM player_permissions pp JOIN permissions p ON p.id = pp.permission_id";
+    private static final String PLAYER_GROUPS = "SELECT pg.uuid, g.name, pg.group_until FROM player_groups pg "
+        + "JOIN perm_groups g ON g.id = pg.group_id";
+    private static final String SIGNS = "SELECT world, x, y, z FROM permission_signs";
+
+    /**
+     * Inserts a sign unless a sign at the same location exists, the table has no key besides the id.
+     */
+    private static final String INSERT_SIGN = "INSERT INTO permission_signs(world, x, y, z) SELECT ?, ?, ?, ? FROM DUAL "
+        + "WHERE NOT EXISTS (SELECT 1 FROM permission_signs WHERE world=? AND x=? AND y=? AND z=?)";
+
+    private final Dialect dialect;
+    private final SqlPermissionRepository permissionRepository;
+    private final SqlChangelogRepository changelog;
+    private final String insertGroup;
+    private final String insertMetadata;
+    private final String insertParent;
+    private final String insertGroupPermission;
+    private final String insertPlayer;
+    private final String insertPlayerPermission;
+    private final String insertPlayerGroup;
+
+    /**
+     * Constructs a new {@link DatabaseInteraction} with the given {@link Logger} and {@link DataSource}.
+     *
+     * @param logger               The logger of the plugin using this holder.
+     * @param source               The data source to use.
+     * @param dialect              The dialect of the database.
+     * @param permissionRepository The repository the imported permissions are added to.
+     * @param changelog            The changelog the imported groups are recorded in.
+     */
+    public SqlTransferRepository(Logger logger, DataSource source, Dialect dialect, SqlPermissionRepository permissionRepository,
+        SqlChangelogRepository changelog) {
+        super(logger, source);
+
+        this.dialect = dialect;
+        this.permissionRepository = permissionRepository;
+        this.changelog = changelog;
+        insertGroup = dialect.insertIgnore("perm_groups", List.of("name", "default_group"), "VALUES (?, ?)");
+        insertMetadata = dialect.insertIgnore("group_metadata", List.of("group_id", "prefix", "suffix", "weight"),
+            "SELECT id, ?, ?, ? FROM perm_groups WHERE name=?");
+        insertParent = dialect.insertIgnore("group_parents", List.of("group_id", "parent_id"),
+            "SELECT g.id, p.id FROM perm_groups g JOIN perm_groups p ON p.name=? WHERE g.name=?");
+        insertGroupPermission = dialect.insertIgnore("group_permissions", List.of("group_id", "permission_id", "server", "world"),
+            "SELECT g.id, p.id, ?, ? FROM perm_groups g JOIN permissions p ON p.permission=? WHERE g.name=?");
+        insertPlayer = dialect.insertIgnore("perm_players", List.of("uuid", "name"), "VALUES (?, ?)");
+        insertPlayerPermission = dialect.insertIgnore("player_permissions",
+            List.of("uuid", "permission_id", "server", "world", "permission_until"),
+            "SELECT ?, id, ?, ?, ? FROM permissions WHERE permission=?");
+        insertPlayerGroup = dialect.insertIgnore("player_groups", List.of("uuid", "group_id", "group_until"),
+            "SELECT ?, id, ? FROM perm_groups WHERE name=?");
+    }
+
+    @Override
+    public long exportAll(TransferWriter writer, LongConsumer progress) throws IOException {
+        var count = new long[1];
+        var export = new Export(writer, progress, count, dialect.streamingFetchSize(CHUNK_SIZE));
+
+        try {
+            transaction(conn -> {
+                export.stream(conn, GROUPS, rs -> new TransferRecord.Group(rs.getString("name"), rs.getBoolean("default_group"),
+                    text(rs, "prefix"), text(rs, "suffix"), rs.getInt("weight")));
+                export.stream(conn, GROUP_PARENTS, rs -> new TransferRecord.GroupParent(rs.getString("name"), rs.getString("parent")));
+                export.stream(conn, GROUP_PERMISSIONS, rs -> new TransferRecord.GroupPermission(rs.getString("name"),
+                    rs.getString("permission"), rs.getString("server"), rs.getString("world")));
+                export.stream(conn, PLAYERS, rs -> new TransferRecord.Player(UUIDs.fromBytes(rs.getBytes("uuid")), rs.getString("name")));
+                export.stream(conn, PLAYER_PERMISSIONS, rs -> new TransferRecord.PlayerPermission(UUIDs.fromBytes(rs.getBytes("uuid")),
+                    rs.getString("permission"), rs.getString("server"), rs.getString("world"), rs.getLong("permission_until")));
+                export.stream(conn, PLAYER_GROUPS, rs -> new TransferRecord.PlayerGroup(UUIDs.fromBytes(rs.getBytes("uuid")),
+                    rs.getString("name"), rs.getLong("group_until")));
+                export.stream(conn, SIGNS, rs -> new TransferRecord.Sign(rs.getString("world"), rs.getInt("x"), rs.getInt("y"),
+                    rs.getInt("z")));
+            });
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to export the permission data", exception);
+            return -1;
+        }
+
+        return count[0];
+    }
+
+    @Override
+    public long importAll(TransferReader reader, LongConsumer progress) throws IOException {
+        var chunk = new ArrayList<TransferRecord>(CHUNK_SIZE);
+        var count = 0L;
+
+        try {
+            for (var record = reader.read(); record != null; record = reader.read()) {
+                chunk.add(record);
+
+                if (chunk.size() == CHUNK_SIZE) {
+                    insert(chunk);
+                    count += chunk.size();
+                    chunk.clear();
+                    progress.accept(count);
+                }
+            }
+
+            if (!chunk.isEmpty()) {
+                insert(chunk);
+                count += chunk.size();
+                progress.accept(count);
+            }
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to import the permission data after " + count + " records", exception);
+            return -1;
+        }
+
+        return count;
+    }
+
+    /**
+     * Inserts the given records in one transaction. The tables are filled in the order of their references, so records referencing rows of
+     * the same chunk find them.
+     *
+     * @param chunk The records to insert.
+     * @throws SQLException If a database access error occurs, the chunk is rolled back in that case.
+     */
+    private void insert(List<TransferRecord> chunk) throws SQLException {
+        var permissions = new LinkedHashSet<String>();
+        var groups = new ArrayList<String>();
+
+        for (var record : chunk) {
+            if (record instanceof TransferRecord.GroupPermission permission) {
+                permissions.add(permission.permission());
+            } else if (record instanceof TransferRecord.PlayerPermission permission) {
+                permissions.add(permission.permission());
+            } else if (record instanceof TransferRecord.Group group) {
+                groups.add(group.name());
+            }
+        }
+
+        transaction(conn -> {
+            permissionRepository.addPermissions(conn, permissions);
+
+            batch(conn, insertGroup, chunk, TransferRecord.Group.class, (stmt, group) -> {
+                stmt.setString(1, group.name());
+                stmt.setBoolean(2, group.isDefault());
+            });
+            batch(conn, insertMetadata, chunk, TransferRecord.Group.class, (stmt, group) -> {
+                stmt.setString(1, group.prefix());
+                stmt.setString(2, group.suffix());
+                stmt.setInt(3, group.weight());
+                stmt.setString(4, group.name());
+            });
+            batch(conn, insertParent, chunk, TransferRecord.GroupParent.class, (stmt, parent) -> {
+                stmt.setString(1, parent.parent());
+                stmt.setString(2, parent.group());
+            });
+            batch(conn, insertGroupPermission, chunk, TransferRecord.GroupPermission.class, (stmt, permission) -> {
+                stmt.setString(1, permission.server());
+                stmt.setString(2, permission.world());
+                stmt.setString(3, permission.permission());
+                stmt.setString(4, permission.group());
+            });
+            batch(conn, insertPlayer, chunk, TransferRecord.Player.class, (stmt, player) -> {
+                stmt.setBytes(1, UUIDs.toBytes(player.uuid()));
+                stmt.setString(2, player.name());
+            });
+            batch(conn, insertPlayerPermission, chunk, TransferRecord.PlayerPermission.class, (stmt, permission) -> {
+                stmt.setBytes(1, UUIDs.toBytes(permission.uuid()));
+                stmt.setString(2, permission.server());
+                stmt.setString(3, permission.world());
+                stmt.setLong(4, permission.until());
+                stmt.setString(5, permission.permission());
+            });
+            batch(conn, insertPlayerGroup, chunk, TransferRecord.PlayerGroup.class, (stmt, membership) -> {
+                stmt.setBytes(1, UUIDs.toBytes(membership.uuid()));
+                stmt.setLong(2, membership.until());
+                stmt.setString(3, membership.group());
+            });
+            batch(conn, INSERT_SIGN, chunk, TransferRecord.Sign.class, (stmt, sign) -> {
+                for (var offset = 0; offset <= 4; offset += 4) {
+                    stmt.setString(offset + 1, sign.world());
+                    stmt.setInt(offset + 2, sign.x());
+                    stmt.setInt(offset + 3, sign.y());
+                    stmt.setInt(offset + 4, sign.z());
+                }
+            });
+
+            // Millions of imported players would flood the changelog, the other servers load them when they join
+            changelog.recordAll(conn, Change.Kind.GROUP, groups);
+        });
+
+        permissionRepository.remember(permissions);
+    }
+
+    /**
+     * Adds the records of the given type to one batch and executes it.
+     *
+     * @param conn   The connection of the transaction.
+     * @param query  The statement inserting a record.
+     * @param chunk  The records of the chunk.
+     * @param type   The type of the records the statement inserts.
+     * @param binder Sets the parameters of the statement to a record.
+     * @param <T>    The type of the records the statement inserts.
+     * @throws SQLException If a database access error occurs.
+     */
+    private static <T extends TransferRecord> void batch(Connection conn, String query, List<TransferRecord> chunk, Class<T> type,
+        Binder<T> binder) throws SQLException {
+        if (chunk.stream().noneMatch(type::isInstance)) {
+            return;
+        }
+
+        try (var stmt = conn.prepareStatement(query)) {
+            for (var record : chunk) {
+                if (type.isInstance(record)) {
+                    binder.bind(stmt, type.cast(record));
+                    stmt.addBatch();
+                }
+            }
+
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * @param rs     The result set positioned on a row.
+     * @param column The column of a nullable text.
+     * @return The text of the column, empty if it is null.
+     * @throws SQLException If the column can't be read.
+     */
+    private static String text(ResultSet rs, String column) throws SQLException {
+        var value = rs.getString(column);
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Sets the parameters of a statement to a record.
+     *
+     * @param <T> The type of the record.
+     */
+    @FunctionalInterface
+    private interface Binder<T> {
+
+        /**
+         * @param stmt   The statement.
+         * @param record The record.
+         * @throws SQLException If a parameter can't be set.
+         */
+        void bind(PreparedStatement stmt, T record) throws SQLException;
+    }
+
+    /**
+     * Reads the record of the current row.
+     */
+    @FunctionalInterface
+    private interface RowReader {
+
+        /**
+         * @param rs The result set positioned on a row.
+         * @return The record of the row.
+         * @throws SQLException If a column can't be read.
+         */
+        TransferRecord read(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Streams the rows of the queries to the writer of an export.
+     *
+     * @param writer    The writer of the export.
+     * @param progress  Told the number of written records after every chunk.
+     * @param count     The number of written records.
+     * @param fetchSize The fetch size streaming the rows of a query.
+     */
+    private record Export(TransferWriter writer, LongConsumer progress, long[] count, int fetchSize) {
+
+        /**
+         * Writes the records of all rows of the given query. The rows are streamed, only one row is read into memory at a time.
+         *
+         * @param conn   The connection of the transaction.
+         * @param query  The query selecting the rows.
+         * @param reader Reads the record of a row.
+         * @throws SQLException If the rows can't be read.
+         */
+        private void stream(Connection conn, String query, RowReader reader) throws SQLException {
+            try (var stmt = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(fetchSize);
+
+                try (var rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        writer.write(reader.read(rs));
+
+                        if (++count[0] % CHUNK_SIZE == 0) {
+                            progress.accept(count[0]);
+                        }
+                    }
+                }
+            } catch (IOException exception) {
+                // The transaction only passes SQL exceptions through, the failed write is rethrown afterwards
+                throw new UncheckedIOException(exception);
+            }
+        }
+    }
+}
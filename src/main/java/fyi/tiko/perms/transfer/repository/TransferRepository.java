@@ -0,0 +1,41 @@
+package fyi.tiko.perms.transfer.repository;
+
+import fyi.tiko.perms.transfer.TransferReader;
+import fyi.tiko.perms.transfer.TransferWriter;
+import java.io.IOException;
+import java.util.function.LongConsumer;
+
+/**
+ * Streams the whole permission data of the storage to and from an export. Neither direction holds more than a chunk of records in memory,
+ * so exports of millions of players are written and read with constant memory.
+ *
+ * @author tiko
+ */
+public interface TransferRepository {
+
+    /**
+     * The number of records read from the storage at a time and inserted in one transaction.
+     */
+    int CHUNK_SIZE = 5_000;
+
+    /**
+     * Writes all groups, group permissions, players, memberships, player permissions and signs, including the expired ones.
+     *
+     * @param writer   The writer of the export.
+     * @param progress Told the number of written records after every chunk.
+     * @return The number of written records, -1 if the storage couldn't be read.
+     * @throws IOException If the export can't be written.
+     */
+    long exportAll(TransferWriter writer, LongConsumer progress) throws IOException;
+
+    /**
+     * Adds all records of the given export to the storage. Existing rows are kept as they are, so an import only adds the missing rows and
+     * an interrupted import can simply be repeated. Every chunk is inserted in its own transaction.
+     *
+     * @param reader   The reader of the export.
+     * @param progress Told the number of read records after every chunk.
+     * @return The number of read records, -1 if the records couldn't be inserted.
+     * @throws IOException If the export can't be read or contains an invalid record.
+     */
+    long importAll(TransferReader reader, LongConsumer progress) throws IOException;
+}
@@ -1,7 +1,7 @@
 package fyi.tiko.perms.user;
 
+import fyi.tiko.perms.user.permission.PermissionSnapshot;
 import fyi.tiko.perms.user.permission.PermissionUser;
-import java.util.Arrays;
 import org.bukkit.permissions.PermissibleBase;
 import org.jetbrains.annotations.NotNull;
 
@@ -24,28 +24,13 @@ public class UserPermissibleBase extends PermissibleBase {
     }
 
     /**
-     * Checks if the user has the given permission.
+     * Checks if the user has the given permission. Default permissions, negated nodes and the {@code *} node are already resolved in the
+     * {@link PermissionSnapshot} of the user, so this is a single lookup.
      * @param permission The permission to check.
      * @return True if the user has the permission.
      */
     @Override
     public boolean hasPermission(@NotNull String permission) {
-        // Default permission check
-        if (Arrays.asList("bukkit.broadcast.user", "bukkit.broadcast").contains(permission)) {
-            return true;
-        }
-
-        // Check if a user has a negative permission node
-        if (user.hasPermission("-" + permission)) {
-            return false;
-        }
-
-        // Check if a user has every permission node
-        if (user.hasPermission("*")) {
-            return true;
-        }
-
-        // Check if a user or their group has a permission node
-        return user.hasPermission(permission);
+        return user.snapshot().hasPermission(permission);
     }
 }
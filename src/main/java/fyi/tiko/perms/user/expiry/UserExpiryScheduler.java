@@ -0,0 +1,106 @@
+package fyi.tiko.perms.user.expiry;
+
+import fyi.tiko.perms.PermissionPlugin;
+import fyi.tiko.perms.user.permission.PermissionUser;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+
+/**
+ * Removes timed groups and permissions of loaded users as soon as they expire. Only the earliest expiry of every user is queued, so a tick
+ * only costs a single peek at the queue as long as nothing expires, regardless of the amount of online users.
+ *
+ * @author tiko
+ */
+public class UserExpiryScheduler {
+
+    private final PermissionPlugin plugin;
+    private final PriorityBlockingQueue<Expiry> queue = new PriorityBlockingQueue<>();
+    private final Map<UUID, Long> scheduled = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new {@link UserExpiryScheduler}.
+     *
+     * @param plugin The plugin the scheduler belongs to.
+     */
+    public UserExpiryScheduler(PermissionPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Starts checking for expired entries every tick.
+     */
+    public void start() {
+        plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 1, 1);
+    }
+
+    /**
+     * Schedules the next expiry of the given user. Has to be called whenever a timed group or permission is added to a loaded user.
+     *
+     * @param user The user to schedule.
+     */
+    public void schedule(PermissionUser user) {
+        var next = user.nextExpiry();
+
+        if (next == -1) {
+            return;
+        }
+
+        scheduled.compute(user.uuid(), (uuid, current) -> {
+            if (current != null && current <= next) {
+                return current;
+            }
+
+            queue.add(new Expiry(next, uuid));
+            return next;
+        });
+    }
+
+    /**
+     * Removes the expired entries of all users whose next expiry has passed. Runs every tick once the scheduler is started.
+     */
+    void tick() {
+        var now = System.currentTimeMillis();
+        Expiry expiry;
+
+        while ((expiry = queue.peek()) != null && expiry.until() <= now) {
+            queue.poll();
+
+            // Entries that were replaced by an earlier expiry of the same user are skipped
+            if (scheduled.remove(expiry.uuid(), expiry.until())) {
+                PermissionUser.find(expiry.uuid()).ifPresent(this::expire);
+            }
+        }
+    }
+
+    /**
+     * Removes the expired entries of the given user and schedules their next expiry.
+     *
+     * @param user The user to expire.
+     */
+    private void expire(PermissionUser user) {
+        var player = user.apply();
+
+        if (user.removeExpired() && player != null && player.isOnline()) {
+            // The prefix of the user may have changed with their groups
+            plugin.userScoreboardService().sendScoreboard(player);
+        }
+
+        schedule(user);
+    }
+
+    /**
+     * The next expiry of a user.
+     *
+     * @param until The time the entry expires.
+     * @param uuid  The uuid of the user.
+     */
+    private record Expiry(long until, UUID uuid) implements Comparable<Expiry> {
+
+        @Override
+        public int compareTo(Expiry other) {
+            return Long.compare(until, other.until);
+        }
+    }
+}
@@ -1,10 +1,11 @@
 package fyi.tiko.perms.user.listener;
 
 import fyi.tiko.perms.PermissionPlugin;
+import fyi.tiko.perms.database.WriteBehindQueue;
 import fyi.tiko.perms.user.permission.PermissionUser;
 import fyi.tiko.perms.user.repository.UserRepository;
+import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.logging.Level;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
@@ -33,26 +34,65 @@ public class UserAsyncPreLoginListener implements Listener {
     }
 
     /**
-     * Applies the permissions and groups to the {@link PermissionUser}.
+     * Applies the permissions and groups to the {@link PermissionUser}. If the queries run on virtual threads, the user is loaded on a
+     * virtual thread, so the login only waits for a connection without holding one of the threads of the storage. If the user can't be
+     * loaded, the login is denied.
      */
     @EventHandler
     public void handleAsyncPreLogin(AsyncPlayerPreLoginEvent event) {
-        var uuid = event.getUniqueId();
-        var user = PermissionUser.of(uuid);
+        var executor = plugin.databaseExecutor();
+        boolean loaded;
+
+        if (executor.virtual()) {
+            loaded = executor.supply(() -> load(event.getUniqueId(), event.getName())).join();
+        } else {
+            loaded = load(event.getUniqueId(), event.getName());
+        }
+
+        // A user without their permissions and groups mustn't play, the user can try to join again
+        if (!loaded) {
+            event.disallow(Result.KICK_OTHER, plugin.userTranslator().translatedMessage("login-failed"));
+            return;
+        }
+
+        // Allow the user to log in
+        event.setLoginResult(Result.ALLOWED);
+    }
+
+    /**
+     * Loads the permissions and groups of the user and registers the {@link PermissionUser}.
+     *
+     * @param uuid The uuid of the user.
+     * @param name The name the user logs in with.
+     * @return True if the user was loaded, false if the storage couldn't be read.
+     */
+    private boolean load(UUID uuid, String name) {
+        var user = PermissionUser.create(uuid);
         var startTime = System.currentTimeMillis();
 
         // Creating a new user if the user is not found in the database
-        userRepository.updateUser(uuid, event.getName());
+        userRepository.updateUser(uuid, name);
+
+        // Changes that are still queued, e.g. the save after the last quit, have to be written before the user is loaded
+        plugin.writeQueue().flush(WriteBehindQueue.userKey(uuid));
 
         do {
-            userRepository.permissions(uuid).forEach(user::addPermission);
-            userRepository.groups(uuid).forEach(user::addGroup);
+            var state = userRepository.load(uuid);
+
+            if (state.isEmpty()) {
+                return false;
+            }
+
+            user.state(state.get());
             user.loaded(new AtomicBoolean(true));
 
-            plugin.getLogger().log(Level.INFO, String.format("Loaded user %s in %dms", uuid, System.currentTimeMillis() - startTime));
+            // An old instance that is still being saved after a quit is replaced
+            user.register();
+            plugin.userExpiryScheduler().schedule(user);
+
+            plugin.loginLatency().record(System.currentTimeMillis() - startTime);
         } while (!user.loaded().get());
 
-        // Allow the user to log in
-        event.setLoginResult(Result.ALLOWED);
+        return true;
     }
 }
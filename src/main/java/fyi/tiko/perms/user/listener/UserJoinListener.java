@@ -39,6 +39,12 @@ public class UserJoinListener implements Listener {
         var translator = new UserTranslator(plugin.messageConfig());
         var highestGroup = user.highestPermissionGroup();
 
+        // Online players are never evicted from the name cache
+        plugin.userRepository().names().online(player.getUniqueId(), player.getName());
+
+        // The world is known now, so world scoped permissions can be applied
+        user.switchWorld(player.getWorld().getName());
+
         event.joinMessage(null);
 
         if (highestGroup != null) {
@@ -48,7 +48,7 @@ public class UserLoginListener implements Listener {
         }
 
         // Add default groups
-        plugin.groups().forEach(group -> {
+        plugin.groupRegistry().all().forEach(group -> {
             if (!group.isDefault()) {
                 return;
             }
@@ -1,6 +1,7 @@
 package fyi.tiko.perms.user.listener;
 
 import fyi.tiko.perms.PermissionPlugin;
+import fyi.tiko.perms.database.WriteBehindQueue;
 import fyi.tiko.perms.user.permission.PermissionUser;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
@@ -37,10 +38,10 @@ public class UserQuitListener implements Listener {
 
         event.quitMessage(null);
 
-        // Save the user data to the database
-        plugin.runAsync(() -> {
-            plugin.userRepository().saveUser(user);
-            PermissionUser.delete(player.getUniqueId());
-        });
+        // The user is removed from the cache right away, so the save task doesn't queue it again. A login of the same player writes the
+        // queued save before the user is loaded.
+        PermissionUser.delete(user);
+        plugin.userRepository().names().offline(user.uuid());
+        plugin.writeQueue().enqueue(WriteBehindQueue.userKey(user.uuid()), () -> plugin.userRepository().saveUser(user));
     }
 }
@@ -0,0 +1,37 @@
+package fyi.tiko.perms.user.listener;
+
+import fyi.tiko.perms.PermissionPlugin;
+import fyi.tiko.perms.user.permission.PermissionSnapshot;
+import fyi.tiko.perms.user.permission.PermissionUser;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+
+/**
+ * Switches the {@link PermissionSnapshot} of the user when they change the world, so world scoped permissions don't cost anything during a
+ * permission check.
+ *
+ * @author tiko
+ */
+public class UserWorldChangeListener implements Listener {
+
+    /**
+     * Constructs a new {@link UserWorldChangeListener}.
+     *
+     * @param plugin The plugin to register the listener to.
+     */
+    public UserWorldChangeListener(PermissionPlugin plugin) {
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+    }
+
+    /**
+     * Switches the snapshot of the user to the world they changed to.
+     *
+     * @param event The event to handle.
+     */
+    @EventHandler
+    public void handleWorldChange(PlayerChangedWorldEvent event) {
+        var player = event.getPlayer();
+        PermissionUser.of(player).switchWorld(player.getWorld().getName());
+    }
+}
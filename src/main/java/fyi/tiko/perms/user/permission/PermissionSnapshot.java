@@ -0,0 +1,130 @@
+package fyi.tiko.perms.user.permission;
+
+import fyi.tiko.perms.group.PermissionGroup;
+import fyi.tiko.perms.permission.PermissionContext;
+import fyi.tiko.perms.permission.PermissionDictionary;
+import fyi.tiko.perms.permission.PermissionNodes;
+import fyi.tiko.perms.permission.PermissionTrie;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable, flattened view of every permission node a user effectively has. The exact nodes of the user and the {@link PermissionNodes} of
+ * their groups, including inherited ones, are combined with a bitwise or, negations are resolved once when the snapshot is built. A check of
+ * an exact node is a single {@link PermissionDictionary} lookup and a bit test, wildcard nodes are only resolved if no exact node matches.
+ * <p>
+ * A snapshot is only valid for the server and world it was built for. Nodes of every {@link PermissionContext} applying there are merged, so
+ * a node negated in any applying context stays negated.
+ *
+ * @author tiko
+ */
+public final class PermissionSnapshot {
+
+    /**
+     * Permissions every user has, regardless of their nodes.
+     */
+    private static final Set<String> DEFAULT_PERMISSIONS = Set.of("bukkit.broadcast.user", "bukkit.broadcast");
+
+    /**
+     * The maximum amount of remembered wildcard checks, so plugins checking generated permissions can't grow the snapshot endlessly.
+     */
+    private static final int MAX_RESOLVED = 4096;
+
+    private final BitSet allowed;
+    private final BitSet decided;
+    private final PermissionTrie wildcards;
+    private final Map<String, Boolean> resolved = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new snapshot from the given resolved nodes.
+     *
+     * @param allowed   The ids of the granted exact nodes.
+     * @param decided   The ids of all exact nodes, granted or negated.
+     * @param wildcards The compiled wildcard nodes.
+     */
+    private PermissionSnapshot(BitSet allowed, BitSet decided, PermissionTrie wildcards) {
+        this.allowed = allowed;
+        this.decided = decided;
+        this.wildcards = wildcards;
+    }
+
+    /**
+     * Resolves the given user permissions and the permissions of the given groups into a new snapshot for the given server and world.
+     *
+     * @param permissions The permissions of the user, grouped by their context.
+     * @param groups      The groups of the user.
+     * @param server      The server the snapshot is built for.
+     * @param world       The world the snapshot is built for, empty if the world is unknown.
+     * @return The resolved snapshot.
+     */
+    public static PermissionSnapshot of(Map<PermissionContext, ? extends Collection<String>> permissions, Collection<PermissionGroup> groups,
+        String server, String world) {
+        var builder = PermissionNodes.builder();
+
+        permissions.forEach((context, contextPermissions) -> {
+            if (context.appliesTo(server, world)) {
+                contextPermissions.forEach(builder::add);
+            }
+        });
+
+        groups.forEach(group -> group.effectiveNodes().forEach((context, contextNodes) -> {
+            if (context.appliesTo(server, world)) {
+                builder.addAll(contextNodes);
+            }
+        }));
+
+        var nodes = builder.build();
+
+        var decided = (BitSet) nodes.granted().clone();
+        decided.or(nodes.negated());
+
+        var allowed = (BitSet) nodes.granted().clone();
+        allowed.andNot(nodes.negated());
+
+        // Default permissions can't be negated
+        DEFAULT_PERMISSIONS.forEach(permission -> {
+            var id = PermissionDictionary.intern(permission);
+            allowed.set(id);
+            decided.set(id);
+        });
+
+        return new PermissionSnapshot(allowed, decided, nodes.wildcards());
+    }
+
+    /**
+     * Checks if the snapshot grants the given permission. Permissions are case-insensitive.
+     *
+     * @param permission The permission to check.
+     * @return True if the permission is granted.
+     */
+    public boolean hasPermission(String permission) {
+        // The exact and the wildcard lookup, as well as the remembered checks, use the same lower case permission
+        var lowerCase = permission.toLowerCase(Locale.ROOT);
+
+        var id = PermissionDictionary.id(lowerCase);
+
+        if (id != -1 && decided.get(id)) {
+            return allowed.get(id);
+        }
+
+        if (wildcards.isEmpty()) {
+            return false;
+        }
+
+        var value = resolved.get(lowerCase);
+
+        if (value == null) {
+            value = wildcards.hasPermission(lowerCase);
+
+            if (resolved.size() < MAX_RESOLVED) {
+                resolved.put(lowerCase, value);
+            }
+        }
+
+        return value;
+    }
+}
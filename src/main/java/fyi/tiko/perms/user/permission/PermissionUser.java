@@ -1,27 +1,39 @@
 package fyi.tiko.perms.user.permission;
 
+import fyi.tiko.perms.group.GroupRegistry;
 import fyi.tiko.perms.group.PermissionGroup;
+import fyi.tiko.perms.permission.PermissionContext;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import org.bukkit.entity.Player;
 
 /**
  * A cache for the permission data of a user.
+ * <p>
+ * The registry of all users is accessed from the main thread, the login and chat threads and async tasks at the same time. Lookups don't
+ * lock, a user is only ever removed by the instance that was registered, so a user who logs in again while their old instance is still
+ * being saved keeps the new instance.
  *
  * @author tiko
  */
 public class PermissionUser {
-    private static final Map<UUID, PermissionUser> PERMISSION_USER_MAP = new HashMap<>();
-    private final Set<String> permissions = new HashSet<>();
-    private final Map<PermissionGroup, Long> groups = new HashMap<>();
+    private static final Map<UUID, PermissionUser> PERMISSION_USER_MAP = new ConcurrentHashMap<>();
+    private final AtomicReference<UserState> state = new AtomicReference<>(UserState.EMPTY);
+    private volatile UserState saved = UserState.EMPTY;
     private final UUID uuid;
 
     private Player player;
     private AtomicBoolean loaded;
+    private volatile String world = "";
+    private volatile ActiveSnapshot active;
 
     /**
      * Creates a new permission user from the given uuid.
@@ -33,15 +45,46 @@ public class PermissionUser {
     }
 
     /**
-     * Creates a new permission user from the given uuid.
+     * Gets the registered permission user of the given uuid or creates and registers a new one atomically.
      *
      * @param uuid The uuid to create the permission user from.
-     * @return The created permission user.
+     * @return The registered permission user.
      */
     public static PermissionUser of(UUID uuid) {
         return PERMISSION_USER_MAP.computeIfAbsent(uuid, PermissionUser::new);
     }
 
+    /**
+     * Creates a new, empty permission user for the given uuid without registering it. The user can be loaded completely before it is
+     * published with {@link #register()}.
+     *
+     * @param uuid The uuid to create the permission user from.
+     * @return The created permission user.
+     */
+    public static PermissionUser create(UUID uuid) {
+        return new PermissionUser(uuid);
+    }
+
+    /**
+     * Registers this user, replacing a previously registered instance of the same user so their data can't leak into this one.
+     *
+     * @return This user.
+     */
+    public PermissionUser register() {
+        PERMISSION_USER_MAP.put(uuid, this);
+        return this;
+    }
+
+    /**
+     * Gets the registered permission user of the given uuid without creating one.
+     *
+     * @param uuid The uuid of the user.
+     * @return The registered user or an empty optional if the user isn't loaded.
+     */
+    public static Optional<PermissionUser> find(UUID uuid) {
+        return Optional.ofNullable(PERMISSION_USER_MAP.get(uuid));
+    }
+
     /**
      * Creates a new permission user from the given player.
      *
@@ -92,31 +135,149 @@ public class PermissionUser {
     }
 
     /**
-     * Adds the given permission to the user.
+     * @return The current permission state of the user. The state is immutable, so it can be read and saved from any thread.
+     */
+    public UserState state() {
+        return state.get();
+    }
+
+    /**
+     * Replaces the permission state of the user after it was loaded from the database. The state is also remembered as the saved state.
+     *
+     * @param state The new state.
+     */
+    public void state(UserState state) {
+        this.state.set(state);
+        this.saved = state;
+    }
+
+    /**
+     * @return The state that was last loaded from or saved to the database. Only the difference to the current state has to be saved.
+     */
+    public UserState savedState() {
+        return saved;
+    }
+
+    /**
+     * Remembers the given state as saved to the database.
+     *
+     * @param saved The saved state.
+     */
+    public void markSaved(UserState saved) {
+        this.saved = saved;
+    }
+
+    /**
+     * @return True if the user was changed since it was last loaded or saved.
+     */
+    public boolean isDirty() {
+        return !state.get().sameData(saved);
+    }
+
+    /**
+     * Adds the given global permission to the user.
      *
      * @param permission The permission to add.
      */
     public void addPermission(String permission) {
-        permissions.add(permission);
+        addPermission(permission, PermissionContext.GLOBAL);
+    }
+
+    /**
+     * Adds the given permission to the user in the given context.
+     *
+     * @param permission The permission to add.
+     * @param context    The context of the permission.
+     */
+    public void addPermission(String permission, PermissionContext context) {
+        addPermission(permission, context, -1);
+    }
+
+    /**
+     * Adds the given permission to the user in the given context until the given time.
+     *
+     * @param permission The permission to add.
+     * @param context    The context of the permission.
+     * @param until      The time until the permission is valid, -1 if the permission is permanent.
+     */
+    public void addPermission(String permission, PermissionContext context, long until) {
+        state.updateAndGet(current -> current.withPermission(permission, context, until));
+    }
+
+    /**
+     * Checks if the user has the given node in the given context, without taking groups or wildcards into account.
+     *
+     * @param permission The node to check.
+     * @param context    The context of the node.
+     * @return True if the user has the node.
+     */
+    public boolean hasNode(String permission, PermissionContext context) {
+        return state.get().hasNode(permission, context);
     }
 
     /**
-     * Checks if the user has the given permission.
+     * Checks if the user effectively has the given permission, taking their groups, negated nodes and the {@code *} node into account.
      *
      * @param permission The permission to check.
      * @return True if the user has the permission.
      */
     public boolean hasPermission(String permission) {
-        return permissions.contains(permission) || groups.keySet().stream().anyMatch(group -> group.hasPermission(permission));
+        return snapshot().hasPermission(permission);
+    }
+
+    /**
+     * @return The effective permissions of the user in their current world. The snapshot is only rebuilt after the permissions or groups of
+     * the user changed.
+     */
+    public PermissionSnapshot snapshot() {
+        var current = active;
+        var currentState = state.get();
+        var currentWorld = world;
+
+        if (current != null && current.state() == currentState && current.world().equals(currentWorld)) {
+            return current.snapshot();
+        }
+
+        var snapshot = currentState.snapshot(currentWorld);
+        active = new ActiveSnapshot(currentState, currentWorld, snapshot);
+        return snapshot;
     }
 
     /**
-     * Removes the given permission from the user.
+     * Switches the active snapshot to the given world. Snapshots of worlds the user has already been in are reused, so switching back and forth
+     * doesn't resolve the permissions again.
+     *
+     * @param world The name of the world the user is in.
+     */
+    public void switchWorld(String world) {
+        this.world = world.toLowerCase(Locale.ROOT);
+        snapshot();
+    }
+
+    /**
+     * Discards the effective permissions of the user in every world, so they are rebuilt on the next permission check.
+     */
+    public void invalidate() {
+        state.updateAndGet(UserState::copy);
+    }
+
+    /**
+     * Removes the given global permission from the user.
      *
      * @param permission The permission to remove.
      */
     public void removePermission(String permission) {
-        permissions.remove(permission);
+        removePermission(permission, PermissionContext.GLOBAL);
+    }
+
+    /**
+     * Removes the given permission from the user in the given context.
+     *
+     * @param permission The permission to remove.
+     * @param context    The context of the permission.
+     */
+    public void removePermission(String permission, PermissionContext context) {
+        state.updateAndGet(current -> current.withoutPermission(permission, context));
     }
 
     /**
@@ -125,7 +286,7 @@ public class PermissionUser {
      * @return  True if the user is in the group.
      */
     public boolean isInGroup(String name) {
-        return groups.keySet().stream().anyMatch(group -> group.name().equalsIgnoreCase(name));
+        return state.get().isInGroup(name);
     }
 
     /**
@@ -135,7 +296,7 @@ public class PermissionUser {
      * @param until The time until the group is valid.
      */
     public void addGroup(PermissionGroup group, long until) {
-        groups.put(group, until);
+        state.updateAndGet(current -> current.withGroup(group, until));
     }
 
     /**
@@ -144,7 +305,7 @@ public class PermissionUser {
      * @param group The group to remove.
      */
     public void removeGroup(PermissionGroup group) {
-        groups.remove(group);
+        removeGroup(group.name());
     }
 
     /**
@@ -152,41 +313,121 @@ public class PermissionUser {
      * @param name The name of the group to remove.
      */
     public void removeGroup(String name) {
-        groups.keySet().stream().filter(group -> group.name().equalsIgnoreCase(name)).findFirst().ifPresent(this::removeGroup);
+        state.updateAndGet(current -> current.withoutGroup(name));
     }
 
     /**
-     * @return The set of all permissions the user has.
+     * Removes all groups and permissions of the user that are expired.
+     *
+     * @return True if anything was removed.
+     */
+    public boolean removeExpired() {
+        var now = System.currentTimeMillis();
+        var previous = state.getAndUpdate(current -> current.withoutExpired(now));
+
+        return previous.withoutExpired(now) != previous;
+    }
+
+    /**
+     * @return The earliest time a timed group or permission of the user expires or -1 if nothing expires.
+     */
+    public long nextExpiry() {
+        return state.get().nextExpiry();
+    }
+
+    /**
+     * Replaces the stored groups of the user with the registered groups of the same name if the user is in the updated group or in a group
+     * inheriting from it. The time until the groups are valid is kept.
+     *
+     * @param name          The name of the updated group.
+     * @param groupRegistry The registry of the groups.
+     * @return True if the user was affected by the update.
+     */
+    public boolean updateGroup(String name, GroupRegistry groupRegistry) {
+        var affected = state.get().groups().keySet().stream()
+            .anyMatch(group -> group.name().equalsIgnoreCase(name) || group.inheritsFrom(name));
+
+        if (!affected) {
+            return false;
+        }
+
+        // The stored groups may have been modified since they were added, so they are replaced instead of removed one by one
+        state.updateAndGet(current -> {
+            var updated = new HashMap<PermissionGroup, Long>();
+
+            current.groups().forEach((group, until) -> {
+                var registered = groupRegistry.byName(group.name());
+                updated.put(registered != null ? registered : group, until);
+            });
+
+            return current.withGroups(updated);
+        });
+
+        return true;
+    }
+
+    /**
+     * @return The set of all global permissions the user has.
      */
     public Set<String> permissions() {
-        return permissions;
+        return state.get().permissions().getOrDefault(PermissionContext.GLOBAL, Set.of());
+    }
+
+    /**
+     * @return The map of all permissions the user has, grouped by their context.
+     */
+    public Map<PermissionContext, Set<String>> permissionsByContext() {
+        return state.get().permissions();
     }
 
     /**
      * @return The set of all permission groups the user has.
      */
     public Map<PermissionGroup, Long> groups() {
-        return groups;
+        return state.get().groups();
     }
 
     /**
      * @return The highest permission group the user has.
      */
     public PermissionGroup highestPermissionGroup() {
-        return groups.keySet().stream().reduce(PermissionGroup::highestWeight).orElse(null);
+        return state.get().groups().keySet().stream().reduce(PermissionGroup::highestWeight).orElse(null);
     }
 
     /**
-     * Deletes the user from the cache.
+     * Deletes the user from the cache, regardless of which instance is registered.
+     *
+     * @param uuid The uuid of the user.
      */
     public static void delete(UUID uuid) {
         PERMISSION_USER_MAP.remove(uuid);
     }
 
     /**
-     * @return The map of all permission users.
+     * Deletes the given user from the cache if it is still the registered instance. A newer instance of the same user is kept.
+     *
+     * @param user The user to delete.
+     * @return True if the user was deleted.
+     */
+    public static boolean delete(PermissionUser user) {
+        return PERMISSION_USER_MAP.remove(user.uuid, user);
+    }
+
+    /**
+     * @return An unmodifiable view of all permission users. Iterating it never blocks and never throws a concurrent modification exception,
+     * users registered or deleted during the iteration may or may not be included.
      */
     public static Map<UUID, PermissionUser> permissionUsers() {
-        return PERMISSION_USER_MAP;
+        return Collections.unmodifiableMap(PERMISSION_USER_MAP);
+    }
+
+    /**
+     * The snapshot that is currently used for permission checks, together with the state and world it was resolved for.
+     *
+     * @param state    The state the snapshot was resolved from.
+     * @param world    The world the snapshot was resolved for.
+     * @param snapshot The resolved snapshot.
+     */
+    private record ActiveSnapshot(UserState state, String world, PermissionSnapshot snapshot) {
     }
 }
@@ -0,0 +1,337 @@
+package fyi.tiko.perms.user.permission;
+
+import fyi.tiko.perms.group.PermissionGroup;
+import fyi.tiko.perms.permission.PermissionContext;
+import fyi.tiko.perms.permission.PermissionDictionary;
+import fyi.tiko.perms.utils.BukkitServer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable view of the permissions and groups of a {@link PermissionUser}. Every change creates a new state which replaces the old one
+ * atomically, so readers on any thread see a consistent state without locking and savers can serialize it while it is being changed.
+ * <p>
+ * Permissions and groups can be timed. Groups store the time until they are valid directly, timed permissions are stored separately, so
+ * permanent permissions don't cost anything. {@link #nextExpiry()} is used to schedule the removal of expired entries.
+ * <p>
+ * The {@link PermissionSnapshot}s resolved from a state are remembered per world by the state itself, so they are discarded together with
+ * the state they were built from.
+ *
+ * @author tiko
+ */
+public final class UserState {
+
+    /**
+     * A state without any permissions or groups.
+     */
+    public static final UserState EMPTY = new UserState(Map.of(), Map.of(), Map.of());
+
+    private final Map<PermissionContext, Set<String>> permissions;
+    private final Map<PermissionGroup, Long> groups;
+    private final Map<PermissionContext, Map<String, Long>> expiries;
+    private final Map<String, PermissionSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new state from the given permissions and groups. The given maps are copied, expiries of permissions the state doesn't contain
+     * are dropped.
+     *
+     * @param permissions The permissions, grouped by their context.
+     * @param groups      The groups and the time until they are valid.
+     * @param expiries    The time until the timed permissions are valid, grouped by their context.
+     */
+    private UserState(Map<PermissionContext, ? extends Collection<String>> permissions, Map<PermissionGroup, Long> groups,
+        Map<PermissionContext, Map<String, Long>> expiries) {
+        var copiedPermissions = new HashMap<PermissionContext, Set<String>>();
+        var copiedExpiries = new HashMap<PermissionContext, Map<String, Long>>();
+
+        permissions.forEach((context, contextPermissions) -> {
+            if (contextPermissions.isEmpty()) {
+                return;
+            }
+
+            copiedPermissions.put(context, Set.copyOf(contextPermissions));
+
+            var contextExpiries = new HashMap<String, Long>(expiries.getOrDefault(context, Map.of()));
+            contextExpiries.keySet().retainAll(contextPermissions);
+
+            if (!contextExpiries.isEmpty()) {
+                copiedExpiries.put(context, Map.copyOf(contextExpiries));
+            }
+        });
+
+        this.permissions = Map.copyOf(copiedPermissions);
+        this.groups = Map.copyOf(groups);
+        this.expiries = Map.copyOf(copiedExpiries);
+    }
+
+    /**
+     * Creates a new state from the given permanent permissions and groups.
+     *
+     * @param permissions The permissions, grouped by their context.
+     * @param groups      The groups and the time until they are valid.
+     * @return The created state.
+     */
+    public static UserState of(Map<PermissionContext, ? extends Collection<String>> permissions, Map<PermissionGroup, Long> groups) {
+        return of(permissions, groups, Map.of());
+    }
+
+    /**
+     * Creates a new state from the given permissions and groups.
+     *
+     * @param permissions The permissions, grouped by their context.
+     * @param groups      The groups and the time until they are valid.
+     * @param expiries    The time until the timed permissions are valid, grouped by their context.
+     * @return The created state.
+     */
+    public static UserState of(Map<PermissionContext, ? extends Collection<String>> permissions, Map<PermissionGroup, Long> groups,
+        Map<PermissionContext, Map<String, Long>> expiries) {
+        var canonical = new HashMap<PermissionContext, Set<String>>();
+        var canonicalExpiries = new HashMap<PermissionContext, Map<String, Long>>();
+
+        permissions.forEach((context, contextPermissions) -> contextPermissions.forEach(permission ->
+            canonical.computeIfAbsent(context, key -> new HashSet<>()).add(PermissionDictionary.canonical(permission))));
+
+        expiries.forEach((context, contextExpiries) -> contextExpiries.forEach((permission, until) ->
+            canonicalExpiries.computeIfAbsent(context, key -> new HashMap<>()).put(PermissionDictionary.canonical(permission), until)));
+
+        return new UserState(canonical, groups, canonicalExpiries);
+    }
+
+    /**
+     * @return The permissions of the user, grouped by their context.
+     */
+    public Map<PermissionContext, Set<String>> permissions() {
+        return permissions;
+    }
+
+    /**
+     * @return The groups of the user and the time until they are valid.
+     */
+    public Map<PermissionGroup, Long> groups() {
+        return groups;
+    }
+
+    /**
+     * @return The time until the timed permissions are valid, grouped by their context.
+     */
+    public Map<PermissionContext, Map<String, Long>> expiries() {
+        return expiries;
+    }
+
+    /**
+     * Gets the time until the given permission is valid.
+     *
+     * @param permission The permission.
+     * @param context    The context of the permission.
+     * @return The time until the permission is valid or -1 if the permission is permanent.
+     */
+    public long until(String permission, PermissionContext context) {
+        var contextExpiries = expiries.get(context);
+        return contextExpiries == null ? -1 : contextExpiries.getOrDefault(PermissionDictionary.normalize(permission), -1L);
+    }
+
+    /**
+     * @return The earliest time a timed group or permission of this state expires or -1 if nothing expires.
+     */
+    public long nextExpiry() {
+        var next = Long.MAX_VALUE;
+
+        for (var until : groups.values()) {
+            if (until != -1) {
+                next = Math.min(next, until);
+            }
+        }
+
+        for (var contextExpiries : expiries.values()) {
+            for (var until : contextExpiries.values()) {
+                next = Math.min(next, until);
+            }
+        }
+
+        return next == Long.MAX_VALUE ? -1 : next;
+    }
+
+    /**
+     * Checks if the given state contains the same permissions, groups and expiries as this state. Resolved snapshots aren't compared.
+     *
+     * @param other The state to compare with.
+     * @return True if both states would be saved the same way.
+     */
+    public boolean sameData(UserState other) {
+        return this == other || permissions.equals(other.permissions) && groups.equals(other.groups) && expiries.equals(other.expiries);
+    }
+
+    /**
+     * Resolves the effective permissions of this state in the given world. The snapshot is only resolved once per world.
+     *
+     * @param world The lower case name of the world.
+     * @return The resolved snapshot.
+     */
+    public PermissionSnapshot snapshot(String world) {
+        return snapshots.computeIfAbsent(world, key -> PermissionSnapshot.of(permissions, groups.keySet(), BukkitServer.serverName(), key));
+    }
+
+    /**
+     * Checks if the state contains the given node in the given context, without taking groups or wildcards into account.
+     *
+     * @param permission The node to check.
+     * @param context    The context of the node.
+     * @return True if the state contains the node.
+     */
+    public boolean hasNode(String permission, PermissionContext context) {
+        var nodes = permissions.get(context);
+        return nodes != null && nodes.contains(PermissionDictionary.normalize(permission));
+    }
+
+    /**
+     * @param name The name of the group.
+     * @return True if the state contains a group with the given name.
+     */
+    public boolean isInGroup(String name) {
+        return groups.keySet().stream().anyMatch(group -> group.name().equalsIgnoreCase(name));
+    }
+
+    /**
+     * @param permission The permission to add.
+     * @param context    The context of the permission.
+     * @return A new state with the given permanent permission added.
+     */
+    public UserState withPermission(String permission, PermissionContext context) {
+        return withPermission(permission, context, -1);
+    }
+
+    /**
+     * @param permission The permission to add.
+     * @param context    The context of the permission.
+     * @param until      The time until the permission is valid, -1 if the permission is permanent.
+     * @return A new state with the given permission added.
+     */
+    public UserState withPermission(String permission, PermissionContext context, long until) {
+        var canonical = PermissionDictionary.canonical(permission);
+        var updated = new HashMap<PermissionContext, Set<String>>(permissions);
+        var nodes = new HashSet<>(updated.getOrDefault(context, Set.of()));
+
+        nodes.add(canonical);
+        updated.put(context, nodes);
+
+        var updatedExpiries = new HashMap<PermissionContext, Map<String, Long>>(expiries);
+        var contextExpiries = new HashMap<String, Long>(updatedExpiries.getOrDefault(context, Map.of()));
+
+        if (until == -1) {
+            contextExpiries.remove(canonical);
+        } else {
+            contextExpiries.put(canonical, until);
+        }
+
+        updatedExpiries.put(context, contextExpiries);
+        return new UserState(updated, groups, updatedExpiries);
+    }
+
+    /**
+     * @param permission The permission to remove.
+     * @param context    The context of the permission.
+     * @return A new state without the given permission.
+     */
+    public UserState withoutPermission(String permission, PermissionContext context) {
+        var updated = new HashMap<PermissionContext, Set<String>>(permissions);
+        var nodes = new HashSet<>(updated.getOrDefault(context, Set.of()));
+
+        nodes.remove(PermissionDictionary.normalize(permission));
+        updated.put(context, nodes);
+
+        return new UserState(updated, groups, expiries);
+    }
+
+    /**
+     * @param group The group to add.
+     * @param until The time until the group is valid.
+     * @return A new state with the given group added. A group with the same name is replaced.
+     */
+    public UserState withGroup(PermissionGroup group, long until) {
+        var updated = new HashMap<PermissionGroup, Long>();
+
+        groups.forEach((current, currentUntil) -> {
+            if (!current.name().equalsIgnoreCase(group.name())) {
+                updated.put(current, currentUntil);
+            }
+        });
+
+        updated.put(group, until);
+        return new UserState(permissions, updated, expiries);
+    }
+
+    /**
+     * @param name The name of the group to remove.
+     * @return A new state without the group with the given name.
+     */
+    public UserState withoutGroup(String name) {
+        var updated = new HashMap<PermissionGroup, Long>();
+
+        groups.forEach((group, until) -> {
+            if (!group.name().equalsIgnoreCase(name)) {
+                updated.put(group, until);
+            }
+        });
+
+        return new UserState(permissions, updated, expiries);
+    }
+
+    /**
+     * @param time The current time in milliseconds.
+     * @return A new state without the groups and permissions that expired at or before the given time or this state if nothing expired.
+     */
+    public UserState withoutExpired(long time) {
+        var next = nextExpiry();
+
+        if (next == -1 || next > time) {
+            return this;
+        }
+
+        var updated = new HashMap<PermissionGroup, Long>();
+
+        groups.forEach((group, until) -> {
+            // -1 means never expires
+            if (until == -1 || until > time) {
+                updated.put(group, until);
+            }
+        });
+
+        var updatedPermissions = new HashMap<PermissionContext, Set<String>>();
+
+        permissions.forEach((context, contextPermissions) -> {
+            var contextExpiries = expiries.getOrDefault(context, Map.of());
+            var remaining = new HashSet<String>();
+
+            contextPermissions.forEach(permission -> {
+                var until = contextExpiries.get(permission);
+
+                if (until == null || until > time) {
+                    remaining.add(permission);
+                }
+            });
+
+            updatedPermissions.put(context, remaining);
+        });
+
+        return new UserState(updatedPermissions, updated, expiries);
+    }
+
+    /**
+     * @param groups The groups to use.
+     * @return A new state with the given groups and the permissions of this state.
+     */
+    public UserState withGroups(Map<PermissionGroup, Long> groups) {
+        return new UserState(permissions, groups, expiries);
+    }
+
+    /**
+     * @return A new state with the same data, but without any resolved snapshots.
+     */
+    public UserState copy() {
+        return new UserState(permissions, groups, expiries);
+    }
+}
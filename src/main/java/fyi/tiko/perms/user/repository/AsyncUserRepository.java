@@ -0,0 +1,127 @@
+package fyi.tiko.perms.user.repository;
+
+import fyi.tiko.perms.database.DatabaseExecutor;
+import fyi.tiko.perms.database.WriteBehindQueue;
+import fyi.tiko.perms.permission.PermissionContext;
+import fyi.tiko.perms.user.permission.UserState;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The non-blocking view of a {@link UserRepository}. Every call is executed by the {@link DatabaseExecutor}, so it never blocks the calling
+ * thread. Reads and changes of a user write the queued changes of the user first, so they see the changes made before. Changes are single
+ * idempotent statements and report if they changed anything, so callers don't have to check the stored state first.
+ *
+ * @author tiko
+ */
+public class AsyncUserRepository {
+
+    private final UserRepository repository;
+    private final DatabaseExecutor executor;
+    private final WriteBehindQueue writeQueue;
+
+    /**
+     * Creates a new non-blocking view of the given repository.
+     *
+     * @param repository The repository the calls are delegated to.
+     * @param executor   The executor the calls are executed by.
+     * @param writeQueue The queue the changes of the users are written with.
+     */
+    public AsyncUserRepository(UserRepository repository, DatabaseExecutor executor, WriteBehindQueue writeQueue) {
+        this.repository = repository;
+        this.executor = executor;
+        this.writeQueue = writeQueue;
+    }
+
+    /**
+     * @param name The name of the user.
+     * @return The uuid of the user, null if the user doesn't exist.
+     */
+    public CompletableFuture<UUID> byName(String name) {
+        var cached = repository.names().uuid(name);
+
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        return executor.supply(() -> repository.byName(name));
+    }
+
+    /**
+     * @param uuid The uuid of the user.
+     * @return The name of the user, null if the user doesn't exist.
+     */
+    public CompletableFuture<String> byUuid(UUID uuid) {
+        var cached = repository.names().name(uuid);
+
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        return executor.supply(() -> repository.byUuid(uuid));
+    }
+
+    /**
+     * @param uuid The uuid of the user.
+     * @return The stored permissions and groups of the user, empty if the storage couldn't be read.
+     */
+    public CompletableFuture<Optional<UserState>> load(UUID uuid) {
+        return executor.supply(() -> {
+            writeQueue.flush(WriteBehindQueue.userKey(uuid));
+            return repository.load(uuid);
+        });
+    }
+
+    /**
+     * @param uuid       The uuid of the user.
+     * @param permission The permission to add.
+     * @param context    The context of the permission.
+     * @param until      The time until the permission is valid, -1 if the permission is permanent.
+     * @return True if the storage changed, false if the user had the permission already.
+     */
+    public CompletableFuture<Boolean> addPermission(UUID uuid, String permission, PermissionContext context, long until) {
+        return executor.supply(() -> {
+            writeQueue.flush(WriteBehindQueue.userKey(uuid));
+            return repository.addPermission(uuid, permission, context, until);
+        });
+    }
+
+    /**
+     * @param uuid       The uuid of the user.
+     * @param permission The permission to remove.
+     * @param context    The context of the permission.
+     * @return True if the storage changed, false if the user didn't have the permission.
+     */
+    public CompletableFuture<Boolean> removePermission(UUID uuid, String permission, PermissionContext context) {
+        return executor.supply(() -> {
+            writeQueue.flush(WriteBehindQueue.userKey(uuid));
+            return repository.removePermission(uuid, permission, context);
+        });
+    }
+
+    /**
+     * @param uuid  The uuid of the user.
+     * @param group The name of the group to add.
+     * @param until The time until the group is valid, -1 if the group is permanent.
+     * @return True if the storage changed, false if the user was in the group already.
+     */
+    public CompletableFuture<Boolean> addGroup(UUID uuid, String group, long until) {
+        return executor.supply(() -> {
+            writeQueue.flush(WriteBehindQueue.userKey(uuid));
+            return repository.addGroup(uuid, group, until);
+        });
+    }
+
+    /**
+     * @param uuid  The uuid of the user.
+     * @param group The name of the group to remove.
+     * @return True if the storage changed, false if the user wasn't in the group.
+     */
+    public CompletableFuture<Boolean> removeGroup(UUID uuid, String group) {
+        return executor.supply(() -> {
+            writeQueue.flush(WriteBehindQueue.userKey(uuid));
+            return repository.removeGroup(uuid, group);
+        });
+    }
+}
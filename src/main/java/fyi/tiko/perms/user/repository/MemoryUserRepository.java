@@ -0,0 +1,355 @@
+package fyi.tiko.perms.user.repository;
+
+import fyi.tiko.perms.database.repository.PermissionRepository;
+import fyi.tiko.perms.group.GroupRegistry;
+import fyi.tiko.perms.group.PermissionGroup;
+import fyi.tiko.perms.permission.PermissionContext;
+import fyi.tiko.perms.user.permission.PermissionUser;
+import fyi.tiko.perms.user.permission.UserState;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link UserRepository} keeping the users in memory. Nothing is persisted, the users are stored like the rows of the player tables, so
+ * the repository behaves like the SQL repository without a database.
+ *
+ * @author tiko
+ */
+public class MemoryUserRepository implements UserRepository {
+
+    private final Map<UUID, StoredUser> users = new ConcurrentHashMap<>();
+    private final PermissionRepository permissionRepository;
+    private final GroupRegistry groupRegistry;
+    private final UserNameCache names;
+
+    /**
+     * Creates a new, empty repository.
+     *
+     * @param permissionRepository The repository the permissions of the users are added to.
+     * @param groupRegistry        The registry the groups of the users are looked up in.
+     * @param names                The cache the names and uuids of the users are resolved with.
+     */
+    public MemoryUserRepository(PermissionRepository permissionRepository, GroupRegistry groupRegistry, UserNameCache names) {
+        this.permissionRepository = permissionRepository;
+        this.groupRegistry = groupRegistry;
+        this.names = names;
+    }
+
+    @Override
+    public UserNameCache names() {
+        return names;
+    }
+
+    @Override
+    public String byUuid(UUID uuid) {
+        var user = users.get(uuid);
+        return user != null ? user.name : null;
+    }
+
+    @Override
+    public void addUser(UUID uuid, String name) {
+        users.putIfAbsent(uuid, new StoredUser(name));
+    }
+
+    @Override
+    public UUID byName(String name) {
+        var cached = names.uuid(name);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        return users.entrySet().stream()
+            .filter(entry -> entry.getValue().name.equalsIgnoreCase(name))
+            .map(Map.Entry::getKey)
+            .findFirst()
+            .orElse(null);
+    }
+
+    @Override
+    public Optional<UserState> load(UUID uuid) {
+        var permissions = new HashMap<PermissionContext, Set<String>>();
+        var expiries = new HashMap<PermissionContext, Map<String, Long>>();
+        var now = System.currentTimeMillis();
+        var user = users.get(uuid);
+
+        if (user == null) {
+            return Optional.of(UserState.EMPTY);
+        }
+
+        synchronized (user) {
+            user.permissions.forEach((node, until) -> {
+                if (until != -1 && until <= now) {
+                    return;
+                }
+
+                permissions.computeIfAbsent(node.context(), key -> new HashSet<>()).add(node.permission());
+
+                if (until != -1) {
+                    expiries.computeIfAbsent(node.context(), key -> new HashMap<>()).put(node.permission(), until);
+                }
+            });
+        }
+
+        return Optional.of(UserState.of(permissions, groups(uuid), expiries));
+    }
+
+    @Override
+    public Map<PermissionContext, Set<String>> permissions(UUID uuid) {
+        return load(uuid).orElseThrow().permissions();
+    }
+
+    @Override
+    public void saveUser(PermissionUser user) {
+        var state = user.state();
+
+        if (state.sameData(user.savedState())) {
+            return;
+        }
+
+        var stored = users.computeIfAbsent(user.uuid(), uuid -> new StoredUser(""));
+
+        synchronized (stored) {
+            stored.permissions.clear();
+            stored.groups.clear();
+
+            state.permissions().forEach((context, permissions) -> permissions.forEach(permission -> {
+                permissionRepository.addPermission(permission);
+                stored.permissions.put(new Node(permission, context), state.until(permission, context));
+            }));
+
+            state.groups().forEach((group, until) -> {
+                if (groupRegistry.exists(group.name())) {
+                    stored.groups.put(GroupRegistry.key(group.name()), until);
+                }
+            });
+        }
+
+        user.markSaved(state);
+    }
+
+    @Override
+    public boolean addGroup(UUID uuid, String group, long until) {
+        if (!groupRegistry.exists(group)) {
+            return false;
+        }
+
+        var user = users.get(uuid);
+
+        if (user == null) {
+            return false;
+        }
+
+        synchronized (user) {
+            return user.groups.putIfAbsent(GroupRegistry.key(group), until) == null;
+        }
+    }
+
+    @Override
+    public Map<PermissionGroup, Long> groups(UUID uuid) {
+        var groups = new HashMap<PermissionGroup, Long>();
+        var now = System.currentTimeMillis();
+        var user = users.get(uuid);
+
+        if (user == null) {
+            return groups;
+        }
+
+        synchronized (user) {
+            user.groups.forEach((name, until) -> {
+                var group = groupRegistry.byName(name);
+
+                if (group != null && (until == -1 || until > now)) {
+                    groups.put(group, until);
+                }
+            });
+        }
+
+        return groups;
+    }
+
+    @Override
+    public boolean isInGroup(UUID uuid, String group) {
+        var user = users.get(uuid);
+
+        if (user == null) {
+            return false;
+        }
+
+        synchronized (user) {
+            return user.groups.containsKey(GroupRegistry.key(group));
+        }
+    }
+
+    @Override
+    public boolean removeGroup(UUID uuid, String group) {
+        var user = users.get(uuid);
+
+        if (user == null) {
+            return false;
+        }
+
+        synchronized (user) {
+            return user.groups.remove(GroupRegistry.key(group)) != null;
+        }
+    }
+
+    /**
+     * Removes the given group from all users, like the rows referencing a removed group are deleted from the database.
+     *
+     * @param group The name of the removed group.
+     */
+    public void removeGroupFromAll(String group) {
+        users.keySet().forEach(uuid -> removeGroup(uuid, group));
+    }
+
+    /**
+     * Gets all memberships in the given group, including the expired ones.
+     *
+     * @param group The name of the group.
+     * @return The time until the membership is valid by the uuid of the user.
+     */
+    public Map<UUID, Long> memberships(String group) {
+        var key = GroupRegistry.key(group);
+        var memberships = new HashMap<UUID, Long>();
+
+        users.forEach((uuid, user) -> {
+            synchronized (user) {
+                var until = user.groups.get(key);
+
+                if (until != null) {
+                    memberships.put(uuid, until);
+                }
+            }
+        });
+
+        return memberships;
+    }
+
+    /**
+     * @return The uuids of all stored users.
+     */
+    public Set<UUID> uuids() {
+        return Set.copyOf(users.keySet());
+    }
+
+    /**
+     * Adds a membership of a stored user in the given group without looking the group up in the registry, for groups that are stored but
+     * not loaded yet.
+     *
+     * @param uuid  The uuid of the user.
+     * @param group The name of the group.
+     * @param until The time until the membership is valid, -1 if it is permanent.
+     * @return True if the membership was added, false if the user doesn't exist or is in the group already.
+     */
+    public boolean addMembership(UUID uuid, String group, long until) {
+        var user = users.get(uuid);
+
+        if (user == null) {
+            return false;
+        }
+
+        synchronized (user) {
+            return user.groups.putIfAbsent(GroupRegistry.key(group), until) == null;
+        }
+    }
+
+    /**
+     * Moves the memberships in the given group to its new name, like the rows referencing a renamed group keep referencing it.
+     *
+     * @param group The current name of the group.
+     * @param name  The new name of the group.
+     */
+    public void renameGroup(String group, String name) {
+        var key = GroupRegistry.key(group);
+        var renamed = GroupRegistry.key(name);
+
+        users.values().forEach(user -> {
+            synchronized (user) {
+                var until = user.groups.remove(key);
+
+                if (until != null) {
+                    user.groups.put(renamed, until);
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean removePermission(UUID uuid, String permission, PermissionContext context) {
+        var user = users.get(uuid);
+
+        if (user == null) {
+            return false;
+        }
+
+        synchronized (user) {
+            return user.permissions.remove(new Node(permission, context)) != null;
+        }
+    }
+
+    @Override
+    public boolean addPermission(UUID uuid, String permission, PermissionContext context, long until) {
+        permissionRepository.addPermission(permission);
+
+        var user = users.get(uuid);
+
+        if (user == null) {
+            return false;
+        }
+
+        synchronized (user) {
+            return user.permissions.putIfAbsent(new Node(permission, context), until) == null;
+        }
+    }
+
+    @Override
+    public boolean hasPermission(UUID uuid, String permission, PermissionContext context) {
+        var user = users.get(uuid);
+
+        if (user == null) {
+            return false;
+        }
+
+        synchronized (user) {
+            return user.permissions.containsKey(new Node(permission, context));
+        }
+    }
+
+    @Override
+    public void updateUser(UUID uuid, String name) {
+        users.computeIfAbsent(uuid, key -> new StoredUser(name)).name = name;
+        names.put(uuid, name);
+    }
+
+    /**
+     * A permission of a user in a context, the key of the stored permissions.
+     *
+     * @param permission The permission.
+     * @param context    The context of the permission.
+     */
+    private record Node(String permission, PermissionContext context) {
+    }
+
+    /**
+     * The stored data of a user, guarded by its own monitor.
+     */
+    private static final class StoredUser {
+
+        private final Map<Node, Long> permissions = new HashMap<>();
+        private final Map<String, Long> groups = new HashMap<>();
+        private volatile String name;
+
+        /**
+         * @param name The name of the user.
+         */
+        private StoredUser(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,537 @@
+package fyi.tiko.perms.user.repository;
+
+import fyi.tiko.perms.database.DatabaseInteraction;
+import fyi.tiko.perms.database.Dialect;
+import fyi.tiko.perms.database.UUIDs;
+import fyi.tiko.perms.database.repository.Change;
+import fyi.tiko.perms.database.repository.SqlChangelogRepository;
+import fyi.tiko.perms.database.repository.SqlPermissionRepository;
+import fyi.tiko.perms.group.GroupRegistry;
+import fyi.tiko.perms.group.PermissionGroup;
+import fyi.tiko.perms.permission.PermissionContext;
+import fyi.tiko.perms.user.permission.PermissionUser;
+import fyi.tiko.perms.user.permission.UserState;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * The {@link UserRepository} storing the users in the player tables of a SQL database.
+ *
+ * @author tiko
+ */
+public class SqlUserRepository extends DatabaseInteraction implements UserRepository {
+
+    /**
+     * Selects the permissions and the groups of a user that aren't expired. Groups have no context, so their server and world are empty.
+     */
+    private static final String LOAD_USER = "SELECT FALSE AS is_group, p.permission AS name, pp.server, pp.world, "
+        + "pp.permission_until AS until FROM player_permissions pp JOIN permissions p ON p.id = pp.permission_id "
+        + "WHERE pp.uuid=? AND (pp.permission_until=-1 OR pp.permission_until>?) "
+        + "UNION ALL "
+        + "SELECT TRUE, g.name, '', '', pg.group_until FROM player_groups pg JOIN perm_groups g ON g.id = pg.group_id "
+        + "WHERE pg.uuid=? AND (pg.group_until=-1 OR pg.group_until>?)";
+
+    /**
+     * Deletes a permission of a user, the permission is referenced by its id.
+     */
+    private static final String DELETE_PERMISSION = "DELETE FROM player_permissions WHERE uuid=? "
+        + "AND permission_id=(SELECT id FROM permissions WHERE permission=?) AND server=? AND world=?";
+
+    /**
+     * Deletes a group of a user, the group is referenced by its id.
+     */
+    private static final String DELETE_GROUP = "DELETE FROM player_groups WHERE uuid=? AND group_id=(SELECT id FROM perm_groups WHERE name=?)";
+
+    private final SqlPermissionRepository permissionRepository;
+    private final SqlChangelogRepository changelog;
+    private final GroupRegistry groupRegistry;
+    private final UserNameCache names;
+    private final String upsertPermission;
+    private final String upsertGroup;
+    private final String upsertUser;
+    private final String addPermission;
+    private final String addGroup;
+
+    /**
+     * Constructs a new {@link DatabaseInteraction} with the given {@link Logger} and {@link DataSource}.
+     *
+     * @param logger               The logger of the plugin using this holder.
+     * @param source               The data source to use.
+     * @param dialect              The dialect of the database.
+     * @param permissionRepository The repository the permissions of the users are added to.
+     * @param groupRegistry        The registry the groups of the users are looked up in.
+     * @param names                The cache the names and uuids of the users are resolved with before the database is queried.
+     * @param changelog            The changelog the changes of the users are recorded in.
+     */
+    public SqlUserRepository(Logger logger, DataSource source, Dialect dialect, SqlPermissionRepository permissionRepository,
+        GroupRegistry groupRegistry, UserNameCache names, SqlChangelogRepository changelog) {
+        super(logger, source);
+
+        this.permissionRepository = permissionRepository;
+        this.groupRegistry = groupRegistry;
+        this.changelog = changelog;
+        this.names = names;
+        upsertPermission = dialect.upsert("player_permissions", List.of("uuid", "permission_id", "server", "world", "permission_until"), 4,
+            "SELECT ?, id, ?, ?, ? FROM permissions WHERE permission=?");
+        upsertGroup = dialect.upsert("player_groups", List.of("uuid", "group_id", "group_until"), 2,
+            "SELECT ?, id, ? FROM perm_groups WHERE name=?");
+        upsertUser = dialect.upsert("perm_players", List.of("uuid", "name"), 1, "VALUES (?, ?)");
+        addPermission = dialect.insertIgnore("player_permissions", List.of("uuid", "permission_id", "server", "world", "permission_until"),
+            "SELECT ?, id, ?, ?, ? FROM permissions WHERE permission=?");
+        addGroup = dialect.insertIgnore("player_groups", List.of("uuid", "group_id", "group_until"),
+            "SELECT ?, id, ? FROM perm_groups WHERE name=?");
+    }
+
+    @Override
+    public UserNameCache names() {
+        return names;
+    }
+
+    @Override
+    public String byUuid(UUID uuid) {
+        var cached = names.name(uuid);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        try (var conn = conn(); var stmt = conn.prepareStatement("SELECT name FROM perm_players WHERE uuid=?")) {
+            stmt.setBytes(1, UUIDs.toBytes(uuid));
+            var resultSet = stmt.executeQuery();
+
+            if (resultSet.next()) {
+                var name = resultSet.getString("name");
+                names.put(uuid, name);
+                return name;
+            }
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to get user by uuid", exception);
+        }
+        return null;
+    }
+
+    @Override
+    public void addUser(UUID uuid, String name) {
+        try (var conn = conn(); var stmt = conn.prepareStatement("INSERT INTO perm_players(uuid, name) VALUES (?, ?)")) {
+            stmt.setBytes(1, UUIDs.toBytes(uuid));
+            stmt.setString(2, name);
+            stmt.executeUpdate();
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to add user", exception);
+        }
+    }
+
+    /**
+     * Gets the uuid of the user by the given name, ignoring the case of the name. Cached users are resolved without querying the database.
+     *
+     * @param name The name of the user.
+     * @return The uuid of the user.
+     */
+    @Override
+    public UUID byName(String name) {
+        var cached = names.uuid(name);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        try (var conn = conn(); var stmt = conn.prepareStatement("SELECT uuid, name FROM perm_players WHERE name_key=?")) {
+            stmt.setString(1, UserNameCache.key(name));
+            var resultSet = stmt.executeQuery();
+
+            if (resultSet.next()) {
+                var uuid = UUIDs.fromBytes(resultSet.getBytes("uuid"));
+                names.put(uuid, resultSet.getString("name"));
+                return uuid;
+            }
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to get user by name", exception);
+        }
+        return null;
+    }
+
+    /**
+     * Loads the permissions and groups of the user in a single query. Expired permissions and groups aren't loaded, the groups are resolved
+     * against the {@link GroupRegistry}, so no group data is read from the database.
+     *
+     * @param uuid The uuid of the user.
+     * @return The loaded state of the user, empty if the query failed.
+     */
+    @Override
+    public Optional<UserState> load(UUID uuid) {
+        var permissions = new HashMap<PermissionContext, Set<String>>();
+        var expiries = new HashMap<PermissionContext, Map<String, Long>>();
+        var groups = new HashMap<PermissionGroup, Long>();
+        var now = System.currentTimeMillis();
+
+        try (var conn = conn(); var stmt = conn.prepareStatement(LOAD_USER)) {
+            var bytes = UUIDs.toBytes(uuid);
+
+            stmt.setBytes(1, bytes);
+            stmt.setLong(2, now);
+            stmt.setBytes(3, bytes);
+            stmt.setLong(4, now);
+            var resultSet = stmt.executeQuery();
+
+            while (resultSet.next()) {
+                var name = resultSet.getString("name");
+                var until = resultSet.getLong("until");
+
+                if (resultSet.getBoolean("is_group")) {
+                    var group = groupRegistry.byName(name);
+
+                    if (group != null) {
+                        groups.put(group, until);
+                    }
+                    continue;
+                }
+
+                var context = PermissionContext.of(resultSet.getString("server"), resultSet.getString("world"));
+                permissions.computeIfAbsent(context, key -> new HashSet<>()).add(name);
+
+                if (until != -1) {
+                    expiries.computeIfAbsent(context, key -> new HashMap<>()).put(name, until);
+                }
+            }
+        } catch (SQLException exception) {
+            // An empty state would remove the permissions of the user once it is applied, so the failure is passed on
+            logger().log(Level.WARNING, "Failed to load user", exception);
+            return Optional.empty();
+        }
+
+        return Optional.of(UserState.of(permissions, groups, expiries));
+    }
+
+    @Override
+    public Map<PermissionContext, Set<String>> permissions(UUID uuid) {
+        var permissions = new HashMap<PermissionContext, Set<String>>();
+
+        try (var conn = conn(); var stmt = conn.prepareStatement(
+            "SELECT p.permission, pp.server, pp.world FROM player_permissions pp JOIN permissions p ON p.id = pp.permission_id "
+                + "WHERE pp.uuid=? AND (pp.permission_until=-1 OR pp.permission_until>?)")) {
+            stmt.setBytes(1, UUIDs.toBytes(uuid));
+            stmt.setLong(2, System.currentTimeMillis());
+            var resultSet = stmt.executeQuery();
+
+            while (resultSet.next()) {
+                var context = PermissionContext.of(resultSet.getString("server"), resultSet.getString("world"));
+                permissions.computeIfAbsent(context, key -> new HashSet<>()).add(resultSet.getString("permission"));
+            }
+            return permissions;
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to get permissions of user", exception);
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Saves the changes made to the given user since it was last loaded or saved. Users without changes are skipped, otherwise only the
+     * added, changed and removed permissions and groups are written in batches within a single transaction. Changes made while saving are
+     * saved the next time.
+     *
+     * @param user The user to save.
+     */
+    @Override
+    public void saveUser(PermissionUser user) {
+        var state = user.state();
+        var saved = user.savedState();
+
+        if (state.sameData(saved)) {
+            return;
+        }
+
+        var uuid = UUIDs.toBytes(user.uuid());
+        var groups = groupNames(state);
+        var savedGroups = groupNames(saved);
+        var added = new HashSet<String>();
+
+        try {
+            transaction(conn -> {
+                try (var stmt = conn.prepareStatement(upsertPermission)) {
+                    for (var entry : state.permissions().entrySet()) {
+                        var context = entry.getKey();
+
+                        for (var permission : entry.getValue()) {
+                            var until = state.until(permission, context);
+
+                            if (saved.hasNode(permission, context) && saved.until(permission, context) == until) {
+                                continue;
+                            }
+
+                            added.add(permission);
+
+                            stmt.setBytes(1, uuid);
+                            stmt.setString(2, context.server());
+                            stmt.setString(3, context.world());
+                            stmt.setLong(4, until);
+                            stmt.setString(5, permission);
+                            stmt.addBatch();
+                        }
+                    }
+
+                    // The permissions have to exist before they can be referenced
+                    permissionRepository.addPermissions(conn, added);
+                    stmt.executeBatch();
+                }
+
+                try (var stmt = conn.prepareStatement(DELETE_PERMISSION)) {
+                    for (var entry : saved.permissions().entrySet()) {
+                        var context = entry.getKey();
+
+                        for (var permission : entry.getValue()) {
+                            if (state.hasNode(permission, context)) {
+                                continue;
+                            }
+
+                            stmt.setBytes(1, uuid);
+                            stmt.setString(2, permission);
+                            stmt.setString(3, context.server());
+                            stmt.setString(4, context.world());
+                            stmt.addBatch();
+                        }
+                    }
+
+                    stmt.executeBatch();
+                }
+
+                try (var stmt = conn.prepareStatement(upsertGroup)) {
+                    for (var entry : groups.entrySet()) {
+                        if (entry.getValue().equals(savedGroups.get(entry.getKey())) || !groupRegistry.exists(entry.getKey())) {
+                            continue;
+                        }
+
+                        stmt.setBytes(1, uuid);
+                        stmt.setLong(2, entry.getValue());
+                        stmt.setString(3, entry.getKey());
+                        stmt.addBatch();
+                    }
+
+                    stmt.executeBatch();
+                }
+
+                try (var stmt = conn.prepareStatement(DELETE_GROUP)) {
+                    for (var name : savedGroups.keySet()) {
+                        if (groups.containsKey(name)) {
+                            continue;
+                        }
+
+                        stmt.setBytes(1, uuid);
+                        stmt.setString(2, name);
+                        stmt.addBatch();
+                    }
+
+                    stmt.executeBatch();
+                }
+
+                changelog.record(conn, Change.Kind.USER, user.uuid().toString());
+            });
+
+            permissionRepository.remember(added);
+            user.markSaved(state);
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to save user", exception);
+        }
+    }
+
+    /**
+     * @param state The state of a user.
+     * @return The time until the groups of the state are valid by the name of the group.
+     */
+    private static Map<String, Long> groupNames(UserState state) {
+        var names = new HashMap<String, Long>();
+        state.groups().forEach((group, until) -> names.put(group.name(), until));
+        return names;
+    }
+
+    /**
+     * Adds the given group to the user with a single statement, an existing membership is kept as it is.
+     *
+     * @param uuid  The uuid of the user.
+     * @param group The group to add.
+     * @param until The time until the group is valid.
+     * @return True if the user wasn't in the group before.
+     */
+    @Override
+    public boolean addGroup(UUID uuid, String group, long until) {
+        if (!groupRegistry.exists(group)) {
+            return false;
+        }
+
+        try {
+            return update(conn -> {
+                try (var stmt = conn.prepareStatement(addGroup)) {
+                    stmt.setBytes(1, UUIDs.toBytes(uuid));
+                    stmt.setLong(2, until);
+                    stmt.setString(3, group);
+                    return changed(conn, uuid, stmt.executeUpdate());
+                }
+            });
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to add group to user", exception);
+        }
+        return false;
+    }
+
+    @Override
+    public Map<PermissionGroup, Long> groups(UUID uuid) {
+        var groups = new HashMap<PermissionGroup, Long>();
+
+        try (var conn = conn(); var stmt = conn.prepareStatement(
+            "SELECT g.name, pg.group_until FROM player_groups pg JOIN perm_groups g ON g.id = pg.group_id "
+                + "WHERE pg.uuid=? AND (pg.group_until=-1 OR pg.group_until>?)")) {
+            stmt.setBytes(1, UUIDs.toBytes(uuid));
+            stmt.setLong(2, System.currentTimeMillis());
+            var resultSet = stmt.executeQuery();
+
+            while (resultSet.next()) {
+                var group = groupRegistry.byName(resultSet.getString("name"));
+                var until = resultSet.getLong("group_until");
+
+                if (group != null) {
+                    groups.put(group, until);
+                }
+            }
+            return groups;
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to get groups of user", exception);
+        }
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public boolean isInGroup(UUID uuid, String group) {
+        try (var conn = conn(); var stmt = conn.prepareStatement(
+            "SELECT g.name FROM player_groups pg JOIN perm_groups g ON g.id = pg.group_id WHERE pg.uuid=? AND g.name=?")) {
+            stmt.setBytes(1, UUIDs.toBytes(uuid));
+            stmt.setString(2, group);
+
+            var resultSet = stmt.executeQuery();
+            return resultSet.next();
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to check if user is in group", exception);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean removeGroup(UUID uuid, String group) {
+        try {
+            return update(conn -> {
+                try (var stmt = conn.prepareStatement(DELETE_GROUP)) {
+                    stmt.setBytes(1, UUIDs.toBytes(uuid));
+                    stmt.setString(2, group);
+                    return changed(conn, uuid, stmt.executeUpdate());
+                }
+            });
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to remove group from user", exception);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean removePermission(UUID uuid, String permission, PermissionContext context) {
+        try {
+            return update(conn -> {
+                try (var stmt = conn.prepareStatement(DELETE_PERMISSION)) {
+                    stmt.setBytes(1, UUIDs.toBytes(uuid));
+                    stmt.setString(2, permission);
+                    stmt.setString(3, context.server());
+                    stmt.setString(4, context.world());
+                    return changed(conn, uuid, stmt.executeUpdate());
+                }
+            });
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to remove permission from user", exception);
+        }
+        return false;
+    }
+
+    /**
+     * Adds the given permission to the user with a single statement, an existing permission is kept as it is. Only permissions that aren't
+     * known to be stored yet cost another statement.
+     *
+     * @param uuid       The uuid of the user.
+     * @param permission The permission to add.
+     * @param context    The context of the permission.
+     * @param until      The time until the permission is valid, -1 if the permission is permanent.
+     * @return True if the user didn't have the permission before.
+     */
+    @Override
+    public boolean addPermission(UUID uuid, String permission, PermissionContext context, long until) {
+        permissionRepository.addPermission(permission);
+
+        try {
+            return update(conn -> {
+                try (var stmt = conn.prepareStatement(addPermission)) {
+                    stmt.setBytes(1, UUIDs.toBytes(uuid));
+                    stmt.setString(2, context.server());
+                    stmt.setString(3, context.world());
+                    stmt.setLong(4, until);
+                    stmt.setString(5, permission);
+                    return changed(conn, uuid, stmt.executeUpdate());
+                }
+            });
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to add permission to user", exception);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasPermission(UUID uuid, String permission, PermissionContext context) {
+        try (var conn = conn(); var stmt = conn.prepareStatement(
+            "SELECT p.permission FROM player_permissions pp JOIN permissions p ON p.id = pp.permission_id "
+                + "WHERE pp.uuid=? AND p.permission=? AND pp.server=? AND pp.world=?")) {
+            stmt.setBytes(1, UUIDs.toBytes(uuid));
+            stmt.setString(2, permission);
+            stmt.setString(3, context.server());
+            stmt.setString(4, context.world());
+            var rs = stmt.executeQuery();
+            return rs.next();
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to check if user has permission", exception);
+        }
+        return false;
+    }
+
+    /**
+     * Records a change of the given user if the statement changed any rows.
+     *
+     * @param conn The connection of the change.
+     * @param uuid The uuid of the user.
+     * @param rows The number of changed rows.
+     * @return The number of changed rows.
+     * @throws SQLException If the change can't be recorded.
+     */
+    private int changed(Connection conn, UUID uuid, int rows) throws SQLException {
+        if (rows > 0) {
+            changelog.record(conn, Change.Kind.USER, uuid.toString());
+        }
+        return rows;
+    }
+
+    @Override
+    public void updateUser(UUID uuid, String name) {
+        try (var conn = conn(); var stmt = conn.prepareStatement(upsertUser)) {
+            stmt.setBytes(1, UUIDs.toBytes(uuid));
+            stmt.setString(2, name);
+            stmt.executeUpdate();
+
+            names.put(uuid, name);
+        } catch (SQLException exception) {
+            logger().log(Level.WARNING, "Failed to update user", exception);
+        }
+    }
+}
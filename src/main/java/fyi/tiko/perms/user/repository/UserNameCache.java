@@ -0,0 +1,138 @@
+package fyi.tiko.perms.user.repository;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Caches the names and uuids of users in both directions, so commands don't have to query the database to resolve a user. Names are
+ * compared case-insensitively.
+ * <p>
+ * Online users are kept until they quit. Offline users are kept in a bounded cache that evicts the least recently used user first.
+ *
+ * @author tiko
+ */
+public class UserNameCache {
+
+    private final Map<UUID, String> online = new HashMap<>();
+    private final Map<UUID, String> offline;
+    private final Map<String, UUID> uuids = new HashMap<>();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param capacity The maximum number of offline users to keep.
+     */
+    public UserNameCache(int capacity) {
+        offline = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, String> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+
+                uuids.remove(key(eldest.getValue()), eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @param name The name of a user.
+     * @return The normalized name the user is looked up by.
+     */
+    public static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Remembers the name of the given offline user.
+     *
+     * @param uuid The uuid of the user.
+     * @param name The name of the user.
+     */
+    public synchronized void put(UUID uuid, String name) {
+        if (online.containsKey(uuid)) {
+            online(uuid, name);
+            return;
+        }
+
+        unlink(uuid, name);
+        offline.put(uuid, name);
+        uuids.put(key(name), uuid);
+    }
+
+    /**
+     * Remembers the name of the given user and keeps it until the user quits.
+     *
+     * @param uuid The uuid of the user.
+     * @param name The name of the user.
+     */
+    public synchronized void online(UUID uuid, String name) {
+        unlink(uuid, name);
+        offline.remove(uuid);
+        online.put(uuid, name);
+        uuids.put(key(name), uuid);
+    }
+
+    /**
+     * Moves the given user to the offline users, so it can be evicted.
+     *
+     * @param uuid The uuid of the user.
+     */
+    public synchronized void offline(UUID uuid) {
+        var name = online.remove(uuid);
+
+        if (name != null) {
+            offline.put(uuid, name);
+        }
+    }
+
+    /**
+     * @param name The name of the user, in any case.
+     * @return The uuid of the user or null if the user isn't cached.
+     */
+    public synchronized UUID uuid(String name) {
+        var uuid = uuids.get(key(name));
+
+        if (uuid != null) {
+            // Marks the user as recently used
+            offline.get(uuid);
+        }
+
+        return uuid;
+    }
+
+    /**
+     * @param uuid The uuid of the user.
+     * @return The name of the user or null if the user isn't cached.
+     */
+    public synchronized String name(UUID uuid) {
+        var name = online.get(uuid);
+        return name != null ? name : offline.get(uuid);
+    }
+
+    /**
+     * Removes the previous name of the given user and the previous user of the given name, so renamed users and names that were taken over
+     * by another user aren't resolved to stale entries.
+     *
+     * @param uuid The uuid of the user.
+     * @param name The current name of the user.
+     */
+    private void unlink(UUID uuid, String name) {
+        var previousName = online.containsKey(uuid) ? online.get(uuid) : offline.get(uuid);
+
+        if (previousName != null) {
+            uuids.remove(key(previousName), uuid);
+        }
+
+        var previousUuid = uuids.remove(key(name));
+
+        if (previousUuid != null && !previousUuid.equals(uuid)) {
+            online.remove(previousUuid);
+            offline.remove(previousUuid);
+        }
+    }
+}
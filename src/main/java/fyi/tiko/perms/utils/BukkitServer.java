@@ -1,7 +1,6 @@
 package fyi.tiko.perms.utils;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Locale;
 import org.bukkit.Bukkit;
 
 /**
@@ -23,7 +22,23 @@ public class BukkitServer {
     public static final String SERVER_VERSION = Bukkit.getServer().getClass().getPackageName().split("\\.")[3];
 
     /**
-     * Cached permissions
+     * The name of this server used for server scoped permissions, empty if only global permissions should apply.
      */
-    public static final Set<String> PERMISSIONS = new HashSet<>();
+    private static volatile String serverName = "";
+
+    /**
+     * @return The name of this server used for server scoped permissions.
+     */
+    public static String serverName() {
+        return serverName;
+    }
+
+    /**
+     * Sets the name of this server used for server scoped permissions.
+     *
+     * @param serverName The name of the server, null for none.
+     */
+    public static void serverName(String serverName) {
+        BukkitServer.serverName = serverName == null ? "" : serverName.toLowerCase(Locale.ROOT);
+    }
 }
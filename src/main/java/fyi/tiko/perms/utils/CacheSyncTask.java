@@ -0,0 +1,137 @@
+package fyi.tiko.perms.utils;
+
+import fyi.tiko.perms.PermissionPlugin;
+import fyi.tiko.perms.database.WriteBehindQueue;
+import fyi.tiko.perms.database.repository.Change;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import org.bukkit.scheduler.BukkitRunnable;
+
+/**
+ * Keeps the cache in sync with the changes other servers make to the shared storage. The task polls the changelog for the revisions after
+ * the last one it has seen and reloads only the changed users, groups and signs, so a poll without changes is a single indexed query. The
+ * changed entities are read on the thread of the task and applied to the cache on the main thread, where the cache is changed by commands.
+ * <p>
+ * Revisions are handed out before a change is committed, so a revision can become visible after a higher one. Skipped revisions are
+ * requested again by the following polls until they show up or are given up on, because the transaction was rolled back.
+ *
+ * @author tiko
+ */
+public class CacheSyncTask extends BukkitRunnable {
+
+    private static final long MISSING_TIMEOUT_MILLIS = 60_000;
+    private static final int MAX_MISSING = 1000;
+
+    private final PermissionPlugin plugin;
+    private final Map<Long, Long> missing = new HashMap<>();
+    private long revision;
+
+    /**
+     * Creates a new sync task from the given plugin.
+     *
+     * @param plugin The plugin to create the sync task from.
+     */
+    public CacheSyncTask(PermissionPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Remembers the latest revision, so only changes recorded afterwards are applied, and starts polling. Has to be called before the cache is
+     * loaded, so no change is lost in between.
+     *
+     * @param intervalSeconds The time between two polls.
+     */
+    public void start(long intervalSeconds) {
+        revision = plugin.storage().changelogRepository().latestRevision();
+        runTaskTimerAsynchronously(plugin, 20 * intervalSeconds, 20 * intervalSeconds);
+    }
+
+    /**
+     * Polls the changelog and applies the changes of the other servers.
+     */
+    @Override
+    public synchronized void run() {
+        var changes = plugin.storage().changelogRepository().changesSince(revision, missing.keySet());
+        var now = System.currentTimeMillis();
+        var changed = new LinkedHashSet<Change>();
+
+        for (var change : changes) {
+            missing.remove(change.revision());
+
+            // Revisions between the last seen revision and this one aren't committed yet
+            for (var skipped = revision + 1; skipped < change.revision() && missing.size() < MAX_MISSING; skipped++) {
+                missing.put(skipped, now);
+            }
+
+            revision = Math.max(revision, change.revision());
+
+            if (!change.local()) {
+                // Repeated changes of the same entity are applied once
+                changed.add(new Change(0, change.kind(), change.subject(), false));
+            }
+        }
+
+        missing.values().removeIf(since -> now - since > MISSING_TIMEOUT_MILLIS);
+
+        for (var change : changed) {
+            try {
+                apply(change);
+            } catch (RuntimeException exception) {
+                plugin.getLogger().log(Level.WARNING, "Failed to apply the change of " + change.kind().key() + " " + change.subject(), exception);
+            }
+        }
+    }
+
+    /**
+     * Reloads the changed entity.
+     *
+     * @param change The change to apply.
+     */
+    private void apply(Change change) {
+        switch (change.kind()) {
+            case USER -> LoadingActions.reloadUser(plugin, UUID.fromString(change.subject()));
+            case GROUP -> reloadGroup(change.subject());
+            case SIGN -> reloadSign(Integer.parseInt(change.subject()));
+        }
+    }
+
+    /**
+     * Reloads the given group. A group that doesn't exist anymore is removed from the cache. The group is read on this thread, the registry
+     * and the loaded groups and users are only changed on the main thread.
+     *
+     * @param name The name of the group.
+     */
+    private void reloadGroup(String name) {
+        plugin.writeQueue().flush(WriteBehindQueue.groupKey(name));
+
+        var group = plugin.groupRepository().byName(name);
+
+        plugin.mainThread().execute(() -> {
+            if (group == null) {
+                LoadingActions.removeGroup(plugin, name);
+            } else {
+                LoadingActions.replaceGroup(plugin, group);
+            }
+        });
+    }
+
+    /**
+     * Reloads the given sign. The signs are only changed on the main thread.
+     *
+     * @param id The id of the sign.
+     */
+    private void reloadSign(int id) {
+        var sign = plugin.signRepository().byId(id);
+
+        plugin.mainThread().execute(() -> {
+            plugin.signRegistry().unregister(id);
+
+            if (sign != null) {
+                plugin.signRegistry().register(sign);
+            }
+        });
+    }
+}
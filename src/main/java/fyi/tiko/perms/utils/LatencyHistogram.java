@@ -0,0 +1,84 @@
+package fyi.tiko.perms.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of durations in milliseconds. The durations are counted in buckets with power of two bounds, so recording a duration
+ * is a single increment and the percentiles are accurate up to a factor of two, which is enough to tell a slow database from a fast one.
+ *
+ * @author tiko
+ */
+public class LatencyHistogram {
+
+    /**
+     * Bucket {@code i} counts durations below {@code 2^i} milliseconds, the last bucket counts all longer durations.
+     */
+    private static final int BUCKETS = 16;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the given duration.
+     *
+     * @param millis The duration in milliseconds.
+     */
+    public void record(long millis) {
+        var duration = Math.max(0, millis);
+        var bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(duration));
+
+        buckets.incrementAndGet(bucket);
+        total.addAndGet(duration);
+        max.accumulateAndGet(duration, Math::max);
+    }
+
+    /**
+     * Summarizes the recorded durations and starts a new period. Durations recorded while summarizing may be counted in either period.
+     *
+     * @return The summary of the recorded durations or null if nothing was recorded.
+     */
+    public String summarizeAndReset() {
+        var counts = new long[BUCKETS];
+        var count = 0L;
+
+        for (var i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.getAndSet(i, 0);
+            count += counts[i];
+        }
+
+        var totalMillis = total.getAndSet(0);
+        var maxMillis = max.getAndSet(0);
+
+        if (count == 0) {
+            return null;
+        }
+
+        return String.format("count=%d avg=%dms p50%s p95%s p99%s max=%dms", count, totalMillis / count,
+            percentile(counts, count, 0.5), percentile(counts, count, 0.95), percentile(counts, count, 0.99), maxMillis);
+    }
+
+    /**
+     * Gets the upper bound of the bucket the given percentile falls into.
+     *
+     * @param counts     The counts of the buckets.
+     * @param count      The total count.
+     * @param percentile The percentile between 0 and 1.
+     * @return The formatted bound of the bucket.
+     */
+    private static String percentile(long[] counts, long count, double percentile) {
+        var rank = (long) Math.ceil(count * percentile);
+        var seen = 0L;
+
+        for (var i = 0; i < BUCKETS - 1; i++) {
+            seen += counts[i];
+
+            if (seen >= rank) {
+                return "<" + (1L << i) + "ms";
+            }
+        }
+
+        return ">=" + (1L << (BUCKETS - 2)) + "ms";
+    }
+}
@@ -1,11 +1,15 @@
 package fyi.tiko.perms.utils;
 
 import fyi.tiko.perms.PermissionPlugin;
+import fyi.tiko.perms.database.WriteBehindQueue;
+import fyi.tiko.perms.group.GroupInheritance;
+import fyi.tiko.perms.group.GroupRegistry;
 import fyi.tiko.perms.group.PermissionGroup;
 import fyi.tiko.perms.user.UserPermissibleBase;
 import fyi.tiko.perms.user.permission.PermissionUser;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.UUID;
 import java.util.logging.Level;
 import org.bukkit.block.Sign;
 import org.bukkit.entity.Player;
@@ -35,6 +39,7 @@ public class LoadingActions {
         plugin.getServer().getOnlinePlayers().forEach(player -> {
             var user = PermissionUser.of(player);
             user.apply(player);
+            user.switchWorld(player.getWorld().getName());
 
             try {
                 injectPermissibleBase(user);
@@ -80,11 +85,16 @@ public class LoadingActions {
      * @param player The player to update the signs for.
      */
     private static void updateSigns(PermissionPlugin plugin, Player player) {
-        var copiedSigns = new HashSet<>(plugin.signs());
+        var world = player.getWorld();
 
-        // To avoid concurrent modification exceptions we copy the signs and iterate over the copy
-        copiedSigns.forEach(permissionSign -> {
-            var bukkitSign = permissionSign.location().getWorld().getBlockAt(permissionSign.location()).getState();
+        // The registry returns a copy, so a sign can be registered or removed while the copy is iterated
+        plugin.signRegistry().all().forEach(permissionSign -> {
+            // Signs in other worlds can't be seen by the player, their block state isn't read
+            if (!world.equals(permissionSign.location().getWorld())) {
+                return;
+            }
+
+            var bukkitSign = world.getBlockAt(permissionSign.location()).getState();
 
             if (!(bukkitSign instanceof Sign sign)) {
                 return;
@@ -103,31 +113,114 @@ public class LoadingActions {
     }
 
     /**
-     * Updates the given {@link PermissionGroup} in the registered {@link Set} of {@link PermissionGroup}s.
+     * Replaces the registered {@link PermissionGroup} with the same name in the {@link fyi.tiko.perms.group.GroupRegistry} with the given group.
      *
      * @param permissionGroup The group to update.
      */
     public static void updateGroup(PermissionPlugin plugin, PermissionGroup permissionGroup) {
-        var groups = plugin.groups();
+        replaceGroup(plugin, permissionGroup);
+
+        // A later change of the group replaces this save if it wasn't written yet
+        plugin.writeQueue().enqueue(WriteBehindQueue.groupKey(permissionGroup.name()),
+            () -> plugin.groupRepository().saveGroup(permissionGroup));
+    }
+
+    /**
+     * Registers the given group and rebuilds the inheritance and the users depending on it, without saving the group. Used for groups that
+     * were reloaded from the database. Must be called on the main thread.
+     *
+     * @param plugin          The plugin the group is registered in.
+     * @param permissionGroup The group to register.
+     */
+    public static void replaceGroup(PermissionPlugin plugin, PermissionGroup permissionGroup) {
+        var groupRegistry = plugin.groupRegistry();
+        var groups = new HashMap<String, PermissionGroup>();
 
-        groups.removeIf(group -> group.name().equalsIgnoreCase(permissionGroup.name()));
-        groups.add(permissionGroup);
+        groupRegistry.all().forEach(group -> groups.put(GroupRegistry.key(group.name()), group));
+        groups.put(GroupRegistry.key(permissionGroup.name()), permissionGroup);
 
-        // We also have to update the groups the user has stored so the permissions are updated
+        // Groups inheriting from the updated group have to be resolved again. The registered groups are shared with other threads, so they
+        // are replaced by resolved copies instead of being changed
+        groupRegistry.replaceAll(GroupInheritance.resolveCopies(groups.values()));
+
+        // We also have to update the groups the user has stored so their effective permissions are rebuilt
         PermissionUser.permissionUsers().forEach((uuid, user) -> {
-            var userGroups = user.groups();
-            if (userGroups.containsKey(permissionGroup)) {
-                var until = userGroups.get(permissionGroup);
-                userGroups.put(permissionGroup, until);
-
-                plugin.getLogger().log(Level.INFO, "Updated group {0} for user {1} with until {2}",
-                    new Object[]{permissionGroup.name(), user.apply().getName(), until}
-                );
+            if (user.updateGroup(permissionGroup.name(), groupRegistry)) {
+                plugin.getLogger().log(Level.INFO, "Updated group {0} for user {1}", new Object[]{permissionGroup.name(), uuid});
             }
         });
+    }
+
+    /**
+     * Reloads the given user from the database if it is loaded. Users that aren't loaded are read from the database when they are needed
+     * anyway. Blocks until the user is read, so it must not be called on the main thread. The read state is applied on the main thread. If
+     * the user can't be read, the current state is kept.
+     *
+     * @param plugin The plugin the user is loaded in.
+     * @param uuid   The uuid of the user.
+     * @return True if the user was loaded and therefore reloaded.
+     */
+    public static boolean reloadUser(PermissionPlugin plugin, UUID uuid) {
+        if (PermissionUser.find(uuid).isEmpty()) {
+            return false;
+        }
+
+        // Changes made on this server are written first, so they aren't lost
+        plugin.writeQueue().flush(WriteBehindQueue.userKey(uuid));
+
+        var loaded = plugin.userRepository().load(uuid);
+
+        if (loaded.isEmpty()) {
+            return false;
+        }
 
-        // Force database update
-        plugin.runAsync(() -> plugin.groupRepository().saveGroup(permissionGroup));
+        var state = loaded.get();
+
+        // The loaded users are only changed on the main thread, the user may have quit in the meantime
+        plugin.mainThread().execute(() -> PermissionUser.find(uuid).ifPresent(user -> {
+            user.state(state);
+            plugin.userExpiryScheduler().schedule(user);
+        }));
+        return true;
     }
 
+    /**
+     * Removes the group with the given name from the registry, from the parents of the other groups and from the loaded users. The group
+     * isn't removed from the database. Must be called on the main thread.
+     *
+     * @param plugin The plugin the group is registered in.
+     * @param name   The name of the group.
+     */
+    public static void removeGroup(PermissionPlugin plugin, String name) {
+        var groupRegistry = plugin.groupRegistry();
+        var groups = new ArrayList<PermissionGroup>();
+
+        groupRegistry.unregister(name);
+
+        // Groups inheriting from the removed group lose the inherited permissions. The parent is removed from a copy, which is saved right
+        // away instead of waiting for the save task
+        groupRegistry.all().forEach(group -> {
+            if (!group.hasParent(name)) {
+                groups.add(group);
+                return;
+            }
+
+            var child = group.copy();
+            child.removeParent(name);
+            groups.add(child);
+
+            plugin.writeQueue().enqueue(WriteBehindQueue.groupKey(child.name()), () -> plugin.groupRepository().saveGroup(child));
+        });
+
+        groupRegistry.replaceAll(GroupInheritance.resolveCopies(groups));
+
+        // Remove group from all users, the users of groups inheriting from it get the resolved copies
+        PermissionUser.permissionUsers().values().forEach(user -> {
+            if (user.isInGroup(name)) {
+                user.removeGroup(name);
+            }
+
+            user.updateGroup(name, groupRegistry);
+        });
+    }
 }
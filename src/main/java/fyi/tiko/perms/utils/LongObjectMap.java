@@ -0,0 +1,172 @@
+package fyi.tiko.perms.utils;
+
+/**
+ * A hash map with primitive {@code long} keys. The keys are stored in an open addressed table with linear probing, so a lookup neither
+ * boxes the key nor follows a node. Not thread safe, {@code null} values aren't supported.
+ *
+ * @param <V> The type of the values.
+ * @author tiko
+ */
+public class LongObjectMap<V> {
+
+    private static final int MINIMUM_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    /**
+     * Creates a new empty map.
+     */
+    public LongObjectMap() {
+        allocate(MINIMUM_CAPACITY);
+    }
+
+    /**
+     * Gets the value mapped to the given key.
+     *
+     * @param key The key.
+     * @return The value or null if the key isn't mapped.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        for (var index = slot(key); values[index] != null; index = (index + 1) & mask) {
+            if (keys[index] == key) {
+                return (V) values[index];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Maps the given key to the given value.
+     *
+     * @param key   The key.
+     * @param value The value, not null.
+     * @return The value previously mapped to the key or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        var index = slot(key);
+
+        for (; values[index] != null; index = (index + 1) & mask) {
+            if (keys[index] == key) {
+                var previous = (V) values[index];
+                values[index] = value;
+                return previous;
+            }
+        }
+
+        keys[index] = key;
+        values[index] = value;
+
+        // The table is kept at most half full, so the probe sequences stay short
+        if (++size * 2 > values.length) {
+            resize(values.length * 2);
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes the mapping of the given key.
+     *
+     * @param key The key.
+     * @return The removed value or null if the key wasn't mapped.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        var index = slot(key);
+
+        while (values[index] != null && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+
+        if (values[index] == null) {
+            return null;
+        }
+
+        var removed = (V) values[index];
+
+        // The following entries of the probe sequence are shifted back, so no lookup stops at the gap
+        var gap = index;
+
+        for (var next = (gap + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+            if (((next - slot(keys[next])) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+
+        values[gap] = null;
+        size--;
+        return removed;
+    }
+
+    /**
+     * @return The number of mappings.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return True if there are no mappings.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all mappings and shrinks the table.
+     */
+    public void clear() {
+        allocate(MINIMUM_CAPACITY);
+    }
+
+    /**
+     * Gets the index the probe sequence of the given key starts at.
+     *
+     * @param key The key.
+     * @return The index in the table.
+     */
+    private int slot(long key) {
+        // Neighbouring block and chunk keys only differ in a few bits, they are spread over the whole table
+        var hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * Moves the mappings into a table with the given capacity.
+     *
+     * @param capacity The new capacity, a power of two.
+     */
+    @SuppressWarnings("unchecked")
+    private void resize(int capacity) {
+        var oldKeys = keys;
+        var oldValues = values;
+
+        allocate(capacity);
+
+        for (var i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                put(oldKeys[i], (V) oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Allocates an empty table with the given capacity.
+     *
+     * @param capacity The capacity, a power of two.
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+}
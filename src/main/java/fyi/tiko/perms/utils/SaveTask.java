@@ -1,14 +1,15 @@
 package fyi.tiko.perms.utils;
 
 import fyi.tiko.perms.PermissionPlugin;
-import fyi.tiko.perms.group.PermissionGroup;
+import fyi.tiko.perms.database.WriteBehindQueue;
 import fyi.tiko.perms.user.permission.PermissionUser;
-import java.util.HashSet;
+import java.time.Duration;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.bukkit.scheduler.BukkitRunnable;
 
 /**
- * The save task is responsible for saving the cached data to the database and also updating the cache.
+ * The save task is responsible for saving the cached data to the database and pruning the changelog and the audit log. Changes of other
+ * servers are applied by the {@link CacheSyncTask}, the whole cache is only reloaded on start.
  *
  * @author tiko
  */
@@ -26,70 +27,105 @@ public class SaveTask extends BukkitRunnable {
     }
 
     /**
-     * Saves the cached data to the database and also updates the cache.
+     * Saves the cached data to the database and removes the old changes from the changelog and the audit log.
      */
     @Override
     public void run() {
         savePermissionData();
-        updateCache();
+        pruneChangelog();
+        pruneAuditLog();
+        logLatency();
     }
 
     /**
-     * Saves the cached data to the database.
+     * Removes the changes that are older than the configured retention. Servers that were offline for longer reload everything on start.
+     */
+    private void pruneChangelog() {
+        var retention = Duration.ofHours(plugin.getConfig().getLong("database.changelog-retention", 24));
+        plugin.storage().changelogRepository().prune(System.currentTimeMillis() - retention.toMillis());
+    }
+
+    /**
+     * Removes the audit log entries that are older than the configured retention, so the log doesn't grow without bounds.
+     */
+    private void pruneAuditLog() {
+        var retention = Duration.ofDays(plugin.getConfig().getLong("audit.retention-days", 30));
+        plugin.storage().auditRepository().prune(System.currentTimeMillis() - retention.toMillis());
+    }
+
+    /**
+     * Logs the login latency and the latency of the write queue recorded since the last run.
+     */
+    private void logLatency() {
+        var summary = plugin.loginLatency().summarizeAndReset();
+
+        if (summary != null) {
+            plugin.getLogger().info("User load latency: " + summary);
+        }
+
+        var writeQueue = plugin.writeQueue();
+        var writeSummary = writeQueue.flushLatency().summarizeAndReset();
+
+        if (writeSummary != null) {
+            plugin.getLogger().info(String.format("Write queue depth: %d, write latency: %s", writeQueue.depth(), writeSummary));
+        }
+    }
+
+    /**
+     * Queues the changed users and groups to be saved to the database. Signs are written when they are created or removed, so they aren't
+     * saved here.
      */
     public void savePermissionData() {
+        var writeQueue = plugin.writeQueue();
+
+        // Expired groups and permissions are already removed by the expiry scheduler
         PermissionUser.permissionUsers().forEach((uuid, user) -> {
-            var groups = user.groups();
-            var groupsToRemove = new HashSet<PermissionGroup>();
-
-            // Remove expired groups
-            groups.forEach((group, until) -> {
-                // -1 means never expires
-                if (until == -1) {
-                    return;
-                }
-
-                // Remove group if expired
-                if (until < System.currentTimeMillis()) {
-                    groupsToRemove.add(group);
-                }
-            });
-
-            // Remove expired groups
-            groupsToRemove.forEach(groups::remove);
-
-            // Save permissions & groups
-            plugin.userRepository().saveUser(user);
+            if (user.isDirty()) {
+                writeQueue.enqueue(WriteBehindQueue.userKey(uuid), () -> plugin.userRepository().saveUser(user));
+            }
         });
 
-        plugin.signs().forEach(sign -> plugin.signRepository().saveSign(sign));
-        plugin.groups().forEach(group -> plugin.groupRepository().saveGroup(group));
+        plugin.groupRegistry().all().forEach(group -> {
+            if (group.isDirty()) {
+                writeQueue.enqueue(WriteBehindQueue.groupKey(group.name()), () -> plugin.groupRepository().saveGroup(group));
+            }
+        });
     }
 
     /**
-     * Updates the cache with the data from the database and also removes expired groups.
+     * Loads the users that are online from the database. Only used on start, e.g. after a reload. The groups and signs are loaded with the
+     * storage already, so the loaded users reference the registered groups.
      */
-    public void updateCache() {
+    public void loadOnlineUsers() {
         var userRepository = plugin.userRepository();
+        var writeQueue = plugin.writeQueue();
 
         plugin.getServer().getOnlinePlayers().forEach(player -> {
-            PermissionUser.delete(player.getUniqueId());
-
-            var user = PermissionUser.of(player);
+            var user = PermissionUser.create(player.getUniqueId());
             user.apply(player);
 
-            userRepository.groups(player.getUniqueId()).forEach(user::addGroup);
-            userRepository.permissions(player.getUniqueId()).forEach(user::addPermission);
-            user.loaded(new AtomicBoolean(true));
-        });
+            writeQueue.flush(WriteBehindQueue.userKey(player.getUniqueId()));
+            var state = userRepository.load(player.getUniqueId());
 
-        plugin.groups().clear();
-        plugin.groups().addAll(plugin.groupRepository().groups());
+            // Like at the login, a player whose permissions can't be loaded mustn't keep playing without them
+            if (state.isEmpty()) {
+                player.kickPlayer(plugin.userTranslator().translatedMessage("login-failed"));
+                return;
+            }
 
-        plugin.signs().clear();
-        plugin.signs().addAll(plugin.signRepository().allSigns());
+            user.state(state.get());
+            user.switchWorld(player.getWorld().getName());
+            user.loaded(new AtomicBoolean(true));
 
-        BukkitServer.PERMISSIONS.clear();
-        BukkitServer.PERMISSIONS.addAll(plugin.permissionRepository().permissions());
+            // The loaded user replaces the old one, therefore the permissible base has to use the new instance as well
+            user.register();
+            plugin.userExpiryScheduler().schedule(user);
+
+            try {
+                LoadingActions.injectPermissibleBase(user);
+            } catch (ClassNotFoundException | NoSuchFieldException | IllegalAccessException e) {
+                plugin.getLogger().severe("Could not inject permissible base for " + player.getName());
+            }
+        });
     }
 }
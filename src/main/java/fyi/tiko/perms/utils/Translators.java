@@ -24,6 +24,10 @@ public class Translators {
     public static boolean isCorrectDurationFormat(String duration) {
         var split = duration.split(" ");
 
+        if (split.length != 3) {
+            return false;
+        }
+
         try {
             Long.parseLong(split[0].replace("d", ""));
             Long.parseLong(split[1].replace("h", ""));
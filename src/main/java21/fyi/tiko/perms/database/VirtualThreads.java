@@ -0,0 +1,32 @@
+package fyi.tiko.perms.database;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates virtual threads. This is the Java 21 version of the class, Java 17 uses the version in {@code src/main/java}.
+ *
+ * @author tiko
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return True if the running Java version supports virtual threads.
+     */
+    static boolean supported() {
+        return true;
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread for every task.
+     *
+     * @param name The name of the threads.
+     * @return The executor.
+     */
+    static ExecutorService executor(String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+    }
+}
@@ -0,0 +1,92 @@
+-- The schema of the embedded database, equal to the schema the MySQL migrations end up with. The database is opened with IGNORECASE=TRUE,
+-- so names are compared case-insensitively like with the default collation of MySQL.
+
+CREATE TABLE IF NOT EXISTS permissions(
+    id INT GENERATED BY DEFAULT AS IDENTITY,
+    permission VARCHAR(128) NOT NULL,
+    PRIMARY KEY (id),
+    UNIQUE (permission)
+);
+
+CREATE TABLE IF NOT EXISTS perm_groups(
+    id INT GENERATED BY DEFAULT AS IDENTITY,
+    name VARCHAR(64) NOT NULL,
+    default_group BOOLEAN NOT NULL DEFAULT FALSE,
+    PRIMARY KEY (id),
+    UNIQUE (name)
+);
+
+CREATE TABLE IF NOT EXISTS group_metadata(
+    group_id INT NOT NULL,
+    prefix VARCHAR(1024) NULL,
+    suffix VARCHAR(1024) NULL,
+    weight INT NOT NULL DEFAULT 0,
+    FOREIGN KEY (group_id) REFERENCES perm_groups(id),
+    PRIMARY KEY (group_id)
+);
+
+CREATE TABLE IF NOT EXISTS group_permissions(
+    group_id INT NOT NULL,
+    permission_id INT NOT NULL,
+    server VARCHAR(64) NOT NULL DEFAULT '', -- empty means every server
+    world VARCHAR(64) NOT NULL DEFAULT '', -- empty means every world
+    FOREIGN KEY (group_id) REFERENCES perm_groups(id),
+    FOREIGN KEY (permission_id) REFERENCES permissions(id),
+    PRIMARY KEY (group_id, permission_id, server, world)
+);
+
+CREATE INDEX IF NOT EXISTS group_permissions_permission_id ON group_permissions(permission_id);
+
+CREATE TABLE IF NOT EXISTS group_parents(
+    group_id INT NOT NULL,
+    parent_id INT NOT NULL,
+    FOREIGN KEY (group_id) REFERENCES perm_groups(id),
+    FOREIGN KEY (parent_id) REFERENCES perm_groups(id),
+    PRIMARY KEY (group_id, parent_id)
+);
+
+CREATE INDEX IF NOT EXISTS group_parents_parent_id ON group_parents(parent_id);
+
+CREATE TABLE IF NOT EXISTS perm_players(
+    uuid BINARY(16) NOT NULL,
+    name VARCHAR(16) NOT NULL,
+    name_key VARCHAR(16) GENERATED ALWAYS AS (LOWER(name)),
+    PRIMARY KEY (uuid)
+);
+
+CREATE INDEX IF NOT EXISTS perm_players_name_key ON perm_players(name_key);
+
+CREATE TABLE IF NOT EXISTS permission_signs(
+    id INT GENERATED BY DEFAULT AS IDENTITY,
+    world VARCHAR(64) NOT NULL,
+    x INT NOT NULL,
+    y INT NOT NULL,
+    z INT NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS player_permissions(
+    uuid BINARY(16) NOT NULL,
+    permission_id INT NOT NULL,
+    server VARCHAR(64) NOT NULL DEFAULT '', -- empty means every server
+    world VARCHAR(64) NOT NULL DEFAULT '', -- empty means every world
+    permission_until BIGINT NOT NULL DEFAULT -1,
+    FOREIGN KEY (uuid) REFERENCES perm_players(uuid),
+    FOREIGN KEY (permission_id) REFERENCES permissions(id),
+    PRIMARY KEY (uuid, permission_id, server, world)
+);
+
+CREATE INDEX IF NOT EXISTS player_permissions_permission_id ON player_permissions(permission_id);
+CREATE INDEX IF NOT EXISTS player_permissions_permission_until ON player_permissions(permission_until);
+
+CREATE TABLE IF NOT EXISTS player_groups(
+    uuid BINARY(16) NOT NULL,
+    group_id INT NOT NULL,
+    group_until BIGINT NOT NULL DEFAULT -1,
+    FOREIGN KEY (uuid) REFERENCES perm_players(uuid),
+    FOREIGN KEY (group_id) REFERENCES perm_groups(id),
+    PRIMARY KEY (uuid, group_id)
+);
+
+CREATE INDEX IF NOT EXISTS player_groups_group_id ON player_groups(group_id);
+CREATE INDEX IF NOT EXISTS player_groups_group_until ON player_groups(group_until);
@@ -0,0 +1,12 @@
+-- The changelog of the changes of users, groups and signs, equal to the MySQL migration V5__changelog.sql.
+
+CREATE TABLE IF NOT EXISTS perm_changelog(
+    revision BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    origin BINARY(16) NOT NULL,
+    kind VARCHAR(8) NOT NULL,
+    subject VARCHAR(64) NOT NULL,
+    changed_at BIGINT NOT NULL,
+    PRIMARY KEY (revision)
+);
+
+CREATE INDEX IF NOT EXISTS perm_changelog_changed_at ON perm_changelog(changed_at);
@@ -0,0 +1,15 @@
+-- The audit log of the changes made with commands, equal to the MySQL migration V6__audit_log.sql.
+
+CREATE TABLE IF NOT EXISTS perm_audit_log(
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    created_at BIGINT NOT NULL,
+    actor VARCHAR(64) NOT NULL,
+    target VARCHAR(64) NOT NULL,
+    action VARCHAR(32) NOT NULL,
+    before_value VARCHAR(1024) NOT NULL DEFAULT '',
+    after_value VARCHAR(1024) NOT NULL DEFAULT '',
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX IF NOT EXISTS perm_audit_log_created_at ON perm_audit_log(created_at);
+CREATE INDEX IF NOT EXISTS perm_audit_log_target_id ON perm_audit_log(target, id);
@@ -0,0 +1,128 @@
+-- Replaces the uuid strings with BINARY(16) and the group and permission names in the join tables with integer ids. The tables are rebuilt
+-- next to the old ones and swapped in a single rename, so the script can be run again if it fails before the rename. The old tables are
+-- dropped by the next migration.
+
+CREATE TABLE IF NOT EXISTS permissions_v2(
+    id INT NOT NULL AUTO_INCREMENT,
+    permission VARCHAR(128) NOT NULL,
+    PRIMARY KEY (id),
+    UNIQUE KEY (permission)
+);
+
+CREATE TABLE IF NOT EXISTS perm_groups_v2(
+    id INT NOT NULL AUTO_INCREMENT,
+    name VARCHAR(64) NOT NULL,
+    default_group BOOLEAN NOT NULL DEFAULT FALSE,
+    PRIMARY KEY (id),
+    UNIQUE KEY (name)
+);
+
+CREATE TABLE IF NOT EXISTS group_metadata_v2(
+    group_id INT NOT NULL,
+    prefix TEXT NULL,
+    suffix TEXT NULL,
+    weight INT NOT NULL DEFAULT 0,
+    FOREIGN KEY (group_id) REFERENCES perm_groups_v2(id),
+    PRIMARY KEY (group_id)
+);
+
+CREATE TABLE IF NOT EXISTS group_permissions_v2(
+    group_id INT NOT NULL,
+    permission_id INT NOT NULL,
+    server VARCHAR(64) NOT NULL DEFAULT '', -- empty means every server
+    world VARCHAR(64) NOT NULL DEFAULT '', -- empty means every world
+    FOREIGN KEY (group_id) REFERENCES perm_groups_v2(id),
+    FOREIGN KEY (permission_id) REFERENCES permissions_v2(id),
+    PRIMARY KEY (group_id, permission_id, server, world),
+    INDEX (permission_id)
+);
+
+CREATE TABLE IF NOT EXISTS group_parents_v2(
+    group_id INT NOT NULL,
+    parent_id INT NOT NULL,
+    FOREIGN KEY (group_id) REFERENCES perm_groups_v2(id),
+    FOREIGN KEY (parent_id) REFERENCES perm_groups_v2(id),
+    PRIMARY KEY (group_id, parent_id),
+    INDEX (parent_id)
+);
+
+CREATE TABLE IF NOT EXISTS perm_players_v2(
+    uuid BINARY(16) NOT NULL,
+    name VARCHAR(16) NOT NULL,
+    PRIMARY KEY (uuid),
+    INDEX (name)
+);
+
+CREATE TABLE IF NOT EXISTS player_permissions_v2(
+    uuid BINARY(16) NOT NULL,
+    permission_id INT NOT NULL,
+    server VARCHAR(64) NOT NULL DEFAULT '', -- empty means every server
+    world VARCHAR(64) NOT NULL DEFAULT '', -- empty means every world
+    permission_until BIGINT NOT NULL DEFAULT -1,
+    FOREIGN KEY (uuid) REFERENCES perm_players_v2(uuid),
+    FOREIGN KEY (permission_id) REFERENCES permissions_v2(id),
+    PRIMARY KEY (uuid, permission_id, server, world),
+    INDEX (permission_id),
+    INDEX (permission_until)
+);
+
+CREATE TABLE IF NOT EXISTS player_groups_v2(
+    uuid BINARY(16) NOT NULL,
+    group_id INT NOT NULL,
+    group_until BIGINT NOT NULL DEFAULT -1,
+    FOREIGN KEY (uuid) REFERENCES perm_players_v2(uuid),
+    FOREIGN KEY (group_id) REFERENCES perm_groups_v2(id),
+    PRIMARY KEY (uuid, group_id),
+    INDEX (group_id),
+    INDEX (group_until)
+);
+
+INSERT IGNORE INTO permissions_v2(permission)
+SELECT permission FROM permissions;
+
+INSERT IGNORE INTO perm_groups_v2(name, default_group)
+SELECT name, default_group FROM perm_groups;
+
+INSERT IGNORE INTO group_metadata_v2(group_id, prefix, suffix, weight)
+SELECT g.id, m.prefix, m.suffix, m.weight FROM group_metadata m
+JOIN perm_groups_v2 g ON g.name = m.name;
+
+INSERT IGNORE INTO group_permissions_v2(group_id, permission_id, server, world)
+SELECT g.id, p.id, gp.server, gp.world FROM group_permissions gp
+JOIN perm_groups_v2 g ON g.name = gp.name
+JOIN permissions_v2 p ON p.permission = gp.permission;
+
+INSERT IGNORE INTO group_parents_v2(group_id, parent_id)
+SELECT g.id, p.id FROM group_parents gp
+JOIN perm_groups_v2 g ON g.name = gp.name
+JOIN perm_groups_v2 p ON p.name = gp.parent;
+
+INSERT IGNORE INTO perm_players_v2(uuid, name)
+SELECT UNHEX(REPLACE(uuid, '-', '')), name FROM perm_players;
+
+INSERT IGNORE INTO player_permissions_v2(uuid, permission_id, server, world, permission_until)
+SELECT UNHEX(REPLACE(pp.uuid, '-', '')), p.id, pp.server, pp.world, pp.permission_until FROM player_permissions pp
+JOIN permissions_v2 p ON p.permission = pp.permission;
+
+INSERT IGNORE INTO player_groups_v2(uuid, group_id, group_until)
+SELECT UNHEX(REPLACE(pg.uuid, '-', '')), g.id, COALESCE(pg.group_until, -1) FROM player_groups pg
+JOIN perm_groups_v2 g ON g.name = pg.group_name;
+
+-- The old tables are renamed first, so the generated names of the foreign keys of the new tables are free
+RENAME TABLE
+    permissions TO permissions_legacy,
+    perm_groups TO perm_groups_legacy,
+    group_metadata TO group_metadata_legacy,
+    group_permissions TO group_permissions_legacy,
+    group_parents TO group_parents_legacy,
+    perm_players TO perm_players_legacy,
+    player_permissions TO player_permissions_legacy,
+    player_groups TO player_groups_legacy,
+    permissions_v2 TO permissions,
+    perm_groups_v2 TO perm_groups,
+    group_metadata_v2 TO group_metadata,
+    group_permissions_v2 TO group_permissions,
+    group_parents_v2 TO group_parents,
+    perm_players_v2 TO perm_players,
+    player_permissions_v2 TO player_permissions,
+    player_groups_v2 TO player_groups;
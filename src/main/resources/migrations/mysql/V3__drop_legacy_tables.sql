@@ -0,0 +1,10 @@
+-- Drops the tables replaced by the previous migration, the tables referencing other tables are dropped first.
+
+DROP TABLE IF EXISTS player_groups_legacy;
+DROP TABLE IF EXISTS player_permissions_legacy;
+DROP TABLE IF EXISTS perm_players_legacy;
+DROP TABLE IF EXISTS group_parents_legacy;
+DROP TABLE IF EXISTS group_permissions_legacy;
+DROP TABLE IF EXISTS group_metadata_legacy;
+DROP TABLE IF EXISTS perm_groups_legacy;
+DROP TABLE IF EXISTS permissions_legacy;
@@ -0,0 +1,7 @@
+-- Players are looked up by their name in any case, so the lower case name is stored in an indexed column. The column is generated, so it
+-- can't get out of sync with the name. The index on the name itself is replaced by it.
+
+ALTER TABLE perm_players
+    ADD COLUMN name_key VARCHAR(16) AS (LOWER(name)) STORED NOT NULL,
+    ADD INDEX (name_key),
+    DROP INDEX name;
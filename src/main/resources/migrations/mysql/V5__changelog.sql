@@ -0,0 +1,12 @@
+-- Every change of a user, group or sign appends a row, so the other servers sharing the database only reload what changed. The revision
+-- increases with every change, servers poll for the revisions after the last one they have seen. Old rows are removed by their time.
+
+CREATE TABLE IF NOT EXISTS perm_changelog
+(
+    revision   BIGINT      NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    origin     BINARY(16)  NOT NULL,
+    kind       VARCHAR(8)  NOT NULL,
+    subject    VARCHAR(64) NOT NULL,
+    changed_at BIGINT      NOT NULL,
+    INDEX changed_at (changed_at)
+);
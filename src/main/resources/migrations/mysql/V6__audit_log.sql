@@ -0,0 +1,15 @@
+-- Every change made with a command appends a row, so it can be told later who changed what. Rows are only appended and removed by their
+-- time. The log is read newest first, either completely or for a single user or group.
+
+CREATE TABLE IF NOT EXISTS perm_audit_log
+(
+    id           BIGINT        NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    created_at   BIGINT        NOT NULL,
+    actor        VARCHAR(64)   NOT NULL,
+    target       VARCHAR(64)   NOT NULL,
+    action       VARCHAR(32)   NOT NULL,
+    before_value VARCHAR(1024) NOT NULL DEFAULT '',
+    after_value  VARCHAR(1024) NOT NULL DEFAULT '',
+    INDEX created_at (created_at),
+    INDEX target_id (target, id)
+);
@@ -0,0 +1,124 @@
+package fyi.tiko.perms.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the migrations against an embedded H2 database and the splitting of the migration scripts.
+ *
+ * @author tiko
+ */
+public class DatabaseSetupTest {
+
+    private static final Logger LOGGER = Logger.getLogger(DatabaseSetupTest.class.getName());
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DatabaseProvider provider;
+    private DataSource source;
+
+    @Before
+    public void setUp() {
+        LOGGER.setLevel(Level.OFF);
+        provider = DatabaseProvider.embedded(folder.getRoot().toPath().resolve("perms"));
+
+        assertTrue(provider.connect());
+        source = provider.dataSource();
+    }
+
+    @After
+    public void tearDown() {
+        provider.disconnect();
+    }
+
+    @Test
+    public void freshDatabaseIsMigrated() throws SQLException {
+        assertTrue(DatabaseSetup.migrate(LOGGER, source, Dialect.H2));
+        assertEquals(Dialect.H2.migrations().size(), count("SELECT COUNT(*) FROM schema_version"));
+
+        for (var table : List.of("permissions", "perm_groups", "group_permissions", "group_parents", "perm_players", "player_permissions",
+            "player_groups", "permission_signs", "perm_audit_log")) {
+            assertEquals(table, 0, count("SELECT COUNT(*) FROM " + table));
+        }
+    }
+
+    @Test
+    public void appliedMigrationsAreSkipped() throws SQLException {
+        assertTrue(DatabaseSetup.migrate(LOGGER, source, Dialect.H2));
+
+        execute("INSERT INTO perm_groups(name) VALUES ('admin')");
+
+        assertTrue(DatabaseSetup.migrate(LOGGER, source, Dialect.H2));
+        assertEquals(Dialect.H2.migrations().size(), count("SELECT COUNT(*) FROM schema_version"));
+        assertEquals(1, count("SELECT COUNT(*) FROM perm_groups"));
+    }
+
+    @Test
+    public void changedMigrationIsRejected() throws SQLException {
+        assertTrue(DatabaseSetup.migrate(LOGGER, source, Dialect.H2));
+
+        execute("UPDATE schema_version SET checksum = 'changed' WHERE version = 1");
+
+        assertFalse(DatabaseSetup.migrate(LOGGER, source, Dialect.H2));
+    }
+
+    @Test
+    public void statementsRespectQuotesAndComments() {
+        var script = """
+            -- A comment; with a semicolon
+            INSERT INTO a VALUES ('x;y', 'it''s'); # another; comment
+            /* a block; comment */ SELECT "b;c", `d;e` FROM a;
+
+            ;
+            SELECT 1""";
+
+        assertEquals(List.of("INSERT INTO a VALUES ('x;y', 'it''s')", "SELECT \"b;c\", `d;e` FROM a", "SELECT 1"),
+            DatabaseSetup.statements(script));
+    }
+
+    @Test
+    public void onlySingleAddColumnStatementsAreDetected() {
+        assertTrue(DatabaseSetup.addsSingleColumn("ALTER TABLE a ADD COLUMN b VARCHAR(64) NOT NULL DEFAULT ''"));
+        assertTrue(DatabaseSetup.addsSingleColumn("alter table a add column b DECIMAL(10, 2)"));
+        assertTrue(DatabaseSetup.addsSingleColumn("ALTER TABLE a ADD COLUMN b VARCHAR(8) DEFAULT 'x,y'"));
+        assertFalse(DatabaseSetup.addsSingleColumn("ALTER TABLE a ADD COLUMN b INT, DROP PRIMARY KEY, ADD PRIMARY KEY (b)"));
+        assertFalse(DatabaseSetup.addsSingleColumn("ALTER TABLE a DROP PRIMARY KEY"));
+        assertFalse(DatabaseSetup.addsSingleColumn("CREATE TABLE a(b INT)"));
+    }
+
+    /**
+     * @param query A query selecting a single number.
+     * @return The selected number.
+     * @throws SQLException If the query fails.
+     */
+    private long count(String query) throws SQLException {
+        try (var conn = source.getConnection(); var stmt = conn.prepareStatement(query)) {
+            var rs = stmt.executeQuery();
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * @param statement The statement to execute.
+     * @throws SQLException If the statement fails.
+     */
+    private void execute(String statement) throws SQLException {
+        try (var conn = source.getConnection(); var stmt = conn.prepareStatement(statement)) {
+            stmt.execute();
+        }
+    }
+}
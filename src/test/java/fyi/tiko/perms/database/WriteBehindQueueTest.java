@@ -0,0 +1,137 @@
+package fyi.tiko.perms.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the coalescing and flushing of the {@link WriteBehindQueue}. The coalescing window is long enough that the background flusher
+ * never runs a write during a test, unless the test waits for it.
+ *
+ * @author tiko
+ */
+public class WriteBehindQueueTest {
+
+    private static final Logger LOGGER = Logger.getLogger(WriteBehindQueueTest.class.getName());
+
+    private final List<String> written = new CopyOnWriteArrayList<>();
+    private WriteBehindQueue queue;
+
+    @Before
+    public void setUp() {
+        LOGGER.setLevel(Level.OFF);
+        queue = new WriteBehindQueue(LOGGER, 2, Duration.ofHours(1));
+    }
+
+    @After
+    public void tearDown() {
+        queue.drain(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void writesWithTheSameKeyAreCoalesced() {
+        queue.enqueue("user:a", () -> written.add("first"));
+        queue.enqueue("user:a", () -> written.add("second"));
+        queue.enqueue("user:a", () -> written.add("third"));
+
+        assertEquals(1, queue.depth());
+
+        queue.flush("user:a");
+
+        assertEquals(List.of("third"), written);
+        assertEquals(0, queue.depth());
+    }
+
+    @Test
+    public void flushOnlyWritesTheExactKey() {
+        queue.enqueue(WriteBehindQueue.groupKey("admin"), () -> written.add("admin"));
+        queue.enqueue(WriteBehindQueue.groupKey("admins"), () -> written.add("admins"));
+
+        queue.flush(WriteBehindQueue.groupKey("Admin"));
+
+        assertEquals(List.of("admin"), written);
+        assertEquals(1, queue.depth());
+    }
+
+    @Test
+    public void flushPrefixWritesAllKeysWithThePrefix() {
+        queue.enqueue(WriteBehindQueue.USER_KEYS + "a", () -> written.add("a"));
+        queue.enqueue(WriteBehindQueue.USER_KEYS + "b", () -> written.add("b"));
+        queue.enqueue(WriteBehindQueue.groupKey("admin"), () -> written.add("admin"));
+
+        queue.flushPrefix(WriteBehindQueue.USER_KEYS);
+
+        assertEquals(2, written.size());
+        assertTrue(written.containsAll(List.of("a", "b")));
+        assertEquals(1, queue.depth());
+    }
+
+    @Test
+    public void flushWithoutPendingWriteDoesNothing() {
+        queue.flush("user:a");
+
+        assertTrue(written.isEmpty());
+        assertEquals(0, queue.depth());
+    }
+
+    @Test
+    public void failedWriteDoesNotBlockTheKey() {
+        queue.enqueue("user:a", () -> {
+            throw new IllegalStateException("Failed on purpose");
+        });
+        queue.flush("user:a");
+
+        queue.enqueue("user:a", () -> written.add("retry"));
+        queue.flush("user:a");
+
+        assertEquals(List.of("retry"), written);
+        assertEquals(0, queue.depth());
+    }
+
+    @Test
+    public void flushAllIgnoresTheWindow() {
+        for (var i = 0; i < 100; i++) {
+            var value = String.valueOf(i);
+            queue.enqueue("user:" + i, () -> written.add(value));
+        }
+
+        assertTrue(queue.flushAll(Duration.ofSeconds(5)));
+        assertEquals(100, written.size());
+        assertEquals(0, queue.depth());
+    }
+
+    @Test
+    public void drainWritesPendingWrites() {
+        queue.enqueue("user:a", () -> written.add("a"));
+        queue.enqueue("group:admin", () -> written.add("admin"));
+
+        assertTrue(queue.drain(Duration.ofSeconds(5)));
+        assertEquals(2, written.size());
+    }
+
+    @Test
+    public void writesAreFlushedInTheBackgroundAfterTheWindow() throws InterruptedException {
+        var background = new WriteBehindQueue(LOGGER, 1, Duration.ZERO);
+
+        try {
+            background.enqueue("user:a", () -> written.add("a"));
+
+            // The flusher runs every 100 milliseconds
+            for (var i = 0; i < 50 && written.isEmpty(); i++) {
+                Thread.sleep(20);
+            }
+
+            assertEquals(List.of("a"), written);
+        } finally {
+            background.drain(Duration.ofSeconds(5));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package fyi.tiko.perms.group;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import fyi.tiko.perms.database.MemoryStorage;
+import fyi.tiko.perms.group.repository.GroupPermissionRepository;
+import fyi.tiko.perms.permission.PermissionContext;
+import fyi.tiko.perms.user.repository.UserNameCache;
+import java.util.ArrayList;
+import java.util.Collection;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the inheritance of groups loaded from the memory storage.
+ *
+ * @author tiko
+ */
+public class GroupInheritanceTest {
+
+    private static final PermissionContext LOBBY = PermissionContext.of("lobby", "");
+
+    private GroupPermissionRepository repository;
+
+    @Before
+    public void setUp() {
+        repository = new MemoryStorage(new GroupRegistry(), new UserNameCache(16)).groupRepository();
+
+        repository.addGroup("default");
+        repository.addGroup("builder");
+        repository.addGroup("admin");
+
+        repository.addPermission("default", "essentials.spawn", PermissionContext.GLOBAL);
+        repository.addPermission("builder", "worldedit.*", PermissionContext.GLOBAL);
+        repository.addPermission("builder", "essentials.fly", LOBBY);
+        repository.addPermission("admin", "-essentials.spawn", PermissionContext.GLOBAL);
+
+        repository.addParent("builder", "default");
+        repository.addParent("admin", "Builder");
+    }
+
+    @Test
+    public void closureContainsIndirectParents() {
+        var groups = repository.groups();
+        var admin = find(groups, "admin");
+        var builder = find(groups, "builder");
+
+        assertTrue(admin.inheritsFrom("builder"));
+        assertTrue(admin.inheritsFrom("DEFAULT"));
+        assertTrue(builder.inheritsFrom("default"));
+        assertFalse(builder.inheritsFrom("admin"));
+        assertFalse(find(groups, "default").inheritsFrom("builder"));
+
+        var global = admin.effectiveNodes().get(PermissionContext.GLOBAL);
+
+        assertEquals(Boolean.TRUE, global.resolve("worldedit.region.set"));
+        assertEquals(Boolean.TRUE, builder.effectiveNodes().get(PermissionContext.GLOBAL).resolve("essentials.spawn"));
+    }
+
+    @Test
+    public void ownNodesStayApartFromInheritedOnes() {
+        var admin = find(repository.groups(), "admin");
+
+        // The own negation of the admin group decides the permission before the grant inherited from the default group
+        assertEquals(Boolean.FALSE, admin.effectiveNodes().get(PermissionContext.GLOBAL).resolve("essentials.spawn"));
+        assertNull(admin.nodes().get(PermissionContext.GLOBAL).resolve("worldedit.region.set"));
+    }
+
+    @Test
+    public void closerGroupsOverrideInheritedNodes() {
+        repository.addPermission("default", "-essentials.kit", PermissionContext.GLOBAL);
+        repository.addPermission("default", "-essentials.home.*", PermissionContext.GLOBAL);
+        repository.addPermission("builder", "essentials.kit", PermissionContext.GLOBAL);
+        repository.addPermission("builder", "essentials.home.*", PermissionContext.GLOBAL);
+        repository.addPermission("admin", "-worldedit.*", PermissionContext.GLOBAL);
+
+        var groups = repository.groups();
+        var builder = find(groups, "builder").effectiveNodes().get(PermissionContext.GLOBAL);
+        var admin = find(groups, "admin").effectiveNodes().get(PermissionContext.GLOBAL);
+
+        // The builder group grants what its parent negates
+        assertEquals(Boolean.TRUE, builder.resolve("essentials.kit"));
+        assertEquals(Boolean.TRUE, builder.resolve("essentials.home.bed"));
+
+        // The builder group is closer to the admin group than the default group
+        assertEquals(Boolean.TRUE, admin.resolve("essentials.kit"));
+        assertEquals(Boolean.TRUE, admin.resolve("essentials.home.bed"));
+
+        // The admin group negates what its parent grants
+        assertEquals(Boolean.FALSE, admin.resolve("worldedit.region.set"));
+        assertEquals(Boolean.FALSE, find(groups, "default").effectiveNodes().get(PermissionContext.GLOBAL).resolve("essentials.kit"));
+    }
+
+    @Test
+    public void parentsAtTheSameDistanceAreCombined() {
+        repository.addGroup("moderator");
+        repository.addPermission("moderator", "-worldedit.*", PermissionContext.GLOBAL);
+        repository.addParent("admin", "moderator");
+
+        var admin = find(repository.groups(), "admin").effectiveNodes().get(PermissionContext.GLOBAL);
+
+        // The builder and the moderator group are both parents of the admin group, the negation wins
+        assertEquals(Boolean.FALSE, admin.resolve("worldedit.region.set"));
+    }
+
+    @Test
+    public void inheritedNodesKeepTheirContext() {
+        var admin = find(repository.groups(), "admin");
+
+        assertEquals(Boolean.TRUE, admin.effectiveNodes().get(LOBBY).resolve("essentials.fly"));
+        assertNull(admin.effectiveNodes().get(PermissionContext.GLOBAL).resolve("essentials.fly"));
+    }
+
+    @Test
+    public void cyclesAreRejected() {
+        var groups = repository.groups();
+
+        assertTrue(GroupInheritance.createsCycle(groups, "default", "admin"));
+        assertTrue(GroupInheritance.createsCycle(groups, "builder", "Admin"));
+        assertTrue(GroupInheritance.createsCycle(groups, "admin", "ADMIN"));
+        assertFalse(GroupInheritance.createsCycle(groups, "admin", "default"));
+        assertFalse(GroupInheritance.createsCycle(groups, "default", "unknown"));
+    }
+
+    @Test
+    public void copiesAreResolvedWithoutChangingTheGroups() {
+        var groups = new ArrayList<>(repository.groups());
+        var admin = find(groups, "admin");
+        var builder = find(groups, "builder").copy();
+
+        builder.removeParent("default");
+        groups.replaceAll(group -> group.name().equals("builder") ? builder : group);
+
+        var copies = GroupInheritance.resolveCopies(groups);
+
+        // The registered groups may be read on other threads, only the copies lose the inherited nodes
+        assertFalse(find(copies, "admin").inheritsFrom("default"));
+        assertNull(find(copies, "builder").effectiveNodes().get(PermissionContext.GLOBAL).resolve("essentials.spawn"));
+        assertTrue(admin.inheritsFrom("default"));
+        assertNotSame(admin, find(copies, "admin"));
+    }
+
+    @Test
+    public void storedCyclesAreSkipped() {
+        // The storage doesn't check for cycles, a cycle written by hand must not break the resolution
+        repository.addParent("default", "admin");
+
+        var groups = repository.groups();
+        var defaultGroup = find(groups, "default");
+
+        assertTrue(defaultGroup.inheritsFrom("admin"));
+        assertTrue(defaultGroup.inheritsFrom("builder"));
+        assertFalse(defaultGroup.inheritsFrom("default"));
+        assertEquals(Boolean.TRUE, defaultGroup.effectiveNodes().get(PermissionContext.GLOBAL).resolve("worldedit.region.set"));
+    }
+
+    /**
+     * @param groups The loaded groups.
+     * @param name   The name of the group.
+     * @return The group with the given name.
+     */
+    private static PermissionGroup find(Collection<PermissionGroup> groups, String name) {
+        return groups.stream().filter(group -> group.name().equals(name)).findFirst().orElseThrow();
+    }
+}
@@ -0,0 +1,86 @@
+package fyi.tiko.perms.permission;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests how the {@link PermissionTrie} resolves exact, wildcard and negated nodes.
+ *
+ * @author tiko
+ */
+public class PermissionTrieTest {
+
+    @Test
+    public void exactNodeOnlyMatchesItself() {
+        var trie = PermissionTrie.compile(List.of("worldedit.region.set"));
+
+        assertEquals(Boolean.TRUE, trie.resolve("worldedit.region.set"));
+        assertNull(trie.resolve("worldedit.region"));
+        assertNull(trie.resolve("worldedit.region.set.other"));
+        assertNull(trie.resolve("worldedit.region.replace"));
+    }
+
+    @Test
+    public void wildcardMatchesEveryNodeBelowIt() {
+        var trie = PermissionTrie.compile(List.of("worldedit.region.*"));
+
+        assertTrue(trie.hasPermission("worldedit.region.set"));
+        assertTrue(trie.hasPermission("worldedit.region.set.other"));
+        assertFalse(trie.hasPermission("worldedit.region"));
+        assertFalse(trie.hasPermission("worldedit.selection.pos"));
+    }
+
+    @Test
+    public void rootWildcardMatchesEverything() {
+        var trie = PermissionTrie.compile(List.of("*"));
+
+        assertTrue(trie.hasPermission("worldedit.region.set"));
+        assertTrue(trie.hasPermission("fly"));
+    }
+
+    @Test
+    public void exactNodeBeatsWildcard() {
+        var trie = PermissionTrie.compile(List.of("worldedit.*", "-worldedit.region.set"));
+
+        assertEquals(Boolean.FALSE, trie.resolve("worldedit.region.set"));
+        assertEquals(Boolean.TRUE, trie.resolve("worldedit.region.replace"));
+    }
+
+    @Test
+    public void deeperWildcardBeatsShallowerOne() {
+        var trie = PermissionTrie.compile(List.of("worldedit.*", "-worldedit.region.*"));
+
+        assertEquals(Boolean.FALSE, trie.resolve("worldedit.region.set"));
+        assertEquals(Boolean.TRUE, trie.resolve("worldedit.selection.pos"));
+
+        var inverted = PermissionTrie.compile(List.of("-worldedit.*", "worldedit.region.*"));
+
+        assertEquals(Boolean.TRUE, inverted.resolve("worldedit.region.set"));
+        assertEquals(Boolean.FALSE, inverted.resolve("worldedit.selection.pos"));
+    }
+
+    @Test
+    public void negationWinsOnTheSameNode() {
+        var trie = PermissionTrie.compile(List.of("worldedit.region.*", "-worldedit.region.*", "fly", "-fly"));
+
+        assertEquals(Boolean.FALSE, trie.resolve("worldedit.region.set"));
+        assertEquals(Boolean.FALSE, trie.resolve("fly"));
+    }
+
+    @Test
+    public void builderMergesTries() {
+        var granted = PermissionTrie.compile(List.of("worldedit.*"));
+        var negated = PermissionTrie.compile(List.of("-worldedit.*"));
+        var merged = PermissionTrie.builder().addAll(granted).addAll(negated).add("essentials.fly").build();
+
+        assertEquals(Boolean.FALSE, merged.resolve("worldedit.region.set"));
+        assertTrue(merged.hasPermission("essentials.fly"));
+        assertTrue(PermissionTrie.EMPTY.isEmpty());
+        assertFalse(merged.isEmpty());
+    }
+}
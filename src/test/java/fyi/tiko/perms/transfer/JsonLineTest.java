@@ -0,0 +1,71 @@
+package fyi.tiko.perms.transfer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Tests that the lines of an export are decoded to the fields they were encoded from.
+ *
+ * @author tiko
+ */
+public class JsonLineTest {
+
+    @Test
+    public void fieldsSurviveTheRoundTrip() {
+        var fields = new LinkedHashMap<String, Object>();
+        fields.put("type", "user");
+        fields.put("uuid", "4b5e2a8c-7f1d-4e3a-9c6b-2d8f0e1a3b5c");
+        fields.put("until", -1L);
+        fields.put("weight", Long.MAX_VALUE);
+        fields.put("default", true);
+        fields.put("negated", false);
+        fields.put("world", null);
+
+        var line = JsonLine.encode(fields);
+
+        assertFalse(line.contains("\n"));
+        assertEquals(fields, JsonLine.decode(line));
+        assertEquals(List.copyOf(fields.keySet()), List.copyOf(JsonLine.decode(line).keySet()));
+    }
+
+    @Test
+    public void specialCharactersAreEscaped() {
+        var text = "quote \" backslash \\ line\nbreak\r tab\t bell\u0007 umlaut ä snowman ☃ emoji 😀 colour §a";
+        var line = JsonLine.encode(Map.of("prefix", text));
+
+        assertFalse(line.contains("\n"));
+        assertEquals(text, JsonLine.decode(line).get("prefix"));
+    }
+
+    @Test
+    public void numbersAreDecodedAsLongs() {
+        var decoded = JsonLine.decode(JsonLine.encode(Map.of("weight", 5)));
+
+        assertEquals(5L, decoded.get("weight"));
+    }
+
+    @Test
+    public void emptyObjectAndWhitespaceAreAccepted() {
+        assertTrue(JsonLine.decode("{}").isEmpty());
+        assertEquals(Map.of("a", 1L, "b", "c"), JsonLine.decode(" { \"a\" : 1 , \"b\" : \"c\" } "));
+    }
+
+    @Test
+    public void invalidLinesAreRejected() {
+        for (var line : List.of("", "{", "[]", "{\"a\":1} trailing", "{\"a\":1.5}", "{\"a\":}", "{\"a\":\"unterminated}", "{a:1}")) {
+            try {
+                JsonLine.decode(line);
+                fail("Decoded the invalid line " + line);
+            } catch (IllegalArgumentException expected) {
+                // The line is rejected as expected
+            }
+        }
+    }
+}
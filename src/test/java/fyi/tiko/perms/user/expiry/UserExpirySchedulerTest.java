@@ -0,0 +1,93 @@
+package fyi.tiko.perms.user.expiry;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import fyi.tiko.perms.permission.PermissionContext;
+import fyi.tiko.perms.user.permission.PermissionUser;
+import java.util.UUID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link UserExpiryScheduler} removes exactly the expired entries of scheduled users. The users have no online player, so
+ * the scheduler never needs the plugin.
+ *
+ * @author tiko
+ */
+public class UserExpirySchedulerTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private UserExpiryScheduler scheduler;
+    private PermissionUser user;
+
+    @Before
+    public void setUp() {
+        scheduler = new UserExpiryScheduler(null);
+        user = PermissionUser.create(UUID.randomUUID()).register();
+    }
+
+    @After
+    public void tearDown() {
+        PermissionUser.delete(user);
+    }
+
+    @Test
+    public void expiredEntriesAreRemoved() {
+        var now = System.currentTimeMillis();
+
+        user.addPermission("essentials.fly", PermissionContext.GLOBAL, now - 1);
+        user.addPermission("essentials.speed", PermissionContext.GLOBAL, now + HOUR);
+        user.addPermission("essentials.home", PermissionContext.GLOBAL);
+        scheduler.schedule(user);
+        scheduler.tick();
+
+        assertFalse(user.hasNode("essentials.fly", PermissionContext.GLOBAL));
+        assertTrue(user.hasNode("essentials.speed", PermissionContext.GLOBAL));
+        assertTrue(user.hasNode("essentials.home", PermissionContext.GLOBAL));
+    }
+
+    @Test
+    public void entriesAreKeptUntilTheyExpire() {
+        user.addPermission("essentials.fly", PermissionContext.GLOBAL, System.currentTimeMillis() + HOUR);
+        scheduler.schedule(user);
+        scheduler.tick();
+
+        assertTrue(user.hasNode("essentials.fly", PermissionContext.GLOBAL));
+    }
+
+    @Test
+    public void earlierExpiryReplacesScheduledOne() {
+        var now = System.currentTimeMillis();
+
+        user.addPermission("essentials.speed", PermissionContext.GLOBAL, now + HOUR);
+        scheduler.schedule(user);
+
+        user.addPermission("essentials.fly", PermissionContext.GLOBAL, now - 1);
+        scheduler.schedule(user);
+        scheduler.tick();
+
+        assertFalse(user.hasNode("essentials.fly", PermissionContext.GLOBAL));
+        assertTrue(user.hasNode("essentials.speed", PermissionContext.GLOBAL));
+    }
+
+    @Test
+    public void unscheduledUsersAreNotTouched() {
+        user.addPermission("essentials.fly", PermissionContext.GLOBAL, System.currentTimeMillis() - 1);
+        scheduler.tick();
+
+        assertTrue(user.hasNode("essentials.fly", PermissionContext.GLOBAL));
+    }
+
+    @Test
+    public void unloadedUsersAreSkipped() {
+        user.addPermission("essentials.fly", PermissionContext.GLOBAL, System.currentTimeMillis() - 1);
+        scheduler.schedule(user);
+        PermissionUser.delete(user);
+        scheduler.tick();
+
+        assertTrue(user.hasNode("essentials.fly", PermissionContext.GLOBAL));
+    }
+}
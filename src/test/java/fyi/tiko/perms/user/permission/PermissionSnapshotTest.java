@@ -0,0 +1,89 @@
+package fyi.tiko.perms.user.permission;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import fyi.tiko.perms.group.GroupInheritance;
+import fyi.tiko.perms.group.PermissionGroup;
+import fyi.tiko.perms.permission.PermissionContext;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Tests how a {@link PermissionSnapshot} combines the nodes of a user and their groups.
+ *
+ * @author tiko
+ */
+public class PermissionSnapshotTest {
+
+    @Test
+    public void exactNodesAreCaseInsensitive() {
+        var snapshot = PermissionSnapshot.of(Map.of(PermissionContext.GLOBAL, Set.of("essentials.fly")), List.of(), "", "");
+
+        assertTrue(snapshot.hasPermission("essentials.fly"));
+        assertTrue(snapshot.hasPermission("Essentials.FLY"));
+        assertFalse(snapshot.hasPermission("essentials.fly.other"));
+    }
+
+    @Test
+    public void defaultPermissionsAreAlwaysGranted() {
+        var snapshot = PermissionSnapshot.of(Map.of(PermissionContext.GLOBAL, Set.of("-bukkit.broadcast")), List.of(), "", "");
+
+        assertTrue(snapshot.hasPermission("bukkit.broadcast"));
+        assertTrue(snapshot.hasPermission("bukkit.broadcast.user"));
+    }
+
+    @Test
+    public void groupWildcardsApplyWithoutExactNode() {
+        var group = group("builder", Map.of(PermissionContext.GLOBAL, Set.of("worldedit.*")));
+        var snapshot = PermissionSnapshot.of(Map.of(), List.of(group), "", "");
+
+        assertTrue(snapshot.hasPermission("worldedit.region.set"));
+        assertTrue(snapshot.hasPermission("WorldEdit.Region.Set"));
+        assertFalse(snapshot.hasPermission("essentials.fly"));
+    }
+
+    @Test
+    public void negationOfTheUserBeatsGrantOfTheGroup() {
+        var group = group("builder", Map.of(PermissionContext.GLOBAL, Set.of("essentials.fly", "worldedit.*")));
+        var snapshot = PermissionSnapshot.of(Map.of(PermissionContext.GLOBAL, Set.of("-essentials.fly", "-worldedit.region.*")),
+            List.of(group), "", "");
+
+        assertFalse(snapshot.hasPermission("essentials.fly"));
+        assertFalse(snapshot.hasPermission("worldedit.region.set"));
+        assertTrue(snapshot.hasPermission("worldedit.selection.pos"));
+    }
+
+    @Test
+    public void onlyApplyingContextsAreMerged() {
+        var permissions = Map.of(
+            PermissionContext.of("lobby", ""), Set.of("essentials.fly"),
+            PermissionContext.of("", "nether"), Set.of("essentials.speed"),
+            PermissionContext.of("survival", ""), Set.of("-essentials.speed"));
+
+        var lobby = PermissionSnapshot.of(permissions, List.of(), "lobby", "world");
+        var lobbyNether = PermissionSnapshot.of(permissions, List.of(), "lobby", "nether");
+        var survivalNether = PermissionSnapshot.of(permissions, List.of(), "survival", "nether");
+
+        assertTrue(lobby.hasPermission("essentials.fly"));
+        assertFalse(lobby.hasPermission("essentials.speed"));
+        assertTrue(lobbyNether.hasPermission("essentials.speed"));
+        assertFalse(survivalNether.hasPermission("essentials.fly"));
+        assertFalse(survivalNether.hasPermission("essentials.speed"));
+    }
+
+    /**
+     * Creates a group without parents and resolves its effective nodes.
+     *
+     * @param name        The name of the group.
+     * @param permissions The permissions of the group.
+     * @return The resolved group.
+     */
+    private static PermissionGroup group(String name, Map<PermissionContext, Set<String>> permissions) {
+        var group = new PermissionGroup(name, permissions, "", "", 0, false, Set.of());
+        GroupInheritance.resolve(List.of(group));
+        return group;
+    }
+}